@@ -20,6 +20,7 @@ package brooklyn.entity.rebind;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -76,6 +77,13 @@ public interface RebindManager {
 
     public ChangeListener getChangeListener();
 
+    /**
+     * Returns metrics on persistence, such as the number of changes waiting to be written,
+     * how long the oldest of those has been waiting, and how long the most recent write took.
+     */
+    @Beta
+    public Map<String, Object> getMetrics();
+
     /**
      * Starts the background persisting of state
      * (if persister is set; otherwise will start persisting as soon as persister is set). 
@@ -18,6 +18,8 @@
  */
 package brooklyn.management.ha;
 
+import java.util.Map;
+
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 
@@ -104,6 +106,13 @@ public interface HighAvailabilityManager {
      */
     ManagementPlaneSyncRecord getManagementPlaneSyncState();
     
+    /**
+     * Returns metrics on this node's HA transitions, such as the number of promotions to master 
+     * and how long the most recent promotion took.
+     */
+    @Beta
+    Map<String, Object> getMetrics();
+    
     @VisibleForTesting
     ManagementPlaneSyncRecordPersister getPersister();
 }
@@ -36,6 +36,9 @@ import brooklyn.management.ManagementContext;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.guava.Maybe;
 import brooklyn.util.os.Os;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
 
 /** Config keys for the brooklyn server */
 public class BrooklynServerConfig {
@@ -80,6 +83,35 @@ public class BrooklynServerConfig {
             + "if null or not set, the legacy beahviour of creating backups where possible (e.g. file system) is currently used, "
             + "but this may be changed in future versions");
 
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTENCE_JOURNALED =
+        ConfigKeys.newBooleanConfigKey("brooklyn.persistence.journal",
+            "Whether persisted state on the file system should be kept in an append-only journal, "
+            + "rather than as a file per item; an existing directory of files is imported into the journal "
+            + "when a node first becomes master (the files are left in place)", 
+            false);
+
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTENCE_BATCHED =
+        ConfigKeys.newBooleanConfigKey("brooklyn.persistence.batched",
+            "Whether persisted state in a cloud object store should be written as a single blob per delta "
+            + "(with periodic snapshots), rather than as a blob per item; existing blobs are imported into a snapshot "
+            + "when a node first becomes master (the blobs are left in place)", 
+            false);
+
+    @Beta
+    public static final ConfigKey<Duration> PERSISTENCE_MAX_STALENESS =
+        ConfigKeys.newConfigKey(Duration.class, "brooklyn.persistence.maxStaleness",
+            "If set, the period between writes of persisted state adapts to the number of changes and the time taken to write them, "
+            + "staying between brooklyn.persistence.minPeriod and this value, which caps how long a change waits to be persisted; "
+            + "if not set, changes are written at the fixed persistence period");
+
+    @Beta
+    public static final ConfigKey<Duration> PERSISTENCE_MIN_PERIOD =
+        ConfigKeys.newConfigKey(Duration.class, "brooklyn.persistence.minPeriod",
+            "The shortest period between writes of persisted state, when brooklyn.persistence.maxStaleness is set", 
+            Duration.millis(100));
+
     public static final ConfigKey<String> BROOKLYN_CATALOG_URL = ConfigKeys.newStringConfigKey("brooklyn.catalog.url",
         "The URL of a catalog.xml descriptor; absent for default (~/.brooklyn/catalog.xml), " +
         "or empty for no URL (use default scanner)",
@@ -35,6 +35,7 @@ import brooklyn.entity.basic.AbstractGroupImpl;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.DeferredMementoValue;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.location.Location;
@@ -43,6 +44,7 @@ import brooklyn.policy.basic.AbstractPolicy;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
 
 public class BasicEntityRebindSupport extends AbstractBrooklynObjectRebindSupport<EntityMemento> {
 
@@ -111,7 +113,12 @@ public class BasicEntityRebindSupport extends AbstractBrooklynObjectRebindSuppor
             }
         }
         
-        ((EntityInternal)entity).getConfigMap().addToLocalBag(memento.getConfigUnmatched());
+        // config which matches no key is kept as is, so any value still serialized is decoded here
+        Map<String, Object> configUnmatched = Maps.newLinkedHashMap();
+        for (Map.Entry<String, Object> entry : memento.getConfigUnmatched().entrySet()) {
+            configUnmatched.put(entry.getKey(), DeferredMementoValue.resolve(entry.getValue()));
+        }
+        ((EntityInternal)entity).getConfigMap().addToLocalBag(configUnmatched);
         ((EntityInternal)entity).refreshInheritedConfig();
     }
     
@@ -18,10 +18,17 @@
  */
 package brooklyn.entity.rebind;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -30,14 +37,17 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.basic.AbstractBrooklynObject;
 import brooklyn.basic.BrooklynObject;
 import brooklyn.catalog.CatalogItem;
 import brooklyn.entity.Entity;
 import brooklyn.entity.Feed;
 import brooklyn.entity.basic.BrooklynTaskTags;
 import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.location.Location;
+import brooklyn.location.basic.AbstractLocation;
 import brooklyn.location.basic.LocationInternal;
 import brooklyn.management.ExecutionContext;
 import brooklyn.management.ExecutionManager;
@@ -45,19 +55,25 @@ import brooklyn.management.Task;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.policy.Enricher;
 import brooklyn.policy.Policy;
+import brooklyn.policy.basic.AbstractEntityAdjunct;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.exceptions.RuntimeInterruptedException;
+import brooklyn.util.flags.FlagUtils;
+import brooklyn.util.flags.SetFromFlag;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.CountdownTimer;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
 import com.google.api.client.util.Lists;
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 
@@ -85,6 +101,8 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         Set<Enricher> enrichers = Sets.newLinkedHashSet();
         Set<Feed> feeds = Sets.newLinkedHashSet();
         Set<CatalogItem<?, ?>> catalogItems = Sets.newLinkedHashSet();
+        /** entities which have just been managed, so all their references must be persisted */
+        Set<Entity> newlyManagedEntities = Sets.newLinkedHashSet();
         Set<String> removedLocationIds = Sets.newLinkedHashSet();
         Set<String> removedEntityIds = Sets.newLinkedHashSet();
         Set<String> removedPolicyIds = Sets.newLinkedHashSet();
@@ -100,8 +118,38 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                     removedEnricherIds.isEmpty() && removedFeedIds.isEmpty() &&
                     removedCatalogItemIds.isEmpty();
         }
+
+        /** the changed objects, in the order locations, entities, policies, enrichers, feeds, catalog items */
+        public List<BrooklynObject> changedObjects() {
+            List<BrooklynObject> result = Lists.newArrayListWithCapacity(locations.size() + entities.size() + 
+                    policies.size() + enrichers.size() + feeds.size() + catalogItems.size());
+            result.addAll(locations);
+            result.addAll(entities);
+            result.addAll(policies);
+            result.addAll(enrichers);
+            result.addAll(feeds);
+            result.addAll(catalogItems);
+            return result;
+        }
+
+        public int size() {
+            return locations.size() + entities.size() + policies.size() + 
+                    enrichers.size() + feeds.size() +
+                    catalogItems.size() +
+                    removedEntityIds.size() + removedLocationIds.size() + removedPolicyIds.size() + 
+                    removedEnricherIds.size() + removedFeedIds.size() +
+                    removedCatalogItemIds.size();
+        }
     }
     
+    /** deltas with more objects than this shorten the adaptive period, and those with under a tenth of this lengthen it */
+    @VisibleForTesting
+    static final int ADAPTIVE_TARGET_DELTA_SIZE = 100;
+    
+    /** the adaptive period is kept at least this multiple of the last write's duration, so that writing does not dominate */
+    @VisibleForTesting
+    static final int ADAPTIVE_MIN_WRITE_DURATION_MULTIPLE = 4;
+    
     private final ExecutionContext executionContext;
     
     private final BrooklynMementoPersister persister;
@@ -110,10 +158,28 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     
     private final Duration period;
     
+    /** lower bound for the adaptive period, or null if the period is fixed */
+    private volatile Duration minPeriod;
+    
+    /** upper bound for how long a change should wait before it is persisted, or null if the period is fixed */
+    private volatile Duration maxStaleness;
+    
+    private volatile Duration currentPeriod;
+    
     private final AtomicLong writeCount = new AtomicLong();
     
     private DeltaCollector deltaCollector = new DeltaCollector();
 
+    /** time (utc) of the first change in {@link #deltaCollector}, or -1 if none; guarded by this */
+    private long oldestQueuedChangeTime = -1;
+    
+    /** time (utc) of the first change in the delta currently being persisted, or -1 if none */
+    private volatile long oldestWritingChangeTime = -1;
+    
+    private volatile Duration lastWriteDuration;
+    private volatile int lastWriteObjectCount;
+    private volatile long lastWriteBytes = -1;
+
     private volatile boolean running = false;
 
     private volatile boolean stopped = false;
@@ -123,6 +189,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     private final boolean persistPoliciesEnabled;
     private final boolean persistEnrichersEnabled;
     private final boolean persistFeedsEnabled;
+    private final boolean persistAllReferencedObjects;
     
     private final Semaphore persistingMutex = new Semaphore(1);
     private final Object startMutex = new Object();
@@ -138,10 +205,38 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         this.persister = persister;
         this.exceptionHandler = exceptionHandler;
         this.period = period;
+        this.currentPeriod = period;
         
         this.persistPoliciesEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_POLICY_PERSISTENCE_PROPERTY);
         this.persistEnrichersEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_ENRICHER_PERSISTENCE_PROPERTY);
         this.persistFeedsEnabled = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_FEED_PERSISTENCE_PROPERTY);
+        this.persistAllReferencedObjects = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_PERSIST_ALL_REFERENCED_OBJECTS_PROPERTY);
+    }
+    
+    /**
+     * Makes the period adaptive, rather than fixed at the period passed to the constructor (which is used initially).
+     * After each write the period is shortened if the delta was large, and lengthened if it was small or empty,
+     * but kept at least {@link #ADAPTIVE_MIN_WRITE_DURATION_MULTIPLE} times the duration of that write.
+     * It is always between {@code minPeriod} and {@code maxStaleness}, less the time the last write took,
+     * so that a change waits roughly no longer than {@code maxStaleness} to be persisted.
+     * <p>
+     * Must be called before {@link #start()}.
+     */
+    @Beta
+    public void setAdaptivePeriod(Duration minPeriod, Duration maxStaleness) {
+        checkArgument(maxStaleness.compareTo(minPeriod) >= 0, "maxStaleness %s must be at least minPeriod %s", maxStaleness, minPeriod);
+        this.minPeriod = minPeriod;
+        this.maxStaleness = maxStaleness;
+        this.currentPeriod = Duration.min(Duration.max(period, minPeriod), maxStaleness);
+    }
+
+    public boolean isAdaptivePeriod() {
+        return maxStaleness != null;
+    }
+    
+    /** the period currently used between writes; this only changes if {@link #setAdaptivePeriod(Duration, Duration)} is used */
+    public Duration getCurrentPeriod() {
+        return currentPeriod;
     }
     
     @SuppressWarnings("unchecked")
@@ -156,10 +251,14 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
 
             Callable<Task<?>> taskFactory = new Callable<Task<?>>() {
                 @Override public Task<Void> call() {
-                    return Tasks.<Void>builder().dynamic(false).name("periodic-persister").body(new Callable<Void>() {
+                    return Tasks.<Void>builder().dynamic(false).name("periodic-persister").tag(TaskTags.NON_BLOCKING_TASK).body(new Callable<Void>() {
                         public Void call() {
                             try {
                                 persistNow();
+                                if (isAdaptivePeriod()) {
+                                    // subsequent runs are scheduled using the period at the time this run completes
+                                    ((ScheduledTask)Tasks.current().getSubmittedByTask()).period(currentPeriod);
+                                }
                                 return null;
                             } catch (RuntimeInterruptedException e) {
                                 LOG.debug("Interrupted persisting change-delta (rethrowing)", e);
@@ -178,7 +277,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 }
             };
             scheduledTask = (ScheduledTask) executionContext.submit(new ScheduledTask(MutableMap.of("displayName", "scheduled[periodic-persister]",
-                "tags", MutableSet.of(BrooklynTaskTags.TRANSIENT_TASK_TAG)), taskFactory).period(period));
+                "tags", MutableSet.of(BrooklynTaskTags.TRANSIENT_TASK_TAG)), taskFactory).period(currentPeriod));
         }
     }
 
@@ -211,7 +310,70 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         // Discard all state that was waiting to be persisted
         synchronized (this) {
             deltaCollector = new DeltaCollector();
+            oldestQueuedChangeTime = -1;
+        }
+    }
+    
+    /**
+     * Returns metrics on the changes waiting to be persisted, and on the most recent write;
+     * these indicate whether persistence is keeping up with the rate of change.
+     * <ul>
+     *   <li>{@code queuedObjects}: number of changed or removed items waiting for the next write
+     *   <li>{@code lagMillis}: how long the oldest change not yet written has been waiting (0 if none)
+     *   <li>{@code lastWriteDurationMillis}, {@code lastWriteObjects}, {@code lastWriteBytes}: for the most recent write
+     *       which had changes (bytes are the size of the serialized items written, where known)
+     *   <li>{@code writes}: number of writes attempted, including those with no changes
+     *   <li>{@code periodMillis}: the current period between writes, and {@code maxStalenessMillis} if it is adaptive
+     * </ul>
+     */
+    @Beta
+    public Map<String, Object> getMetrics() {
+        int queuedObjects;
+        long oldestChangeTime;
+        synchronized (this) {
+            queuedObjects = deltaCollector.size();
+            oldestChangeTime = oldestQueuedChangeTime;
+        }
+        long writingChangeTime = oldestWritingChangeTime;
+        if (writingChangeTime >= 0 && (oldestChangeTime < 0 || writingChangeTime < oldestChangeTime)) {
+            oldestChangeTime = writingChangeTime;
+        }
+        
+        Map<String, Object> result = MutableMap.of();
+        result.put("queuedObjects", queuedObjects);
+        result.put("lagMillis", oldestChangeTime < 0 ? 0 : Math.max(0, System.currentTimeMillis() - oldestChangeTime));
+        Duration lastWriteDurationNow = lastWriteDuration;
+        if (lastWriteDurationNow != null) {
+            result.put("lastWriteDurationMillis", lastWriteDurationNow.toMilliseconds());
+            result.put("lastWriteObjects", lastWriteObjectCount);
+            if (lastWriteBytes >= 0) result.put("lastWriteBytes", lastWriteBytes);
+        }
+        result.put("writes", writeCount.get());
+        result.put("periodMillis", currentPeriod.toMilliseconds());
+        if (isAdaptivePeriod()) result.put("maxStalenessMillis", maxStaleness.toMilliseconds());
+        return result;
+    }
+    
+    /**
+     * Computes the period to wait before the next write, given the size of the delta just written and how long
+     * that took; see {@link #setAdaptivePeriod(Duration, Duration)}.
+     */
+    @VisibleForTesting
+    static Duration nextAdaptivePeriod(Duration current, int deltaSize, Duration writeDuration, Duration minPeriod, Duration maxStaleness) {
+        Duration result;
+        if (deltaSize > ADAPTIVE_TARGET_DELTA_SIZE) {
+            // changes are piling up; write smaller batches more often
+            result = current.half();
+        } else if (deltaSize < ADAPTIVE_TARGET_DELTA_SIZE/10) {
+            // few changes; back off rather than writing tiny batches
+            result = current.multiply(1.5);
+        } else {
+            result = current;
         }
+        result = Duration.max(result, writeDuration.multiply(ADAPTIVE_MIN_WRITE_DURATION_MULTIPLE));
+        // a change made just after a write waits for the period and then the next write
+        result = Duration.min(result, maxStaleness.subtract(writeDuration));
+        return Duration.max(result, minPeriod);
     }
     
     /**
@@ -268,19 +430,25 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         Set<Feed> referencedFeeds = Sets.newLinkedHashSet();
         
         for (Entity entity : deltaCollector.entities) {
-            // FIXME How to let the policy/location tell us about changes? Don't do this every time!
+            // Locations and adjuncts which report their own changes (through onChanged) are only included
+            // when the entity has just been managed, as they may have been added before management started;
+            // anything else (including those with persisted flag fields) is included every time the entity changes.
+            // (the persister does at least skip writing those which are unchanged)
+            boolean includeAll = persistAllReferencedObjects || deltaCollector.newlyManagedEntities.contains(entity);
             for (Location location : entity.getLocations()) {
-                Collection<Location> findLocationsInHierarchy = TreeUtils.findLocationsInHierarchy(location);
-                referencedLocations.addAll(findLocationsInHierarchy);
+                if (includeAll || !reportsOwnChanges(location)) {
+                    Collection<Location> findLocationsInHierarchy = TreeUtils.findLocationsInHierarchy(location);
+                    referencedLocations.addAll(findLocationsInHierarchy);
+                }
             }
             if (persistPoliciesEnabled) {
-                referencedPolicies.addAll(entity.getPolicies());
+                addReferencedAdjuncts(entity.getPolicies(), includeAll, referencedPolicies);
             }
             if (persistEnrichersEnabled) {
-                referencedEnrichers.addAll(entity.getEnrichers());
+                addReferencedAdjuncts(entity.getEnrichers(), includeAll, referencedEnrichers);
             }
             if (persistFeedsEnabled) {
-                referencedFeeds.addAll(((EntityInternal)entity).feeds().getFeeds());
+                addReferencedAdjuncts(((EntityInternal)entity).feeds().getFeeds(), includeAll, referencedFeeds);
             }
         }
         
@@ -306,6 +474,56 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
         }
     }
     
+    private static <T extends BrooklynObject> void addReferencedAdjuncts(Iterable<? extends T> adjuncts, boolean includeAll, Set<T> result) {
+        for (T adjunct : adjuncts) {
+            if (includeAll || !reportsOwnChanges(adjunct)) {
+                result.add(adjunct);
+            }
+        }
+    }
+    
+    /**
+     * Whether the object will call {@link #onChanged(BrooklynObject)} itself whenever its persisted state changes,
+     * so does not need to be re-persisted just because the entity it is attached to has changed.
+     * <p>
+     * Persisted {@link SetFromFlag} fields declared by subclasses are assigned directly, without reporting a change,
+     * so objects with such fields are always treated as not reporting their own changes.
+     */
+    private static boolean reportsOwnChanges(BrooklynObject instance) {
+        boolean managed;
+        if (instance instanceof AbstractLocation) {
+            managed = ((AbstractLocation)instance).isManaged();
+        } else if (instance instanceof AbstractEntityAdjunct) {
+            managed = ((AbstractEntityAdjunct)instance).getManagementContext() != null;
+        } else {
+            return false;
+        }
+        return managed && !hasFlagBackedState(instance.getClass());
+    }
+    
+    private static final ConcurrentMap<Class<?>, Boolean> FLAG_BACKED_STATE_BY_TYPE = new ConcurrentHashMap<Class<?>, Boolean>();
+    
+    /**
+     * Whether the type has non-static, non-transient {@link SetFromFlag} fields (which are persisted with the object),
+     * other than those on {@link AbstractBrooklynObject} and {@link AbstractEntityAdjunct}, whose changes are reported.
+     */
+    private static boolean hasFlagBackedState(Class<?> type) {
+        Boolean result = FLAG_BACKED_STATE_BY_TYPE.get(type);
+        if (result == null) {
+            result = false;
+            for (Field field : FlagUtils.getAllFields(type)) {
+                if (!field.isAnnotationPresent(SetFromFlag.class)) continue;
+                if ((field.getModifiers() & (Modifier.STATIC | Modifier.TRANSIENT)) != 0) continue;
+                Class<?> declarer = field.getDeclaringClass();
+                if (declarer == AbstractBrooklynObject.class || declarer == AbstractEntityAdjunct.class) continue;
+                result = true;
+                break;
+            }
+            FLAG_BACKED_STATE_BY_TYPE.put(type, result);
+        }
+        return result;
+    }
+    
     @VisibleForTesting
     public void persistNow() {
         if (!isActive()) {
@@ -321,6 +539,8 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             synchronized (this) {
                 prevDeltaCollector = deltaCollector;
                 deltaCollector = new DeltaCollector();
+                oldestWritingChangeTime = oldestQueuedChangeTime;
+                oldestQueuedChangeTime = -1;
             }
             
             if (LOG.isDebugEnabled()) LOG.debug("Persister delta as reported: "
@@ -342,49 +562,19 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
             // Generate mementos for everything that has changed in this time period
             if (prevDeltaCollector.isEmpty()) {
                 if (LOG.isTraceEnabled()) LOG.trace("No changes to persist since last delta");
+                if (isAdaptivePeriod()) {
+                    currentPeriod = nextAdaptivePeriod(currentPeriod, 0, Duration.ZERO, minPeriod, maxStaleness);
+                }
             } else {
+                Stopwatch stopwatch = Stopwatch.createStarted();
+                long bytesBefore = getBytesWritten();
                 PersisterDeltaImpl persisterDelta = new PersisterDeltaImpl();
-                for (Location location : prevDeltaCollector.locations) {
-                    try {
-                        persisterDelta.locations.add(((LocationInternal)location).getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.LOCATION, location, e);
-                    }
-                }
-                for (Entity entity : prevDeltaCollector.entities) {
-                    try {
-                        persisterDelta.entities.add(((EntityInternal)entity).getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.ENTITY, entity, e);
-                    }
-                }
-                for (Policy policy : prevDeltaCollector.policies) {
-                    try {
-                        persisterDelta.policies.add(policy.getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.POLICY, policy, e);
-                    }
-                }
-                for (Enricher enricher : prevDeltaCollector.enrichers) {
-                    try {
-                        persisterDelta.enrichers.add(enricher.getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.ENRICHER, enricher, e);
-                    }
-                }
-                for (Feed feed : prevDeltaCollector.feeds) {
-                    try {
-                        persisterDelta.feeds.add(feed.getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.FEED, feed, e);
-                    }
-                }
-                for (CatalogItem<?, ?> catalogItem : prevDeltaCollector.catalogItems) {
-                    try {
-                        persisterDelta.catalogItems.add(catalogItem.getRebindSupport().getMemento());
-                    } catch (Exception e) {
-                        exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.CATALOG_ITEM, catalogItem, e);
-                    }
+                List<BrooklynObject> changedObjects = null;
+                if (persister instanceof BrooklynMementoPersisterToObjectStore) {
+                    // the persister generates each memento as part of writing it, in parallel
+                    changedObjects = prevDeltaCollector.changedObjects();
+                } else {
+                    addMementos(prevDeltaCollector, persisterDelta);
                 }
                 persisterDelta.removedLocationIds = prevDeltaCollector.removedLocationIds;
                 persisterDelta.removedEntityIds = prevDeltaCollector.removedEntityIds;
@@ -403,7 +593,24 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 synchronized (new Object()) {}
 
                 // Tell the persister to persist it
-                persister.delta(persisterDelta, exceptionHandler);
+                if (changedObjects != null) {
+                    ((BrooklynMementoPersisterToObjectStore)persister).delta(persisterDelta, changedObjects, exceptionHandler);
+                } else {
+                    persister.delta(persisterDelta, exceptionHandler);
+                }
+                
+                Duration writeDuration = Duration.of(stopwatch);
+                int deltaSize = prevDeltaCollector.size();
+                long bytesAfter = getBytesWritten();
+                lastWriteDuration = writeDuration;
+                lastWriteObjectCount = deltaSize;
+                lastWriteBytes = (bytesBefore >= 0 && bytesAfter >= 0) ? bytesAfter - bytesBefore : -1;
+                if (isAdaptivePeriod()) {
+                    Duration nextPeriod = nextAdaptivePeriod(currentPeriod, deltaSize, writeDuration, minPeriod, maxStaleness);
+                    if (LOG.isTraceEnabled()) LOG.trace("Persisted {} items in {}; period now {} (was {})", 
+                            new Object[] {deltaSize, writeDuration, nextPeriod, currentPeriod});
+                    currentPeriod = nextPeriod;
+                }
             }
         } catch (Exception e) {
             if (isActive()) {
@@ -413,11 +620,65 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
                 LOG.debug("Problem persisting, but no longer active (ignoring)", e);
             }
         } finally {
+            oldestWritingChangeTime = -1;
             writeCount.incrementAndGet();
             persistingMutex.release();
         }
     }
     
+    private void addMementos(DeltaCollector deltaCollector, PersisterDeltaImpl persisterDelta) {
+        for (Location location : deltaCollector.locations) {
+            try {
+                persisterDelta.locations.add(((LocationInternal)location).getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.LOCATION, location, e);
+            }
+        }
+        for (Entity entity : deltaCollector.entities) {
+            try {
+                persisterDelta.entities.add(((EntityInternal)entity).getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.ENTITY, entity, e);
+            }
+        }
+        for (Policy policy : deltaCollector.policies) {
+            try {
+                persisterDelta.policies.add(policy.getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.POLICY, policy, e);
+            }
+        }
+        for (Enricher enricher : deltaCollector.enrichers) {
+            try {
+                persisterDelta.enrichers.add(enricher.getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.ENRICHER, enricher, e);
+            }
+        }
+        for (Feed feed : deltaCollector.feeds) {
+            try {
+                persisterDelta.feeds.add(feed.getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.FEED, feed, e);
+            }
+        }
+        for (CatalogItem<?, ?> catalogItem : deltaCollector.catalogItems) {
+            try {
+                persisterDelta.catalogItems.add(catalogItem.getRebindSupport().getMemento());
+            } catch (Exception e) {
+                exceptionHandler.onGenerateMementoFailed(BrooklynObjectType.CATALOG_ITEM, catalogItem, e);
+            }
+        }
+    }
+    
+    /** total size of the items written by the persister, or -1 if it does not report this */
+    private long getBytesWritten() {
+        if (persister instanceof BrooklynMementoPersisterToObjectStore) {
+            return ((BrooklynMementoPersisterToObjectStore)persister).getWrittenBytesCount();
+        }
+        return -1;
+    }
+    
     private static String limitedCountString(Collection<?> items) {
         if (items==null) return null;
         int size = items.size();
@@ -434,6 +695,9 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     @Override
     public synchronized void onManaged(BrooklynObject instance) {
         if (LOG.isTraceEnabled()) LOG.trace("onManaged: {}", instance);
+        if (instance instanceof Entity && !isStopped()) {
+            deltaCollector.newlyManagedEntities.add((Entity)instance);
+        }
         onChanged(instance);
     }
 
@@ -441,10 +705,12 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     public synchronized void onUnmanaged(BrooklynObject instance) {
         if (LOG.isTraceEnabled()) LOG.trace("onUnmanaged: {}", instance);
         if (!isStopped()) {
+            if (oldestQueuedChangeTime < 0) oldestQueuedChangeTime = System.currentTimeMillis();
             if (instance instanceof Entity) {
                 Entity entity = (Entity) instance;
                 deltaCollector.removedEntityIds.add(entity.getId());
                 deltaCollector.entities.remove(entity);
+                deltaCollector.newlyManagedEntities.remove(entity);
                 
                 for (Policy policy : entity.getPolicies()) {
                     deltaCollector.removedPolicyIds.add(policy.getId());
@@ -483,6 +749,7 @@ public class PeriodicDeltaChangeListener implements ChangeListener {
     public synchronized void onChanged(BrooklynObject instance) {
         if (LOG.isTraceEnabled()) LOG.trace("onChanged: {}", instance);
         if (!isStopped()) {
+            if (oldestQueuedChangeTime < 0) oldestQueuedChangeTime = System.currentTimeMillis();
             if (instance instanceof Entity) {
                 deltaCollector.entities.add((Entity)instance);
             } else if (instance instanceof Location) {
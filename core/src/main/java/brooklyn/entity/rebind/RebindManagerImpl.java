@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -52,7 +53,10 @@ import brooklyn.entity.proxying.InternalEntityFactory;
 import brooklyn.entity.proxying.InternalFactory;
 import brooklyn.entity.proxying.InternalLocationFactory;
 import brooklyn.entity.proxying.InternalPolicyFactory;
+import brooklyn.entity.rebind.dto.BasicEntityMemento;
+import brooklyn.entity.rebind.dto.BrooklynMementoManifestImpl;
 import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore.EntityMementoHandler;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.location.Location;
@@ -93,8 +97,11 @@ import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
 
 import com.google.api.client.repackaged.com.google.common.base.Preconditions;
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -124,6 +131,14 @@ public class RebindManagerImpl implements RebindManager {
             ConfigKeys.newConfigKey(RebindFailureMode.class, "rebind.failureMode.loadPolicy",
                     "Action to take if a failure occurs when loading a policy or enricher", RebindFailureMode.CONTINUE);
     
+    /** @see BrooklynMementoPersisterToObjectStore#loadEntityMementos(List, int, LookupContext, RebindExceptionHandler, EntityMementoHandler) */
+    @Beta
+    public static final ConfigKey<Integer> REBIND_ENTITY_READ_AHEAD =
+            ConfigKeys.newIntegerConfigKey("rebind.entityReadAhead",
+                    "If positive (and persisting to an object store), entities are loaded parents first, at most this many ahead "
+                    + "of the one being reconstructed, and each is reconstructed as soon as it is loaded; "
+                    + "rather than all being loaded before any is reconstructed. This bounds the entity state held in memory during rebind.", 0);
+    
     public static final Logger LOG = LoggerFactory.getLogger(RebindManagerImpl.class);
 
     private final ManagementContextInternal managementContext;
@@ -137,6 +152,7 @@ public class RebindManagerImpl implements RebindManager {
     private volatile boolean readOnlyRunning = false;
     private volatile ScheduledTask readOnlyTask = null;
     private transient Semaphore rebindActive = new Semaphore(1);
+    private volatile Map<String, Duration> lastRebindPhaseTimings = ImmutableMap.of();
     
     private volatile BrooklynMementoPersister persistenceStoreAccess;
 
@@ -229,6 +245,11 @@ public class RebindManagerImpl implements RebindManager {
         this.persistenceStoreAccess = checkNotNull(val, "persister");
         
         this.persistenceRealChangeListener = new PeriodicDeltaChangeListener(managementContext.getServerExecutionContext(), persistenceStoreAccess, exceptionHandler, periodicPersistPeriod);
+        Duration maxStaleness = managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_MAX_STALENESS);
+        if (maxStaleness != null) {
+            Duration minPeriod = Duration.min(managementContext.getConfig().getConfig(BrooklynServerConfig.PERSISTENCE_MIN_PERIOD), maxStaleness);
+            persistenceRealChangeListener.setAdaptivePeriod(minPeriod, maxStaleness);
+        }
         this.persistencePublicChangeListener = new SafeChangeListener(persistenceRealChangeListener);
         
         if (persistenceRunning) {
@@ -236,6 +257,12 @@ public class RebindManagerImpl implements RebindManager {
         }
     }
 
+    /** time taken by each phase of the most recent rebind, in order; empty if there has not been one */
+    @VisibleForTesting
+    public Map<String, Duration> getLastRebindPhaseTimings() {
+        return lastRebindPhaseTimings;
+    }
+
     @Override
     @VisibleForTesting
     public BrooklynMementoPersister getPersister() {
@@ -386,6 +413,18 @@ public class RebindManagerImpl implements RebindManager {
         return persistencePublicChangeListener;
     }
     
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = MutableMap.of();
+        result.put("persistenceRunning", persistenceRunning);
+        result.put("readOnlyRunning", readOnlyRunning);
+        PeriodicDeltaChangeListener changeListener = persistenceRealChangeListener;
+        if (changeListener != null) {
+            result.putAll(changeListener.getMetrics());
+        }
+        return result;
+    }
+    
     @Override
     public List<Application> rebind() {
         return rebind(null, null, null);
@@ -475,7 +514,7 @@ public class RebindManagerImpl implements RebindManager {
             exceptionHandler.onStart();
             
             Reflections reflections = new Reflections(classLoader);
-            RebindContextImpl rebindContext = new RebindContextImpl(exceptionHandler, classLoader);
+            final RebindContextImpl rebindContext = new RebindContextImpl(exceptionHandler, classLoader);
             if (mode==ManagementNodeState.HOT_STANDBY) {
                 rebindContext.setAllReadOnly();
             } else {
@@ -484,6 +523,13 @@ public class RebindManagerImpl implements RebindManager {
             
             LookupContext realLookupContext = new RebindContextLookupContext(managementContext, rebindContext, exceptionHandler);
             
+            Integer entityReadAhead = managementContext.getConfig().getConfig(REBIND_ENTITY_READ_AHEAD);
+            boolean streamEntities = entityReadAhead != null && entityReadAhead > 0 
+                    && persistenceStoreAccess instanceof BrooklynMementoPersisterToObjectStore;
+            
+            Map<String, Duration> phaseTimings = MutableMap.of();
+            Stopwatch phaseStopwatch = Stopwatch.createStarted();
+            
             // Mutli-phase deserialization.
             //  1. deserialize just the "manifest" to find all instances (and their types).
             //  2. instantiate entities+locations so that inter-entity references can subsequently be set during deserialize (and entity config/state is set).
@@ -492,6 +538,8 @@ public class RebindManagerImpl implements RebindManager {
             //  5. reconstruct the entities etc (i.e. calling init on the already-instantiated instances).
             //  6. add policies+enrichers to all the entities.
             //  7. manage the entities
+            // With REBIND_ENTITY_READ_AHEAD set, the entities are not deserialized in (3); instead, in (5), each is loaded
+            // (a bounded number ahead, in parallel) and reconstructed as soon as its parent has been.
             
             // TODO if underlying data-store is changed between first and second phase (e.g. to add an
             // entity), then second phase might try to reconstitute an entity that has not been put in
@@ -517,6 +565,7 @@ public class RebindManagerImpl implements RebindManager {
                 else
                     LOG.info("Rebind check: no existing state; will persist new items to "+getPersister().getBackingStoreDescription());
             }
+            recordPhase(phaseTimings, "load manifest", phaseStopwatch);
 
             
             //
@@ -552,13 +601,18 @@ public class RebindManagerImpl implements RebindManager {
                     exceptionHandler.onCreateFailed(BrooklynObjectType.ENTITY, entityId, entityType, e);
                 }
             }
+            recordPhase(phaseTimings, "instantiate locations and entities", phaseStopwatch);
             
             
             //
             // PHASE THREE
             //
             
-            BrooklynMemento memento = persistenceStoreAccess.loadMemento(realLookupContext, exceptionHandler);
+            // when streaming, entities are loaded as they are reconstructed in phase five
+            BrooklynMemento memento = streamEntities
+                    ? ((BrooklynMementoPersisterToObjectStore)persistenceStoreAccess).loadMementoExceptEntities(realLookupContext, exceptionHandler)
+                    : persistenceStoreAccess.loadMemento(realLookupContext, exceptionHandler);
+            recordPhase(phaseTimings, "load mementos", phaseStopwatch);
 
             
             //
@@ -631,6 +685,7 @@ public class RebindManagerImpl implements RebindManager {
             } else {
                 LOG.debug("Not rebinding catalog; feature disabled: {}", memento.getCatalogItemIds());
             }
+            recordPhase(phaseTimings, "instantiate adjuncts and catalog items", phaseStopwatch);
 
             //
             // PHASE FIVE
@@ -717,22 +772,31 @@ public class RebindManagerImpl implements RebindManager {
                 }
             }
     
-            // Reconstruct entities
+            // Reconstruct entities, parents first; 
+            // the order is kept for adding adjuncts, along with the application ids for managing
             LOG.debug("RebindManager reconstructing entities");
-            for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
-                Entity entity = rebindContext.getEntity(entityMemento.getId());
-                if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
-    
-                if (entity == null) {
-                    // usually because of creation-failure, when not using fail-fast
-                    exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
-                } else {
-                    try {
-                        entityMemento.injectTypeClass(entity.getClass());
-                        ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
-                    } catch (Exception e) {
-                        exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
-                    }
+            final Map<String, EntityMemento> entityMementosParentFirst;
+            final List<String> applicationIds;
+            if (streamEntities) {
+                // each is reconstructed as soon as it is loaded, keeping only what the later phases need
+                entityMementosParentFirst = Maps.newLinkedHashMap();
+                applicationIds = Lists.newArrayList();
+                List<String> entityIds = sortParentFirst(mementoManifest.getEntityIdToType().keySet(), 
+                        ((BrooklynMementoManifestImpl)mementoManifest).getEntityIdToParent());
+                ((BrooklynMementoPersisterToObjectStore)persistenceStoreAccess).loadEntityMementos(entityIds, entityReadAhead, 
+                        realLookupContext, exceptionHandler, new EntityMementoHandler() {
+                            @Override
+                            public void onEntityMemento(EntityMemento entityMemento) {
+                                reconstructEntity(rebindContext, exceptionHandler, entityMemento);
+                                entityMementosParentFirst.put(entityMemento.getId(), BasicEntityMemento.withoutState(entityMemento));
+                                if (entityMemento.isTopLevelApp()) applicationIds.add(entityMemento.getId());
+                            }
+                        });
+            } else {
+                entityMementosParentFirst = sortParentFirst(memento.getEntityMementos());
+                applicationIds = memento.getApplicationIds();
+                for (EntityMemento entityMemento : entityMementosParentFirst.values()) {
+                    reconstructEntity(rebindContext, exceptionHandler, entityMemento);
                 }
             }
 
@@ -756,6 +820,7 @@ public class RebindManagerImpl implements RebindManager {
                     }
                 }
             }
+            recordPhase(phaseTimings, "reconstruct", phaseStopwatch);
 
             //
             // PHASE SIX
@@ -763,7 +828,7 @@ public class RebindManagerImpl implements RebindManager {
             
             // Associate policies+enrichers with entities
             LOG.debug("RebindManager reconstructing entities");
-            for (EntityMemento entityMemento : sortParentFirst(memento.getEntityMementos()).values()) {
+            for (EntityMemento entityMemento : entityMementosParentFirst.values()) {
                 Entity entity = rebindContext.getEntity(entityMemento.getId());
                 if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
     
@@ -783,6 +848,7 @@ public class RebindManagerImpl implements RebindManager {
                     }
                 }
             }
+            recordPhase(phaseTimings, "add adjuncts", phaseStopwatch);
             
             
             //
@@ -826,7 +892,7 @@ public class RebindManagerImpl implements RebindManager {
                     oldEntities.remove(entity.getId());
             }
             List<Application> apps = Lists.newArrayList();
-            for (String appId : memento.getApplicationIds()) {
+            for (String appId : applicationIds) {
                 Entity entity = rebindContext.getEntity(appId);
                 if (entity == null) {
                     // usually because of creation-failure, when not using fail-fast
@@ -877,6 +943,9 @@ public class RebindManagerImpl implements RebindManager {
                 LOG.debug("RebindManager not resetting catalog because catalog persistence is disabled");
             }
 
+            recordPhase(phaseTimings, "manage", phaseStopwatch);
+            lastRebindPhaseTimings = Collections.unmodifiableMap(phaseTimings);
+
             exceptionHandler.onDone();
 
             if (!isEmpty && mode!=ManagementNodeState.HOT_STANDBY) {
@@ -890,9 +959,12 @@ public class RebindManagerImpl implements RebindManager {
                     rebindContext.getCatalogItems().size(), Strings.s(rebindContext.getCatalogItems())
                 });
             }
+            if (!isEmpty) {
+                LOG.debug("Rebind phase timings: {}", phaseTimings);
+            }
 
             // Return the top-level applications
-            LOG.debug("RebindManager complete; return apps: {}", memento.getApplicationIds());
+            LOG.debug("RebindManager complete; return apps: {}", applicationIds);
             return apps;
 
         } catch (Exception e) {
@@ -930,27 +1002,66 @@ public class RebindManagerImpl implements RebindManager {
      * Sorts the map of nodes, so that a node's parent is guaranteed to come before that node
      * (unless the parent is missing).
      * 
-     * Relies on ordering guarantees of returned map (i.e. LinkedHashMap, which guarantees insertion order 
-     * even if a key is re-inserted into the map).
-     * 
-     * TODO Inefficient implementation!
+     * Relies on ordering guarantees of returned map (i.e. LinkedHashMap, which guarantees insertion order).
+     * Each node's chain of ancestors is only walked as far as the first one already placed,
+     * so this is linear in the number of nodes.
      */
     @VisibleForTesting
     <T extends TreeNode> Map<String, T> sortParentFirst(Map<String, T> nodes) {
-        Map<String, T> result = Maps.newLinkedHashMap();
+        Map<String, String> parents = Maps.newHashMap();
         for (T node : nodes.values()) {
-            List<T> tempchain = Lists.newLinkedList();
-            
-            T nodeinchain = node;
-            while (nodeinchain != null) {
-                tempchain.add(0, nodeinchain);
-                nodeinchain = (nodeinchain.getParent() == null) ? null : nodes.get(nodeinchain.getParent());
+            parents.put(node.getId(), node.getParent());
+        }
+        Map<String, T> result = Maps.newLinkedHashMap();
+        for (String id : sortParentFirst(nodes.keySet(), parents)) {
+            result.put(id, nodes.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * As {@link #sortParentFirst(Map)}, for the given ids, with the parent of each (if any) in the given map
+     * (e.g. from the manifest, before the mementos themselves are loaded).
+     */
+    @VisibleForTesting
+    List<String> sortParentFirst(Set<String> ids, Map<String, String> idToParent) {
+        Set<String> result = Sets.newLinkedHashSet();
+        List<String> tempchain = Lists.newArrayList();
+        for (String id : ids) {
+            tempchain.clear();
+            String idinchain = id;
+            // bounded by the number of nodes, in case of (invalid) cycles
+            while (idinchain != null && ids.contains(idinchain) && !result.contains(idinchain) && tempchain.size() <= ids.size()) {
+                tempchain.add(idinchain);
+                idinchain = idToParent.get(idinchain);
             }
-            for (T n : tempchain) {
-                result.put(n.getId(), n);
+            for (int i = tempchain.size()-1; i >= 0; i--) {
+                result.add(tempchain.get(i));
             }
         }
-        return result;
+        return ImmutableList.copyOf(result);
+    }
+
+    private void reconstructEntity(RebindContextImpl rebindContext, RebindExceptionHandler exceptionHandler, EntityMemento entityMemento) {
+        Entity entity = rebindContext.getEntity(entityMemento.getId());
+        if (LOG.isDebugEnabled()) LOG.debug("RebindManager reconstructing entity {}", entityMemento);
+
+        if (entity == null) {
+            // usually because of creation-failure, when not using fail-fast
+            exceptionHandler.onNotFound(BrooklynObjectType.ENTITY, entityMemento.getId());
+        } else {
+            try {
+                entityMemento.injectTypeClass(entity.getClass());
+                ((EntityInternal)entity).getRebindSupport().reconstruct(rebindContext, entityMemento);
+            } catch (Exception e) {
+                exceptionHandler.onRebindFailed(BrooklynObjectType.ENTITY, entity, e);
+            }
+        }
+    }
+
+    private static void recordPhase(Map<String, Duration> phaseTimings, String phase, Stopwatch stopwatch) {
+        phaseTimings.put(phase, Duration.of(stopwatch));
+        stopwatch.reset().start();
     }
 
     private Entity newEntity(String entityId, String entityType, Reflections reflections) {
@@ -30,6 +30,8 @@ import brooklyn.mementos.Memento;
 
 import com.google.common.base.Objects;
 import com.google.common.base.Objects.ToStringHelper;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -37,6 +39,9 @@ public abstract class AbstractMemento implements Memento, Serializable {
 
     private static final long serialVersionUID = -8091049282749284567L;
 
+    /** for strings repeated across many mementos, such as type names; see {@link #intern(String)} */
+    private static final Interner<String> NAMES = Interners.newWeakInterner();
+
     protected static abstract class Builder<B extends Builder<?>> {
         protected String brooklynVersion = BrooklynVersion.get();
         protected String id;
@@ -107,6 +112,21 @@ public abstract class AbstractMemento implements Memento, Serializable {
         tags = toPersistedList(builder.tags);
     }
 
+    /**
+     * Shares the strings which are the same in many mementos, such as the type and brooklyn version,
+     * so that mementos deserialized in bulk (e.g. when rebinding) do not each hold their own copy.
+     * Subclasses can extend this to intern other such names.
+     */
+    protected Object readResolve() {
+        brooklynVersion = intern(brooklynVersion);
+        type = intern(type);
+        return this;
+    }
+    
+    protected static String intern(String name) {
+        return name==null ? null : NAMES.intern(name);
+    }
+    
     // "fields" is not included as a field here, so that it is serialized after selected subclass fields
     // but the method declared here simplifies how it is connected in via builder etc
     protected abstract void setCustomFields(Map<String, Object> fields);
@@ -84,6 +84,13 @@ public class AbstractTreeNodeMemento extends AbstractMemento implements Memento,
         children = toPersistedList(builder.children);
     }
 
+    @Override
+    protected Object readResolve() {
+        // siblings all refer to the same parent
+        parent = intern(parent);
+        return super.readResolve();
+    }
+    
     @Deprecated
     @Override
     protected void setCustomFields(Map<String, Object> fields) {
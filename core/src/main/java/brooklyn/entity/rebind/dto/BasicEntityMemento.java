@@ -38,6 +38,7 @@ import brooklyn.event.Sensor;
 import brooklyn.mementos.EntityMemento;
 import brooklyn.mementos.TreeNode;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Objects.ToStringHelper;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -60,6 +61,23 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
         return new Builder();
     }
 
+    /**
+     * Returns a copy of the given memento without its config, attributes or effectors, keeping its structure
+     * (parent, children, locations, members) and the ids of its adjuncts; 
+     * for keeping once the entity has been reconstructed from it.
+     */
+    @Beta
+    public static EntityMemento withoutState(EntityMemento other) {
+        Builder builder = builder().from((TreeNode)other);
+        builder.isTopLevelApp = other.isTopLevelApp();
+        builder.locations.addAll(other.getLocations());
+        builder.policies.addAll(other.getPolicies());
+        builder.enrichers.addAll(other.getEnrichers());
+        builder.feeds.addAll(other.getFeeds());
+        builder.members.addAll(other.getMembers());
+        return builder.build();
+    }
+
     public static class Builder extends AbstractTreeNodeMemento.Builder<Builder> {
         protected Boolean isTopLevelApp;
         protected Map<ConfigKey<?>, Object> config = Maps.newLinkedHashMap();
@@ -114,7 +132,7 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
     private transient Map<String, Sensor<?>> staticSensorKeys;
     private List<Effector<?>> effectors;
     
-    private transient Map<ConfigKey<?>, Object> configByKey;
+    private transient volatile Map<ConfigKey<?>, Object> configByKey;
     private transient Map<String, Object> configUnmatched;
     private transient Map<AttributeSensor<?>, Object> attributesByKey;
 
@@ -123,6 +141,8 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
 
     // Trusts the builder to not mess around with mutability after calling build() -- with invalidate pattern
     // Does not make any attempt to make unmodifiable, or immutable copy, to have cleaner (and faster) output
+    // Keeps only the persisted (string-keyed) form of config and attributes, rather than both forms for every
+    // memento; the keyed form returned by the getters is computed on demand, as after deserialization
     protected BasicEntityMemento(Builder builder) {
         super(builder);
         
@@ -136,38 +156,31 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
         
         effectors = toPersistedList(builder.effectors);
         
-        configByKey = builder.config;
-        configUnmatched = builder.configUnmatched;
-        attributesByKey = builder.attributes;
-        
-        if (configByKey!=null) {
-            configKeys = Maps.newLinkedHashMap();
-            config = Maps.newLinkedHashMap();
-            for (Map.Entry<ConfigKey<?>, Object> entry : configByKey.entrySet()) {
+        if (builder.config!=null) {
+            for (Map.Entry<ConfigKey<?>, Object> entry : builder.config.entrySet()) {
                 ConfigKey<?> key = entry.getKey();
-                if (!key.equals(getStaticConfigKeys().get(key.getName())))
+                if (!key.equals(getStaticConfigKeys().get(key.getName()))) {
+                    if (configKeys == null) configKeys = Maps.newLinkedHashMap();
                     configKeys.put(key.getName(), key);
+                }
+                if (config == null) config = Maps.newLinkedHashMap();
                 config.put(key.getName(), entry.getValue());
             }
-            configKeys = toPersistedMap(configKeys);
-            config = toPersistedMap(config);
         }
-        if (configUnmatched!=null) {
+        if (builder.configUnmatched!=null && !builder.configUnmatched.isEmpty()) {
             if (config == null) config = Maps.newLinkedHashMap();
-            config.putAll(configUnmatched);
-            config = toPersistedMap(config);
+            config.putAll(builder.configUnmatched);
         }
-        if (attributesByKey!=null) {
-            attributeKeys = Maps.newLinkedHashMap();
-            attributes = Maps.newLinkedHashMap();
-            for (Map.Entry<AttributeSensor<?>, Object> entry : attributesByKey.entrySet()) {
+        if (builder.attributes!=null) {
+            for (Map.Entry<AttributeSensor<?>, Object> entry : builder.attributes.entrySet()) {
                 AttributeSensor<?> key = entry.getKey();
-                if (!key.equals(getStaticSensorKeys().get(key.getName())))
+                if (!key.equals(getStaticSensorKeys().get(key.getName()))) {
+                    if (attributeKeys == null) attributeKeys = Maps.newLinkedHashMap();
                     attributeKeys.put(key.getName(), key);
+                }
+                if (attributes == null) attributes = Maps.newLinkedHashMap();
                 attributes.put(key.getName(), entry.getValue());
             }
-            attributeKeys = toPersistedMap(attributeKeys);
-            attributes = toPersistedMap(attributes);
         }
     }
 
@@ -213,9 +226,11 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
      * TODO Really don't like this pattern. Should we clean it up? But deferring until 
      * everything else is working.
      */
-    private void postDeserialize() {
-        configByKey = Maps.newLinkedHashMap();
-        configUnmatched = Maps.newLinkedHashMap();
+    private synchronized void postDeserialize() {
+        if (configByKey != null) return;
+        
+        Map<ConfigKey<?>, Object> configByKey = Maps.newLinkedHashMap();
+        Map<String, Object> configUnmatched = Maps.newLinkedHashMap();
         if (config!=null) {
             for (Map.Entry<String, Object> entry : config.entrySet()) {
                 ConfigKey<?> configKey = getConfigKey(entry.getKey());
@@ -227,12 +242,17 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
             }
         }
 
-        attributesByKey = Maps.newLinkedHashMap();
+        Map<AttributeSensor<?>, Object> attributesByKey = Maps.newLinkedHashMap();
         if (attributes!=null) {
             for (Map.Entry<String, Object> entry : attributes.entrySet()) {
                 attributesByKey.put(getAttributeKey(entry.getKey()), entry.getValue());
             }
         }
+        
+        // configByKey last, as it is what the getters check
+        this.configUnmatched = configUnmatched;
+        this.attributesByKey = attributesByKey;
+        this.configByKey = configByKey;
     }
     
     @Override
@@ -248,13 +268,13 @@ public class BasicEntityMemento extends AbstractTreeNodeMemento implements Entit
     
     @Override
     public Map<String, Object> getConfigUnmatched() {
-        if (configUnmatched == null) postDeserialize();
+        if (configByKey == null) postDeserialize();
         return Collections.unmodifiableMap(configUnmatched);
     }
     
     @Override
     public Map<AttributeSensor<?>, Object> getAttributes() {
-        if (attributesByKey == null) postDeserialize();
+        if (configByKey == null) postDeserialize();
         return Collections.unmodifiableMap(attributesByKey);
     }
 
@@ -24,6 +24,7 @@ import java.util.Map;
 
 import brooklyn.mementos.BrooklynMementoManifest;
 
+import com.google.common.annotations.Beta;
 import com.google.common.collect.Maps;
 
 public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Serializable {
@@ -37,6 +38,7 @@ public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Ser
     public static class Builder {
         protected String brooklynVersion;
         protected final Map<String, String> entityIdToType = Maps.newConcurrentMap();
+        protected final Map<String, String> entityIdToParent = Maps.newConcurrentMap();
         protected final Map<String, String> locationIdToType = Maps.newConcurrentMap();
         protected final Map<String, String> policyIdToType = Maps.newConcurrentMap();
         protected final Map<String, String> enricherIdToType = Maps.newConcurrentMap();
@@ -49,6 +51,13 @@ public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Ser
         public Builder entity(String id, String type) {
             entityIdToType.put(id, type); return this;
         }
+        /** as {@link #entity(String, String)}, also recording the entity's parent (if not null) */
+        @Beta
+        public Builder entity(String id, String type, String parent) {
+            entityIdToType.put(id, type);
+            if (parent != null) entityIdToParent.put(id, parent);
+            return this;
+        }
         public Builder entities(Map<String, String> vals) {
             entityIdToType.putAll(vals); return this;
         }
@@ -89,6 +98,7 @@ public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Ser
     }
 
     private final Map<String, String> entityIdToType;
+    private final Map<String, String> entityIdToParent;
     private final Map<String, String> locationIdToType;
     private final Map<String, String> policyIdToType;
     private final Map<String, String> enricherIdToType;
@@ -97,6 +107,7 @@ public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Ser
     
     private BrooklynMementoManifestImpl(Builder builder) {
         entityIdToType = builder.entityIdToType;
+        entityIdToParent = builder.entityIdToParent;
         locationIdToType = builder.locationIdToType;
         policyIdToType = builder.policyIdToType;
         enricherIdToType = builder.enricherIdToType;
@@ -109,6 +120,15 @@ public class BrooklynMementoManifestImpl implements BrooklynMementoManifest, Ser
         return Collections.unmodifiableMap(entityIdToType);
     }
 
+    /** 
+     * the parent of each entity which has one, where recorded when loading the manifest 
+     * (as {@link brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore} does)
+     */
+    @Beta
+    public Map<String, String> getEntityIdToParent() {
+        return Collections.unmodifiableMap(entityIdToParent);
+    }
+
     @Override
     public Map<String, String> getLocationIdToType() {
         return Collections.unmodifiableMap(locationIdToType);
@@ -36,6 +36,7 @@ import brooklyn.entity.Group;
 import brooklyn.entity.basic.EntityDynamicType;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.rebind.TreeUtils;
+import brooklyn.entity.rebind.persister.DeferredMementoValue;
 import brooklyn.event.AttributeSensor;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.location.Location;
@@ -387,6 +388,10 @@ public class MementosGenerators {
     }
 
     protected static Object configValueToPersistable(Object value) {
+        if (value instanceof DeferredMementoValue) {
+            // not yet used since rebind; the value is decoded to be written again
+            return ((DeferredMementoValue)value).get();
+        }
         // TODO Swapping an attributeWhenReady task for the actual value, if completed.
         // Long-term, want to just handle task-persistence properly.
         if (value instanceof Task) {
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Bytes;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
+import com.thoughtworks.xstream.io.xml.XppDriver;
+
+/**
+ * Serializes as {@link XmlMementoSerializer} does, with the same aliases and converters (so the same structure),
+ * but using XStream's binary encoding, in which element names are written once and thereafter referred to by token,
+ * and nothing needs to be escaped or parsed as text.
+ * <p>
+ * The object store holds strings, so the bytes are base64-encoded after a header giving the format and its version.
+ * Reading is done by {@link XmlMementoSerializer#fromString(String)}, which accepts either form, so a store can be switched
+ * between XML and binary in either direction.
+ * {@link #toBinary(String)} and {@link #toXml(String)} convert between the two without deserializing
+ * (so without loading any classes or needing a lookup context), e.g. for copying a store or for transformers.
+ */
+@Beta
+public class BinaryMementoSerializer<T> extends XmlMementoSerializer<T> {
+
+    public static final String HEADER_PREFIX = "brooklyn-binary-memento:";
+    public static final int VERSION = 1;
+    private static final String HEADER = HEADER_PREFIX + VERSION + "\n";
+
+    private static final XppDriver XML_DRIVER = new XppDriver();
+
+    public BinaryMementoSerializer(ClassLoader classLoader) {
+        super(classLoader);
+    }
+
+    @Override
+    public String toString(T memento) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryStreamWriter writer = new BinaryStreamWriter(bytes);
+        xstream.marshal(memento, writer);
+        writer.close();
+        return HEADER + BaseEncoding.base64().encode(bytes.toByteArray());
+    }
+
+    public static boolean isBinary(String contents) {
+        return contents != null && contents.startsWith(HEADER_PREFIX);
+    }
+
+    /** converts the given serialized XML to the binary form; returns the argument unchanged if already binary */
+    public static String toBinary(String contents) {
+        if (isBinary(contents)) return contents;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryStreamWriter writer = new BinaryStreamWriter(bytes);
+        copy(XML_DRIVER.createReader(new StringReader(contents)), writer);
+        return HEADER + BaseEncoding.base64().encode(bytes.toByteArray());
+    }
+
+    /** converts the given binary form to XML, as {@link XmlMementoSerializer} would have written it; returns the argument unchanged if not binary */
+    public static String toXml(String contents) {
+        if (!isBinary(contents)) return contents;
+        StringWriter result = new StringWriter();
+        copy(newReader(contents), XML_DRIVER.createWriter(result));
+        result.append("\n");
+        return result.toString();
+    }
+
+    /**
+     * As {@link brooklyn.util.xstream.XmlUtil#rootChildElementsText(String, String...)}, for the binary form:
+     * the text of the named children of the root, reading only as far as needed to find them.
+     */
+    public static Map<String, String> rootChildElementsText(String contents, String ...elementNames) {
+        Set<String> wanted = MutableSet.copyOf(Arrays.asList(elementNames));
+        Map<String, String> result = MutableMap.of();
+        HierarchicalStreamReader reader = newReader(contents);
+        try {
+            while (result.size() < wanted.size() && reader.hasMoreChildren()) {
+                reader.moveDown();
+                String name = reader.getNodeName();
+                if (wanted.contains(name) && !result.containsKey(name)) {
+                    result.put(name, reader.getValue());
+                }
+                reader.moveUp();
+            }
+            return result;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** whether the given binary form contains the given ASCII text anywhere (e.g. as an element or attribute name), without reading its structure */
+    static boolean containsText(String contents, String text) {
+        return Bytes.indexOf(decode(contents), text.getBytes(Charsets.US_ASCII)) >= 0;
+    }
+
+    static HierarchicalStreamReader newReader(String contents) {
+        return new BinaryStreamReader(new ByteArrayInputStream(decode(contents)));
+    }
+
+    private static byte[] decode(String contents) {
+        int headerEnd = contents.indexOf('\n');
+        String header = headerEnd < 0 ? contents : contents.substring(0, headerEnd);
+        if (!header.equals(HEADER_PREFIX + VERSION)) {
+            throw new IllegalStateException("Unsupported binary memento format '"+header+"'; expected version "+VERSION);
+        }
+        return BaseEncoding.base64().decode(contents.substring(headerEnd + 1).trim());
+    }
+
+    private static void copy(HierarchicalStreamReader reader, HierarchicalStreamWriter writer) {
+        try {
+            new HierarchicalStreamCopier().copy(reader, writer);
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+}
@@ -18,26 +18,41 @@
  */
 package brooklyn.entity.rebind.persister;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Strings.nullToEmpty;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.basic.BrooklynObject;
+import brooklyn.catalog.CatalogItem;
 import brooklyn.config.BrooklynProperties;
 import brooklyn.config.ConfigKey;
+import brooklyn.entity.Entity;
+import brooklyn.entity.Feed;
 import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.rebind.BrooklynObjectType;
 import brooklyn.entity.rebind.PeriodicDeltaChangeListener;
 import brooklyn.entity.rebind.PersistenceExceptionHandler;
@@ -47,6 +62,9 @@ import brooklyn.entity.rebind.dto.BrooklynMementoImpl;
 import brooklyn.entity.rebind.dto.BrooklynMementoManifestImpl;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessor;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore.StoreObjectAccessorWithLock;
+import brooklyn.location.Location;
+import brooklyn.location.basic.LocationInternal;
+import brooklyn.management.ManagementContext;
 import brooklyn.mementos.BrooklynMemento;
 import brooklyn.mementos.BrooklynMementoManifest;
 import brooklyn.mementos.BrooklynMementoPersister;
@@ -58,6 +76,8 @@ import brooklyn.mementos.FeedMemento;
 import brooklyn.mementos.LocationMemento;
 import brooklyn.mementos.Memento;
 import brooklyn.mementos.PolicyMemento;
+import brooklyn.policy.Enricher;
+import brooklyn.policy.Policy;
 import brooklyn.util.exceptions.CompoundRuntimeException;
 import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Duration;
@@ -67,8 +87,13 @@ import brooklyn.util.xstream.XmlUtil;
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -95,11 +120,57 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             "Maximum number of attempts to serialize a memento (e.g. if first attempts fail because of concurrent modifications of an entity)", 
             5);
 
+    @Beta
+    public static final ConfigKey<MementoSerializationFormat> PERSISTER_SERIALIZATION_FORMAT = ConfigKeys.newConfigKey(
+            MementoSerializationFormat.class,
+            "persister.serializationFormat",
+            "Format in which mementos are written to the store: XML, or BINARY (more compact and quicker to read); "
+            + "either is read, so changing this converts a store as its items are next written", 
+            MementoSerializationFormat.XML);
+
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTER_ELIDE_UNCHANGED_WRITES = ConfigKeys.newBooleanConfigKey(
+            "persister.elideUnchangedWrites",
+            "Whether to skip writing an object whose serialized form is the same as when it was last read or written by this node "
+            + "(set false if the store may be modified by other means)", 
+            true);
+
+    @Beta
+    public static final ConfigKey<Long> PERSISTER_STANDBY_MEMENTO_CACHE_MAX_CHARS = ConfigKeys.newLongConfigKey(
+            "persister.standbyMementoCacheMaxChars",
+            "Bound on the total size, in characters of serialized form, of the mementos kept deserialized while this node is not master "
+            + "(e.g. a hot standby), to be reused if unchanged when it next rebinds (e.g. on promotion); "
+            + "only mementos which refer to no other objects are kept; 0 to keep none", 
+            32L*1024*1024);
+
+    @Beta
+    public static final ConfigKey<Boolean> PERSISTER_DEFER_ENTITY_VALUES = ConfigKeys.newBooleanConfigKey(
+            "persister.deferEntityValues",
+            "Whether loading the memento (e.g. on rebind) should keep each complex config and attribute value of an entity "
+            + "in its serialized form, decoding it when first used (or when the entity is next persisted)", 
+            false);
+
     private final PersistenceObjectStore objectStore;
+    private final MementoSerializationFormat serializationFormat;
     private final MementoSerializer<Object> serializer;
+    /** reads entity mementos keeping their values serialized; null if not {@link #PERSISTER_DEFER_ENTITY_VALUES deferring} */
+    private final XmlMementoSerializer<Object> deferringSerializer;
 
     private final Map<String, StoreObjectAccessorWithLock> writers = new LinkedHashMap<String, PersistenceObjectStore.StoreObjectAccessorWithLock>();
 
+    /** digest of the contents last read or written for each path, so that unchanged objects need not be rewritten; null if not eliding */
+    private final ConcurrentMap<String, Long> contentHashes;
+    private final AtomicLong writesPerformed = new AtomicLong();
+    private final AtomicLong writesElided = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    /** 
+     * mementos deserialized while not master, with the contents they were read from, keyed by path;
+     * only those which refer to no other objects, as references resolve to the instances created by one rebind
+     */
+    private final Cache<String, ReusableMemento> standbyMementos;
+    private final AtomicLong mementosReused = new AtomicLong();
+
     private final ListeningExecutorService executor;
 
     private volatile boolean writesAllowed = false;
@@ -117,8 +188,24 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         int maxSerializationAttempts = brooklynProperties.getConfig(PERSISTER_MAX_SERIALIZATION_ATTEMPTS);
         int maxThreadPoolSize = brooklynProperties.getConfig(PERSISTER_MAX_THREAD_POOL_SIZE);
                 
-        MementoSerializer<Object> rawSerializer = new XmlMementoSerializer<Object>(classLoader);
+        serializationFormat = brooklynProperties.getConfig(PERSISTER_SERIALIZATION_FORMAT);
+        contentHashes = brooklynProperties.getConfig(PERSISTER_ELIDE_UNCHANGED_WRITES) ? new ConcurrentHashMap<String, Long>() : null;
+        standbyMementos = CacheBuilder.newBuilder()
+                .maximumWeight(brooklynProperties.getConfig(PERSISTER_STANDBY_MEMENTO_CACHE_MAX_CHARS))
+                .weigher(new Weigher<String, ReusableMemento>() {
+                    @Override public int weigh(String key, ReusableMemento value) {
+                        return value.contents.length();
+                    }
+                })
+                .build();
+        MementoSerializer<Object> rawSerializer = serializationFormat.<Object>newSerializer(classLoader);
         this.serializer = new RetryingMementoSerializer<Object>(rawSerializer, maxSerializationAttempts);
+        if (brooklynProperties.getConfig(PERSISTER_DEFER_ENTITY_VALUES)) {
+            deferringSerializer = serializationFormat.<Object>newSerializer(classLoader);
+            deferringSerializer.deferEntityValues();
+        } else {
+            deferringSerializer = null;
+        }
 
         objectStore.createSubPath("entities");
         objectStore.createSubPath("locations");
@@ -138,6 +225,8 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
     @Override public void enableWriteAccess() {
         writesAllowed = true;
+        // the master's own writes are not read back, so the kept mementos would only go stale
+        standbyMementos.invalidateAll();
     }
     
     @Override
@@ -149,6 +238,8 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             // If persisting thousands of entities over slow network to Object Store, could take minutes.
             waitForWritesCompleted(Duration.ONE_HOUR);
             
+            // no longer writing (e.g. demoted to standby)
+            objectStore.prepareForStandbyUse();
         } catch (Exception e) {
             throw Exceptions.propagate(e);
         } finally {
@@ -191,6 +282,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         }
     }
 
+    /** 
+     * Loads the raw contents of the store, as XML (converting any items stored as binary), 
+     * so that it can be transformed and then written with {@link #checkpoint(BrooklynMementoRawData, PersistenceExceptionHandler)}. 
+     */
     @Beta
     public BrooklynMementoRawData loadMementoRawData(final RebindExceptionHandler exceptionHandler) throws IOException {
         final BrooklynMementoRawData.Builder builder = BrooklynMementoRawData.builder();
@@ -198,24 +293,25 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         Visitor visitor = new Visitor() {
             @Override
             public void visit(String contents, BrooklynObjectType type, String subPath) throws Exception {
+                contents = BinaryMementoSerializer.toXml(contents);
                 switch (type) {
                     case ENTITY:
-                        builder.entity((String) XmlUtil.xpath(contents, "/entity/id"), contents);
+                        builder.entity(rootChildText(contents, "id"), contents);
                         break;
                     case LOCATION:
-                        builder.location((String) XmlUtil.xpath(contents, "/location/id"), contents);
+                        builder.location(rootChildText(contents, "id"), contents);
                         break;
                     case POLICY:
-                        builder.policy((String) XmlUtil.xpath(contents, "/policy/id"), contents);
+                        builder.policy(rootChildText(contents, "id"), contents);
                         break;
                     case ENRICHER:
-                        builder.enricher((String) XmlUtil.xpath(contents, "/enricher/id"), contents);
+                        builder.enricher(rootChildText(contents, "id"), contents);
                         break;
                     case FEED:
-                        builder.feed((String) XmlUtil.xpath(contents, "/feed/id"), contents);
+                        builder.feed(rootChildText(contents, "id"), contents);
                         break;
                     case CATALOG_ITEM:
-                        builder.catalogItem((String) XmlUtil.xpath(contents, "/catalogItem/id"), contents);
+                        builder.catalogItem(rootChildText(contents, "id"), contents);
                         break;
                     default:
                         throw new IllegalStateException("Unexpected brooklyn type: "+type);
@@ -247,35 +343,30 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         Visitor visitor = new Visitor() {
             @Override
             public void visit(String contents, BrooklynObjectType type, String subPath) throws Exception {
+                // one streaming pass, stopping once all are found, rather than parsing the whole document for each;
+                // the parent of an entity is recorded so that entities can be loaded parents first (see loadEntityMementos)
+                Map<String, String> idAndType = (type == BrooklynObjectType.ENTITY) 
+                        ? rootChildElementsText(contents, "id", "type", "parent")
+                        : rootChildElementsText(contents, "id", "type");
+                String id = nullToEmpty(idAndType.get("id"));
+                String objType = nullToEmpty(idAndType.get("type"));
                 switch (type) {
                     case ENTITY:
-                        String id = (String) XmlUtil.xpath(contents, "/entity/id");
-                        String objType = (String) XmlUtil.xpath(contents, "/entity/type");
-                        builder.entity(id, objType);
+                        builder.entity(id, objType, idAndType.get("parent"));
                         break;
                     case LOCATION:
-                        id = (String) XmlUtil.xpath(contents, "/location/id");
-                        objType = (String) XmlUtil.xpath(contents, "/location/type");
                         builder.location(id, objType);
                         break;
                     case POLICY:
-                        id = (String) XmlUtil.xpath(contents, "/policy/id");
-                        objType = (String) XmlUtil.xpath(contents, "/policy/type");
                         builder.policy(id, objType);
                         break;
                     case ENRICHER:
-                        id = (String) XmlUtil.xpath(contents, "/enricher/id");
-                        objType = (String) XmlUtil.xpath(contents, "/enricher/type");
                         builder.enricher(id, objType);
                         break;
                     case FEED:
-                        id = (String) XmlUtil.xpath(contents, "/feed/id");
-                        objType = (String) XmlUtil.xpath(contents, "/feed/type");
                         builder.feed(id, objType);
                         break;
                     case CATALOG_ITEM:
-                        id = (String) XmlUtil.xpath(contents, "/catalogItem/id");
-                        objType = (String) XmlUtil.xpath(contents, "/catalogItem/type");
                         builder.catalogItem(id, objType);
                         break;
                     default:
@@ -302,51 +393,262 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
     }
 
     @Override
-    public BrooklynMemento loadMemento(LookupContext lookupContext, final RebindExceptionHandler exceptionHandler) throws IOException {
+    public BrooklynMemento loadMemento(LookupContext lookupContext, RebindExceptionHandler exceptionHandler) throws IOException {
+        return loadMemento(lookupContext, exceptionHandler, true);
+    }
+
+    /**
+     * As {@link #loadMemento(LookupContext, RebindExceptionHandler)}, but without the entities; these can then be loaded
+     * a few at a time with {@link #loadEntityMementos(List, int, LookupContext, RebindExceptionHandler, EntityMementoHandler)}.
+     */
+    @Beta
+    public BrooklynMemento loadMementoExceptEntities(LookupContext lookupContext, RebindExceptionHandler exceptionHandler) throws IOException {
+        return loadMemento(lookupContext, exceptionHandler, false);
+    }
+
+    protected BrooklynMemento loadMemento(LookupContext lookupContext, final RebindExceptionHandler exceptionHandler, boolean includeEntities) throws IOException {
         Stopwatch stopwatch = Stopwatch.createStarted();
 
         final BrooklynMementoImpl.Builder builder = BrooklynMementoImpl.builder();
+        if (contentHashes != null) contentHashes.clear();
+        
+        final MementoLoader loader = new MementoLoader(lookupContext);
         
         Visitor visitor = new Visitor() {
             @Override
             public void visit(String contents, BrooklynObjectType type, String subPath) throws Exception {
                 try {
-                    Memento memento = (Memento) serializer.fromString(contents);
-                    if (memento == null) {
-                        LOG.warn("No "+type.toString().toLowerCase()+"-memento deserialized from " + subPath + "; ignoring and continuing");
-                    } else {
-                        builder.memento(memento);
-                    }
+                    Memento memento = loader.load(contents, type, subPath);
+                    if (memento != null) builder.memento(memento);
                 } catch (Exception e) {
                     exceptionHandler.onLoadMementoFailed(type, "Memento "+subPath, e);
                 }
             }
         };
 
-        serializer.setLookupContext(lookupContext);
+        loader.start();
         try {
-            visitMemento(visitor, exceptionHandler);
+            visitMemento(visitor, exceptionHandler, includeEntities);
         } finally {
-            serializer.unsetLookupContext();
+            loader.finish();
         }
 
         BrooklynMemento result = builder.build();
         
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Loaded memento; took {}; {} entities, {} locations, {} policies, {} enrichers, {} feeds, {} catalog items, from {}", new Object[]{
+            LOG.debug("Loaded memento; took {}; {} entities, {} locations, {} policies, {} enrichers, {} feeds, {} catalog items ({} reused), from {}", new Object[]{
                       Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)), result.getEntityIds().size(), 
                       result.getLocationIds().size(), result.getPolicyIds().size(), result.getEnricherIds().size(), 
-                      result.getFeedIds().size(), result.getCatalogItemIds().size(),
+                      result.getFeedIds().size(), result.getCatalogItemIds().size(), loader.reused.get(),
                       objectStore.getSummaryName() });
         }
         
         return result;
     }
     
+    /** receives each memento loaded by {@link BrooklynMementoPersisterToObjectStore#loadEntityMementos(List, int, LookupContext, RebindExceptionHandler, EntityMementoHandler)} */
+    @Beta
+    public interface EntityMementoHandler {
+        public void onEntityMemento(EntityMemento memento);
+    }
+
+    /**
+     * Loads the mementos of the given entities, reading and deserializing them on this persister's threads 
+     * (see {@link #PERSISTER_MAX_THREAD_POOL_SIZE}), and passes each to the handler on the calling thread,
+     * in the order given (e.g. parents first). 
+     * <p>
+     * At most readAhead entities are loaded ahead of the one being handled, so the mementos held at any one time
+     * are bounded by that (and whatever the handler keeps), rather than by the number of entities in the store.
+     * An entity which cannot be loaded is reported to the exception handler, and not passed to the handler.
+     */
+    @Beta
+    public void loadEntityMementos(List<String> entityIds, int readAhead, LookupContext lookupContext, 
+            final RebindExceptionHandler exceptionHandler, EntityMementoHandler handler) throws IOException {
+        checkArgument(readAhead > 0, "readAhead must be positive");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+
+        final MementoLoader loader = new MementoLoader(lookupContext);
+        Deque<ListenableFuture<Memento>> pending = new ArrayDeque<ListenableFuture<Memento>>(readAhead);
+        Iterator<String> ids = entityIds.iterator();
+        int count = 0;
+        
+        loader.start();
+        try {
+            while (ids.hasNext() || !pending.isEmpty()) {
+                while (ids.hasNext() && pending.size() < readAhead) {
+                    final String subPath = getPath("entities", ids.next());
+                    pending.add(executor.submit(new Callable<Memento>() {
+                        @Override
+                        public Memento call() {
+                            try {
+                                return loader.load(read(subPath), BrooklynObjectType.ENTITY, subPath);
+                            } catch (Exception e) {
+                                Exceptions.propagateIfFatal(e);
+                                exceptionHandler.onLoadMementoFailed(BrooklynObjectType.ENTITY, "Memento "+subPath, e);
+                                return null;
+                            }
+                        }
+                    }));
+                }
+                Memento memento = pending.remove().get();
+                if (memento != null) {
+                    handler.onEntityMemento((EntityMemento) memento);
+                    count++;
+                }
+            }
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        } catch (ExecutionException e) {
+            // e.g. the exception handler failing fast
+            throw Exceptions.propagate(e.getCause());
+        } finally {
+            for (ListenableFuture<Memento> future : pending) {
+                future.cancel(true);
+            }
+            loader.finish();
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Loaded {} entity mementos (reading ahead at most {}); took {}; {} reused, from {}", new Object[] {
+                    count, readAhead, Time.makeTimeStringRounded(stopwatch.elapsed(TimeUnit.MILLISECONDS)), loader.reused.get(),
+                    objectStore.getSummaryName() });
+        }
+    }
+
+    /** deserializes the mementos of one load, reusing any kept unchanged from an earlier load (see {@link #standbyMementos}) */
+    private class MementoLoader {
+        private final LookupContext lookupContext;
+        private final ReferenceRecordingLookupContext recordingLookupContext;
+        private final boolean keepMementos = !writesAllowed;
+        private final AtomicLong reused = new AtomicLong();
+        
+        MementoLoader(LookupContext lookupContext) {
+            this.lookupContext = lookupContext;
+            this.recordingLookupContext = new ReferenceRecordingLookupContext(lookupContext);
+        }
+        
+        void start() {
+            serializer.setLookupContext(recordingLookupContext);
+            // left set, as deferred values are decoded after this returns (typically while or after the entities are rebound)
+            if (deferringSerializer != null) deferringSerializer.setLookupContext(lookupContext);
+        }
+        
+        void finish() {
+            serializer.unsetLookupContext();
+            mementosReused.addAndGet(reused.get());
+        }
+        
+        /** returns null (logging a warning) if the contents hold no memento */
+        Memento load(String contents, BrooklynObjectType type, String subPath) {
+            if (contentHashes != null && contents != null) contentHashes.put(subPath, hash(contents));
+            Memento memento = null;
+            ReusableMemento kept = standbyMementos.getIfPresent(subPath);
+            if (kept != null && contents != null && contents.equals(kept.contents)) {
+                memento = kept.memento;
+                reused.incrementAndGet();
+            } else if (deferringSerializer != null && type == BrooklynObjectType.ENTITY && contents != null 
+                    && !XmlMementoSerializer.mayHaveReferences(contents)) {
+                memento = (Memento) deferringSerializer.fromString(contents);
+                // not kept: whether its values refer to other objects is not known until they are decoded
+                standbyMementos.invalidate(subPath);
+            } else {
+                recordingLookupContext.reset();
+                memento = (Memento) serializer.fromString(contents);
+                if (keepMementos && memento != null && !recordingLookupContext.wasReferenced()) {
+                    standbyMementos.put(subPath, new ReusableMemento(contents, memento));
+                } else {
+                    standbyMementos.invalidate(subPath);
+                }
+            }
+            if (memento == null) {
+                LOG.warn("No "+type.toString().toLowerCase()+"-memento deserialized from " + subPath + "; ignoring and continuing");
+            }
+            return memento;
+        }
+    }
+    
+    /** 
+     * number of mementos not deserialized when loading, because they were kept (unchanged) from an earlier load while not master;
+     * see {@link #PERSISTER_STANDBY_MEMENTO_CACHE_MAX_CHARS}
+     */
+    public long getReusedMementoCount() {
+        return mementosReused.get();
+    }
+
+    private static class ReusableMemento {
+        final String contents;
+        final Memento memento;
+        ReusableMemento(String contents, Memento memento) {
+            this.contents = contents;
+            this.memento = memento;
+        }
+    }
+
+    /** 
+     * records, for the calling thread, whether any object has been looked up since {@link #reset()};
+     * the management context is not counted, being the same for every rebind
+     */
+    private static class ReferenceRecordingLookupContext implements LookupContext {
+        private final LookupContext delegate;
+        private final ThreadLocal<Boolean> referenced = new ThreadLocal<Boolean>();
+        
+        ReferenceRecordingLookupContext(LookupContext delegate) {
+            this.delegate = checkNotNull(delegate, "lookupContext");
+        }
+        void reset() {
+            referenced.set(false);
+        }
+        boolean wasReferenced() {
+            return Boolean.TRUE.equals(referenced.get());
+        }
+        @Override public ManagementContext lookupManagementContext() {
+            return delegate.lookupManagementContext();
+        }
+        @Override public Entity lookupEntity(String id) {
+            referenced.set(true);
+            return delegate.lookupEntity(id);
+        }
+        @Override public Location lookupLocation(String id) {
+            referenced.set(true);
+            return delegate.lookupLocation(id);
+        }
+        @Override public Policy lookupPolicy(String id) {
+            referenced.set(true);
+            return delegate.lookupPolicy(id);
+        }
+        @Override public Enricher lookupEnricher(String id) {
+            referenced.set(true);
+            return delegate.lookupEnricher(id);
+        }
+        @Override public Feed lookupFeed(String id) {
+            referenced.set(true);
+            return delegate.lookupFeed(id);
+        }
+        @Override public CatalogItem<?, ?> lookupCatalogItem(String id) {
+            referenced.set(true);
+            return delegate.lookupCatalogItem(id);
+        }
+    }
+    
+    /** as the xpath "/(root)/(element)" but cheaper; returns empty string if absent, as xpath does */
+    private static String rootChildText(String contents, String element) {
+        return nullToEmpty(rootChildElementsText(contents, element).get(element));
+    }
+
+    private static Map<String, String> rootChildElementsText(String contents, String ...elements) {
+        if (BinaryMementoSerializer.isBinary(contents)) {
+            return BinaryMementoSerializer.rootChildElementsText(contents, elements);
+        }
+        return XmlUtil.rootChildElementsText(contents, elements);
+    }
+    
     protected interface Visitor {
         public void visit(String contents, BrooklynObjectType type, String subPath) throws Exception;
     }
     protected void visitMemento(final Visitor visitor, final RebindExceptionHandler exceptionHandler) throws IOException {
+        visitMemento(visitor, exceptionHandler, true);
+    }
+    protected void visitMemento(final Visitor visitor, final RebindExceptionHandler exceptionHandler, boolean includeEntities) throws IOException {
         List<String> entitySubPathList;
         List<String> locationSubPathList;
         List<String> policySubPathList;
@@ -355,7 +657,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         List<String> catalogSubPathList;
         
         try {
-            entitySubPathList = objectStore.listContentsWithSubPath("entities");
+            entitySubPathList = includeEntities ? objectStore.listContentsWithSubPath("entities") : ImmutableList.<String>of();
             locationSubPathList = objectStore.listContentsWithSubPath("locations");
             policySubPathList = objectStore.listContentsWithSubPath("policies");
             enricherSubPathList = objectStore.listContentsWithSubPath("enrichers");
@@ -447,6 +749,10 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         }
     }
     
+    /** 
+     * Writes the given raw contents (e.g. from {@link #loadMementoRawData(RebindExceptionHandler)} of another store) 
+     * to this store, converting them to this store's {@link #PERSISTER_SERIALIZATION_FORMAT} if necessary.
+     */
     @Beta
     public void checkpoint(BrooklynMementoRawData newMemento, PersistenceExceptionHandler exceptionHandler) {
         checkWritesAllowed();
@@ -491,6 +797,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                 // TODO is the logging here as good as it was prior to https://github.com/apache/incubator-brooklyn/pull/177/files ?
                 throw Exceptions.propagate(e);
             }
+            flushBatch();
             
             if (LOG.isDebugEnabled()) LOG.debug("Checkpointed entire memento in {}", Time.makeTimeStringRounded(stopwatch));
         } finally {
@@ -511,23 +818,39 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                 .feeds(newMemento.getFeedMementos().values())
                 .catalogItems(newMemento.getCatalogItemMementos().values())
                 .build();
-        Stopwatch stopwatch = deltaImpl(delta, exceptionHandler);
+        Stopwatch stopwatch = deltaImpl(delta, ImmutableList.<BrooklynObject>of(), exceptionHandler);
         
         if (LOG.isDebugEnabled()) LOG.debug("Checkpointed entire memento in {}", Time.makeTimeStringRounded(stopwatch));
     }
 
     @Override
     public void delta(Delta delta, PersistenceExceptionHandler exceptionHandler) {
+        delta(delta, ImmutableList.<BrooklynObject>of(), exceptionHandler);
+    }
+    
+    /**
+     * As {@link #delta(Delta, PersistenceExceptionHandler)}, but also persisting the given objects, whose mementos
+     * have not yet been generated. Generating, serializing and writing each object's memento is done as a single task
+     * on the persister's threads (of which there are at most {@link #PERSISTER_MAX_THREAD_POOL_SIZE}), so a large delta
+     * is handled in parallel without first holding all of its mementos in memory.
+     * <p>
+     * As for any delta, the removals are done only once all the writes have completed.
+     */
+    @Beta
+    public void delta(Delta delta, Collection<? extends BrooklynObject> changedObjects, PersistenceExceptionHandler exceptionHandler) {
         checkWritesAllowed();
 
-        Stopwatch stopwatch = deltaImpl(delta, exceptionHandler);
+        Stopwatch stopwatch = deltaImpl(delta, changedObjects, exceptionHandler);
         
         if (LOG.isDebugEnabled()) LOG.debug("Checkpointed delta of memento in {}: "
-                + "updated {} entities, {} locations, {} policies, {} enrichers, {} catalog items; "
-                + "removed {} entities, {} locations, {} policies, {} enrichers, {} catalog items",
+                + "updated {} entities, {} locations, {} policies, {} enrichers, {} catalog items, {} other objects; "
+                + "removed {} entities, {} locations, {} policies, {} enrichers, {} catalog items; "
+                + "{} writes elided in total, {} performed",
                     new Object[] {Time.makeTimeStringRounded(stopwatch),
                         delta.entities().size(), delta.locations().size(), delta.policies().size(), delta.enrichers().size(), delta.catalogItems().size(),
-                        delta.removedEntityIds().size(), delta.removedLocationIds().size(), delta.removedPolicyIds().size(), delta.removedEnricherIds().size(), delta.removedCatalogItemIds().size()});
+                        changedObjects.size(),
+                        delta.removedEntityIds().size(), delta.removedLocationIds().size(), delta.removedPolicyIds().size(), delta.removedEnricherIds().size(), delta.removedCatalogItemIds().size(),
+                        writesElided.get(), writesPerformed.get()});
     }
     
     /**
@@ -537,7 +860,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
      * TODO Longer term, if we care more about concurrent calls we could merge the queued deltas so that we
      * don't do unnecessary repeated writes of an entity.
      */
-    private Stopwatch deltaImpl(Delta delta, PersistenceExceptionHandler exceptionHandler) {
+    private Stopwatch deltaImpl(Delta delta, Collection<? extends BrooklynObject> changedObjects, PersistenceExceptionHandler exceptionHandler) {
         try {
             lock.writeLock().lockInterruptibly();
         } catch (InterruptedException e) {
@@ -567,6 +890,13 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             for (CatalogItemMemento catalogItem : delta.catalogItems()) {
                 futures.add(asyncPersist("catalog", catalogItem, exceptionHandler));
             }
+            for (BrooklynObject instance : changedObjects) {
+                futures.add(asyncGenerateAndPersist(instance, exceptionHandler));
+            }
+            
+            // Removals must come after the writes, in case an object was changed after it was removed
+            // (otherwise the order in which they ran would decide whether its file was left behind)
+            awaitCompletion(futures);
             
             for (String id : delta.removedEntityIds()) {
                 futures.add(asyncDelete("entities", id, exceptionHandler));
@@ -587,14 +917,14 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
                 futures.add(asyncDelete("catalog", id, exceptionHandler));
             }
             
+            awaitCompletion(futures);
             try {
-                // Wait for all the tasks to complete or fail, rather than aborting on the first failure.
-                // But then propagate failure if any fail. (hence the two calls).
-                Futures.successfulAsList(futures).get();
+                // propagate failure if any failed
                 Futures.allAsList(futures).get();
             } catch (Exception e) {
                 throw Exceptions.propagate(e);
             }
+            flushBatch();
             
             return stopwatch;
         } finally {
@@ -602,6 +932,22 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         }
     }
 
+    /** waits for all the tasks to complete or fail, rather than aborting on the first failure */
+    private static void awaitCompletion(List<ListenableFuture<?>> futures) {
+        try {
+            Futures.successfulAsList(futures).get();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** writes the changes made by the delta or checkpoint, if the store batches them; must hold the write lock */
+    private void flushBatch() {
+        if (objectStore instanceof BatchingPersistenceObjectStore) {
+            ((BatchingPersistenceObjectStore)objectStore).flush();
+        }
+    }
+
     @Override
     @VisibleForTesting
     public void waitForWritesCompleted(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
@@ -635,7 +981,7 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
 
     private void persist(String subPath, Memento memento, PersistenceExceptionHandler exceptionHandler) {
         try {
-            getWriter(getPath(subPath, memento.getId())).put(serializer.toString(memento));
+            put(getPath(subPath, memento.getId()), serializer.toString(memento));
         } catch (Exception e) {
             exceptionHandler.onPersistMementoFailed(memento, e);
         }
@@ -645,15 +991,60 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
         try {
             if (content==null) {
                 LOG.warn("Null content for "+type+" "+id);
+            } else if (serializationFormat == MementoSerializationFormat.BINARY) {
+                content = BinaryMementoSerializer.toBinary(content);
+            } else {
+                content = BinaryMementoSerializer.toXml(content);
             }
-            getWriter(getPath(subPath, id)).put(content);
+            put(getPath(subPath, id), content);
         } catch (Exception e) {
             exceptionHandler.onPersistRawMementoFailed(type, id, e);
         }
     }
     
+    /** writes the contents, unless they are the same as were last read or written at that path */
+    private void put(String path, String contents) {
+        if (contentHashes == null || contents == null) {
+            getWriter(path).put(contents);
+            writesPerformed.incrementAndGet();
+            if (contents != null) bytesWritten.addAndGet(contents.length());
+            return;
+        }
+        Long hash = hash(contents);
+        if (hash.equals(contentHashes.get(path))) {
+            writesElided.incrementAndGet();
+            return;
+        }
+        // forget the old hash first, so that if the write fails it is not skipped next time
+        contentHashes.remove(path);
+        getWriter(path).put(contents);
+        contentHashes.put(path, hash);
+        writesPerformed.incrementAndGet();
+        bytesWritten.addAndGet(contents.length());
+    }
+
+    private static Long hash(String contents) {
+        return Hashing.murmur3_128().hashUnencodedChars(contents).asLong();
+    }
+
+    /** number of objects written to the store (including those written during a full checkpoint) */
+    public long getWriteCount() {
+        return writesPerformed.get();
+    }
+
+    /** number of objects not written to the store because they had not changed; see {@link #PERSISTER_ELIDE_UNCHANGED_WRITES} */
+    public long getElidedWriteCount() {
+        return writesElided.get();
+    }
+
+    /** total size of the objects written to the store, in characters of serialized form (so approximately bytes) */
+    public long getWrittenBytesCount() {
+        return bytesWritten.get();
+    }
+
     private void delete(String subPath, String id, PersistenceExceptionHandler exceptionHandler) {
         try {
+            if (contentHashes != null) contentHashes.remove(getPath(subPath, id));
             StoreObjectAccessorWithLock w = getWriter(getPath(subPath, id));
             w.delete();
             synchronized (writers) {
@@ -678,6 +1069,60 @@ public class BrooklynMementoPersisterToObjectStore implements BrooklynMementoPer
             }});
     }
 
+    private ListenableFuture<?> asyncGenerateAndPersist(final BrooklynObject instance, final PersistenceExceptionHandler exceptionHandler) {
+        return executor.submit(new Runnable() {
+            public void run() {
+                Memento memento;
+                try {
+                    memento = generateMemento(instance);
+                } catch (Exception e) {
+                    exceptionHandler.onGenerateMementoFailed(getType(instance), instance, e);
+                    return;
+                }
+                persist(getSubPath(getType(instance)), memento, exceptionHandler);
+            }});
+    }
+
+    private static Memento generateMemento(BrooklynObject instance) {
+        if (instance instanceof Entity) {
+            return ((EntityInternal)instance).getRebindSupport().getMemento();
+        } else if (instance instanceof Location) {
+            return ((LocationInternal)instance).getRebindSupport().getMemento();
+        } else if (instance instanceof Policy) {
+            return ((Policy)instance).getRebindSupport().getMemento();
+        } else if (instance instanceof Enricher) {
+            return ((Enricher)instance).getRebindSupport().getMemento();
+        } else if (instance instanceof Feed) {
+            return ((Feed)instance).getRebindSupport().getMemento();
+        } else if (instance instanceof CatalogItem) {
+            return ((CatalogItem<?,?>)instance).getRebindSupport().getMemento();
+        } else {
+            throw new IllegalStateException("Unexpected brooklyn type: "+instance);
+        }
+    }
+
+    private static BrooklynObjectType getType(BrooklynObject instance) {
+        if (instance instanceof Entity) return BrooklynObjectType.ENTITY;
+        if (instance instanceof Location) return BrooklynObjectType.LOCATION;
+        if (instance instanceof Policy) return BrooklynObjectType.POLICY;
+        if (instance instanceof Enricher) return BrooklynObjectType.ENRICHER;
+        if (instance instanceof Feed) return BrooklynObjectType.FEED;
+        if (instance instanceof CatalogItem) return BrooklynObjectType.CATALOG_ITEM;
+        return BrooklynObjectType.UNKNOWN;
+    }
+
+    private static String getSubPath(BrooklynObjectType type) {
+        switch (type) {
+        case ENTITY: return "entities";
+        case LOCATION: return "locations";
+        case POLICY: return "policies";
+        case ENRICHER: return "enrichers";
+        case FEED: return "feeds";
+        case CATALOG_ITEM: return "catalog";
+        default: throw new IllegalStateException("Unexpected brooklyn type: "+type);
+        }
+    }
+
     private ListenableFuture<?> asyncDelete(final String subPath, final String id, final PersistenceExceptionHandler exceptionHandler) {
         return executor.submit(new Runnable() {
             public void run() {
@@ -0,0 +1,75 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import brooklyn.util.task.DeferredSupplier;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+
+/**
+ * A config or attribute value of an entity memento which is kept in its serialized form when loaded,
+ * and decoded when first used; see {@link BrooklynMementoPersisterToObjectStore#PERSISTER_DEFER_ENTITY_VALUES}.
+ * <p>
+ * On rebind it is set on the entity as is: the entity's config resolves it as it does any other {@link DeferredSupplier},
+ * and its {@link brooklyn.event.basic.AttributeMap attributes} resolve it when read.
+ * References to other objects (e.g. entities) in the value are looked up as for the most recent rebind.
+ */
+@Beta
+public class DeferredMementoValue implements DeferredSupplier<Object> {
+
+    private final XmlMementoSerializer<?> serializer;
+
+    // guarded by this; the encoded form is discarded once decoded
+    private byte[] encoded;
+    private Object value;
+
+    DeferredMementoValue(XmlMementoSerializer<?> serializer, byte[] encoded) {
+        this.serializer = checkNotNull(serializer, "serializer");
+        this.encoded = checkNotNull(encoded, "encoded");
+    }
+
+    /** returns the given value, or its decoded value if it is a {@link DeferredMementoValue} */
+    public static Object resolve(Object value) {
+        return (value instanceof DeferredMementoValue) ? ((DeferredMementoValue)value).get() : value;
+    }
+
+    public synchronized boolean isDecoded() {
+        return encoded == null;
+    }
+
+    @Override
+    public synchronized Object get() {
+        if (encoded != null) {
+            value = serializer.decodeDeferred(encoded);
+            encoded = null;
+        }
+        return value;
+    }
+
+    @Override
+    public synchronized String toString() {
+        if (encoded != null) {
+            return Objects.toStringHelper(this).add("encodedBytes", encoded.length).toString();
+        }
+        return Objects.toStringHelper(this).add("value", value).toString();
+    }
+}
@@ -49,9 +49,13 @@ import brooklyn.util.io.FileUtil;
 import brooklyn.util.os.Os;
 import brooklyn.util.os.Os.DeletionResult;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.io.Files;
@@ -74,10 +78,53 @@ public class FileBasedObjectStore implements PersistenceObjectStore {
     private boolean deferredBackupNeeded = false;
     private AtomicBoolean doneFirstContentiousWrite = new AtomicBoolean(false);
 
+    private static class CachedRead {
+        final String contents;
+        final long lastModified;
+        final long length;
+        CachedRead(String contents, long lastModified, long length) {
+            this.contents = contents;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    /** default bound on the total size of the contents kept in the read cache, in characters */
+    public static final long DEFAULT_READ_CACHE_MAX_CHARS = 32*1024*1024;
+
+    /**
+     * contents read while this node is not master (e.g. by a hot standby rebinding repeatedly, and then on promotion),
+     * so that files whose timestamp and size are unchanged need not be re-read; 
+     * cleared on {@link #prepareForMasterUse()}, and used again after {@link #prepareForStandbyUse()};
+     * least recently used contents are evicted beyond the size limit.
+     * <p>
+     * An entry is used only while the file's timestamp and size are as they were observed both before and after it was read.
+     * These are compared only with each other, never with this node's clock, as the file may have been written by another node
+     * (e.g. on a shared filesystem).
+     */
+    private final Cache<String, CachedRead> readCache;
+    private volatile boolean cacheReads = true;
+
     /**
      * @param basedir
      */
     public FileBasedObjectStore(File basedir) {
+        this(basedir, DEFAULT_READ_CACHE_MAX_CHARS);
+    }
+    
+    /**
+     * @param basedir
+     * @param readCacheMaxChars bound on the total size of the contents cached when not master (0 to disable the cache)
+     */
+    public FileBasedObjectStore(File basedir, long readCacheMaxChars) {
+        this.readCache = CacheBuilder.newBuilder()
+                .maximumWeight(readCacheMaxChars)
+                .weigher(new Weigher<String, CachedRead>() {
+                    @Override public int weigh(String key, CachedRead value) {
+                        return value.contents.length();
+                    }
+                })
+                .build();
         this.basedir = checkPersistenceDirPlausible(basedir);
         this.executor = MoreExecutors.listeningDecorator(Executors.newCachedThreadPool());
         log.debug("File-based objectStore will use directory {}", basedir);
@@ -94,6 +141,10 @@ public class FileBasedObjectStore implements PersistenceObjectStore {
     }
     
     public void prepareForMasterUse() {
+        if (cacheReads) {
+            cacheReads = false;
+            readCache.invalidateAll();
+        }
         if (doneFirstContentiousWrite.get())
             return;
         synchronized (this) {
@@ -140,7 +191,65 @@ public class FileBasedObjectStore implements PersistenceObjectStore {
         
         String tmpExt = ".tmp";
         if (mgmt!=null && mgmt.getManagementNodeId()!=null) tmpExt = "."+mgmt.getManagementNodeId()+tmpExt;
-        return new FileBasedStoreObjectAccessor(new File(Os.mergePaths(getBaseDir().getAbsolutePath(), path)), tmpExt);
+        File file = new File(Os.mergePaths(getBaseDir().getAbsolutePath(), path));
+        // always caching, as accessors are kept by callers, and caching can be resumed after being master
+        return new CachingReadAccessor(file, tmpExt);
+    }
+
+    /** resumes caching the contents read, which {@link #prepareForMasterUse()} stopped */
+    @Override
+    public void prepareForStandbyUse() {
+        cacheReads = true;
+    }
+    
+    /** the number of files whose contents are currently cached */
+    @VisibleForTesting
+    public long getReadCacheSize() {
+        return readCache.size();
+    }
+
+    private class CachingReadAccessor extends FileBasedStoreObjectAccessor {
+        private final File file;
+        CachingReadAccessor(File file, String tmpExtension) {
+            super(file, tmpExtension);
+            this.file = file;
+        }
+        @Override
+        public String get() {
+            if (!cacheReads) return super.get();
+            String key = file.getAbsolutePath();
+            long lastModified = file.lastModified();
+            long length = file.length();
+            CachedRead cached = readCache.getIfPresent(key);
+            if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+                return cached.contents;
+            }
+            String result = super.get();
+            if (result == null) {
+                readCache.invalidate(key);
+            } else if (cacheReads && file.lastModified() == lastModified && file.length() == length) {
+                // unchanged while being read, so the contents are those of the observed timestamp and size
+                readCache.put(key, new CachedRead(result, lastModified, length));
+            } else {
+                readCache.invalidate(key);
+            }
+            return result;
+        }
+        @Override
+        public void put(String val) {
+            readCache.invalidate(file.getAbsolutePath());
+            super.put(val);
+        }
+        @Override
+        public void append(String val) {
+            readCache.invalidate(file.getAbsolutePath());
+            super.append(val);
+        }
+        @Override
+        public void delete() {
+            readCache.invalidate(file.getAbsolutePath());
+            super.delete();
+        }
     }
 
     @Override
@@ -409,6 +518,7 @@ public class FileBasedObjectStore implements PersistenceObjectStore {
 
     @Override
     public void deleteCompletely() {
+        readCache.invalidateAll();
         deleteCompletely(getBaseDir());
     }
     
@@ -0,0 +1,792 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+import javax.annotation.Nullable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.io.FileUtil;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * A file-system store which, rather than writing one file per item (and renaming it into place on every change,
+ * as {@link FileBasedObjectStore} does), appends each change to a journal.
+ * <p>
+ * The journal is a sequence of segment files (<code>journal-NNNNNNNN.log</code>) after a snapshot
+ * (<code>journal.snapshot</code>). Each record is length-prefixed and checksummed, so a torn write at the end of a segment
+ * is detected and ignored on recovery. Writers wait until their record is on disk, but concurrent writers share
+ * a single fsync ("group commit"). When the segments grow large relative to the live data, a background task
+ * writes a new snapshot and deletes the segments it covers.
+ * <p>
+ * The contents of all items are kept in memory, so reads are cheap; this is the same data which is read at rebind.
+ * The journal has a single writer, the master: other nodes (e.g. standby) catch up with the journal
+ * when listing contents and when they become master. Items under {@link #SHARED_SUB_PATHS}, written by every node,
+ * are kept as individual files as in {@link FileBasedObjectStore}.
+ * <p>
+ * If the directory has no journal but has items in the one-file-per-item layout, they are read from those files until
+ * a master imports them, when it is first {@link #prepareForMasterUse() prepared}. The files are left in place (but
+ * are no longer updated), so a node using {@link FileBasedObjectStore} still sees the state as it was at the import;
+ * {@link #exportTo(PersistenceObjectStore)} writes the current state back out in that layout.
+ */
+@Beta
+public class JournaledFileObjectStore extends FileBasedObjectStore {
+
+    private static final Logger log = LoggerFactory.getLogger(JournaledFileObjectStore.class);
+
+    /** sub-paths written by all nodes, rather than only by the master, so kept as individual files */
+    public static final Set<String> SHARED_SUB_PATHS = ImmutableSet.of("plane");
+
+    /** sub-paths imported from the one-file-per-item layout */
+    public static final List<String> JOURNALED_SUB_PATHS = ImmutableList.of("entities", "locations", "policies", "enrichers", "feeds", "catalog");
+
+    public static final long DEFAULT_SEGMENT_MAX_BYTES = 16*1024*1024;
+    public static final long DEFAULT_COMPACTION_MIN_BYTES = 16*1024*1024;
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final String SNAPSHOT_NAME = "journal.snapshot";
+
+    private static final int SNAPSHOT_MAGIC = 0x42524a53;
+    private static final int SNAPSHOT_VERSION = 1;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_APPEND = 2;
+    private static final byte OP_DELETE = 3;
+
+    /** larger records are assumed to be corrupt */
+    private static final int MAX_RECORD_BYTES = 256*1024*1024;
+
+    private static class Item {
+        final String contents;
+        final long lastModifiedUtc;
+        Item(String contents, long lastModifiedUtc) {
+            this.contents = contents;
+            this.lastModifiedUtc = lastModifiedUtc;
+        }
+    }
+
+    private final long segmentMaxBytes;
+    private final long compactionMinBytes;
+
+    private final ConcurrentMap<String, Item> items = new ConcurrentHashMap<String, Item>();
+    private final AtomicLong liveBytes = new AtomicLong();
+
+    // state of the writer (if this node has written); guarded by writeLock
+    private final Object writeLock = new Object();
+    private FileOutputStream segmentOut;
+    private DataOutputStream segmentData;
+    private int segmentNumber;
+    private long segmentBytes;
+    private long journalBytes;
+    private long writtenSeq;
+
+    private final Object syncLock = new Object();
+    private final AtomicLong syncedSeq = new AtomicLong();
+
+    // how far the journal has been read; guarded by writeLock
+    private boolean loaded = false;
+    private int snapshotNextSegment = -1;
+    private int replayedSegment = 0;
+    private long replayedOffset = 0;
+
+    // whether this node, as master, has checked for items to import from the one-file-per-item layout
+    private final Object legacyImportLock = new Object();
+    private boolean legacyImportChecked = false;
+
+    private final Object compactionLock = new Object();
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+
+    public JournaledFileObjectStore(File basedir) {
+        this(basedir, DEFAULT_SEGMENT_MAX_BYTES, DEFAULT_COMPACTION_MIN_BYTES);
+    }
+
+    /**
+     * @param segmentMaxBytes size at which a new segment is started
+     * @param compactionMinBytes size of the segments (since the last snapshot) below which they will not be compacted;
+     *        above it, they are compacted once they are larger than the live data
+     */
+    public JournaledFileObjectStore(File basedir, long segmentMaxBytes, long compactionMinBytes) {
+        super(basedir);
+        this.segmentMaxBytes = segmentMaxBytes;
+        this.compactionMinBytes = compactionMinBytes;
+        this.compactor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override public Thread newThread(Runnable r) {
+                Thread result = new Thread(r, "brooklyn-persistence-journal-compactor-"+getBaseDir().getName());
+                result.setDaemon(true);
+                return result;
+            }});
+    }
+
+    @Override
+    public void prepareForSharedUse(@Nullable PersistMode persistMode, HighAvailabilityMode haMode) {
+        super.prepareForSharedUse(persistMode, haMode);
+        if (persistMode==null || persistMode==PersistMode.DISABLED) return;
+
+        // only reads: any node (e.g. a standby) may get here, but only the master writes the journal
+        synchronized (writeLock) {
+            catchUp();
+        }
+    }
+
+    @Override
+    public void prepareForMasterUse() {
+        super.prepareForMasterUse();
+        synchronized (legacyImportLock) {
+            if (!legacyImportChecked) {
+                boolean noJournal;
+                synchronized (writeLock) {
+                    catchUp();
+                    noJournal = items.isEmpty() && !journalExists();
+                }
+                if (noJournal) importLegacyLayout();
+                legacyImportChecked = true;
+            }
+        }
+        synchronized (writeLock) {
+            openWriter();
+        }
+    }
+
+    @Override
+    public StoreObjectAccessor newAccessor(String path) {
+        if (isShared(path)) return super.newAccessor(path);
+        return new JournaledAccessor(path);
+    }
+
+    @Override
+    public List<String> listContentsWithSubPath(String parentSubPath) {
+        Preconditions.checkNotNull(parentSubPath);
+        if (SHARED_SUB_PATHS.contains(parentSubPath)) return super.listContentsWithSubPath(parentSubPath);
+
+        synchronized (writeLock) {
+            catchUp();
+        }
+        if (items.isEmpty() && !journalExists()) {
+            // not yet imported by a master
+            return super.listContentsWithSubPath(parentSubPath);
+        }
+        String prefix = parentSubPath+"/";
+        List<String> result = MutableList.of();
+        for (String path : items.keySet()) {
+            if (path.startsWith(prefix) && path.indexOf('/', prefix.length()) < 0) result.add(path);
+        }
+        return result;
+    }
+
+    /** copies all items in the given store (under {@link #JOURNALED_SUB_PATHS}) into this store */
+    public void importFrom(PersistenceObjectStore source) {
+        long lastSeq = 0;
+        for (String subPath : JOURNALED_SUB_PATHS) {
+            for (String path : source.listContentsWithSubPath(subPath)) {
+                String contents = source.newAccessor(path).get();
+                if (contents != null) lastSeq = write(OP_PUT, path, contents);
+            }
+        }
+        awaitSynced(lastSeq);
+    }
+
+    /** writes all items in this store to the given store, e.g. a {@link FileBasedObjectStore}, as individual items */
+    public void exportTo(PersistenceObjectStore target) {
+        synchronized (writeLock) {
+            catchUp();
+        }
+        Set<String> subPathsCreated = MutableSet.of();
+        for (Map.Entry<String, Item> entry : items.entrySet()) {
+            String path = entry.getKey();
+            int slash = path.lastIndexOf('/');
+            if (slash > 0 && subPathsCreated.add(path.substring(0, slash))) {
+                target.createSubPath(path.substring(0, slash));
+            }
+            target.newAccessor(path).put(entry.getValue().contents);
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            throw Exceptions.propagate(e);
+        }
+        synchronized (writeLock) {
+            closeWriter();
+        }
+        super.close();
+    }
+
+    @Override
+    public void deleteCompletely() {
+        synchronized (writeLock) {
+            closeWriterQuietly();
+            items.clear();
+            liveBytes.set(0);
+            loaded = false;
+            snapshotNextSegment = -1;
+            replayedSegment = 0;
+            replayedOffset = 0;
+            journalBytes = 0;
+        }
+        synchronized (legacyImportLock) {
+            legacyImportChecked = false;
+        }
+        super.deleteCompletely();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("basedir", getBaseDir()).toString();
+    }
+
+    /** an accessor for the item's individual file, as in the one-file-per-item layout */
+    private StoreObjectAccessor legacyAccessor(String path) {
+        return super.newAccessor(path);
+    }
+
+    /** whether a journal has been written in the directory (by any node) */
+    private boolean journalExists() {
+        return getSnapshotFile().exists() || !listSegments().isEmpty();
+    }
+
+    private static boolean isShared(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && SHARED_SUB_PATHS.contains(path.substring(0, slash));
+    }
+
+    private class JournaledAccessor implements StoreObjectAccessor {
+        private final String path;
+        JournaledAccessor(String path) {
+            this.path = path;
+        }
+        @Override
+        public String get() {
+            Item item = items.get(path);
+            if (item == null && !journalExists()) return legacyAccessor(path).get();
+            return item == null ? null : item.contents;
+        }
+        @Override
+        public boolean exists() {
+            if (!items.containsKey(path) && !journalExists()) return legacyAccessor(path).exists();
+            return items.containsKey(path);
+        }
+        @Override
+        public void put(String contentsToReplaceOrCreate) {
+            awaitSynced(write(OP_PUT, path, contentsToReplaceOrCreate == null ? "" : contentsToReplaceOrCreate));
+        }
+        @Override
+        public void append(String contentsToAppendOrCreate) {
+            awaitSynced(write(OP_APPEND, path, contentsToAppendOrCreate == null ? "" : contentsToAppendOrCreate));
+        }
+        @Override
+        public void delete() {
+            if (items.containsKey(path)) awaitSynced(write(OP_DELETE, path, null));
+        }
+        @Override
+        public Date getLastModifiedDate() {
+            Item item = items.get(path);
+            if (item == null && !journalExists()) return legacyAccessor(path).getLastModifiedDate();
+            return item == null ? null : new Date(item.lastModifiedUtc);
+        }
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("store", JournaledFileObjectStore.this).add("path", path).toString();
+        }
+    }
+
+    // ---------- writing
+
+    /** appends the change to the journal and applies it, returning its sequence number (for {@link #awaitSynced(long)}) */
+    private long write(byte op, String path, String contents) {
+        long seq;
+        synchronized (writeLock) {
+            openWriter();
+            long timeUtc = System.currentTimeMillis();
+            byte[] record = encodeRecord(op, path, contents, timeUtc);
+            try {
+                segmentData.write(record);
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+            apply(op, path, contents, timeUtc);
+            seq = ++writtenSeq;
+            segmentBytes += record.length;
+            journalBytes += record.length;
+            if (segmentBytes >= segmentMaxBytes) rollSegment();
+        }
+        if (journalBytes > compactionMinBytes && journalBytes > liveBytes.get() && compactionScheduled.compareAndSet(false, true)) {
+            compactor.submit(new Runnable() {
+                @Override public void run() {
+                    try {
+                        compact();
+                    } catch (Exception e) {
+                        log.warn("Unable to compact persistence journal in "+getBaseDir()+" (continuing): "+e, e);
+                    } finally {
+                        compactionScheduled.set(false);
+                    }
+                }});
+        }
+        return seq;
+    }
+
+    /** waits until the change with the given sequence number is on disk; one writer syncs on behalf of all those waiting */
+    private void awaitSynced(long seq) {
+        if (syncedSeq.get() >= seq) return;
+        synchronized (syncLock) {
+            while (syncedSeq.get() < seq) {
+                FileChannel channel;
+                long target;
+                synchronized (writeLock) {
+                    if (segmentData == null) throw new IllegalStateException("Journal closed in "+this);
+                    try {
+                        segmentData.flush();
+                    } catch (IOException e) {
+                        throw Exceptions.propagate(e);
+                    }
+                    channel = segmentOut.getChannel();
+                    target = writtenSeq;
+                }
+                try {
+                    channel.force(false);
+                    advanceSynced(target);
+                } catch (ClosedChannelException e) {
+                    // segment was rolled (and synced) concurrently; check again
+                } catch (IOException e) {
+                    throw Exceptions.propagate(e);
+                }
+            }
+        }
+    }
+
+    private void advanceSynced(long seq) {
+        long current;
+        while ((current = syncedSeq.get()) < seq) {
+            if (syncedSeq.compareAndSet(current, seq)) return;
+        }
+    }
+
+    /** must hold writeLock */
+    private void openWriter() {
+        if (segmentData != null) return;
+        catchUp();
+        int next = Math.max(snapshotNextSegment, 1);
+        for (Integer segment : listSegments()) {
+            if (segment < snapshotNextSegment) {
+                // left behind by a compaction which did not complete
+                getSegmentFile(segment).delete();
+            } else {
+                next = Math.max(next, segment+1);
+            }
+        }
+        openSegment(next);
+    }
+
+    /** must hold writeLock */
+    private void openSegment(int number) {
+        try {
+            File file = getSegmentFile(number);
+            FileUtil.setFilePermissionsTo600(file);
+            segmentOut = new FileOutputStream(file);
+            segmentData = new DataOutputStream(new BufferedOutputStream(segmentOut, 64*1024));
+            segmentNumber = number;
+            segmentBytes = 0;
+            // we have everything up to here; don't replay our own writes
+            replayedSegment = number;
+            replayedOffset = 0;
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    /** must hold writeLock */
+    private void rollSegment() {
+        closeWriter();
+        openSegment(segmentNumber+1);
+    }
+
+    /** must hold writeLock */
+    private void closeWriter() {
+        if (segmentData == null) return;
+        try {
+            segmentData.flush();
+            segmentOut.getChannel().force(false);
+            segmentData.close();
+            advanceSynced(writtenSeq);
+            if (segmentBytes == 0) getSegmentFile(segmentNumber).delete();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            segmentData = null;
+            segmentOut = null;
+        }
+    }
+
+    private void closeWriterQuietly() {
+        try {
+            closeWriter();
+        } catch (Exception e) {
+            Exceptions.propagateIfFatal(e);
+            log.debug("Error closing persistence journal in "+getBaseDir()+" (continuing): "+e);
+        }
+    }
+
+    /** writes a snapshot of the current contents, then deletes the segments it replaces */
+    @Beta
+    public void compact() {
+        synchronized (compactionLock) {
+            Map<String, Item> snapshot;
+            int nextSegment;
+            synchronized (writeLock) {
+                if (segmentData == null) return;
+                rollSegment();
+                nextSegment = segmentNumber;
+                snapshot = MutableMap.copyOf(items);
+                journalBytes = 0;
+            }
+
+            File snapshotFile = getSnapshotFile();
+            File tmpFile = new File(getBaseDir(), SNAPSHOT_NAME+".tmp");
+            try {
+                FileUtil.setFilePermissionsTo600(tmpFile);
+                FileOutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 64*1024));
+                    data.writeInt(SNAPSHOT_MAGIC);
+                    data.writeInt(SNAPSHOT_VERSION);
+                    data.writeInt(nextSegment);
+                    for (Map.Entry<String, Item> entry : snapshot.entrySet()) {
+                        data.write(encodeRecord(OP_PUT, entry.getKey(), entry.getValue().contents, entry.getValue().lastModifiedUtc));
+                    }
+                    data.flush();
+                    out.getChannel().force(false);
+                } finally {
+                    out.close();
+                }
+                moveFile(tmpFile, snapshotFile);
+            } catch (Exception e) {
+                throw Exceptions.propagate(e);
+            }
+
+            synchronized (writeLock) {
+                snapshotNextSegment = nextSegment;
+            }
+            for (Integer segment : listSegments()) {
+                if (segment < nextSegment) getSegmentFile(segment).delete();
+            }
+            if (log.isDebugEnabled()) log.debug("Compacted persistence journal in {}: {} items", getBaseDir(), snapshot.size());
+        }
+    }
+
+    // ---------- reading
+
+    /**
+     * reads any changes written to the journal (by another node) since it was last read.
+     * if this node is the writer this is a no-op, unless another node has since become the writer
+     * (e.g. after failover), in which case this node stops writing. must hold writeLock.
+     */
+    private void catchUp() {
+        if (segmentData != null) {
+            if (!isWrittenByAnotherNode()) return;
+            log.info("Persistence journal in "+getBaseDir()+" has been written by another node; reloading");
+            // we have applied everything we wrote
+            replayedSegment = segmentNumber;
+            replayedOffset = segmentBytes;
+            closeWriter();
+        }
+        for (int attempt = 0; ; attempt++) {
+            try {
+                int snapshotNext = readSnapshotNextSegment();
+                if (!loaded || snapshotNext != snapshotNextSegment) {
+                    items.clear();
+                    liveBytes.set(0);
+                    snapshotNextSegment = loadSnapshot();
+                    replayedSegment = snapshotNextSegment;
+                    replayedOffset = 0;
+                    loaded = true;
+                }
+                for (Integer segment : listSegments()) {
+                    if (segment < replayedSegment) continue;
+                    long from = (segment == replayedSegment) ? replayedOffset : 0;
+                    replayedOffset = replaySegment(segment, from);
+                    replayedSegment = segment;
+                }
+                return;
+            } catch (FileNotFoundException e) {
+                // compacted concurrently by another node; start again from the new snapshot
+                if (attempt >= 2) throw Exceptions.propagate(e);
+                loaded = false;
+            } catch (IOException e) {
+                throw Exceptions.propagate(e);
+            }
+        }
+    }
+
+    /** must hold writeLock, and be the writer */
+    private boolean isWrittenByAnotherNode() {
+        List<Integer> segments = listSegments();
+        if (!segments.isEmpty() && segments.get(segments.size()-1) > segmentNumber) return true;
+        try {
+            return readSnapshotNextSegment() > segmentNumber;
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private int readSnapshotNextSegment() throws IOException {
+        File file = getSnapshotFile();
+        if (!file.exists()) return 0;
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            checkSnapshotHeader(in);
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    /** loads the snapshot, if there is one, returning the number of the first segment after it */
+    private int loadSnapshot() throws IOException {
+        File file = getSnapshotFile();
+        if (!file.exists()) return 0;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64*1024));
+        try {
+            checkSnapshotHeader(in);
+            int nextSegment = in.readInt();
+            while (readRecord(in) >= 0) {}
+            return nextSegment;
+        } finally {
+            in.close();
+        }
+    }
+
+    private void checkSnapshotHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        int version = in.readInt();
+        if (magic != SNAPSHOT_MAGIC || version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported persistence journal snapshot "+getSnapshotFile()+" (version "+version+")");
+        }
+    }
+
+    /** applies the records in the segment from the given offset, returning the offset after the last complete record */
+    private long replaySegment(int segment, long offset) throws IOException {
+        FileInputStream fin = new FileInputStream(getSegmentFile(segment));
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = fin.skip(offset - skipped);
+                if (n <= 0) return offset;
+                skipped += n;
+            }
+            DataInputStream in = new DataInputStream(new BufferedInputStream(fin, 64*1024));
+            long result = offset;
+            int length;
+            while ((length = readRecord(in)) >= 0) {
+                result += length;
+            }
+            return result;
+        } finally {
+            fin.close();
+        }
+    }
+
+    /**
+     * reads and applies one record, returning its length,
+     * or -1 if there are no more complete records (including if the last was torn by a crash while writing)
+     */
+    private int readRecord(DataInputStream in) throws IOException {
+        int length;
+        long crc;
+        byte[] payload;
+        try {
+            length = in.readInt();
+            crc = in.readLong();
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                log.warn("Ignoring corrupt record (and any following) in persistence journal in "+getBaseDir()+"; probably an incomplete write");
+                return -1;
+            }
+            payload = new byte[length];
+            in.readFully(payload);
+        } catch (EOFException e) {
+            return -1;
+        }
+        CRC32 check = new CRC32();
+        check.update(payload);
+        if (check.getValue() != crc) {
+            log.warn("Ignoring corrupt record (and any following) in persistence journal in "+getBaseDir()+"; probably an incomplete write");
+            return -1;
+        }
+
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = data.readByte();
+        long timeUtc = data.readLong();
+        String path = data.readUTF();
+        int contentsLength = data.readInt();
+        String contents = null;
+        if (contentsLength >= 0) {
+            byte[] contentsBytes = new byte[contentsLength];
+            data.readFully(contentsBytes);
+            contents = new String(contentsBytes, Charsets.UTF_8);
+        }
+        apply(op, path, contents, timeUtc);
+        return 12 + length;
+    }
+
+    private static byte[] encodeRecord(byte op, String path, @Nullable String contents, long timeUtc) {
+        try {
+            ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+            DataOutputStream payload = new DataOutputStream(payloadBytes);
+            payload.writeByte(op);
+            payload.writeLong(timeUtc);
+            payload.writeUTF(path);
+            if (contents == null) {
+                payload.writeInt(-1);
+            } else {
+                byte[] contentsBytes = contents.getBytes(Charsets.UTF_8);
+                payload.writeInt(contentsBytes.length);
+                payload.write(contentsBytes);
+            }
+            payload.flush();
+            byte[] payloadArray = payloadBytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(payloadArray);
+
+            ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(payloadArray.length + 12);
+            DataOutputStream record = new DataOutputStream(recordBytes);
+            record.writeInt(payloadArray.length);
+            record.writeLong(crc.getValue());
+            record.write(payloadArray);
+            record.flush();
+            return recordBytes.toByteArray();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    private void apply(byte op, String path, @Nullable String contents, long timeUtc) {
+        Item old;
+        switch (op) {
+        case OP_PUT:
+            old = items.put(path, new Item(contents, timeUtc));
+            liveBytes.addAndGet(contents.length() - (old == null ? 0 : old.contents.length()));
+            break;
+        case OP_APPEND:
+            old = items.get(path);
+            items.put(path, new Item(old == null ? contents : old.contents + contents, timeUtc));
+            liveBytes.addAndGet(contents.length());
+            break;
+        case OP_DELETE:
+            old = items.remove(path);
+            if (old != null) liveBytes.addAndGet(-old.contents.length());
+            break;
+        default:
+            throw new IllegalStateException("Unknown persistence journal operation "+op+" for "+path+" in "+getBaseDir());
+        }
+    }
+
+    // ---------- files
+
+    private File getSnapshotFile() {
+        return new File(getBaseDir(), SNAPSHOT_NAME);
+    }
+
+    private File getSegmentFile(int number) {
+        return new File(getBaseDir(), String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /** numbers of the segments in the directory, in order */
+    private List<Integer> listSegments() {
+        String[] names = getBaseDir().list();
+        if (names == null) return Collections.emptyList();
+        List<Integer> result = MutableList.of();
+        for (String name : names) {
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                try {
+                    result.add(Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length()-SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring unexpected file {} in persistence journal {}", name, getBaseDir());
+                }
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** 
+     * imports items from the one-file-per-item layout in this directory, as master; 
+     * the files are left in place, for nodes not using the journal 
+     */
+    private void importLegacyLayout() {
+        List<String> paths = MutableList.of();
+        for (String subPath : JOURNALED_SUB_PATHS) {
+            paths.addAll(super.listContentsWithSubPath(subPath));
+        }
+        if (paths.isEmpty()) return;
+
+        log.info("Importing "+paths.size()+" persisted items from individual files in "+getBaseDir()+" to journal");
+        long lastSeq = 0;
+        for (String path : paths) {
+            String contents = super.newAccessor(path).get();
+            if (contents != null) lastSeq = write(OP_PUT, path, contents);
+        }
+        awaitSynced(lastSeq);
+        compact();
+    }
+}
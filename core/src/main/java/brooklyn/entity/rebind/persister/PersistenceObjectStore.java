@@ -101,6 +101,14 @@ public interface PersistenceObjectStore {
     @Beta
     public void prepareForMasterUse();
     
+    /**
+     * Counterpart to {@link #prepareForMasterUse()}, for when this node stops being master
+     * (e.g. is demoted to standby, or starts rebinding read-only), once its writes have completed.
+     * Implementations may, for example, resume caching what they read.
+     */
+    @Beta
+    public void prepareForStandbyUse();
+    
     /**
      * For reading/writing data to the item at the given path.
      * Note that the accessor is not generally thread safe, usually does not support blocking,
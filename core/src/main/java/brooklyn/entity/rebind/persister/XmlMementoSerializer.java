@@ -20,8 +20,11 @@ package brooklyn.entity.rebind.persister;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Writer;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import org.slf4j.Logger;
@@ -51,8 +54,10 @@ import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
 import brooklyn.policy.Enricher;
 import brooklyn.policy.Policy;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.xstream.StringKeyMapConverter;
 import brooklyn.util.xstream.XmlSerializer;
 
+import com.google.common.annotations.Beta;
 import com.thoughtworks.xstream.converters.Converter;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.SingleValueConverter;
@@ -61,6 +66,9 @@ import com.thoughtworks.xstream.core.ReferencingMarshallingContext;
 import com.thoughtworks.xstream.core.util.HierarchicalStreams;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.binary.BinaryStreamReader;
+import com.thoughtworks.xstream.io.binary.BinaryStreamWriter;
+import com.thoughtworks.xstream.io.copy.HierarchicalStreamCopier;
 import com.thoughtworks.xstream.mapper.Mapper;
 import com.thoughtworks.xstream.mapper.MapperWrapper;
 
@@ -129,6 +137,43 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /** reads XML, or the {@link BinaryMementoSerializer binary} form (so a store can be read whichever format it was written in) */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T fromString(String xml) {
+        if (BinaryMementoSerializer.isBinary(xml)) {
+            return (T) xstream.unmarshal(BinaryMementoSerializer.newReader(xml));
+        }
+        return super.fromString(xml);
+    }
+
+    /**
+     * Makes this serializer read each complex (i.e. not inline) value of an entity memento's config and attributes
+     * as a {@link DeferredMementoValue}, keeping its serialized form to be decoded when first used.
+     * <p>
+     * Only for reading mementos with no XStream references (see {@link #mayHaveReferences(String)}),
+     * as a reference may be between a deferred value and the rest of the memento.
+     * Deferred values are decoded with whatever lookup context is set at the time.
+     */
+    @Beta
+    public void deferEntityValues() {
+        StringKeyMapConverter converter = new DeferringStringKeyMapConverter(xstream.getMapper());
+        xstream.registerLocalConverter(BasicEntityMemento.class, "config", converter);
+        xstream.registerLocalConverter(BasicEntityMemento.class, "attributes", converter);
+    }
+
+    /** whether the given serialized memento (XML or binary) may contain an XStream reference, i.e. an object written once and referred to elsewhere */
+    public static boolean mayHaveReferences(String contents) {
+        if (BinaryMementoSerializer.isBinary(contents)) {
+            return BinaryMementoSerializer.containsText(contents, "reference");
+        }
+        return contents.contains("reference=");
+    }
+
+    Object decodeDeferred(byte[] encoded) {
+        return xstream.unmarshal(new BinaryStreamReader(new ByteArrayInputStream(encoded)));
+    }
+
     @Override
     public void setLookupContext(LookupContext lookupContext) {
         this.lookupContext = checkNotNull(lookupContext, "lookupContext");
@@ -178,6 +223,28 @@ public class XmlMementoSerializer<T> extends XmlSerializer<T> implements Memento
         }
     }
 
+    /** as {@link StringKeyMapConverter}, but copies complex values (in the binary encoding) rather than decoding them */
+    private class DeferringStringKeyMapConverter extends StringKeyMapConverter {
+        DeferringStringKeyMapConverter(Mapper mapper) {
+            super(mapper);
+        }
+        @Override
+        @SuppressWarnings({ "rawtypes", "unchecked" })
+        protected void unmarshalStringKey(HierarchicalStreamReader reader, UnmarshallingContext context, Map map, String key) {
+            if (reader.getAttribute("type")==null && reader.hasMoreChildren()) {
+                reader.moveDown();
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                BinaryStreamWriter writer = new BinaryStreamWriter(bytes);
+                new HierarchicalStreamCopier().copy(reader, writer);
+                writer.close();
+                reader.moveUp();
+                map.put(key, new DeferredMementoValue(XmlMementoSerializer.this, bytes.toByteArray()));
+            } else {
+                super.unmarshalStringKey(reader, context, map, key);
+            }
+        }
+    }
+
     public abstract class IdentifiableConverter<IT extends Identifiable> implements SingleValueConverter {
         private final Class<IT> clazz;
         
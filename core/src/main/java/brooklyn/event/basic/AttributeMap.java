@@ -29,8 +29,10 @@ import org.slf4j.LoggerFactory;
 
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.AbstractEntity;
+import brooklyn.entity.rebind.persister.DeferredMementoValue;
 import brooklyn.event.AttributeSensor;
 import brooklyn.util.flags.TypeCoercions;
+import brooklyn.util.guava.Maybe;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
@@ -75,7 +77,7 @@ public final class AttributeMap implements Serializable {
         Map<String, Object> result = Maps.newLinkedHashMap();
         for (Map.Entry<Collection<String>, Object> entry : values.entrySet()) {
             String sensorName = Joiner.on('.').join(entry.getKey());
-            Object val = (isNull(entry.getValue())) ? null : entry.getValue();
+            Object val = (isNull(entry.getValue())) ? null : DeferredMementoValue.resolve(entry.getValue());
             result.put(sensorName, val);
         }
         return result;
@@ -91,6 +93,12 @@ public final class AttributeMap implements Serializable {
      */
     // TODO path must be ordered(and legal to contain duplicates like "a.b.a"; list would be better
     public <T> T update(Collection<String> path, T newValue) {
+        return updateReturningPrevious(path, newValue).orNull();
+    }
+    
+    /** as {@link #update(Collection, Object)}, but absent if there was no previous value (as distinct from a previous null) */
+    @SuppressWarnings("unchecked")
+    private <T> Maybe<T> updateReturningPrevious(Collection<String> path, T newValue) {
         checkPath(path);
 
         if (newValue == null) {
@@ -101,9 +109,9 @@ public final class AttributeMap implements Serializable {
             log.trace("setting sensor {}={} for {}", new Object[] {path, newValue, entity});
         }
 
-        @SuppressWarnings("unchecked")
-        T oldValue = (T) values.put(path, newValue);
-        return (isNull(oldValue)) ? null : oldValue;
+        Object oldValue = values.put(path, newValue);
+        if (oldValue == null) return Maybe.absent();
+        return Maybe.of(isNull(oldValue) ? null : (T) DeferredMementoValue.resolve(oldValue));
     }
 
     private void checkPath(Collection<String> path) {
@@ -112,12 +120,26 @@ public final class AttributeMap implements Serializable {
     }
 
     public <T> T update(AttributeSensor<T> attribute, T newValue) {
-        T oldValue = updateWithoutPublishing(attribute, newValue);
+        logUpdate(attribute, newValue);
+        Maybe<T> oldValue = updateReturningPrevious(attribute.getNameParts(), newValue);
+        // compared with the stored entry, so that the first value set is always published, even if null
+        if (SensorConflation.of(attribute)==SensorConflation.SUPPRESS_IF_EQUAL && oldValue.isPresent() && Objects.equal(oldValue.get(), newValue)) {
+            if (log.isTraceEnabled()) log.trace("not publishing unchanged attribute {} on {}", attribute.getName(), entity);
+            return oldValue.get();
+        }
         entity.emitInternal(attribute, newValue);
-        return oldValue;
+        return oldValue.orNull();
     }
     
     public <T> T updateWithoutPublishing(AttributeSensor<T> attribute, T newValue) {
+        logUpdate(attribute, newValue);
+        
+        T oldValue = (T) update(attribute.getNameParts(), newValue);
+        
+        return (isNull(oldValue)) ? null : oldValue;
+    }
+    
+    private <T> void logUpdate(AttributeSensor<T> attribute, T newValue) {
         if (log.isTraceEnabled()) {
             Object oldValue = getValue(attribute);
             if (!Objects.equal(oldValue, newValue != null)) {
@@ -126,10 +148,6 @@ public final class AttributeMap implements Serializable {
                 log.trace("setting attribute {} to {} (unchanged) on {}", new Object[] {attribute.getName(), newValue, this});
             }
         }
-
-        T oldValue = (T) update(attribute.getNameParts(), newValue);
-        
-        return (isNull(oldValue)) ? null : oldValue;
     }
 
     public void remove(AttributeSensor<?> attribute) {
@@ -164,7 +182,8 @@ public final class AttributeMap implements Serializable {
         // 
         checkPath(path);
         Object result = values.get(path);
-        return (isNull(result)) ? null : result;
+        // a value set on rebind may still be in its serialized form
+        return (isNull(result)) ? null : DeferredMementoValue.resolve(result);
     }
 
     @SuppressWarnings("unchecked")
@@ -29,6 +29,8 @@ import com.google.common.reflect.TypeToken;
 public class BasicAttributeSensor<T> extends BasicSensor<T> implements AttributeSensor<T> {
     private static final long serialVersionUID = -2493209215974820300L;
 
+    private SensorConflation conflation;
+
     public BasicAttributeSensor(Class<T> type, String name) {
         this(type, name, name);
     }
@@ -42,7 +44,17 @@ public class BasicAttributeSensor<T> extends BasicSensor<T> implements Attribute
     }
     
     public BasicAttributeSensor(TypeToken<T> typeToken, String name, String description) {
+        this(typeToken, name, description, SensorConflation.NONE);
+    }
+    
+    public BasicAttributeSensor(TypeToken<T> typeToken, String name, String description, SensorConflation conflation) {
         super(typeToken, name, description);
+        this.conflation = conflation;
     }
     
+    /** how repeated values of this attribute are conflated; never null */
+    public SensorConflation getConflation() {
+        // null if deserialized from an older instance
+        return conflation != null ? conflation : SensorConflation.NONE;
+    }
 }
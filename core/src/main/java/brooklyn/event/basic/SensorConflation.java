@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.basic;
+
+import brooklyn.event.Sensor;
+
+/**
+ * How repeated values of a sensor may be conflated, to avoid subscribers doing a unit of work
+ * for every value when a feed republishes on every poll.
+ * <p>
+ * Conflation is opt-in: set it on an attribute sensor (e.g. via
+ * {@link Sensors#newSensor(Class, String, String, SensorConflation)}), or pass it as the
+ * {@code conflation} flag when subscribing to override the sensor's setting for that subscription.
+ */
+public enum SensorConflation {
+    
+    /** every value is published and delivered (the default) */
+    NONE,
+    
+    /**
+     * a value equal to the attribute's current value is stored but not published;
+     * only meaningful on an attribute sensor, where it is applied when the attribute is set
+     */
+    SUPPRESS_IF_EQUAL,
+    
+    /**
+     * if a subscriber has not yet been sent a previous value from the same source,
+     * that pending value is replaced by the newer one, so slow subscribers only ever see the latest value
+     * and no backlog builds up;
+     * not applied if {@link brooklyn.management.internal.LocalSubscriptionManager#DELIVER_EVENTS_AS_TASKS} is set,
+     * as each event is then delivered by its own task
+     */
+    LATEST_VALUE_ONLY;
+    
+    /** @return the conflation declared by the given sensor, or {@link #NONE} */
+    public static SensorConflation of(Sensor<?> sensor) {
+        if (sensor instanceof BasicAttributeSensor) return ((BasicAttributeSensor<?>)sensor).getConflation();
+        return NONE;
+    }
+}
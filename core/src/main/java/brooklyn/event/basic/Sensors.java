@@ -49,6 +49,11 @@ public class Sensors {
         return new BasicAttributeSensor<T>(type, name, description);
     }
 
+    /** as {@link #newSensor(Class, String, String)}, with the given conflation of repeated values */
+    public static <T> AttributeSensor<T> newSensor(Class<T> type, String name, String description, SensorConflation conflation) {
+        return new BasicAttributeSensor<T>(TypeToken.of(type), name, description, conflation);
+    }
+
     public static AttributeSensor<String> newStringSensor(String name) {
         return newSensor(String.class, name);
     }
@@ -92,7 +97,7 @@ public class Sensors {
     // Extensions to sensors
 
     public static <T> AttributeSensor<T> newSensorRenamed(String newName, AttributeSensor<T> sensor) {
-        return new BasicAttributeSensor<T>(sensor.getTypeToken(), newName, sensor.getDescription());
+        return new BasicAttributeSensor<T>(sensor.getTypeToken(), newName, sensor.getDescription(), SensorConflation.of(sensor));
     }
 
     public static <T> AttributeSensor<T> newSensorWithPrefix(String prefix, AttributeSensor<T> sensor) {
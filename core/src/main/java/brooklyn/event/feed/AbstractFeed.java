@@ -186,7 +186,7 @@ public abstract class AbstractFeed extends AbstractEntityAdjunct implements Feed
 
     @Override
     protected void onChanged() {
-        // TODO Auto-generated method stub
+        requestPersist();
     }
 
     /**
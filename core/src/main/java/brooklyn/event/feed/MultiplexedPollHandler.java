@@ -0,0 +1,103 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed;
+
+import java.util.List;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A poll handler for a job which polls for several things at once (e.g. all the commands of a
+ * {@link brooklyn.event.feed.ssh.MultiplexedPollScript}), and returns a value for each, in order:
+ * each value is handled by the corresponding delegate, as if it had been polled on its own.
+ * <p>
+ * Only an exception from the job itself (i.e. no values at all) is passed to every delegate.
+ */
+@Beta
+public class MultiplexedPollHandler<V> implements PollHandler<List<V>> {
+
+    private final List<PollHandler<? super V>> delegates;
+
+    public MultiplexedPollHandler(Iterable<? extends PollHandler<? super V>> delegates) {
+        this.delegates = ImmutableList.<PollHandler<? super V>>copyOf(delegates);
+    }
+
+    /** the values are checked individually, by {@link #onSuccess(List)} */
+    @Override
+    public boolean checkSuccess(List<V> vals) {
+        return true;
+    }
+
+    @Override
+    public void onSuccess(List<V> vals) {
+        if (vals.size() != delegates.size()) {
+            onException(new IllegalStateException("Expected "+delegates.size()+" values but got "+vals.size()+", for "+getDescription()));
+            return;
+        }
+        for (int i = 0; i < delegates.size(); i++) {
+            PollHandler<? super V> delegate = delegates.get(i);
+            V val = vals.get(i);
+            try {
+                if (delegate.checkSuccess(val)) {
+                    delegate.onSuccess(val);
+                } else {
+                    delegate.onFailure(val);
+                }
+            } catch (Exception e) {
+                // as the poller would for a job of its own; keep going with the others
+                delegate.onException(e);
+            }
+        }
+    }
+
+    @Override
+    public void onFailure(List<V> vals) {
+        onSuccess(vals);
+    }
+
+    @Override
+    public void onException(Exception exception) {
+        for (PollHandler<? super V> delegate : delegates) {
+            delegate.onException(exception);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString()+"["+getDescription()+"]";
+    }
+
+    @Override
+    public String getDescription() {
+        StringBuilder sb = new StringBuilder("multiplexed[");
+        int count = 0;
+        for (PollHandler<? super V> delegate : delegates) {
+            if (count>0) sb.append("; ");
+            sb.append(delegate.getDescription());
+            if (count>2 && delegates.size()>count+1) {
+                sb.append("; ...");
+                break;
+            }
+            count++;
+        }
+        sb.append("]");
+        return sb.toString();
+    }
+}
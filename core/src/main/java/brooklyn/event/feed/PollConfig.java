@@ -26,6 +26,8 @@ import brooklyn.event.AttributeSensor;
 import brooklyn.util.javalang.JavaClassNames;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
+
 /**
  * Configuration for polling, which is being added to a feed (e.g. to poll a given URL over http).
  * 
@@ -34,6 +36,7 @@ import brooklyn.util.time.Duration;
 public class PollConfig<V, T, F extends PollConfig<V, T, F>> extends FeedConfig<V, T, F> {
 
     private long period = -1;
+    private long maxPeriod = -1;
     private String description;
 
     public PollConfig(AttributeSensor<T> sensor) {
@@ -43,6 +46,7 @@ public class PollConfig<V, T, F extends PollConfig<V, T, F>> extends FeedConfig<
     public PollConfig(PollConfig<V,T,F> other) {
         super(other);
         this.period = other.period;
+        this.maxPeriod = other.maxPeriod;
     }
 
     public long getPeriod() {
@@ -65,6 +69,38 @@ public class PollConfig<V, T, F extends PollConfig<V, T, F>> extends FeedConfig<
         return period(units.toMillis(val));
     }
     
+    /** the longest the period may grow to, if {@link #isAdaptive() adaptive}; otherwise the {@link #getPeriod() period} */
+    @Beta
+    public long getMaxPeriod() {
+        return isAdaptive() ? maxPeriod : period;
+    }
+    
+    @Beta
+    public boolean isAdaptive() {
+        return period > 0 && maxPeriod > period;
+    }
+    
+    /**
+     * Polls every minPeriod while the result keeps changing (or the poll fails), but doubles the period 
+     * after each poll whose result is the same as the last, up to maxPeriod. 
+     * For values which rarely change (e.g. service-up), this cuts the number of polls without delaying
+     * detection of a change by more than maxPeriod; after a change, polling is again every minPeriod.
+     * <p>
+     * Where several configs of a feed share a poll, it runs from the shortest of their periods up to the shortest
+     * of their {@link #getMaxPeriod() max periods}; a config which is not adaptive counts with its fixed period
+     * as its max, so the shared poll still adapts up to that period, and is fixed only if that is no longer than
+     * its shortest period. A shared poll which adapts is not combined with other polls
+     * (e.g. for {@link brooklyn.event.feed.ssh.SshFeed.Builder#multiplex(boolean) multiplexed} ssh commands).
+     */
+    @Beta
+    public F adaptivePeriod(Duration minPeriod, Duration maxPeriod) {
+        checkArgument(minPeriod.toMilliseconds() > 0, "minPeriod must be greater than zero");
+        checkArgument(maxPeriod.compareTo(minPeriod) >= 0, "maxPeriod must not be less than minPeriod");
+        this.period = minPeriod.toMilliseconds();
+        this.maxPeriod = maxPeriod.toMilliseconds();
+        return self();
+    }
+    
     public F description(String description) {
         this.description = description;
         return self();
@@ -18,26 +18,41 @@
  */
 package brooklyn.event.feed;
 
+import static com.google.common.base.Preconditions.checkNotNull;
+
 import java.util.LinkedHashSet;
 import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
 import brooklyn.entity.basic.Attributes;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.DynamicSequentialTask;
+import brooklyn.util.task.HashedWheelTimer;
 import brooklyn.util.task.ScheduledTask;
+import brooklyn.util.task.TaskTags;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Equivalence;
 import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
 
 
 /** 
@@ -50,23 +65,50 @@ import com.google.common.base.Objects;
 public class Poller<V> {
     public static final Logger log = LoggerFactory.getLogger(Poller.class);
 
+    @Beta
+    public static final ConfigKey<Boolean> SHARED_POLL_SCHEDULER = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.feed.sharedPollScheduler",
+            "whether periodic polls should be driven by the execution manager's shared timer and run as plain jobs, "
+            + "rather than each poller having scheduled tasks which create a new task for every poll; "
+            + "once a poll has failed or run longer than its period, it and later polls for that job run as tasks "
+            + "(visible in the entity's activity)",
+            false);
+
+    /** the second run of each shared poll is delayed by up to this fraction of its period, 
+     * so that polls started together (e.g. on rebind) do not all run together thereafter */
+    private static final double SHARED_POLL_JITTER = 0.1;
+
     private final EntityLocal entity;
     private final boolean onlyIfServiceUp;
     private final Set<Callable<?>> oneOffJobs = new LinkedHashSet<Callable<?>>();
     private final Set<PollJob<V>> pollJobs = new LinkedHashSet<PollJob<V>>();
     private final Set<Task<?>> oneOffTasks = new LinkedHashSet<Task<?>>();
     private final Set<ScheduledTask> tasks = new LinkedHashSet<ScheduledTask>();
+    private final Set<SharedPoll> sharedPolls = new LinkedHashSet<SharedPoll>();
     private volatile boolean running = false;
     
     private static class PollJob<V> {
         final PollHandler<? super V> handler;
         final Duration pollPeriod;
+        final Duration maxPollPeriod;
         final Runnable wrappedJob;
         private boolean loggedPreviousException = false;
+        /** whether the last poll failed (threw, or its result was not a success) */
+        private volatile boolean failing = false;
+        /** the period until the next poll; only differs from pollPeriod if adaptive */
+        private volatile Duration currentPeriod;
+        /** the result of the last poll, if it succeeded; only used if adaptive */
+        private Maybe<V> lastResult = Maybe.absent();
         
-        PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period) {
+        PollJob(Callable<V> job, PollHandler<? super V> handler, Duration period) {
+            this(job, handler, period, period, null);
+        }
+        
+        PollJob(final Callable<V> job, final PollHandler<? super V> handler, Duration period, Duration maxPeriod, final Equivalence<? super V> sameResult) {
             this.handler = handler;
             this.pollPeriod = period;
+            this.maxPollPeriod = maxPeriod;
+            this.currentPeriod = period;
             
             wrappedJob = new Runnable() {
                 public void run() {
@@ -74,11 +116,17 @@ public class Poller<V> {
                         V val = job.call();
                         loggedPreviousException = false;
                         if (handler.checkSuccess(val)) {
+                            failing = false;
                             handler.onSuccess(val);
+                            if (isAdaptive()) adaptPeriod(Maybe.of(val), sameResult);
                         } else {
+                            failing = true;
                             handler.onFailure(val);
+                            if (isAdaptive()) adaptPeriod(Maybe.<V>absent(), sameResult);
                         }
                     } catch (Exception e) {
+                        failing = true;
+                        if (isAdaptive()) adaptPeriod(Maybe.<V>absent(), sameResult);
                         // 2013-12-21 AH adding add'l logging because seeing strange scheduled task abortion from here
                         // even though all paths should be catching it
                         if (loggedPreviousException) {
@@ -92,6 +140,20 @@ public class Poller<V> {
                 }
             };
         }
+        
+        boolean isAdaptive() {
+            return maxPollPeriod.compareTo(pollPeriod) > 0;
+        }
+        
+        /** doubles the period (up to the max) if the result is the same as the last, otherwise goes back to the min */
+        private void adaptPeriod(Maybe<V> result, Equivalence<? super V> sameResult) {
+            if (result.isPresent() && lastResult.isPresent() && sameResult.equivalent(lastResult.get(), result.get())) {
+                currentPeriod = Duration.min(currentPeriod.multiply(2), maxPollPeriod);
+            } else {
+                currentPeriod = pollPeriod;
+            }
+            lastResult = result;
+        }
     }
     
     /** @deprecated since 0.7.0, pass in whether should run onlyIfServiceUp */
@@ -123,6 +185,22 @@ public class Poller<V> {
         pollJobs.add(foo);
     }
 
+    /**
+     * Schedules a poll whose period adapts to how often its result changes: 
+     * starting at minPeriod, the period doubles (up to maxPeriod) each time a successful result is 
+     * the same as the last, according to sameResult, and goes back to minPeriod when it is not, or when the poll fails.
+     * If maxPeriod is not longer than minPeriod, this is the same as {@link #scheduleAtFixedRate(Callable, PollHandler, Duration)}.
+     * 
+     * @see PollConfig#adaptivePeriod(Duration, Duration)
+     */
+    @Beta
+    public void scheduleAdaptively(Callable<V> job, PollHandler<? super V> handler, Duration minPeriod, Duration maxPeriod, Equivalence<? super V> sameResult) {
+        if (running) {
+            throw new IllegalStateException("Cannot schedule additional tasks after poller has started");
+        }
+        pollJobs.add(new PollJob<V>(job, handler, minPeriod, Duration.max(minPeriod, maxPeriod), checkNotNull(sameResult, "sameResult")));
+    }
+
     @SuppressWarnings({ "unchecked" })
     public void start() {
         // TODO Previous incarnation of this logged this logged polledSensors.keySet(), but we don't know that anymore
@@ -141,31 +219,136 @@ public class Poller<V> {
             oneOffTasks.add(((EntityInternal)entity).getExecutionContext().submit(task));
         }
         
+        HashedWheelTimer sharedTimer = getSharedTimer();
         for (final PollJob<V> pollJob : pollJobs) {
             final String scheduleName = pollJob.handler.getDescription();
             if (pollJob.pollPeriod.compareTo(Duration.ZERO) > 0) {
-                Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
-                    public Task<?> call() {
-                        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", scheduleName, "entity", entity), 
-                            new Callable<Void>() { public Void call() {
-                                if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
-                                        return null;
-                                }
-                                pollJob.wrappedJob.run();
-                                return null; 
-                            } } );
-                        BrooklynTaskTags.setTransient(task);
-                        return task;
-                    }
-                };
-                ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod, "displayName", "scheduled:"+scheduleName), pollingTaskFactory);
-                tasks.add((ScheduledTask)Entities.submit(entity, task));
+                if (sharedTimer != null) {
+                    SharedPoll poll = new SharedPoll(pollJob, sharedTimer);
+                    sharedPolls.add(poll);
+                    poll.schedule(Duration.ZERO);
+                } else {
+                    final AtomicReference<ScheduledTask> scheduledTask = new AtomicReference<ScheduledTask>();
+                    Callable<Task<?>> pollingTaskFactory = new Callable<Task<?>>() {
+                        public Task<?> call() {
+                            return newPollTask(scheduleName, new Callable<Void>() { public Void call() {
+                                    runPoll(pollJob);
+                                    // read by the scheduled task when this iteration completes
+                                    if (pollJob.isAdaptive()) scheduledTask.get().period(pollJob.currentPeriod);
+                                    return null; 
+                                } } );
+                        }
+                    };
+                    ScheduledTask task = new ScheduledTask(MutableMap.of("period", pollJob.pollPeriod, "displayName", "scheduled:"+scheduleName), pollingTaskFactory);
+                    scheduledTask.set(task);
+                    tasks.add((ScheduledTask)Entities.submit(entity, task));
+                }
             } else {
                 if (log.isDebugEnabled()) log.debug("Activating poll (but leaving off, as period {}) for {} (using {})", new Object[] {pollJob.pollPeriod, entity, this});
             }
         }
     }
     
+    /** the execution manager's shared timer, if {@link #SHARED_POLL_SCHEDULER} is enabled, otherwise null */
+    protected HashedWheelTimer getSharedTimer() {
+        ManagementContext mgmt = ((EntityInternal)entity).getManagementContext();
+        if (!Boolean.TRUE.equals(mgmt.getConfig().getConfig(SHARED_POLL_SCHEDULER))) return null;
+        ExecutionManager executionManager = mgmt.getExecutionManager();
+        if (!(executionManager instanceof BasicExecutionManager)) {
+            if (log.isDebugEnabled()) log.debug("Shared poll scheduler not available for {}, with execution manager {}; using scheduled tasks", entity, executionManager);
+            return null;
+        }
+        return ((BasicExecutionManager)executionManager).getSharedTimer();
+    }
+    
+    private Task<?> newPollTask(String name, Callable<Void> job) {
+        DynamicSequentialTask<Void> task = new DynamicSequentialTask<Void>(MutableMap.of("displayName", name, "entity", entity), job);
+        BrooklynTaskTags.setTransient(task);
+        // a poll does not wait on other tasks (sub-tasks it queues are not marked, so go to the elastic pool)
+        TaskTags.markNonBlocking(task);
+        return task;
+    }
+    
+    private void runPoll(PollJob<V> pollJob) {
+        if (onlyIfServiceUp && !Boolean.TRUE.equals(entity.getAttribute(Attributes.SERVICE_UP))) {
+            return;
+        }
+        pollJob.wrappedJob.run();
+    }
+    
+    /** 
+     * A poll driven by the shared timer. It normally runs as a plain job, with no task; 
+     * once a poll has failed or been slow, it and all later polls for the job run as tasks in the entity's context, 
+     * as polls do when not shared, so that they show in the entity's activity 
+     * (switching back would change the context the handlers run in, e.g. between failures and successes). 
+     * The next poll is scheduled when one completes, so polls for a job never overlap.
+     */
+    private class SharedPoll implements Runnable {
+        private final PollJob<V> pollJob;
+        private final HashedWheelTimer timer;
+        private volatile HashedWheelTimer.Timeout next;
+        private volatile boolean asTask = false;
+        private boolean jittered = false;
+        
+        SharedPoll(PollJob<V> pollJob, HashedWheelTimer timer) {
+            this.pollJob = pollJob;
+            this.timer = timer;
+        }
+        
+        void schedule(Duration delay) {
+            if (running && !timer.isStopped()) next = timer.newTimeout(this, delay);
+        }
+        
+        void cancel() {
+            HashedWheelTimer.Timeout timeout = next;
+            if (timeout != null) timeout.cancel();
+        }
+        
+        @Override
+        public void run() {
+            if (!running) return;
+            if (asTask) {
+                try {
+                    Entities.submit(entity, newPollTask(pollJob.handler.getDescription(), new Callable<Void>() { public Void call() {
+                            pollAndReschedule();
+                            return null;
+                        } } ));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    // e.g. entity no longer managed; the feed will be stopped
+                    if (log.isDebugEnabled()) log.debug("Unable to submit poll "+pollJob.handler.getDescription()+" for "+entity+"; no longer polling", e);
+                }
+            } else {
+                pollAndReschedule();
+            }
+        }
+        
+        private void pollAndReschedule() {
+            Stopwatch stopwatch = Stopwatch.createStarted();
+            try {
+                runPoll(pollJob);
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                // the job handles its own failures, so this is e.g. from the service-up check
+                if (log.isDebugEnabled()) log.debug("Error in poll "+pollJob.handler.getDescription()+" for "+entity, e);
+                pollJob.failing = true;
+            } finally {
+                if (!asTask) asTask = pollJob.failing || Duration.of(stopwatch).compareTo(pollJob.pollPeriod) > 0;
+                Duration delay = pollJob.currentPeriod;
+                if (!jittered) {
+                    delay = delay.add(pollJob.pollPeriod.multiply(SHARED_POLL_JITTER * Math.random()));
+                    jittered = true;
+                }
+                schedule(delay);
+            }
+        }
+        
+        @Override
+        public String toString() {
+            return "SharedPoll["+pollJob.handler.getDescription()+" for "+entity+"]";
+        }
+    }
+    
     public void stop() {
         if (log.isDebugEnabled()) log.debug("Stopping poll for {} (using {})", new Object[] {entity, this});
         if (!running) { 
@@ -180,8 +363,12 @@ public class Poller<V> {
         for (ScheduledTask task : tasks) {
             if (task != null) task.cancel();
         }
+        for (SharedPoll poll : sharedPolls) {
+            poll.cancel();
+        }
         oneOffTasks.clear();
         tasks.clear();
+        sharedPolls.clear();
     }
 
     public boolean isRunning() {
@@ -36,6 +36,7 @@ import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Equivalence;
 import com.google.common.base.Objects;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
@@ -181,17 +182,21 @@ public class FunctionFeed extends AbstractFeed {
         for (final FunctionPollIdentifier pollInfo : polls.keySet()) {
             Set<FunctionPollConfig<?,?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
+            long maxPeriod = Integer.MAX_VALUE;
             Set<AttributePollHandler<?>> handlers = Sets.newLinkedHashSet();
 
             for (FunctionPollConfig<?,?> config : configs) {
                 handlers.add(new AttributePollHandler(config, entity, this));
-                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+                if (config.getPeriod() > 0) {
+                    minPeriod = Math.min(minPeriod, config.getPeriod());
+                    maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+                }
             }
             
-            getPoller().scheduleAtFixedRate(
+            getPoller().scheduleAdaptively(
                     (Callable)pollInfo.job,
                     new DelegatingPollHandler(handlers), 
-                    minPeriod);
+                    Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
         }
     }
 }
@@ -22,6 +22,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.net.URI;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -37,16 +38,20 @@ import org.slf4j.LoggerFactory;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpConnectionPool;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpTool.HttpClientBuilder;
 import brooklyn.util.http.HttpToolResponse;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Equivalence;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Supplier;
@@ -112,6 +117,16 @@ public class HttpFeed extends AbstractFeed {
             new TypeToken<SetMultimap<HttpPollIdentifier, HttpPollConfig<?>>>() {},
             "polls");
 
+    /** for adaptive polls, responses are the same if they have the same code and content (whatever their headers, e.g. date) */
+    private static final Equivalence<HttpToolResponse> SAME_RESPONSE = new Equivalence<HttpToolResponse>() {
+        @Override protected boolean doEquivalent(HttpToolResponse a, HttpToolResponse b) {
+            return a.getResponseCode() == b.getResponseCode() && Arrays.equals(a.getContent(), b.getContent());
+        }
+        @Override protected int doHash(HttpToolResponse t) {
+            return Objects.hashCode(t.getResponseCode(), Arrays.hashCode(t.getContent()));
+        }
+    };
+
     public static Builder builder() {
         return new Builder();
     }
@@ -313,15 +328,20 @@ public class HttpFeed extends AbstractFeed {
             //     threads of execution, it is highly recommended that each thread maintains its
             //     own dedicated instance of HttpContext.
             //  http://hc.apache.org/httpcomponents-client-ga/tutorial/html/connmgmt.html
+            // Connections can still be shared with other feeds, if the management context's pool is enabled.
             final HttpClient httpClient = createHttpClient(pollInfo);
 
             Set<HttpPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
+            long maxPeriod = Integer.MAX_VALUE;
             Set<AttributePollHandler<? super HttpToolResponse>> handlers = Sets.newLinkedHashSet();
 
             for (HttpPollConfig<?> config : configs) {
                 handlers.add(new AttributePollHandler<HttpToolResponse>(config, entity, this));
-                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+                if (config.getPeriod() > 0) {
+                    minPeriod = Math.min(minPeriod, config.getPeriod());
+                    maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+                }
             }
 
             Callable<HttpToolResponse> pollJob;
@@ -348,7 +368,8 @@ public class HttpFeed extends AbstractFeed {
                 throw new IllegalStateException("Unexpected http method: "+pollInfo.method);
             }
             
-            getPoller().scheduleAtFixedRate(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), minPeriod);
+            getPoller().scheduleAdaptively(pollJob, new DelegatingPollHandler<HttpToolResponse>(handlers), 
+                    Duration.millis(minPeriod), Duration.millis(maxPeriod), SAME_RESPONSE);
         }
     }
 
@@ -366,6 +387,10 @@ public class HttpFeed extends AbstractFeed {
         if (pollIdentifier.socketTimeout != null) {
             builder.socketTimeout(pollIdentifier.socketTimeout);
         }
+        Maybe<HttpConnectionPool> connectionPool = HttpConnectionPool.ifEnabled(((EntityInternal)entity).getManagementContext());
+        if (connectionPool.isPresent()) {
+            builder.connectionPool(connectionPool.get());
+        }
         return builder.build();
     }
 
@@ -37,18 +37,28 @@ import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.MultiplexedPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.event.feed.function.FunctionFeed;
+import brooklyn.event.feed.ssh.MultiplexedPollScript;
 import brooklyn.event.feed.ssh.SshFeed;
 import brooklyn.event.feed.ssh.SshPollValue;
 import brooklyn.management.ExecutionContext;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.task.system.ProcessTaskFactory;
 import brooklyn.util.task.system.ProcessTaskWrapper;
 import brooklyn.util.task.system.internal.SystemProcessTaskFactory.ConcreteSystemProcessTaskFactory;
+import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Equivalence;
+import com.google.common.base.Joiner;
 import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
@@ -104,6 +114,10 @@ public class ShellFeed extends AbstractFeed {
             new TypeToken<SetMultimap<ShellPollIdentifier, ShellPollConfig<?>>>() {},
             "polls");
 
+    /** whether to run all the polls with the same period as one script; if not set, {@link SshFeed#MULTIPLEX_BY_DEFAULT} */
+    @Beta
+    public static final ConfigKey<Boolean> MULTIPLEX = ConfigKeys.newBooleanConfigKey("multiplex");
+
     public static Builder builder() {
         return new Builder();
     }
@@ -113,6 +127,7 @@ public class ShellFeed extends AbstractFeed {
         private long period = 500;
         private TimeUnit periodUnits = TimeUnit.MILLISECONDS;
         private List<ShellPollConfig<?>> polls = Lists.newArrayList();
+        private Boolean multiplex;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -131,6 +146,17 @@ public class ShellFeed extends AbstractFeed {
             polls.add(config);
             return this;
         }
+        /**
+         * Whether to run all the polls due at the same time (other than those with input) in one process,
+         * rather than one each; defaults to the management context's {@link SshFeed#MULTIPLEX_BY_DEFAULT}.
+         * 
+         * @see MultiplexedPollScript
+         */
+        @Beta
+        public Builder multiplex(boolean val) {
+            multiplex = val;
+            return this;
+        }
         public ShellFeed build() {
             built = true;
             ShellFeed result = new ShellFeed(this);
@@ -204,45 +230,101 @@ public class ShellFeed extends AbstractFeed {
             polls.put(new ShellPollIdentifier(command, env, dir, input, context, timeout), configCopy);
         }
         setConfig(POLLS, polls);
+        if (builder.multiplex != null) setConfig(MULTIPLEX, builder.multiplex);
+    }
+
+    protected boolean isMultiplexed() {
+        Boolean result = getConfig(MULTIPLEX);
+        if (result == null) {
+            result = ((EntityInternal)entity).getManagementContext().getConfig().getConfig(SshFeed.MULTIPLEX_BY_DEFAULT);
+        }
+        return Boolean.TRUE.equals(result);
     }
 
     @Override
     protected void preStart() {
         SetMultimap<ShellPollIdentifier, ShellPollConfig<?>> polls = getConfig(POLLS);
+        boolean multiplex = isMultiplexed();
+        // for multiplexing: the polls with each period, and their handlers, in the same order
+        Map<Long, List<ShellPollIdentifier>> pollsByPeriod = MutableMap.of();
+        Map<Long, List<PollHandler<? super SshPollValue>>> handlersByPeriod = MutableMap.of();
+        final ExecutionContext executionContext = ((EntityInternal) entity).getManagementSupport().getExecutionContext();
         
         for (final ShellPollIdentifier pollInfo : polls.keySet()) {
             Set<ShellPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
+            long maxPeriod = Integer.MAX_VALUE;
             Set<AttributePollHandler<? super SshPollValue>> handlers = Sets.newLinkedHashSet();
 
             for (ShellPollConfig<?> config : configs) {
                 handlers.add(new AttributePollHandler<SshPollValue>(config, entity, this));
-                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+                if (config.getPeriod() > 0) {
+                    minPeriod = Math.min(minPeriod, config.getPeriod());
+                    maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+                }
             }
 
-            final ProcessTaskFactory<?> taskFactory = newTaskFactory(pollInfo.command, pollInfo.env, pollInfo.dir, 
-                    pollInfo.input, pollInfo.context, pollInfo.timeout);
-            final ExecutionContext executionContext = ((EntityInternal) entity).getManagementSupport().getExecutionContext();
+            // adaptive polls are run on their own, as their period differs from the others'
+            if (multiplex && pollInfo.input == null && maxPeriod <= minPeriod) {
+                if (!pollsByPeriod.containsKey(minPeriod)) {
+                    pollsByPeriod.put(minPeriod, MutableList.<ShellPollIdentifier>of());
+                    handlersByPeriod.put(minPeriod, MutableList.<PollHandler<? super SshPollValue>>of());
+                }
+                pollsByPeriod.get(minPeriod).add(pollInfo);
+                handlersByPeriod.get(minPeriod).add(new DelegatingPollHandler<SshPollValue>(handlers));
+            } else {
+                final ProcessTaskFactory<?> taskFactory = newTaskFactory(pollInfo.command, pollInfo.env, pollInfo.dir, 
+                        pollInfo.input, pollInfo.context, pollInfo.timeout);
 
-            getPoller().scheduleAtFixedRate(
-                    new Callable<SshPollValue>() {
-                        @Override public SshPollValue call() throws Exception {
-                            ProcessTaskWrapper<?> taskWrapper = taskFactory.newTask();
-                            executionContext.submit(taskWrapper);
-                            taskWrapper.block();
-                            Optional<Integer> exitCode = Optional.fromNullable(taskWrapper.getExitCode());
-                            return new SshPollValue(null, exitCode.or(-1), taskWrapper.getStdout(), taskWrapper.getStderr());
+                getPoller().scheduleAdaptively(
+                        new Callable<SshPollValue>() {
+                            @Override public SshPollValue call() throws Exception {
+                                return exec(taskFactory, executionContext);
+                            }}, 
+                        new DelegatingPollHandler<SshPollValue>(handlers), 
+                        Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
+            }
+        }
+        
+        for (Map.Entry<Long, List<ShellPollIdentifier>> entry : pollsByPeriod.entrySet()) {
+            final MultiplexedPollScript script = new MultiplexedPollScript();
+            long maxTimeout = 0;
+            for (ShellPollIdentifier pollInfo : entry.getValue()) {
+                script.add(pollInfo.command, pollInfo.env, (pollInfo.dir != null ? pollInfo.dir.getAbsolutePath() : null));
+                maxTimeout = Math.max(maxTimeout, pollInfo.timeout);
+            }
+            final ProcessTaskFactory<?> taskFactory = newTaskFactory(Joiner.on("\n").join(script.toScript()), 
+                    ImmutableMap.<String,String>of(), null, null, "shell-feed ("+script.size()+" polls)", maxTimeout);
+            
+            getMultiplexedPoller().scheduleAtFixedRate(
+                    new Callable<List<SshPollValue>>() {
+                        @Override public List<SshPollValue> call() throws Exception {
+                            SshPollValue result = exec(taskFactory, executionContext);
+                            return script.parse(null, result.getStdout(), result.getStderr());
                         }}, 
-                    new DelegatingPollHandler<SshPollValue>(handlers), 
-                    minPeriod);
+                    new MultiplexedPollHandler<SshPollValue>(handlersByPeriod.get(entry.getKey())), 
+                    entry.getKey());
         }
     }
     
+    private SshPollValue exec(ProcessTaskFactory<?> taskFactory, ExecutionContext executionContext) {
+        ProcessTaskWrapper<?> taskWrapper = taskFactory.newTask();
+        executionContext.submit(taskWrapper);
+        taskWrapper.block();
+        Optional<Integer> exitCode = Optional.fromNullable(taskWrapper.getExitCode());
+        return new SshPollValue(null, exitCode.or(-1), taskWrapper.getStdout(), taskWrapper.getStderr());
+    }
+    
     @SuppressWarnings("unchecked")
     protected Poller<SshPollValue> getPoller() {
         return (Poller<SshPollValue>) super.getPoller();
     }
     
+    @SuppressWarnings("unchecked")
+    protected Poller<List<SshPollValue>> getMultiplexedPoller() {
+        return (Poller<List<SshPollValue>>) super.getPoller();
+    }
+    
     /**
      * Executes the given command (using `bash -l -c $command`, so as to have a good path set).
      * 
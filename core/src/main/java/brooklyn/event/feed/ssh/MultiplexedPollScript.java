@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
+
+import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.text.Identifiers;
+import brooklyn.util.text.StringEscapes.BashStringEscapes;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A single bash script which runs several poll commands, each in its own subshell with its own environment,
+ * and writes their stdout, stderr and exit status between marker lines, so that one execution
+ * (one ssh session, or one local process) serves all of them. The results are split back with {@link #parse}.
+ * <p>
+ * Commands are run one after another, in the order added; a command cannot read stdin.
+ * The script runs every command even if it is run with errexit ({@code bash -e}), as ssh scripts are,
+ * and a command which fails does not stop the others; each command is itself run with errexit if the script was,
+ * so behaves as it would if run on its own.
+ */
+@Beta
+public class MultiplexedPollScript {
+
+    private final String marker = "BROOKLYN_POLL_"+Identifiers.makeRandomId(8);
+    private final List<String> commands = MutableList.of();
+
+    /** @return the index of the command's result in the list returned by {@link #parse} */
+    public int add(String command, Map<String, String> env, @Nullable String dir) {
+        checkNotNull(command, "command");
+        StringBuilder result = new StringBuilder("(\n$BROOKLYN_POLL_ERREXIT\n");
+        if (dir != null) {
+            result.append("cd ").append(BashStringEscapes.wrapBash(dir)).append(" || exit $?\n");
+        }
+        for (Map.Entry<String, String> entry : checkNotNull(env, "env").entrySet()) {
+            result.append("export ").append(entry.getKey()).append("=").append(BashStringEscapes.wrapBash(entry.getValue())).append("\n");
+        }
+        result.append(command).append("\n) < /dev/null");
+        commands.add(result.toString());
+        return commands.size() - 1;
+    }
+
+    public int size() {
+        return commands.size();
+    }
+
+    /** the script, as lines */
+    public List<String> toScript() {
+        List<String> result = MutableList.of();
+        // under errexit, the first command to fail would otherwise end the script, losing all later results;
+        // remember whether errexit was set, to set it again in each command's subshell
+        result.add("case $- in *e*) BROOKLYN_POLL_ERREXIT='set -e' ;; *) BROOKLYN_POLL_ERREXIT=: ;; esac");
+        result.add("set +e");
+        for (int i = 0; i < commands.size(); i++) {
+            result.add("echo "+marker+" "+i+" begin; echo "+marker+" "+i+" begin >&2");
+            result.add(commands.get(i));
+            // the extra newline ensures the end marker starts a line; it is dropped when parsed
+            result.add("BROOKLYN_POLL_EXIT=$?; echo; echo "+marker+" "+i+" end $BROOKLYN_POLL_EXIT; echo >&2; echo "+marker+" "+i+" end >&2");
+        }
+        return result;
+    }
+
+    /**
+     * Splits the output of running the script into a value per command. A command whose output is incomplete
+     * (e.g. because the script was killed) has exit status -1, as for a failed ssh command.
+     * <p>
+     * Markers are matched whether lines end with {@code \n} or {@code \r\n} (as with a pty, which may also
+     * have merged stderr into stdout).
+     */
+    public List<SshPollValue> parse(@Nullable SshMachineLocation machine, String stdout, String stderr) {
+        List<SshPollValue> result = MutableList.of();
+        for (int i = 0; i < commands.size(); i++) {
+            Matcher out = section(i, true).matcher(stdout);
+            Matcher err = section(i, false).matcher(stderr);
+            if (out.find()) {
+                result.add(new SshPollValue(machine, Integer.parseInt(out.group(2)), out.group(1), err.find() ? err.group(1) : ""));
+            } else {
+                result.add(new SshPollValue(machine, -1, null, null));
+            }
+        }
+        return result;
+    }
+
+    private Pattern section(int i, boolean withExitStatus) {
+        String prefix = Pattern.quote(marker+" "+i+" ");
+        return Pattern.compile(prefix+"begin\\r?\\n(.*?)\\r?\\n"+prefix+"end"+(withExitStatus ? " (-?\\d+)" : ""), Pattern.DOTALL);
+    }
+
+    @Override
+    public String toString() {
+        return "MultiplexedPollScript["+commands.size()+" commands]";
+    }
+}
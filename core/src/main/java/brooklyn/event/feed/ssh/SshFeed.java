@@ -34,23 +34,31 @@ import org.slf4j.LoggerFactory;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.MultiplexedPollHandler;
+import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
 import brooklyn.location.basic.Locations;
 import brooklyn.location.basic.Machines;
 import brooklyn.location.basic.SshMachineLocation;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.internal.ssh.SshTool;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Equivalence;
 import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
@@ -101,6 +109,17 @@ public class SshFeed extends AbstractFeed {
     
     public static final ConfigKey<Boolean> EXEC_AS_COMMAND = ConfigKeys.newBooleanConfigKey("execAsCommand");
     
+    /** whether to run all the polls with the same period as one script; if not set, {@link #MULTIPLEX_BY_DEFAULT} */
+    @Beta
+    public static final ConfigKey<Boolean> MULTIPLEX = ConfigKeys.newBooleanConfigKey("multiplex");
+    
+    @Beta
+    public static final ConfigKey<Boolean> MULTIPLEX_BY_DEFAULT = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.feed.multiplexCommandPolls",
+            "Whether ssh and shell feeds run all their polls with the same period as one script (see MultiplexedPollScript), "
+                    + "unless set on the feed",
+            false);
+    
     @SuppressWarnings("serial")
     public static final ConfigKey<SetMultimap<SshPollIdentifier, SshPollConfig<?>>> POLLS = ConfigKeys.newConfigKey(
             new TypeToken<SetMultimap<SshPollIdentifier, SshPollConfig<?>>>() {},
@@ -117,6 +136,7 @@ public class SshFeed extends AbstractFeed {
         private Duration period = Duration.of(500, TimeUnit.MILLISECONDS);
         private List<SshPollConfig<?>> polls = Lists.newArrayList();
         private boolean execAsCommand = false;
+        private Boolean multiplex;
         private volatile boolean built;
         
         public Builder entity(EntityLocal val) {
@@ -157,6 +177,17 @@ public class SshFeed extends AbstractFeed {
             execAsCommand = false;
             return this;
         }
+        /**
+         * Whether to run all the polls due at the same time in one ssh session, rather than one each;
+         * defaults to the management context's {@link SshFeed#MULTIPLEX_BY_DEFAULT}.
+         * 
+         * @see MultiplexedPollScript
+         */
+        @Beta
+        public Builder multiplex(boolean val) {
+            multiplex = val;
+            return this;
+        }
         public SshFeed build() {
             built = true;
             SshFeed result = new SshFeed(this);
@@ -211,6 +242,7 @@ public class SshFeed extends AbstractFeed {
         setConfig(ONLY_IF_SERVICE_UP, builder.onlyIfServiceUp);
         setConfig(MACHINE, builder.machine != null ? builder.machine : null);
         setConfig(EXEC_AS_COMMAND, builder.execAsCommand);
+        if (builder.multiplex != null) setConfig(MULTIPLEX, builder.multiplex);
         
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = HashMultimap.<SshPollIdentifier,SshPollConfig<?>>create();
         for (SshPollConfig<?> config : builder.polls) {
@@ -231,27 +263,68 @@ public class SshFeed extends AbstractFeed {
         }
     }
     
+    protected boolean isMultiplexed() {
+        Boolean result = getConfig(MULTIPLEX);
+        if (result == null) {
+            result = ((EntityInternal)entity).getManagementContext().getConfig().getConfig(MULTIPLEX_BY_DEFAULT);
+        }
+        return Boolean.TRUE.equals(result);
+    }
+    
     @Override
     protected void preStart() {
         SetMultimap<SshPollIdentifier, SshPollConfig<?>> polls = getConfig(POLLS);
+        boolean multiplex = isMultiplexed();
+        // for multiplexing: the polls with each period, and their handlers, in the same order
+        Map<Long, List<SshPollIdentifier>> pollsByPeriod = MutableMap.of();
+        Map<Long, List<PollHandler<? super SshPollValue>>> handlersByPeriod = MutableMap.of();
         
         for (final SshPollIdentifier pollInfo : polls.keySet()) {
             Set<SshPollConfig<?>> configs = polls.get(pollInfo);
             long minPeriod = Integer.MAX_VALUE;
+            long maxPeriod = Integer.MAX_VALUE;
             Set<AttributePollHandler<? super SshPollValue>> handlers = Sets.newLinkedHashSet();
 
             for (SshPollConfig<?> config : configs) {
                 handlers.add(new AttributePollHandler<SshPollValue>(config, entity, this));
-                if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+                if (config.getPeriod() > 0) {
+                    minPeriod = Math.min(minPeriod, config.getPeriod());
+                    maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+                }
             }
             
-            getPoller().scheduleAtFixedRate(
-                    new Callable<SshPollValue>() {
-                        public SshPollValue call() throws Exception {
-                            return exec(pollInfo.command.get(), pollInfo.env.get());
-                        }}, 
-                    new DelegatingPollHandler<SshPollValue>(handlers),
-                    minPeriod);
+            // adaptive polls are run on their own, as their period differs from the others'
+            if (multiplex && maxPeriod <= minPeriod) {
+                if (!pollsByPeriod.containsKey(minPeriod)) {
+                    pollsByPeriod.put(minPeriod, MutableList.<SshPollIdentifier>of());
+                    handlersByPeriod.put(minPeriod, MutableList.<PollHandler<? super SshPollValue>>of());
+                }
+                pollsByPeriod.get(minPeriod).add(pollInfo);
+                handlersByPeriod.get(minPeriod).add(new DelegatingPollHandler<SshPollValue>(handlers));
+            } else {
+                getPoller().scheduleAdaptively(
+                        new Callable<SshPollValue>() {
+                            public SshPollValue call() throws Exception {
+                                return exec(pollInfo.command.get(), pollInfo.env.get());
+                            }}, 
+                        new DelegatingPollHandler<SshPollValue>(handlers),
+                        Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
+            }
+        }
+        
+        for (Map.Entry<Long, List<SshPollIdentifier>> entry : pollsByPeriod.entrySet()) {
+            final List<SshPollIdentifier> pollInfos = entry.getValue();
+            getMultiplexedPoller().scheduleAtFixedRate(
+                    new Callable<List<SshPollValue>>() {
+                        public List<SshPollValue> call() throws Exception {
+                            MultiplexedPollScript script = new MultiplexedPollScript();
+                            for (SshPollIdentifier pollInfo : pollInfos) {
+                                script.add(pollInfo.command.get(), pollInfo.env.get(), null);
+                            }
+                            return execMultiplexed(script);
+                        }},
+                    new MultiplexedPollHandler<SshPollValue>(handlersByPeriod.get(entry.getKey())),
+                    entry.getKey());
         }
     }
     
@@ -260,10 +333,26 @@ public class SshFeed extends AbstractFeed {
         return (Poller<SshPollValue>) super.getPoller();
     }
     
+    @SuppressWarnings("unchecked")
+    protected Poller<List<SshPollValue>> getMultiplexedPoller() {
+        return (Poller<List<SshPollValue>>) super.getPoller();
+    }
+    
     private SshPollValue exec(String command, Map<String,String> env) throws IOException {
         SshMachineLocation machine = getMachine();
-        Boolean execAsCommand = getConfig(EXEC_AS_COMMAND);
         if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing {} with env {}", new Object[] {machine, command, env});
+        return exec(machine, ImmutableList.of(command), env);
+    }
+    
+    private List<SshPollValue> execMultiplexed(MultiplexedPollScript script) throws IOException {
+        SshMachineLocation machine = getMachine();
+        if (log.isTraceEnabled()) log.trace("Ssh polling for {}, executing {}", machine, script);
+        SshPollValue result = exec(machine, script.toScript(), ImmutableMap.<String,String>of());
+        return script.parse(machine, result.getStdout(), result.getStderr());
+    }
+    
+    private SshPollValue exec(SshMachineLocation machine, List<String> commands, Map<String,String> env) throws IOException {
+        Boolean execAsCommand = getConfig(EXEC_AS_COMMAND);
         ByteArrayOutputStream stdout = new ByteArrayOutputStream();
         ByteArrayOutputStream stderr = new ByteArrayOutputStream();
 
@@ -274,10 +363,10 @@ public class SshFeed extends AbstractFeed {
             .configure(SshTool.PROP_ERR_STREAM, stderr);
         if (Boolean.TRUE.equals(execAsCommand)) {
             exitStatus = machine.execCommands(flags.getAllConfig(),
-                    "ssh-feed", ImmutableList.of(command), env);
+                    "ssh-feed", commands, env);
         } else {
             exitStatus = machine.execScript(flags.getAllConfig(),
-                    "ssh-feed", ImmutableList.of(command), env);
+                    "ssh-feed", commands, env);
         }
 
         return new SshPollValue(machine, exitStatus, new String(stdout.toByteArray()), new String(stderr.toByteArray()));
@@ -22,6 +22,8 @@ import javax.annotation.Nullable;
 
 import brooklyn.location.basic.SshMachineLocation;
 
+import com.google.common.base.Objects;
+
 public class SshPollValue {
 
     private final SshMachineLocation machine;
@@ -57,4 +59,17 @@ public class SshPollValue {
     public String getStderr() {
         return stderr;
     }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(machine, exitStatus, stdout, stderr);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof SshPollValue)) return false;
+        SshPollValue o = (SshPollValue) obj;
+        return Objects.equal(machine, o.machine) && exitStatus == o.exitStatus 
+                && Objects.equal(stdout, o.stdout) && Objects.equal(stderr, o.stderr);
+    }
 }
@@ -53,6 +53,11 @@ public class BrooklynFeatureEnablement {
 
     public static final String FEATURE_CATALOG_PERSISTENCE_PROPERTY = "brooklyn.experimental.feature.catalogPersistence";
     
+    /** whether a change to an entity causes all its locations, policies, enrichers and feeds to be re-persisted;
+     * by default only those which have reported a change themselves (or which cannot report all their changes,
+     * such as those with persisted flag fields) are persisted */
+    public static final String FEATURE_PERSIST_ALL_REFERENCED_OBJECTS_PROPERTY = "brooklyn.experimental.feature.persistAllReferencedObjects";
+    
     /** whether the default standby mode is {@link HighAvailabilityMode#HOT_STANDBY} or falling back to the traditional
      * {@link HighAvailabilityMode#STANDBY} */
     public static final String FEATURE_DEFAULT_STANDBY_IS_HOT_PROPERTY = "brooklyn.experimental.feature.defaultStandbyIsHot";
@@ -87,6 +92,7 @@ public class BrooklynFeatureEnablement {
         setDefault(FEATURE_FEED_PERSISTENCE_PROPERTY, true);
         setDefault(FEATURE_FEED_REGISTRATION_PROPERTY, false);
         setDefault(FEATURE_CATALOG_PERSISTENCE_PROPERTY, true);
+        setDefault(FEATURE_PERSIST_ALL_REFERENCED_OBJECTS_PROPERTY, false);
         setDefault(FEATURE_DEFAULT_STANDBY_IS_HOT_PROPERTY, false);
         setDefault(FEATURE_USE_BROOKLYN_LIVE_OBJECTS_DATAGRID_STORAGE, false);
         setDefault(FEATURE_RENAME_THREADS, false);
@@ -23,8 +23,10 @@ import static com.google.common.base.Preconditions.checkState;
 
 import java.io.IOException;
 import java.net.URI;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
 
@@ -62,6 +64,7 @@ import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
 import com.google.common.collect.Iterables;
 
@@ -135,6 +138,10 @@ public class HighAvailabilityManagerImpl implements HighAvailabilityManager {
     private volatile ManagementNodeState nodeState = ManagementNodeState.INITIALIZING;
     private volatile boolean nodeStateTransitionComplete = false;
     private volatile long priority = 0;
+    
+    private final AtomicInteger promotionCount = new AtomicInteger();
+    private volatile ManagementNodeState lastPromotionFromState;
+    private volatile Duration lastPromotionDuration;
 
     public HighAvailabilityManagerImpl(ManagementContextInternal managementContext) {
         this.managementContext = managementContext;
@@ -663,6 +670,8 @@ public class HighAvailabilityManagerImpl implements HighAvailabilityManager {
                 LOG.warn("Problem in promption-listener (continuing)", e);
             }
         }
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        ManagementNodeState previousState = nodeState;
         boolean wasHotStandby = nodeState==ManagementNodeState.HOT_STANDBY;
         nodeState = ManagementNodeState.MASTER;
         publishPromotionToMaster();
@@ -680,6 +689,28 @@ public class HighAvailabilityManagerImpl implements HighAvailabilityManager {
             throw Exceptions.propagate(e);
         }
         managementContext.getRebindManager().start();
+        
+        lastPromotionFromState = previousState;
+        lastPromotionDuration = Duration.of(stopwatch);
+        promotionCount.incrementAndGet();
+        LOG.info("Management node "+ownNodeId+" promoted to master from "+previousState+" in "+lastPromotionDuration);
+    }
+    
+    /** time taken by the most recent promotion of this node to master, including rebind; null if never promoted */
+    public Duration getLastPromotionDuration() {
+        return lastPromotionDuration;
+    }
+    
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> result = MutableMap.of();
+        result.put("state", getNodeState());
+        result.put("promotions", promotionCount.get());
+        if (lastPromotionDuration != null) {
+            result.put("lastPromotionFromState", lastPromotionFromState);
+            result.put("lastPromotionDurationMillis", lastPromotionDuration.toMilliseconds());
+        }
+        return result;
     }
     
     protected void demoteToFailed() {
@@ -73,6 +73,7 @@ import brooklyn.util.ResourceUtils;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.config.ConfigBag;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpConnectionPool;
 import brooklyn.util.task.BasicExecutionContext;
 import brooklyn.util.task.Tasks;
 
@@ -150,6 +151,8 @@ public abstract class AbstractManagementContext implements ManagementContextInte
     
     private final BrooklynStorage storage;
 
+    private HttpConnectionPool httpConnectionPool;
+
     private volatile boolean running = true;
 
     protected Maybe<URI> uri = Maybe.absent();
@@ -180,6 +183,9 @@ public abstract class AbstractManagementContext implements ManagementContextInte
         highAvailabilityManager.stop();
         rebindManager.stop();
         storage.terminate();
+        synchronized (this) {
+            if (httpConnectionPool != null) httpConnectionPool.shutdown();
+        }
         // Don't unmanage everything; different entities get given their events at different times 
         // so can cause problems (e.g. a group finds out that a member is unmanaged, before the
         // group itself has been told that it is unmanaged).
@@ -194,6 +200,15 @@ public abstract class AbstractManagementContext implements ManagementContextInte
     public BrooklynStorage getStorage() {
         return storage;
     }
+
+    @Override
+    public synchronized HttpConnectionPool getHttpConnectionPool() {
+        if (!isRunning()) throw new IllegalStateException("Management context no longer running");
+        if (httpConnectionPool == null) {
+            httpConnectionPool = new HttpConnectionPool(getConfig());
+        }
+        return httpConnectionPool;
+    }
     
     @Override
     public RebindManager getRebindManager() {
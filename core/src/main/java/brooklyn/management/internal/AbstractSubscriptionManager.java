@@ -95,6 +95,8 @@ public abstract class AbstractSubscriptionManager implements SubscriptionManager
      * <li>subscriberExecutionManagerTag - a tag to pass to execution manager (without setting any execution semantics / TaskPreprocessor);
      *      if not supplied and there is a subscriber, this will be inferred from the subscriber and set up with SingleThreadedScheduler
      * <li>eventFilter - a Predicate&lt;SensorEvent&gt; instance to filter what events are delivered
+     * <li>conflation - a {@link brooklyn.event.basic.SensorConflation} overriding that of the sensor for this subscription;
+     *      e.g. LATEST_VALUE_ONLY so that a slow subscriber only sees the newest pending value
      * </ul>
      * 
      * @see SubscriptionManager#subscribe(Map, Entity, Sensor, SensorEventListener)
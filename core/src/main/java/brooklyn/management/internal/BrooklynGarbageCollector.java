@@ -27,13 +27,16 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,9 +62,11 @@ import brooklyn.util.task.ExecutionListener;
 import brooklyn.util.task.Tasks;
 import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
 
 import com.google.api.client.repackaged.com.google.common.base.Objects;
 import com.google.common.annotations.Beta;
+import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 
 /**
@@ -80,6 +85,9 @@ import com.google.common.collect.Iterables;
  * and keeping at most 100000 tasks in the system,
  * max 1000 tasks per entity, 50 per effector within that entity, and 50 per other non-effector tag
  * within that entity (or global if not attached to an entity).
+ * <p>
+ * By default ({@link #INCREMENTAL}) completed tasks are recorded as they finish, by end time and by tag,
+ * so that the oldest can be found without scanning all tasks; see {@link CompletedTaskIndex}.
  * 
  * @author aled
  */
@@ -132,6 +140,16 @@ public class BrooklynGarbageCollector {
             "brooklyn.gc.maxTaskAge", 
             "the duration after which a completed task will be automatically deleted", 
             Duration.days(30));
+
+    /**
+     * whether to record tasks as they complete, in time buckets and per tag, so that each GC iteration
+     * only visits the tasks it deletes, rather than scanning and sorting all tasks in memory
+     * @since 0.7.0 */
+    @Beta
+    public static final ConfigKey<Boolean> INCREMENTAL = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.gc.incremental",
+            "whether to expire tasks incrementally, from indexes maintained as tasks complete, rather than by scanning all tasks",
+            true);
     
     protected final static Comparator<Task<?>> TASKS_OLDEST_FIRST_COMPARATOR = new Comparator<Task<?>>() {
         @Override public int compare(Task<?> t1, Task<?> t2) {
@@ -152,12 +170,24 @@ public class BrooklynGarbageCollector {
     private final boolean doSystemGc;
     private volatile boolean running = true;
     
+    private final boolean incremental;
+    private final CompletedTaskIndex completedTasks = new CompletedTaskIndex();
+    /** ids of tasks deleted since the last incremental pass, whose subtasks (found by submitter) might now need deleting */
+    private final Queue<String> deletedSubmitterIds = new ConcurrentLinkedQueue<String>();
+    
+    private final AtomicLong totalTasksEvicted = new AtomicLong();
+    private final AtomicLong totalGcTimeMillis = new AtomicLong();
+    private volatile long lastGcTimeMillis = 0;
+    private volatile long lastGcStartUtc = 0;
+    private volatile double lastTasksEvictedPerSecond = 0;
+    
     public BrooklynGarbageCollector(BrooklynProperties brooklynProperties, BasicExecutionManager executionManager, BrooklynStorage storage) {
         this.executionManager = executionManager;
         this.storage = storage;
         this.brooklynProperties = brooklynProperties;
 
         doSystemGc = brooklynProperties.getConfig(DO_SYSTEM_GC);
+        incremental = brooklynProperties.getConfig(INCREMENTAL);
         
         executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
                 @Override public Thread newThread(Runnable r) {
@@ -193,7 +223,10 @@ public class BrooklynGarbageCollector {
     public void gcIteration() {
         try {
             logUsage("brooklyn gc (before)");
-            gcTasks();
+            long startUtc = System.currentTimeMillis();
+            int evicted = gcTasks();
+            long endUtc = System.currentTimeMillis();
+            recordGcMetrics(startUtc, endUtc, evicted);
             logUsage("brooklyn gc (after)");
             
             if (doSystemGc) {
@@ -211,6 +244,37 @@ public class BrooklynGarbageCollector {
         }
     }
 
+    private synchronized void recordGcMetrics(long startUtc, long endUtc, int evicted) {
+        long timeMillis = endUtc - startUtc;
+        totalTasksEvicted.addAndGet(evicted);
+        totalGcTimeMillis.addAndGet(timeMillis);
+        lastGcTimeMillis = timeMillis;
+        if (lastGcStartUtc > 0 && startUtc > lastGcStartUtc) {
+            lastTasksEvictedPerSecond = evicted * 1000.0 / (startUtc - lastGcStartUtc);
+        }
+        lastGcStartUtc = startUtc;
+    }
+
+    /** number of tasks deleted by GC iterations (not including those deleted immediately on completion) */
+    public long getTotalTasksEvicted() {
+        return totalTasksEvicted.get();
+    }
+
+    /** tasks deleted by the last GC iteration, per second since the iteration before it */
+    public double getTasksEvictedPerSecond() {
+        return lastTasksEvictedPerSecond;
+    }
+
+    /** time spent in the last GC iteration */
+    public Duration getLastGcTime() {
+        return Duration.millis(lastGcTimeMillis);
+    }
+
+    /** time spent in all GC iterations */
+    public Duration getTotalGcTime() {
+        return Duration.millis(totalGcTimeMillis.get());
+    }
+
     public void logUsage(String prefix) {
         if (LOG.isDebugEnabled())
             LOG.debug(prefix+" - using "+getUsageString());
@@ -225,7 +289,12 @@ public class BrooklynGarbageCollector {
             executionManager.getNumActiveTasks()+" active, "+
             executionManager.getNumIncompleteTasks()+" unfinished; "+
             executionManager.getNumInMemoryTasks()+" remembered, "+
-            executionManager.getTotalTasksSubmitted()+" total submitted)";
+            executionManager.getTotalTasksSubmitted()+" total submitted; "+
+            "gc: " +
+            totalTasksEvicted.get()+" evicted, "+
+            String.format("%.1f", lastTasksEvictedPerSecond)+"/s, "+
+            Time.makeTimeStringRounded(lastGcTimeMillis)+" last, "+
+            Time.makeTimeStringRounded(totalGcTimeMillis.get())+" total)";
     }
     
     public void shutdownNow() {
@@ -244,10 +313,21 @@ public class BrooklynGarbageCollector {
     
     public void deleteTasksForEntity(Entity entity) {
         // remove all references to this entity from tasks
-        executionManager.deleteTag(entity);
-        executionManager.deleteTag(BrooklynTaskTags.tagForContextEntity(entity));
-        executionManager.deleteTag(BrooklynTaskTags.tagForCallerEntity(entity));
-        executionManager.deleteTag(BrooklynTaskTags.tagForTargetEntity(entity));
+        deleteTag(entity);
+        deleteTag(BrooklynTaskTags.tagForContextEntity(entity));
+        deleteTag(BrooklynTaskTags.tagForCallerEntity(entity));
+        deleteTag(BrooklynTaskTags.tagForTargetEntity(entity));
+    }
+    
+    private void deleteTag(Object tag) {
+        if (incremental) {
+            Set<Task<?>> tasks = executionManager.tasksWithTagLiveOrNull(tag);
+            if (tasks!=null) {
+                for (Task<?> task: MutableList.copyOf(tasks)) noteDeleted(task);
+            }
+        }
+        executionManager.deleteTag(tag);
+        completedTasks.removeTag(tag);
     }
     
     public void onUnmanaged(Location loc) {
@@ -256,7 +336,32 @@ public class BrooklynGarbageCollector {
     
     public void onTaskDone(Task<?> task) {
         if (shouldDeleteTaskImmediately(task)) {
-            executionManager.deleteTask(task);
+            deleteTask(task);
+        } else if (incremental && task.isDone()) {
+            List<Object> gcTags = MutableList.of();
+            for (Object tag: task.getTags()) {
+                if (TagCategory.ENTITY.acceptsTag(tag) || TagCategory.NON_ENTITY_NORMAL.acceptsTag(tag))
+                    gcTags.add(tag);
+            }
+            completedTasks.add(task, gcTags);
+            // the submitter may have been deleted (and its subtasks looked up) since shouldDeleteTaskImmediately checked
+            Task<?> submitter = task.getSubmittedByTask();
+            if (submitter!=null && submitter.isDone() && executionManager.getTask(submitter.getId())==null) {
+                deleteTask(task);
+            }
+        }
+    }
+    
+    /** deletes the task (and its children), noting their ids if incremental so that tasks they submitted can be found */
+    protected void deleteTask(Task<?> task) {
+        executionManager.deleteTask(task);
+        if (incremental) noteDeleted(task);
+    }
+    
+    private void noteDeleted(Task<?> task) {
+        deletedSubmitterIds.add(task.getId());
+        if (task instanceof HasTaskChildren) {
+            for (Task<?> child: ((HasTaskChildren)task).getChildren()) noteDeleted(child);
         }
     }
     
@@ -326,6 +431,8 @@ public class BrooklynGarbageCollector {
         }
     
         expireUnmanagedEntityTasks();
+        if (incremental) return gcTasksIncrementally();
+        
         expireAgedTasks();
         expireTransientTasks();
         
@@ -344,17 +451,17 @@ public class BrooklynGarbageCollector {
         for (Object tag : taskTags) {
             if (isTagIgnoredForGc(tag)) continue;
             
-            Set<Task<?>> tasksWithTag = executionManager.tasksWithTagLiveOrNull(tag);
-            if (tasksWithTag==null) continue;
+            int numTasksWithTag = executionManager.getNumTasksWithTag(tag);
+            if (numTasksWithTag==0) continue;
             AtomicInteger overA = null;
             if (tag instanceof WrappedEntity) {
-                int over = tasksWithTag.size() - maxTasksPerEntity;
+                int over = numTasksWithTag - maxTasksPerEntity;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskEntityTagsOverCapacity.put(tag, overA);
                 }
             } else {
-                int over = tasksWithTag.size() - maxTasksPerTag;
+                int over = numTasksWithTag - maxTasksPerTag;
                 if (over>0) {
                     overA = new AtomicInteger(over);
                     taskNonEntityTagsOverCapacity.put(tag, overA);
@@ -377,6 +484,119 @@ public class BrooklynGarbageCollector {
         return deletedCount;
     }
 
+    /**
+     * As {@link #gcTasks()}, but using the tasks recorded as they completed, oldest first,
+     * so the cost is proportional to the number of tasks deleted
+     * (and, for tags over capacity, the number of tasks with that tag).
+     */
+    protected int gcTasksIncrementally() {
+        int maxTasksPerEntity = brooklynProperties.getConfig(MAX_TASKS_PER_ENTITY);
+        int maxTasksPerTag = brooklynProperties.getConfig(MAX_TASKS_PER_TAG);
+        
+        int deletedCount = 0;
+        deletedCount += expireAgedTasksIncrementally();
+        expireTransientTasks();
+        
+        // non-entity tags first, as for the scanning GC
+        for (Object tag: completedTasks.tags()) {
+            if (TagCategory.NON_ENTITY_NORMAL.acceptsTag(tag))
+                deletedCount += expireOverCapacityTagIncrementally(tag, TagCategory.NON_ENTITY_NORMAL, maxTasksPerTag, maxTasksPerEntity);
+        }
+        for (Object tag: completedTasks.tags()) {
+            if (TagCategory.ENTITY.acceptsTag(tag))
+                deletedCount += expireOverCapacityTagIncrementally(tag, TagCategory.ENTITY, maxTasksPerTag, maxTasksPerEntity);
+        }
+        deletedCount += expireIfOverCapacityGloballyIncrementally();
+        
+        deletedCount += expireSubTasksOfDeletedSubmitters();
+        
+        // drop index entries for tasks deleted by other means, if they have built up
+        if (completedTasks.size() > 2*(executionManager.getNumInMemoryTasks() + maxTasksPerEntity)) {
+            completedTasks.retain(new Predicate<String>() {
+                @Override public boolean apply(String taskId) {
+                    return executionManager.getTask(taskId)!=null;
+                }
+            });
+        }
+        return deletedCount;
+    }
+    
+    protected int expireAgedTasksIncrementally() {
+        Duration maxTaskAge = brooklynProperties.getConfig(MAX_TASK_AGE);
+        int deleted = 0;
+        for (String taskId: completedTasks.removeEndedBefore(System.currentTimeMillis() - maxTaskAge.toMilliseconds())) {
+            Task<?> task = executionManager.getTask(taskId);
+            // subtasks are deleted along with their parent
+            if (task==null || BrooklynTaskTags.isSubTask(task)) continue;
+            deleteTask(task);
+            deleted++;
+        }
+        return deleted;
+    }
+    
+    /**
+     * Deletes the oldest tasks with the given tag, if it is over capacity; as with
+     * {@link #expireOverCapacityTagsInCategory(Map, Map, TagCategory, boolean)}, a task whose other tags in the category
+     * are not all over capacity is given grace (and counts towards the tag's capacity).
+     */
+    protected int expireOverCapacityTagIncrementally(Object tag, TagCategory category, int maxTasksPerTag, int maxTasksPerEntity) {
+        int over = executionManager.getNumTasksWithTag(tag) - (category==TagCategory.ENTITY ? maxTasksPerEntity : maxTasksPerTag);
+        if (over <= 0) return 0;
+        
+        // first give grace, as tasks with spare capacity in another tag are not deleted regardless of their age
+        Iterator<String> ids = completedTasks.idsForTag(tag);
+        while (over > 0 && ids.hasNext()) {
+            Task<?> task = executionManager.getTask(ids.next());
+            if (task==null) {
+                ids.remove();
+            } else if (!isOverCapacityInOtherTags(task, tag, category, maxTasksPerTag, maxTasksPerEntity)) {
+                over--;
+            }
+        }
+        
+        int deleted = 0;
+        ids = completedTasks.idsForTag(tag);
+        while (over > 0 && ids.hasNext()) {
+            Task<?> task = executionManager.getTask(ids.next());
+            if (task==null) {
+                ids.remove();
+            } else if (isOverCapacityInOtherTags(task, tag, category, maxTasksPerTag, maxTasksPerEntity)) {
+                deleteTask(task);
+                ids.remove();
+                deleted++;
+                over--;
+            }
+        }
+        if (deleted>0 && LOG.isDebugEnabled())
+            LOG.debug("brooklyn-gc deleted "+deleted+" tasks in over-capacity "+category+" tag "+tag);
+        return deleted;
+    }
+    
+    private boolean isOverCapacityInOtherTags(Task<?> task, Object tag, TagCategory category, int maxTasksPerTag, int maxTasksPerEntity) {
+        int max = (category==TagCategory.ENTITY ? maxTasksPerEntity : maxTasksPerTag);
+        for (Object otherTag: task.getTags()) {
+            if (!category.acceptsTag(otherTag) || otherTag.equals(tag)) continue;
+            if (executionManager.getNumTasksWithTag(otherTag) <= max) return false;
+        }
+        return true;
+    }
+    
+    protected int expireIfOverCapacityGloballyIncrementally() {
+        int maxTasksGlobal = brooklynProperties.getConfig(MAX_TASKS_GLOBAL);
+        int deleted = 0;
+        while (executionManager.getNumInMemoryTasks() - executionManager.getNumIncompleteTasks() > maxTasksGlobal) {
+            String taskId = completedTasks.pollOldest();
+            if (taskId==null) break;
+            Task<?> task = executionManager.getTask(taskId);
+            if (task==null) continue;
+            deleteTask(task);
+            deleted++;
+        }
+        if (deleted>0 && LOG.isDebugEnabled())
+            LOG.debug("brooklyn-gc deleted "+deleted+" tasks as was over global limit, now have "+executionManager.getNumInMemoryTasks());
+        return deleted;
+    }
+
     protected static boolean isTagIgnoredForGc(Object tag) {
         if (tag == null) return true;
         if (tag.equals(ManagementContextInternal.EFFECTOR_TAG)) return true;
@@ -432,10 +652,12 @@ public class BrooklynGarbageCollector {
     }
     
     protected void expireTransientTasks() {
-        Set<Task<?>> transientTasks = executionManager.getTasksWithTag(BrooklynTaskTags.TRANSIENT_TASK_TAG);
+        // live view, safe to iterate while deleting, so no need to copy
+        Set<Task<?>> transientTasks = executionManager.tasksWithTagLiveOrNull(BrooklynTaskTags.TRANSIENT_TASK_TAG);
+        if (transientTasks==null) return;
         for (Task<?> t: transientTasks) {
             if (!t.isDone()) continue;
-            executionManager.deleteTask(t);
+            deleteTask(t);
         }
     }
     
@@ -468,6 +690,31 @@ public class BrooklynGarbageCollector {
         return tasksToDelete.size();
     }
     
+    /**
+     * As {@link #expireSubTasksWhoseSubmitterIsExpired()}, but looking only at completed tasks submitted by
+     * tasks deleted since the last pass (and, in turn, tasks submitted by those), 
+     * so the cost is proportional to the number of tasks deleted rather than to all tasks in memory.
+     */
+    protected int expireSubTasksOfDeletedSubmitters() {
+        if (!brooklynProperties.getConfig(CHECK_SUBTASK_SUBMITTERS)) {
+            deletedSubmitterIds.clear();
+            return 0;
+        }
+        
+        int deleted = 0;
+        String submitterId;
+        while ((submitterId = deletedSubmitterIds.poll())!=null) {
+            for (String taskId: completedTasks.removeSubmittedBy(submitterId)) {
+                Task<?> task = executionManager.getTask(taskId);
+                if (task==null) continue;
+                // notes this task as deleted, so tasks it submitted are picked up by this loop
+                deleteTask(task);
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    
     protected enum TagCategory { 
         ENTITY, NON_ENTITY_NORMAL;
         
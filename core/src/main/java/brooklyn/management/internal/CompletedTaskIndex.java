@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.base.Predicate;
+
+/**
+ * Records completed tasks, as they complete, so that {@link BrooklynGarbageCollector} can find
+ * the oldest ones without scanning and sorting all tasks in memory.
+ * <p>
+ * Tasks are recorded by id (so that a task deleted by other means is not kept in memory) in
+ * time buckets of {@link #AGE_BUCKET_MILLIS}, ordered by end time, in a FIFO per tag,
+ * and by the id of the task which submitted them (so subtasks of a deleted task can be found).
+ * Ids of tasks which have since been deleted are skipped by the consumer, and dropped
+ * by {@link #retain(Predicate)} when the index grows too large relative to the tasks in memory.
+ * <p>
+ * Adds may come from any thread; removals are expected from a single (GC) thread.
+ */
+class CompletedTaskIndex {
+
+    static final long AGE_BUCKET_MILLIS = 1000;
+
+    private static class CompletedTask {
+        final String id;
+        final long endTimeUtc;
+        CompletedTask(String id, long endTimeUtc) {
+            this.id = id;
+            this.endTimeUtc = endTimeUtc;
+        }
+    }
+
+    /** queue of items with a size maintained in O(1), removals made through {@link #iterator()} */
+    private static class CountedQueue<T> implements Iterable<T> {
+        final Queue<T> items = new ConcurrentLinkedQueue<T>();
+        final AtomicInteger size = new AtomicInteger();
+        void add(T item) {
+            items.add(item);
+            size.incrementAndGet();
+        }
+        T poll() {
+            T result = items.poll();
+            if (result!=null) size.decrementAndGet();
+            return result;
+        }
+        boolean isEmpty() {
+            return items.isEmpty();
+        }
+        @Override
+        public Iterator<T> iterator() {
+            final Iterator<T> delegate = items.iterator();
+            return new Iterator<T>() {
+                @Override public boolean hasNext() { return delegate.hasNext(); }
+                @Override public T next() { return delegate.next(); }
+                @Override public void remove() {
+                    delegate.remove();
+                    size.decrementAndGet();
+                }
+            };
+        }
+    }
+
+    private final ConcurrentNavigableMap<Long, CountedQueue<CompletedTask>> byAge = new ConcurrentSkipListMap<Long, CountedQueue<CompletedTask>>();
+    private final ConcurrentMap<Object, CountedQueue<String>> byTag = new ConcurrentHashMap<Object, CountedQueue<String>>();
+    private final ConcurrentMap<String, CountedQueue<String>> bySubmitter = new ConcurrentHashMap<String, CountedQueue<String>>();
+    private final AtomicInteger ageIndexSize = new AtomicInteger();
+
+    /** records a completed task, in its age bucket and under each of the given tags */
+    void add(Task<?> task, Iterable<?> tags) {
+        Long bucket = bucketFor(task.getEndTimeUtc());
+        CountedQueue<CompletedTask> ages = byAge.get(bucket);
+        if (ages==null) {
+            byAge.putIfAbsent(bucket, new CountedQueue<CompletedTask>());
+            ages = byAge.get(bucket);
+        }
+        ages.add(new CompletedTask(task.getId(), task.getEndTimeUtc()));
+        ageIndexSize.incrementAndGet();
+
+        for (Object tag: tags) {
+            CountedQueue<String> ids = byTag.get(tag);
+            if (ids==null) {
+                byTag.putIfAbsent(tag, new CountedQueue<String>());
+                ids = byTag.get(tag);
+            }
+            ids.add(task.getId());
+        }
+        
+        Task<?> submitter = task.getSubmittedByTask();
+        if (submitter!=null) {
+            CountedQueue<String> ids = bySubmitter.get(submitter.getId());
+            if (ids==null) {
+                bySubmitter.putIfAbsent(submitter.getId(), new CountedQueue<String>());
+                ids = bySubmitter.get(submitter.getId());
+            }
+            ids.add(task.getId());
+        }
+    }
+
+    private static Long bucketFor(long timeUtc) {
+        return timeUtc - (timeUtc % AGE_BUCKET_MILLIS);
+    }
+
+    /** removes and returns the ids of tasks which ended before the given time, oldest first */
+    List<String> removeEndedBefore(long cutoffUtc) {
+        List<String> result = MutableList.of();
+        Iterator<Map.Entry<Long, CountedQueue<CompletedTask>>> bi = byAge.headMap(bucketFor(cutoffUtc), true).entrySet().iterator();
+        while (bi.hasNext()) {
+            Map.Entry<Long, CountedQueue<CompletedTask>> bucket = bi.next();
+            Iterator<CompletedTask> ti = bucket.getValue().iterator();
+            while (ti.hasNext()) {
+                CompletedTask t = ti.next();
+                // only the last bucket will have tasks which ended after the cutoff
+                if (t.endTimeUtc < cutoffUtc) {
+                    ti.remove();
+                    ageIndexSize.decrementAndGet();
+                    result.add(t.id);
+                }
+            }
+            removeIfEmpty(bucket.getKey(), bucket.getValue());
+        }
+        return result;
+    }
+
+    /** removes and returns the id of the task which ended first, or null if there are none */
+    String pollOldest() {
+        for (Map.Entry<Long, CountedQueue<CompletedTask>> bucket: byAge.entrySet()) {
+            CompletedTask t = bucket.getValue().poll();
+            if (t!=null) {
+                ageIndexSize.decrementAndGet();
+                return t.id;
+            }
+            removeIfEmpty(bucket.getKey(), bucket.getValue());
+        }
+        return null;
+    }
+
+    private void removeIfEmpty(Long key, CountedQueue<CompletedTask> bucket) {
+        if (!bucket.isEmpty() || !byAge.remove(key, bucket)) return;
+        // a task might have been added between the check and the removal (if its listener was slow); keep it
+        if (!bucket.isEmpty()) {
+            CompletedTask t;
+            while ((t = bucket.poll())!=null) {
+                CountedQueue<CompletedTask> replacement = byAge.get(key);
+                if (replacement==null) {
+                    byAge.putIfAbsent(key, new CountedQueue<CompletedTask>());
+                    replacement = byAge.get(key);
+                }
+                replacement.add(t);
+            }
+        }
+    }
+
+    /** tags which have tasks recorded */
+    Set<Object> tags() {
+        return byTag.keySet();
+    }
+
+    /** ids of tasks with the given tag, oldest first; remove through the iterator once a task is deleted */
+    Iterator<String> idsForTag(Object tag) {
+        CountedQueue<String> ids = byTag.get(tag);
+        if (ids==null) return MutableList.<String>of().iterator();
+        return ids.iterator();
+    }
+
+    void removeTag(Object tag) {
+        byTag.remove(tag);
+    }
+
+    /** removes and returns the ids of completed tasks which were submitted by the given task */
+    List<String> removeSubmittedBy(String submitterId) {
+        CountedQueue<String> ids = bySubmitter.remove(submitterId);
+        if (ids==null) return MutableList.of();
+        return MutableList.copyOf(ids);
+    }
+
+    /** number of entries in the index, including those for tasks which may have been deleted */
+    int size() {
+        int result = ageIndexSize.get();
+        for (CountedQueue<String> ids: byTag.values()) result += ids.size.get();
+        for (CountedQueue<String> ids: bySubmitter.values()) result += ids.size.get();
+        return result;
+    }
+
+    /** drops entries for tasks not accepted by the given filter (e.g. because they have been deleted) */
+    void retain(Predicate<String> taskIdFilter) {
+        for (Map.Entry<Long, CountedQueue<CompletedTask>> bucket: byAge.entrySet()) {
+            Iterator<CompletedTask> ti = bucket.getValue().iterator();
+            while (ti.hasNext()) {
+                if (!taskIdFilter.apply(ti.next().id)) {
+                    ti.remove();
+                    ageIndexSize.decrementAndGet();
+                }
+            }
+            removeIfEmpty(bucket.getKey(), bucket.getValue());
+        }
+        retainIds(byTag, taskIdFilter);
+        retainIds(bySubmitter, taskIdFilter);
+    }
+
+    private static <K> void retainIds(ConcurrentMap<K, CountedQueue<String>> index, Predicate<String> taskIdFilter) {
+        for (Map.Entry<K, CountedQueue<String>> entry: index.entrySet()) {
+            Iterator<String> ii = entry.getValue().iterator();
+            while (ii.hasNext()) {
+                if (!taskIdFilter.apply(ii.next())) ii.remove();
+            }
+            if (entry.getValue().isEmpty() && index.remove(entry.getKey(), entry.getValue())) {
+                // as for age buckets, keep anything added concurrently
+                String id;
+                while ((id = entry.getValue().poll())!=null) {
+                    CountedQueue<String> replacement = index.get(entry.getKey());
+                    if (replacement==null) {
+                        index.putIfAbsent(entry.getKey(), new CountedQueue<String>());
+                        replacement = index.get(entry.getKey());
+                    }
+                    replacement.add(id);
+                }
+            }
+        }
+    }
+}
@@ -294,7 +294,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
 
         if (subscriptions == null) {
-            subscriptions = new LocalSubscriptionManager(getExecutionManager());
+            subscriptions = new LocalSubscriptionManager(getExecutionManager(), configMap);
         }
         return subscriptions;
     }
@@ -304,7 +304,7 @@ public class LocalManagementContext extends AbstractManagementContext {
         if (!isRunning()) throw new IllegalStateException("Management context no longer running");
 
         if (execution == null) {
-            execution = new BasicExecutionManager(getManagementNodeId());
+            execution = new BasicExecutionManager(getManagementNodeId(), configMap);
             gc = new BrooklynGarbageCollector(configMap, execution, getStorage());
         }
         return execution;
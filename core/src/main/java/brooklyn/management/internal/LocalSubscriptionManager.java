@@ -19,12 +19,12 @@
 package brooklyn.management.internal;
 
 import static brooklyn.util.JavaGroovyEquivalents.elvis;
-import static brooklyn.util.JavaGroovyEquivalents.groovyTruth;
-import static brooklyn.util.JavaGroovyEquivalents.join;
 import static brooklyn.util.JavaGroovyEquivalents.mapOf;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
@@ -36,15 +36,20 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.entity.basic.Entities;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.SensorConflation;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
 import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.task.SingleThreadedScheduler;
 import brooklyn.util.text.Identifiers;
 
@@ -60,22 +65,45 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
     
     private static final Logger LOG = LoggerFactory.getLogger(LocalSubscriptionManager.class);
 
+    public static final ConfigKey<Boolean> DELIVER_EVENTS_AS_TASKS = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.subscriptions.deliverEventsAsTasks",
+            "whether to deliver each event to each subscriber as its own task (useful for debugging, as deliveries "
+            + "then show up as tasks, but expensive under high sensor churn); "
+            + "if false, events are queued per subscriber and delivered in batches; "
+            + "note that when true, every event is delivered, ignoring SensorConflation.LATEST_VALUE_ONLY "
+            + "(which needs the per-subscriber queue)",
+            false);
+
     protected final ExecutionManager em;
     
+    protected final boolean deliverEventsAsTasks;
+    
     private final String tostring = "SubscriptionContext("+Identifiers.getBase64IdFromValue(System.identityHashCode(this), 5)+")";
 
     private final AtomicLong totalEventsPublishedCount = new AtomicLong();
     private final AtomicLong totalEventsDeliveredCount = new AtomicLong();
+    private final AtomicLong totalEventsConflatedCount = new AtomicLong();
     
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<String, Subscription> allSubscriptions = new ConcurrentHashMap<String, Subscription>();
     @SuppressWarnings("rawtypes")
     protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsBySubscriber = new ConcurrentHashMap<Object, Set<Subscription>>();
-    @SuppressWarnings("rawtypes")
-    protected final ConcurrentMap<Object, Set<Subscription>> subscriptionsByToken = new ConcurrentHashMap<Object, Set<Subscription>>();
+    /** index used by {@link #publish(SensorEvent)}, which can be read without locking */
+    protected final SubscriptionIndex subscriptionIndex = new SubscriptionIndex();
+    /** delivery queues by subscriber execution manager tag (or by subscription, if there is no tag); guarded by this */
+    protected final Map<Object, SubscriptionDeliveryQueue> deliveryQueues = new HashMap<Object, SubscriptionDeliveryQueue>();
     
     public LocalSubscriptionManager(ExecutionManager m) {
+        this(m, false);
+    }
+    
+    public LocalSubscriptionManager(ExecutionManager m, StringConfigMap config) {
+        this(m, config.getConfig(DELIVER_EVENTS_AS_TASKS));
+    }
+    
+    public LocalSubscriptionManager(ExecutionManager m, boolean deliverEventsAsTasks) {
         this.em = m;
+        this.deliverEventsAsTasks = deliverEventsAsTasks;
     }
         
     public long getNumSubscriptions() {
@@ -90,6 +118,11 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         return totalEventsDeliveredCount.get();
     }
     
+    /** count of events not delivered because they were superseded by a newer value, as per {@link SensorConflation#LATEST_VALUE_ONLY} */
+    public long getTotalEventsConflated() {
+        return totalEventsConflatedCount.get();
+    }
+    
     @SuppressWarnings("unchecked")
     protected synchronized <T> SubscriptionHandle subscribe(Map<String, Object> flags, Subscription<T> s) {
         Entity producer = s.producer;
@@ -106,31 +139,63 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
             s.subscriberExecutionManagerTagSupplied = false;
         }
         s.eventFilter = (Predicate<SensorEvent<T>>) flags.remove("eventFilter");
+        if (flags.containsKey("conflation")) {
+            s.conflation = TypeCoercions.coerce(flags.remove("conflation"), SensorConflation.class);
+        }
         s.flags = flags;
         
         if (LOG.isDebugEnabled()) LOG.debug("Creating subscription {} for {} on {} {} in {}", new Object[] {s.id, s.subscriber, producer, sensor, this});
+        if (deliverEventsAsTasks) {
+            if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
+                ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+            }
+        } else {
+            // must be set before the subscription is visible to publishers
+            s.deliveryQueue = acquireDeliveryQueue(s);
+        }
         allSubscriptions.put(s.id, s);
-        addToMapOfSets(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        subscriptionIndex.add(s);
         if (s.subscriber!=null) {
             addToMapOfSets(subscriptionsBySubscriber, s.subscriber, s);
         }
-        if (!s.subscriberExecutionManagerTagSupplied && s.subscriberExecutionManagerTag!=null) {
-            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
-        }
         return s;
     }
 
+    private Object deliveryQueueKey(Subscription<?> s) {
+        return s.subscriberExecutionManagerTag!=null ? s.subscriberExecutionManagerTag : s;
+    }
+    
+    private SubscriptionDeliveryQueue acquireDeliveryQueue(Subscription<?> s) {
+        Object key = deliveryQueueKey(s);
+        SubscriptionDeliveryQueue result = deliveryQueues.get(key);
+        if (result==null) {
+            result = new SubscriptionDeliveryQueue(em, s.subscriberExecutionManagerTag);
+            deliveryQueues.put(key, result);
+        }
+        result.subscriptionCount++;
+        return result;
+    }
+    
+    private void releaseDeliveryQueue(Subscription<?> s) {
+        Object key = deliveryQueueKey(s);
+        SubscriptionDeliveryQueue queue = deliveryQueues.get(key);
+        // any events already queued are still delivered, as the drain job holds its own reference
+        if (queue!=null && --queue.subscriptionCount <= 0) {
+            deliveryQueues.remove(key);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     public Set<SubscriptionHandle> getSubscriptionsForSubscriber(Object subscriber) {
         return (Set<SubscriptionHandle>) ((Set<?>) elvis(subscriptionsBySubscriber.get(subscriber), Collections.emptySet()));
     }
 
-    public synchronized Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
+    public Set<SubscriptionHandle> getSubscriptionsForEntitySensor(Entity source, Sensor<?> sensor) {
         Set<SubscriptionHandle> subscriptions = new LinkedHashSet<SubscriptionHandle>();
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, sensor)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(source, null)), Collections.emptySet()));
-        subscriptions.addAll(elvis(subscriptionsByToken.get(makeEntitySensorToken(null, null)), Collections.emptySet()));
+        subscriptions.addAll(Arrays.asList(subscriptionIndex.get(source, sensor)));
+        subscriptions.addAll(Arrays.asList(subscriptionIndex.get(null, sensor)));
+        subscriptions.addAll(Arrays.asList(subscriptionIndex.get(source, null)));
+        subscriptions.addAll(Arrays.asList(subscriptionIndex.get(null, null)));
         return subscriptions;
     }
 
@@ -144,19 +209,22 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (!(sh instanceof Subscription)) throw new IllegalArgumentException("Only subscription handles of type Subscription supported: sh="+sh+"; type="+(sh != null ? sh.getClass().getCanonicalName() : null));
         Subscription s = (Subscription) sh;
         boolean result = allSubscriptions.remove(s.id) != null;
-        boolean b2 = removeFromMapOfCollections(subscriptionsByToken, makeEntitySensorToken(s.producer, s.sensor), s);
+        boolean b2 = subscriptionIndex.remove(s);
         assert result==b2;
         if (s.subscriber!=null) {
             boolean b3 = removeFromMapOfCollections(subscriptionsBySubscriber, s.subscriber, s);
             assert b3 == b2;
         }
 
-        // FIXME ALEX - this seems wrong
-        ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        if (deliverEventsAsTasks) {
+            // FIXME ALEX - this seems wrong
+            ((BasicExecutionManager) em).setTaskSchedulerForTag(s.subscriberExecutionManagerTag, SingleThreadedScheduler.class);
+        } else if (result) {
+            releaseDeliveryQueue(s);
+        }
         return result;
     }
 
-    @SuppressWarnings({ "unchecked", "rawtypes" })
     public <T> void publish(final SensorEvent<T> event) {
         // REVIEW 1459 - execution
         
@@ -173,41 +241,66 @@ public class LocalSubscriptionManager extends AbstractSubscriptionManager {
         if (LOG.isTraceEnabled()) LOG.trace("{} got event {}", this, event);
         totalEventsPublishedCount.incrementAndGet();
         
-        Set<Subscription> subs = (Set<Subscription>) ((Set<?>) getSubscriptionsForEntitySensor(event.getSource(), event.getSensor()));
-        if (groovyTruth(subs)) {
-            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, join(subs, ",")});
-            for (Subscription s : subs) {
-                if (s.eventFilter!=null && !s.eventFilter.apply(event))
-                    continue;
-                final Subscription sAtClosureCreation = s;
-                
-//                Set<Object> tags = MutableSet.of();
-//                if (s.subscriberExecutionManagerTag!=null) tags.add(s.subscriberExecutionManagerTag);
-//                if (event.getSource()!=null) tags.add(BrooklynTaskTags.tagForContextEntity(event.getSource()));
-//                Map<String, Object> tagsMap = mapOf("tags", (Object)tags);
-                // use code above, instead of line below, if we want subscription deliveries associated with the entity;
-                // that will cause them to be cancelled when the entity is unmanaged
-                // (not sure that is useful, and likely NOT worth the expense, but it might be...) -Alex Oct 2014
-                Map<String, Object> tagsMap = mapOf("tag", s.subscriberExecutionManagerTag);
-                
-                em.submit(tagsMap, new Runnable() {
-                    @Override
-                    public String toString() {
-                        return "LSM.publish("+event+")";
+        // look up each tier of the index directly (no lock, no intermediate set);
+        // a subscription is only ever in one tier, but tiers coincide if the source or sensor is null
+        Entity source = event.getSource();
+        Sensor<T> sensor = event.getSensor();
+        publishTo(subscriptionIndex.get(source, sensor), event);
+        if (source!=null) publishTo(subscriptionIndex.get(null, sensor), event);
+        if (sensor!=null) publishTo(subscriptionIndex.get(source, null), event);
+        if (source!=null && sensor!=null) publishTo(subscriptionIndex.get(null, null), event);
+    }
+    
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private <T> void publishTo(Subscription<?>[] subs, final SensorEvent<T> event) {
+        for (Subscription s : subs) {
+            if (s.eventFilter!=null && !s.eventFilter.apply(event))
+                continue;
+            if (LOG.isTraceEnabled()) LOG.trace("sending {}, {} to {}", new Object[] {event.getSensor().getName(), event, s});
+            
+            SubscriptionDeliveryQueue queue = s.deliveryQueue;
+            if (queue!=null) {
+                SensorConflation conflation = (s.conflation!=null) ? s.conflation : SensorConflation.of(event.getSensor());
+                if (conflation==SensorConflation.LATEST_VALUE_ONLY) {
+                    if (queue.enqueueConflating(s, event)) {
+                        totalEventsConflatedCount.incrementAndGet();
+                        continue;
                     }
-                    public void run() {
-                        try {
-                            sAtClosureCreation.listener.onEvent(event);
-                        } catch (Throwable t) {
-                            if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
-                                LOG.debug("Error in "+this+", after entity unmanaged: "+t, t);
-                            } else {
-                                LOG.warn("Error in "+this+": "+t, t);
-                            }
-                        }
-                    }});
+                } else {
+                    queue.enqueue(s, event);
+                }
                 totalEventsDeliveredCount.incrementAndGet();
+                continue;
             }
+            totalEventsDeliveredCount.incrementAndGet();
+            
+            final Subscription sAtClosureCreation = s;
+            
+//            Set<Object> tags = MutableSet.of();
+//            if (s.subscriberExecutionManagerTag!=null) tags.add(s.subscriberExecutionManagerTag);
+//            if (event.getSource()!=null) tags.add(BrooklynTaskTags.tagForContextEntity(event.getSource()));
+//            Map<String, Object> tagsMap = mapOf("tags", (Object)tags);
+            // use code above, instead of line below, if we want subscription deliveries associated with the entity;
+            // that will cause them to be cancelled when the entity is unmanaged
+            // (not sure that is useful, and likely NOT worth the expense, but it might be...) -Alex Oct 2014
+            Map<String, Object> tagsMap = mapOf("tag", s.subscriberExecutionManagerTag);
+            
+            em.submit(tagsMap, new Runnable() {
+                @Override
+                public String toString() {
+                    return "LSM.publish("+event+")";
+                }
+                public void run() {
+                    try {
+                        sAtClosureCreation.listener.onEvent(event);
+                    } catch (Throwable t) {
+                        if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
+                            LOG.debug("Error in "+this+", after entity unmanaged: "+t, t);
+                        } else {
+                            LOG.warn("Error in "+this+": "+t, t);
+                        }
+                    }
+                }});
         }
     }
     
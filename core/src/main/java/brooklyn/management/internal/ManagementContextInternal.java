@@ -38,8 +38,11 @@ import brooklyn.management.ManagementContext;
 import brooklyn.management.Task;
 import brooklyn.management.ha.OsgiManager;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpConnectionPool;
 import brooklyn.util.task.TaskTags;
 
+import com.google.common.annotations.Beta;
+
 public interface ManagementContextInternal extends ManagementContext {
 
     public static final String SUB_TASK_TAG = TaskTags.SUB_TASK_TAG;
@@ -78,6 +81,13 @@ public interface ManagementContextInternal extends ManagementContext {
 
     UsageManager getUsageManager();
     
+    /**
+     * @return The pool of http connections shared by this management context's http clients
+     *         (when {@link HttpConnectionPool#ENABLED}); created when first requested.
+     */
+    @Beta
+    HttpConnectionPool getHttpConnectionPool();
+    
     /**
      * @return The OSGi manager, if available; may be absent if OSGi is not supported,
      * e.g. in test contexts (but will be supported in all major contexts).
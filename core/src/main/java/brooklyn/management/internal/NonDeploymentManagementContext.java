@@ -71,6 +71,7 @@ import brooklyn.management.ha.OsgiManager;
 import brooklyn.mementos.BrooklynMementoPersister;
 import brooklyn.mementos.BrooklynMementoRawData;
 import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpConnectionPool;
 import brooklyn.util.time.Duration;
 
 import com.google.common.base.Objects;
@@ -276,6 +277,12 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
         checkInitialManagementContextReal();
         return initialManagementContext.getStorage();
     }
+
+    @Override
+    public HttpConnectionPool getHttpConnectionPool() {
+        checkInitialManagementContextReal();
+        return initialManagementContext.getHttpConnectionPool();
+    }
     
     @Override
     public RebindManager getRebindManager() {
@@ -523,6 +530,10 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
             throw new IllegalStateException("Non-deployment context "+NonDeploymentManagementContext.this+" is not valid for this operation.");
         }
         @Override
+        public Map<String, Object> getMetrics() {
+            throw new IllegalStateException("Non-deployment context "+NonDeploymentManagementContext.this+" is not valid for this operation.");
+        }
+        @Override
         public BrooklynMementoRawData retrieveMementoRawData() {
             throw new IllegalStateException("Non-deployment context "+NonDeploymentManagementContext.this+" is not valid for this operation.");
         }
@@ -578,6 +589,10 @@ public class NonDeploymentManagementContext implements ManagementContextInternal
         public long getPriority() {
             throw new IllegalStateException("Non-deployment context "+NonDeploymentManagementContext.this+" is not valid for this operation.");
         }
+        @Override
+        public Map<String, Object> getMetrics() {
+            throw new IllegalStateException("Non-deployment context "+NonDeploymentManagementContext.this+" is not valid for this operation.");
+        }
     }
     
 }
@@ -24,6 +24,7 @@ import brooklyn.entity.Entity;
 import brooklyn.event.Sensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.SensorConflation;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.util.text.Identifiers;
 
@@ -41,6 +42,10 @@ class Subscription<T> implements SubscriptionHandle {
     public final SensorEventListener<? super T> listener;
     public Map<String,Object> flags;
     public Predicate<SensorEvent<T>> eventFilter;
+    /** conflation requested for this subscription, or null to use that of the sensor */
+    public SensorConflation conflation;
+    /** queue through which events are delivered, or null if each event is delivered as its own task */
+    SubscriptionDeliveryQueue deliveryQueue;
 
     public Subscription(Entity producer, Sensor<T> sensor, SensorEventListener<? super T> listener) {
         this.producer = producer;
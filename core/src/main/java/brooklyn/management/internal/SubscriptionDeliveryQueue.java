@@ -0,0 +1,190 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.event.SensorEvent;
+import brooklyn.management.ExecutionManager;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
+import brooklyn.util.task.TaskTags;
+
+import com.google.common.base.Objects;
+
+/**
+ * Queue of pending event deliveries for one subscriber (i.e. one subscriber execution manager tag).
+ * <p>
+ * Publishing appends to the queue; at most one drain job per queue is ever submitted to the
+ * {@link ExecutionManager}, and it delivers queued events in order, in batches of up to
+ * {@link #MAX_BATCH_SIZE}, before resubmitting itself if more have arrived. This preserves
+ * per-subscriber ordering without a task (or a {@link brooklyn.util.task.SingleThreadedScheduler})
+ * for every event.
+ * <p>
+ * Subscriptions using {@link brooklyn.event.basic.SensorConflation#LATEST_VALUE_ONLY} have at most one
+ * pending delivery per source and sensor; newer events replace the pending event's value.
+ */
+class SubscriptionDeliveryQueue implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SubscriptionDeliveryQueue.class);
+
+    /** max events delivered by one drain job, so that one busy subscriber cannot hog a thread */
+    static final int MAX_BATCH_SIZE = 1000;
+
+    /** a pending delivery; the event slot is cleared (set to null) when taken for delivery */
+    private static class Delivery extends AtomicReference<SensorEvent<?>> {
+        private static final long serialVersionUID = 1L;
+        final Subscription<?> subscription;
+        /** non-null if this delivery can be conflated with later events */
+        final ConflationKey conflationKey;
+        Delivery(Subscription<?> subscription, SensorEvent<?> event, ConflationKey conflationKey) {
+            super(event);
+            this.subscription = subscription;
+            this.conflationKey = conflationKey;
+        }
+    }
+
+    /** identifies the events which may replace one another: same subscription, source and sensor */
+    private static class ConflationKey {
+        final Subscription<?> subscription;
+        final Object source;
+        final String sensorName;
+        ConflationKey(Subscription<?> subscription, SensorEvent<?> event) {
+            this.subscription = subscription;
+            this.source = event.getSource();
+            this.sensorName = event.getSensor()==null ? null : event.getSensor().getName();
+        }
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(subscription, source, sensorName);
+        }
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ConflationKey)) return false;
+            ConflationKey o = (ConflationKey) obj;
+            return subscription.equals(o.subscription) && Objects.equal(source, o.source) && Objects.equal(sensorName, o.sensorName);
+        }
+    }
+
+    private final ExecutionManager em;
+    private final Object tag;
+    private final Queue<Delivery> queue = new ConcurrentLinkedQueue<Delivery>();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    private final ConcurrentMap<ConflationKey, Delivery> pendingConflatable = new ConcurrentHashMap<ConflationKey, Delivery>();
+
+    /** number of subscriptions using this queue; guarded by the owning subscription manager */
+    int subscriptionCount;
+
+    SubscriptionDeliveryQueue(ExecutionManager em, Object tag) {
+        this.em = em;
+        this.tag = tag;
+    }
+
+    void enqueue(Subscription<?> subscription, SensorEvent<?> event) {
+        queue.add(new Delivery(subscription, event, null));
+        scheduleDrainIfNeeded();
+    }
+
+    /**
+     * As {@link #enqueue(Subscription, SensorEvent)}, but if an event from the same source and sensor
+     * is still waiting to be delivered to this subscription then it is replaced by the given event
+     * (keeping its place in the queue).
+     * 
+     * @return true if the event replaced a pending one
+     */
+    boolean enqueueConflating(Subscription<?> subscription, SensorEvent<?> event) {
+        ConflationKey key = new ConflationKey(subscription, event);
+        while (true) {
+            Delivery existing = pendingConflatable.get(key);
+            if (existing!=null) {
+                SensorEvent<?> current = existing.get();
+                // null means the drain has taken it (and already removed it from the pending map), so retry
+                if (current!=null && existing.compareAndSet(current, event)) {
+                    return true;
+                }
+            } else {
+                Delivery d = new Delivery(subscription, event, key);
+                if (pendingConflatable.putIfAbsent(key, d)==null) {
+                    queue.add(d);
+                    scheduleDrainIfNeeded();
+                    return false;
+                }
+            }
+        }
+    }
+
+    private void scheduleDrainIfNeeded() {
+        if (!queue.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            // drains are short and never wait on other tasks, so can use the bounded pool if there is one
+            Map<String, Object> flags = MutableMap.<String, Object>of("displayName", "subscription delivery",
+                    "tags", MutableSet.of(TaskTags.NON_BLOCKING_TASK));
+            if (tag != null) flags.put("tag", tag);
+            em.submit(flags, this);
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            for (int i = 0; i < MAX_BATCH_SIZE; i++) {
+                Delivery d = queue.poll();
+                if (d == null) break;
+                deliver(d);
+            }
+        } finally {
+            drainScheduled.set(false);
+            // anything added after our last poll (or beyond the batch size) needs another drain
+            scheduleDrainIfNeeded();
+        }
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private void deliver(Delivery d) {
+        if (d.conflationKey!=null) {
+            // remove before taking the event, so a concurrent enqueueConflating which sees the slot cleared can add anew
+            pendingConflatable.remove(d.conflationKey, d);
+        }
+        SensorEvent event = d.getAndSet(null);
+        if (event==null) return;
+        try {
+            d.subscription.listener.onEvent(event);
+        } catch (Throwable t) {
+            if (event!=null && event.getSource()!=null && Entities.isNoLongerManaged(event.getSource())) {
+                LOG.debug("Error in "+this+" delivering "+event+", after entity unmanaged: "+t, t);
+            } else {
+                LOG.warn("Error in "+this+" delivering "+event+": "+t, t);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SubscriptionDeliveryQueue["+tag+"]";
+    }
+}
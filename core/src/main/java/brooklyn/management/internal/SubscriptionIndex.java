@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.management.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import brooklyn.entity.Entity;
+import brooklyn.event.Sensor;
+
+/**
+ * Copy-on-write index of subscriptions, keyed by producer and then by sensor name.
+ * Subscriptions to any producer and/or any sensor are stored under wildcard keys,
+ * so a publisher looks up at most four tiers.
+ * <p>
+ * Lookups take no lock and do not allocate: they return the immutable array currently
+ * stored for that key (callers must not modify it). Mutations are serialized on this
+ * instance and replace the array, so are expected to be much rarer than lookups.
+ */
+class SubscriptionIndex {
+
+    static final Subscription<?>[] NONE = new Subscription<?>[0];
+
+    private static final Object ANY_PRODUCER = new Object() {
+        @Override public String toString() { return "*"; }
+    };
+    private static final Object ANY_SENSOR = new Object() {
+        @Override public String toString() { return "*"; }
+    };
+
+    private final ConcurrentMap<Object, ConcurrentMap<Object, Subscription<?>[]>> index =
+            new ConcurrentHashMap<Object, ConcurrentMap<Object, Subscription<?>[]>>();
+
+    private static Object producerKey(Entity producer) {
+        return producer == null ? ANY_PRODUCER : producer;
+    }
+
+    private static Object sensorKey(Sensor<?> sensor) {
+        return sensor == null ? ANY_SENSOR : sensor.getName();
+    }
+
+    /**
+     * Returns the subscriptions registered for exactly this producer and sensor,
+     * where null means the wildcard tier for that dimension; never null.
+     */
+    Subscription<?>[] get(Entity producer, Sensor<?> sensor) {
+        ConcurrentMap<Object, Subscription<?>[]> bySensor = index.get(producerKey(producer));
+        if (bySensor == null) return NONE;
+        Subscription<?>[] result = bySensor.get(sensorKey(sensor));
+        return result == null ? NONE : result;
+    }
+
+    synchronized void add(Subscription<?> s) {
+        Object pk = producerKey(s.producer);
+        Object sk = sensorKey(s.sensor);
+        ConcurrentMap<Object, Subscription<?>[]> bySensor = index.get(pk);
+        if (bySensor == null) {
+            bySensor = new ConcurrentHashMap<Object, Subscription<?>[]>();
+            index.put(pk, bySensor);
+        }
+        Subscription<?>[] old = bySensor.get(sk);
+        if (old == null) {
+            bySensor.put(sk, new Subscription<?>[] { s });
+        } else {
+            Subscription<?>[] updated = Arrays.copyOf(old, old.length + 1);
+            updated[old.length] = s;
+            bySensor.put(sk, updated);
+        }
+    }
+
+    /** @return true if the subscription was in the index */
+    synchronized boolean remove(Subscription<?> s) {
+        Object pk = producerKey(s.producer);
+        Object sk = sensorKey(s.sensor);
+        ConcurrentMap<Object, Subscription<?>[]> bySensor = index.get(pk);
+        if (bySensor == null) return false;
+        Subscription<?>[] old = bySensor.get(sk);
+        if (old == null) return false;
+
+        int pos = -1;
+        for (int i = 0; i < old.length; i++) {
+            if (old[i].equals(s)) {
+                pos = i;
+                break;
+            }
+        }
+        if (pos < 0) return false;
+
+        if (old.length == 1) {
+            bySensor.remove(sk);
+            if (bySensor.isEmpty()) index.remove(pk);
+        } else {
+            Subscription<?>[] updated = new Subscription<?>[old.length - 1];
+            System.arraycopy(old, 0, updated, 0, pos);
+            System.arraycopy(old, pos + 1, updated, pos, old.length - pos - 1);
+            bySensor.put(sk, updated);
+        }
+        return true;
+    }
+}
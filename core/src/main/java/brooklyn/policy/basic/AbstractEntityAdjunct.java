@@ -227,6 +227,7 @@ public abstract class AbstractEntityAdjunct extends AbstractBrooklynObject imple
     
     public void setDisplayName(String name) {
         this.name = name;
+        onChanged();
     }
 
     /**
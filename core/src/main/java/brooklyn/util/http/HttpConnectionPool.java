@@ -0,0 +1,285 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.conn.ssl.TrustSelfSignedStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * Connections shared by all the {@link org.apache.http.client.HttpClient}s of a management context
+ * which are built with {@link HttpTool.HttpClientBuilder#connectionPool(HttpConnectionPool)},
+ * so that (kept-alive) connections to a server are reused across feeds and entities,
+ * rather than each client having its own.
+ * <p>
+ * There is a pool for each way of trusting https servers, as the socket factories are shared by all
+ * the connections of a pool. The number of connections per route (i.e. to each server) and in total
+ * are limited; if a pool is exhausted, a request waits up to {@link #LEASE_TIMEOUT} for a connection.
+ * Connections are kept alive for up to {@link #KEEP_ALIVE}, or for less if the server says so.
+ * <p>
+ * Clients using the pool do not need to be closed, and shutting down their connection manager has no effect;
+ * the connections are closed when the management context is terminated.
+ */
+@Beta
+public class HttpConnectionPool {
+
+    private static final Logger log = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    public static final ConfigKey<Boolean> ENABLED = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.http.connectionPool.enabled",
+            "Whether http feeds and entity http clients share the management context's pool of connections "
+                    + "(rather than each having its own)",
+            false);
+
+    public static final ConfigKey<Integer> MAX_PER_ROUTE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.http.connectionPool.maxPerRoute",
+            "Maximum number of connections in each pool to any one server",
+            20);
+
+    public static final ConfigKey<Integer> MAX_TOTAL = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.http.connectionPool.maxTotal",
+            "Maximum number of connections in each pool",
+            500);
+
+    public static final ConfigKey<Duration> KEEP_ALIVE = ConfigKeys.newDurationConfigKey(
+            "brooklyn.http.connectionPool.keepAlive",
+            "Maximum time an idle connection is kept open for reuse",
+            Duration.seconds(30));
+
+    public static final ConfigKey<Duration> LEASE_TIMEOUT = ConfigKeys.newDurationConfigKey(
+            "brooklyn.http.connectionPool.leaseTimeout",
+            "Maximum time a request waits for a connection when the pool is exhausted",
+            Duration.seconds(30));
+
+    /** how https servers are trusted by the connections of a pool */
+    public static enum TrustMode {
+        /** based on the default java truststore */
+        DEFAULT,
+        /** as for {@link HttpTool.HttpClientBuilder#trustAll()} */
+        TRUST_ALL,
+        /** as for {@link HttpTool.HttpClientBuilder#trustSelfSigned()} */
+        TRUST_SELF_SIGNED
+    }
+
+    /**
+     * @return the management context's pool, if {@link #ENABLED} for it
+     */
+    public static Maybe<HttpConnectionPool> ifEnabled(ManagementContext mgmt) {
+        if (!(mgmt instanceof ManagementContextInternal)) {
+            return Maybe.absent("Management context "+mgmt+" has no http connection pool");
+        }
+        if (!Boolean.TRUE.equals(mgmt.getConfig().getConfig(ENABLED))) {
+            return Maybe.absent("Http connection pool not enabled for "+mgmt);
+        }
+        return Maybe.of(((ManagementContextInternal)mgmt).getHttpConnectionPool());
+    }
+
+    private final int maxPerRoute;
+    private final int maxTotal;
+    private final Duration keepAlive;
+    private final Duration leaseTimeout;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+    private final Map<TrustMode, PoolingClientConnectionManager> pools = MutableMap.of();
+    private final AtomicLong lastIdleCheckNanos = new AtomicLong(System.nanoTime());
+    private volatile boolean shutdown = false;
+
+    public HttpConnectionPool(StringConfigMap config) {
+        this(config.getConfig(MAX_PER_ROUTE), config.getConfig(MAX_TOTAL), config.getConfig(KEEP_ALIVE), config.getConfig(LEASE_TIMEOUT));
+    }
+
+    public HttpConnectionPool(int maxPerRoute, int maxTotal, Duration keepAlive, Duration leaseTimeout) {
+        this.maxPerRoute = maxPerRoute;
+        this.maxTotal = maxTotal;
+        this.keepAlive = checkNotNull(keepAlive, "keepAlive");
+        this.leaseTimeout = checkNotNull(leaseTimeout, "leaseTimeout");
+        this.keepAliveStrategy = new CappedKeepAliveStrategy(keepAlive.toMilliseconds());
+    }
+
+    public Duration getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    public ConnectionKeepAliveStrategy getKeepAliveStrategy() {
+        return keepAliveStrategy;
+    }
+
+    /**
+     * @return the connection manager for the given trust mode, for use by any number of clients;
+     *         its {@link ClientConnectionManager#shutdown()} does nothing
+     */
+    public ClientConnectionManager getConnectionManager(TrustMode trustMode) {
+        checkNotNull(trustMode, "trustMode");
+        closeIdleConnectionsIfDue();
+        synchronized (pools) {
+            if (shutdown) throw new IllegalStateException("Http connection pool "+this+" has been shut down");
+            PoolingClientConnectionManager result = pools.get(trustMode);
+            if (result == null) {
+                result = new PoolingClientConnectionManager(newSchemeRegistry(trustMode));
+                result.setMaxTotal(maxTotal);
+                result.setDefaultMaxPerRoute(maxPerRoute);
+                pools.put(trustMode, result);
+            }
+            return new NonClosingConnectionManager(result);
+        }
+    }
+
+    /** the connections leased, available and pending over all the pools */
+    public PoolStats getTotalStats() {
+        int leased = 0, pending = 0, available = 0, max = 0;
+        synchronized (pools) {
+            for (PoolingClientConnectionManager pool : pools.values()) {
+                PoolStats stats = pool.getTotalStats();
+                leased += stats.getLeased();
+                pending += stats.getPending();
+                available += stats.getAvailable();
+                max += stats.getMax();
+            }
+        }
+        return new PoolStats(leased, pending, available, max);
+    }
+
+    /** closes all connections; the pool cannot be used afterwards */
+    public void shutdown() {
+        synchronized (pools) {
+            shutdown = true;
+            for (PoolingClientConnectionManager pool : pools.values()) {
+                try {
+                    pool.shutdown();
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    log.warn("Error shutting down http connections of "+this+" (continuing)", e);
+                }
+            }
+            pools.clear();
+        }
+    }
+
+    /** idle connections are otherwise only closed when the pool next tries to use them */
+    private void closeIdleConnectionsIfDue() {
+        long now = System.nanoTime();
+        long last = lastIdleCheckNanos.get();
+        if (now - last < keepAlive.toNanoseconds() || !lastIdleCheckNanos.compareAndSet(last, now)) return;
+        synchronized (pools) {
+            for (PoolingClientConnectionManager pool : pools.values()) {
+                pool.closeExpiredConnections();
+                pool.closeIdleConnections(keepAlive.toMilliseconds(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static SchemeRegistry newSchemeRegistry(TrustMode trustMode) {
+        SchemeRegistry result = SchemeRegistryFactory.createDefault();
+        try {
+            switch (trustMode) {
+            case DEFAULT:
+                break;
+            case TRUST_ALL:
+                result.register(new Scheme("https", 443, new SSLSocketFactory(new HttpTool.TrustAllStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+                break;
+            case TRUST_SELF_SIGNED:
+                result.register(new Scheme("https", 443, new SSLSocketFactory(new TrustSelfSignedStrategy(), SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER)));
+                break;
+            default:
+                throw new IllegalStateException("Unexpected trust mode "+trustMode);
+            }
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "HttpConnectionPool[maxPerRoute="+maxPerRoute+",maxTotal="+maxTotal+",keepAlive="+keepAlive+"]";
+    }
+
+    /** as the server asks, but no longer than our keep-alive */
+    private static class CappedKeepAliveStrategy extends DefaultConnectionKeepAliveStrategy {
+        private final long maxMillis;
+
+        CappedKeepAliveStrategy(long maxMillis) {
+            this.maxMillis = maxMillis;
+        }
+
+        @Override
+        public long getKeepAliveDuration(HttpResponse response, HttpContext context) {
+            long result = super.getKeepAliveDuration(response, context);
+            return (result <= 0) ? maxMillis : Math.min(result, maxMillis);
+        }
+    }
+
+    /** so that clients which shut down their connection manager (as is usual for a client of its own) leave the pool alone */
+    private static class NonClosingConnectionManager implements ClientConnectionManager {
+        private final ClientConnectionManager delegate;
+
+        NonClosingConnectionManager(ClientConnectionManager delegate) {
+            this.delegate = delegate;
+        }
+        @Override public SchemeRegistry getSchemeRegistry() {
+            return delegate.getSchemeRegistry();
+        }
+        @Override public ClientConnectionRequest requestConnection(HttpRoute route, Object state) {
+            return delegate.requestConnection(route, state);
+        }
+        @Override public void releaseConnection(ManagedClientConnection conn, long validDuration, TimeUnit timeUnit) {
+            delegate.releaseConnection(conn, validDuration, timeUnit);
+        }
+        @Override public void closeIdleConnections(long idletime, TimeUnit tunit) {
+            delegate.closeIdleConnections(idletime, tunit);
+        }
+        @Override public void closeExpiredConnections() {
+            delegate.closeExpiredConnections();
+        }
+        @Override public void shutdown() {
+            // no-op; shut down with the pool
+        }
+    }
+}
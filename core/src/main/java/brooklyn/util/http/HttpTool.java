@@ -47,6 +47,7 @@ import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.params.HttpClientParams;
 import org.apache.http.conn.ClientConnectionManager;
 import org.apache.http.conn.scheme.Scheme;
 import org.apache.http.conn.scheme.SchemeSocketFactory;
@@ -66,8 +67,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.http.HttpConnectionPool.TrustMode;
 import brooklyn.util.time.Duration;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Optional;
 import com.google.common.collect.Multimap;
 
@@ -98,6 +101,7 @@ public class HttpTool {
         private ConnectionReuseStrategy reuseStrategy;
         private boolean trustAll;
         private boolean trustSelfSigned;
+        private HttpConnectionPool connectionPool;
 
         public HttpClientBuilder clientConnectionManager(ClientConnectionManager val) {
             this.clientConnectionManager = checkNotNull(val, "clientConnectionManager");
@@ -166,9 +170,31 @@ public class HttpTool {
             this.trustSelfSigned = true;
             return this;
         }
+        /**
+         * Uses connections from the given (shared) pool, rather than the client having its own;
+         * not compatible with {@link #clientConnectionManager(ClientConnectionManager)} or {@link #socketFactory(SchemeSocketFactory)}.
+         */
+        @Beta
+        public HttpClientBuilder connectionPool(HttpConnectionPool val) {
+            this.connectionPool = checkNotNull(val, "connectionPool");
+            return this;
+        }
         public HttpClient build() {
-            final DefaultHttpClient httpClient = new DefaultHttpClient(clientConnectionManager);
-            httpClient.setParams(httpParams);
+            ClientConnectionManager connectionManager = clientConnectionManager;
+            HttpParams params = httpParams;
+            if (connectionPool != null) {
+                checkState(clientConnectionManager == null, "Must not set both clientConnectionManager and connectionPool");
+                checkState(socketFactory == null, "Must not set socketFactory when using a connectionPool");
+                connectionManager = connectionPool.getConnectionManager(trustAll ? TrustMode.TRUST_ALL
+                        : trustSelfSigned ? TrustMode.TRUST_SELF_SIGNED : TrustMode.DEFAULT);
+                if (params == null) params = new BasicHttpParams();
+                HttpClientParams.setConnectionManagerTimeout(params, connectionPool.getLeaseTimeout().toMilliseconds());
+            }
+            final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager);
+            httpClient.setParams(params);
+            if (connectionPool != null) {
+                httpClient.setKeepAliveStrategy(connectionPool.getKeepAliveStrategy());
+            }
     
             // support redirects for POST (similar to `curl --post301 -L`)
             // http://stackoverflow.com/questions/3658721/httpclient-4-error-302-how-to-redirect
@@ -183,7 +209,9 @@ public class HttpTool {
                     if (port == null) {
                         port = (uri != null && uri.getPort() >= 0) ? uri.getPort() : 443;
                     }
-                    if (socketFactory == null) {
+                    if (connectionPool != null) {
+                        // the pool's connection manager is already set up for the trust mode
+                    } else if (socketFactory == null) {
                         if (trustAll) {
                             TrustStrategy trustStrategy = new TrustAllStrategy();
                             X509HostnameVerifier hostnameVerifier = SSLSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
@@ -196,7 +224,7 @@ public class HttpTool {
                             // Using default https scheme: based on default java truststore, which is pretty strict!
                         }
                     }
-                    if (socketFactory != null) {
+                    if (connectionPool == null && socketFactory != null) {
                         Scheme sch = new Scheme("https", port, socketFactory);
                         httpClient.getConnectionManager().getSchemeRegistry().register(sch);
                     }
@@ -22,7 +22,6 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
@@ -36,6 +35,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
@@ -48,6 +48,9 @@ import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.config.ConfigKey;
+import brooklyn.config.StringConfigMap;
+import brooklyn.entity.basic.ConfigKeys;
 import brooklyn.internal.BrooklynFeatureEnablement;
 import brooklyn.management.ExecutionManager;
 import brooklyn.management.HasTaskChildren;
@@ -55,12 +58,14 @@ import brooklyn.management.Task;
 import brooklyn.management.TaskAdaptable;
 import brooklyn.util.collections.MutableList;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.javalang.Threads;
 import brooklyn.util.text.Identifiers;
+import brooklyn.util.time.Duration;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.CaseFormat;
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Sets;
 import com.google.common.util.concurrent.ExecutionList;
@@ -76,6 +81,34 @@ public class BasicExecutionManager implements ExecutionManager {
 
     private static final boolean RENAME_THREADS = BrooklynFeatureEnablement.isEnabled(BrooklynFeatureEnablement.FEATURE_RENAME_THREADS);
     
+    public static final ConfigKey<Integer> NON_BLOCKING_POOL_SIZE = ConfigKeys.newIntegerConfigKey(
+            "brooklyn.executionManager.nonBlockingPoolSize",
+            "if positive, tasks marked non-blocking (see TaskTags.markNonBlocking) run on a bounded pool "
+            + "of this many threads, rather than on the elastic pool used for all other tasks; "
+            + "0 (the default) runs all tasks on the elastic pool",
+            0);
+    
+    public static final ConfigKey<Boolean> USE_VIRTUAL_THREADS = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.executionManager.useVirtualThreads",
+            "whether to run tasks in the elastic pool on virtual threads, if the JVM supports them (Java 21+), "
+            + "so that many concurrent tasks blocked on I/O (ssh, http, cloud APIs) do not each hold a platform thread; "
+            + "falls back to platform threads if not supported",
+            false);
+    
+    public static final ConfigKey<Boolean> COMPACT_COMPLETED_TASKS = ConfigKeys.newBooleanConfigKey(
+            "brooklyn.executionManager.compactCompletedTasks",
+            "whether to replace completed tasks which are kept in memory (e.g. for the activity history) "
+            + "with a compact record (see TaskTombstone), so they no longer hold their job, listeners, and other state",
+            false);
+    
+    @Beta
+    public static final ConfigKey<Duration> SHARED_TIMER_TICK = ConfigKeys.newConfigKey(
+            Duration.class,
+            "brooklyn.executionManager.sharedTimerTick",
+            "the granularity of the shared timer (see getSharedTimer()), used for example for feeds' polls; "
+            + "jobs run on it can be up to this late",
+            Duration.millis(100));
+    
     private static class PerThreadCurrentTaskHolder {
         public static final ThreadLocal<Task<?>> perThreadCurrentTask = new ThreadLocal<Task<?>>();
     }
@@ -88,19 +121,33 @@ public class BasicExecutionManager implements ExecutionManager {
     
     private final ThreadFactory daemonThreadFactory;
     
+    /** elastic pool, for all tasks which might block (the default); a thread per task if using virtual threads */
     private final ExecutorService runner;
+    
+    private final boolean usingVirtualThreads;
+    
+    /** threads currently running tasks, if using virtual threads (which are not pooled, so each is running a task) */
+    private final AtomicInteger virtualRunnerThreads = new AtomicInteger();
+    
+    /** bounded pool for tasks marked non-blocking, or null if not enabled */
+    private final ThreadPoolExecutor nonBlockingRunner;
         
     private final ScheduledExecutorService delayedRunner;
     
+    private volatile Duration sharedTimerTick = SHARED_TIMER_TICK.getDefaultValue();
+    
+    /** created on first use; guarded by this */
+    private HashedWheelTimer sharedTimer;
+    
+    /** off unless set, e.g. from {@link #COMPACT_COMPLETED_TASKS} by a management context */
+    private volatile boolean compactCompletedTasks = false;
+    
     // TODO Could have a set of all knownTasks; but instead we're having a separate set per tag,
     // so the same task could be listed multiple times if it has multiple tags...
 
-    //access to this field AND to members in this field is synchronized, 
-    //to allow us to preserve order while guaranteeing thread-safe
-    //(but more testing is needed before we are completely sure it is thread-safe!)
-    //synch blocks are as finely grained as possible for efficiency;
-    //NB CopyOnWriteArraySet is a perf bottleneck, and the simple map makes it easier to remove when a tag is empty
-    private Map<Object,Set<Task<?>>> tasksByTag = new HashMap<Object,Set<Task<?>>>();
+    //concurrent and lock-striped, so that submitters, completions and queries (e.g. from the GC or REST api)
+    //do not contend on a single lock; tasks within a tag are kept in the order they were first added to it
+    private final TaskTagIndex tasksByTag = new TaskTagIndex();
     
     private ConcurrentMap<String,Task<?>> tasksById = new ConcurrentHashMap<String,Task<?>>();
 
@@ -126,19 +173,91 @@ public class BasicExecutionManager implements ExecutionManager {
     };
     
     public BasicExecutionManager(String contextid) {
+        this(contextid, 0);
+    }
+    
+    public BasicExecutionManager(String contextid, StringConfigMap config) {
+        this(contextid, config.getConfig(NON_BLOCKING_POOL_SIZE), config.getConfig(USE_VIRTUAL_THREADS));
+        setCompactCompletedTasks(config.getConfig(COMPACT_COMPLETED_TASKS));
+        sharedTimerTick = config.getConfig(SHARED_TIMER_TICK);
+    }
+    
+    public BasicExecutionManager(String contextid, int nonBlockingPoolSize) {
+        this(contextid, nonBlockingPoolSize, false);
+    }
+    
+    /**
+     * @param nonBlockingPoolSize number of threads for tasks marked {@link TaskTags#NON_BLOCKING_TASK},
+     *        or 0 to run them on the same elastic pool as all other tasks
+     * @param useVirtualThreads whether the elastic pool should use virtual threads, where supported
+     */
+    public BasicExecutionManager(String contextid, int nonBlockingPoolSize, boolean useVirtualThreads) {
         threadFactory = newThreadFactory(contextid);
         daemonThreadFactory = new ThreadFactoryBuilder()
                 .setThreadFactory(threadFactory)
                 .setDaemon(true)
                 .build();
                 
-        // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
-        runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
-                daemonThreadFactory);
+        ExecutorService virtualRunner = null;
+        if (useVirtualThreads) {
+            Maybe<ThreadFactory> virtualThreadFactory = Threads.newVirtualThreadFactory();
+            if (virtualThreadFactory.isPresent()) {
+                // thread-locals (e.g. current task) and thread renaming work as normal on virtual threads
+                ThreadFactory runnerThreadFactory = new ThreadFactoryBuilder()
+                        .setThreadFactory(virtualThreadFactory.get())
+                        .setNameFormat("brooklyn-execmanager-"+contextid+"-virtual-%d")
+                        .setUncaughtExceptionHandler(new UncaughtExceptionHandlerImplementation())
+                        .build();
+                // virtual threads are not pooled: each task gets a new one
+                virtualRunner = Threads.newThreadPerTaskExecutor(newCountingThreadFactory(runnerThreadFactory, virtualRunnerThreads)).orNull();
+            }
+            if (virtualRunner == null) {
+                log.warn("Virtual threads requested for execution manager "+contextid+" but not supported in Java "+
+                        System.getProperty("java.version")+"; using platform threads");
+            }
+        }
+        usingVirtualThreads = (virtualRunner != null);
+        
+        if (virtualRunner != null) {
+            runner = virtualRunner;
+        } else {
+            // use Executors.newCachedThreadPool(daemonThreadFactory), but timeout of 1s rather than 60s for better shutdown!
+            runner = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 10L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), 
+                    daemonThreadFactory);
+        }
+        
+        if (nonBlockingPoolSize > 0) {
+            // fixed number of threads, with excess work queued rather than spawning more threads
+            nonBlockingRunner = new ThreadPoolExecutor(nonBlockingPoolSize, nonBlockingPoolSize, 10L, TimeUnit.SECONDS, 
+                    new LinkedBlockingQueue<Runnable>(), daemonThreadFactory);
+            nonBlockingRunner.allowCoreThreadTimeOut(true);
+        } else {
+            nonBlockingRunner = null;
+        }
             
         delayedRunner = new ScheduledThreadPoolExecutor(1, daemonThreadFactory);
     }
     
+    /** wraps the factory so that the given count is the number of its threads which are running */
+    private static ThreadFactory newCountingThreadFactory(final ThreadFactory delegate, final AtomicInteger count) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                return delegate.newThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        count.incrementAndGet();
+                        try {
+                            r.run();
+                        } finally {
+                            count.decrementAndGet();
+                        }
+                    }
+                });
+            }
+        };
+    }
+    
     private final static class UncaughtExceptionHandlerImplementation implements Thread.UncaughtExceptionHandler {
         @Override
         public void uncaughtException(Thread t, Throwable e) {
@@ -160,7 +279,29 @@ public class BasicExecutionManager implements ExecutionManager {
     
     public void shutdownNow() {
         runner.shutdownNow();
+        if (nonBlockingRunner!=null) nonBlockingRunner.shutdownNow();
         delayedRunner.shutdownNow();
+        synchronized (this) {
+            if (sharedTimer!=null) sharedTimer.stop();
+        }
+    }
+    
+    /**
+     * A timer shared by everything using this execution manager, for many frequent periodic jobs
+     * (such as feeds' polls) which would otherwise each be a {@link ScheduledTask}.
+     * Its jobs are plain runnables, not tasks, and run on the same elastic pool as tasks.
+     */
+    @Beta
+    public synchronized HashedWheelTimer getSharedTimer() {
+        if (sharedTimer == null) {
+            if (isShutdown()) throw new IllegalStateException("Execution manager "+this+" has been shut down");
+            sharedTimer = new HashedWheelTimer(new ThreadFactoryBuilder()
+                    .setThreadFactory(daemonThreadFactory)
+                    .setNameFormat("brooklyn-execmanager-timer-%d")
+                    .build(),
+                sharedTimerTick, runner);
+        }
+        return sharedTimer;
     }
     
     public void addListener(ExecutionListener listener) {
@@ -178,10 +319,7 @@ public class BasicExecutionManager implements ExecutionManager {
      * a reference to it as a tag.
      */
     public void deleteTag(Object tag) {
-        Set<Task<?>> tasks;
-        synchronized (tasksByTag) {
-            tasks = tasksByTag.remove(tag);
-        }
+        Set<Task<?>> tasks = tasksByTag.removeTag(tag);
         if (tasks != null) {
             for (Task<?> task : tasks) {
                 deleteTask(task);
@@ -204,15 +342,7 @@ public class BasicExecutionManager implements ExecutionManager {
     protected boolean deleteTaskNonRecursive(Task<?> task) {
         Set<?> tags = checkNotNull(task, "task").getTags();
         for (Object tag : tags) {
-            synchronized (tasksByTag) {
-                Set<Task<?>> tasks = tasksWithTagLiveOrNull(tag);
-                if (tasks != null) {
-                    tasks.remove(task);
-                    if (tasks.isEmpty()) {
-                        tasksByTag.remove(tag);
-                    }
-                }
-            }
+            tasksByTag.remove(tag, task);
         }
         Task<?> removed = tasksById.remove(task.getId());
         incompleteTaskIds.remove(task.getId());
@@ -241,29 +371,56 @@ public class BasicExecutionManager implements ExecutionManager {
         return activeTaskCount.get();
     }
 
+    /** whether completed tasks are replaced by a {@link TaskTombstone} once their listeners have run */
+    public boolean isCompactingCompletedTasks() {
+        return compactCompletedTasks;
+    }
+    
+    public void setCompactCompletedTasks(boolean compactCompletedTasks) {
+        this.compactCompletedTasks = compactCompletedTasks;
+    }
+    
+    /** whether tasks in the elastic pool run on virtual threads */
+    public boolean isUsingVirtualThreads() {
+        return usingVirtualThreads;
+    }
+    
+    /** count of threads currently running tasks in the elastic pool (used for all tasks not marked non-blocking) */
+    public int getNumActiveBlockingPoolThreads() {
+        if (usingVirtualThreads) return virtualRunnerThreads.get();
+        return ((ThreadPoolExecutor)runner).getActiveCount();
+    }
+    
+    /** count of threads in the elastic pool, including idle threads (of which there are none if using virtual threads) */
+    public int getBlockingPoolSize() {
+        if (usingVirtualThreads) return virtualRunnerThreads.get();
+        return ((ThreadPoolExecutor)runner).getPoolSize();
+    }
+    
+    /** count of threads currently running tasks in the bounded non-blocking pool, or 0 if that pool is not enabled */
+    public int getNumActiveNonBlockingPoolThreads() {
+        return nonBlockingRunner!=null ? nonBlockingRunner.getActiveCount() : 0;
+    }
+    
+    /** count of tasks waiting for a thread in the bounded non-blocking pool, or 0 if that pool is not enabled */
+    public int getNumQueuedNonBlockingPoolTasks() {
+        return nonBlockingRunner!=null ? nonBlockingRunner.getQueue().size() : 0;
+    }
+    
     /** count of tasks kept in memory, often including ended tasks */
     public long getNumInMemoryTasks() {
         return tasksById.size();
     }
 
-    private Set<Task<?>> tasksWithTagCreating(Object tag) {
-        Preconditions.checkNotNull(tag);
-        synchronized (tasksByTag) {
-            Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
-            if (result==null) {
-                result = Collections.synchronizedSet(new LinkedHashSet<Task<?>>());
-                tasksByTag.put(tag, result);
-            }
-            return result;
-        }
-    }
-
-    /** exposes live view, for internal use only */
+    /** exposes live (unmodifiable) view, for internal use only; can be iterated without locking or copying */
     @Beta
     public Set<Task<?>> tasksWithTagLiveOrNull(Object tag) {
-        synchronized (tasksByTag) {
-            return tasksByTag.get(tag);
-        }
+        return tasksByTag.getLiveOrNull(tag);
+    }
+    
+    /** count of tasks kept in memory with the given tag; constant time */
+    public int getNumTasksWithTag(Object tag) {
+        return tasksByTag.count(tag);
     }
 
     @Override
@@ -284,9 +441,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Set<Task<?>> getTasksWithTag(Object tag) {
         Set<Task<?>> result = tasksWithTagLiveOrNull(tag);
         if (result==null) return Collections.emptySet();
-        synchronized (result) {
-            return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
-        }
+        return (Set<Task<?>>)Collections.unmodifiableSet(new LinkedHashSet<Task<?>>(result));
     }
     
     @Override
@@ -296,9 +451,7 @@ public class BasicExecutionManager implements ExecutionManager {
         while (ti.hasNext()) {
             Set<Task<?>> tasksForTag = tasksWithTagLiveOrNull(ti.next());
             if (tasksForTag!=null) {
-                synchronized (tasksForTag) {
-                    result.addAll(tasksForTag);
-                }
+                result.addAll(tasksForTag);
             }
         }
         return Collections.unmodifiableSet(result);
@@ -307,21 +460,26 @@ public class BasicExecutionManager implements ExecutionManager {
     /** only works with at least one tag; returns empty if no tags */
     @Override
     public Set<Task<?>> getTasksWithAllTags(Iterable<?> tags) {
-        //NB: for this method retrieval for multiple tags could be made (much) more efficient (if/when it is used with multiple tags!)
-        //by first looking for the least-used tag, getting those tasks, and then for each of those tasks
-        //checking whether it contains the other tags (looking for second-least used, then third-least used, etc)
-        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
-        boolean first = true;
-        Iterator<?> ti = tags.iterator();
-        while (ti.hasNext()) {
-            Object tag = ti.next();
-            if (first) { 
-                first = false;
-                result.addAll(getTasksWithTag(tag));
-            } else {
-                result.retainAll(getTasksWithTag(tag));
+        // start from the least-used tag (counts are constant time), 
+        // then check each of its tasks for the other tags, rather than copying and intersecting every tag's set
+        Object leastUsedTag = null;
+        int leastUsedCount = Integer.MAX_VALUE;
+        List<Object> tagsList = MutableList.copyOf(tags);
+        for (Object tag: tagsList) {
+            int count = getNumTasksWithTag(tag);
+            if (count < leastUsedCount) {
+                leastUsedTag = tag;
+                leastUsedCount = count;
             }
         }
+        if (leastUsedCount==0 || leastUsedCount==Integer.MAX_VALUE) return Collections.emptySet();
+        
+        Set<Task<?>> candidates = tasksWithTagLiveOrNull(leastUsedTag);
+        if (candidates==null) return Collections.emptySet();
+        Set<Task<?>> result = new LinkedHashSet<Task<?>>();
+        for (Task<?> task: candidates) {
+            if (task.getTags().containsAll(tagsList)) result.add(task);
+        }
         return Collections.unmodifiableSet(result);
     }
 
@@ -330,9 +488,7 @@ public class BasicExecutionManager implements ExecutionManager {
     public Collection<Task<?>> allTasksLive() { return tasksById.values(); }
     
     public Set<Object> getTaskTags() { 
-        synchronized (tasksByTag) {
-            return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.keySet())); 
-        }
+        return Collections.unmodifiableSet(Sets.newLinkedHashSet(tasksByTag.tags())); 
     }
 
     public Task<?> submit(Runnable r) { return submit(new LinkedHashMap<Object,Object>(1), r); }
@@ -542,6 +698,10 @@ public class BasicExecutionManager implements ExecutionManager {
                     log.warn("Error running execution listener "+listener+" of task "+task+" done", e);
                 }
             }
+            
+            // after the listeners, so that they (e.g. the GC) see the original task;
+            // a task cancelled while running is compacted when its thread finishes, in internalAfterEnd
+            if (compactCompletedTasks && hasEnded(task)) compact(task);
         }
     }
 
@@ -574,7 +734,7 @@ public class BasicExecutionManager implements ExecutionManager {
             if (schedulers.size()>1) log.warn("multiple schedulers detected, using only the first, for "+task+": "+schedulers);
             future = schedulers.iterator().next().submit(job);
         } else {
-            future = runner.submit(job);
+            future = runnerFor(task).submit(job);
         }
         // on completion, listeners get triggered above; here, below we ensure they get triggered on cancel
         // (and we make sure the same ExecutionList is used in the future as in the task)
@@ -590,6 +750,38 @@ public class BasicExecutionManager implements ExecutionManager {
         return task;
     }
     
+    /** whether {@link #internalAfterEnd(Map, Task, boolean, boolean)} has finished with the task (so nothing is still running it) */
+    private static boolean hasEnded(Task<?> task) {
+        return task.getEndTimeUtc()>0 && task.getThread()==null;
+    }
+    
+    /**
+     * Replaces the given completed task, if it is still kept here, with a {@link TaskTombstone}
+     * (in the id and tag indexes; anyone else holding the task is unaffected).
+     */
+    protected void compact(Task<?> task) {
+        if (!task.isDone() || task instanceof TaskTombstone) return;
+        // proxies are looked up (and resolved to their target) by callers, so keep them as they are
+        if (((TaskInternal<?>)task).getProxyTarget()!=null) return;
+        
+        TaskTombstone<?> tombstone = TaskTombstone.of(this, task);
+        if (tasksById.replace(task.getId(), task, tombstone)) {
+            for (Object tag: tombstone.getTags()) {
+                tasksByTag.replace(tag, task, tombstone);
+            }
+        }
+    }
+    
+    /** 
+     * Returns the pool on which the given task should run: the bounded pool if it is enabled and the task
+     * is marked {@link TaskTags#NON_BLOCKING_TASK}, otherwise the elastic pool. 
+     * Tasks with a {@link TaskScheduler} always use the elastic pool.
+     */
+    protected ExecutorService runnerFor(Task<?> task) {
+        if (nonBlockingRunner!=null && TaskTags.isNonBlocking(task)) return nonBlockingRunner;
+        return runner;
+    }
+    
     protected void beforeSubmitScheduledTaskAllIterations(Map<?,?> flags, Task<?> task) {
         internalBeforeSubmit(flags, task);
     }
@@ -608,7 +800,7 @@ public class BasicExecutionManager implements ExecutionManager {
         if (flags.get("tags")!=null) ((TaskInternal<?>)task).getMutableTags().addAll((Collection<?>)flags.remove("tags"));
 
         for (Object tag: ((TaskInternal<?>)task).getTags()) {
-            tasksWithTagCreating(tag).add(task);
+            tasksByTag.add(tag, task);
         }
     }
 
@@ -684,6 +876,9 @@ public class BasicExecutionManager implements ExecutionManager {
             ((TaskInternal<?>)task).setThread(null);
         }
         synchronized (task) { task.notifyAll(); }
+        
+        // a task cancelled while running has already had its listeners run, but could not be compacted then
+        if (compactCompletedTasks && isEndingAllIterations && task.isCancelled() && hasEnded(task)) compact(task);
     }
 
     public TaskScheduler getTaskSchedulerForTag(Object tag) {
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.util.time.Duration;
+
+import com.google.common.annotations.Beta;
+
+/**
+ * A timer for large numbers of approximately-timed jobs, such as feed polls.
+ * <p>
+ * A single thread advances a wheel of buckets once per tick; a job is put in the bucket for its deadline
+ * (with a count of the remaining rotations, for deadlines further away than one turn of the wheel),
+ * so adding and cancelling are constant-time and each tick only looks at one bucket, however many jobs
+ * there are, unlike a {@link java.util.concurrent.ScheduledExecutorService} which keeps a heap of them all.
+ * Jobs run up to one tick late.
+ * <p>
+ * Expired jobs are handed to the given executor, so they never run on (or hold up) the timer thread.
+ */
+@Beta
+public class HashedWheelTimer {
+
+    private static final Logger log = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    public static class Timeout {
+        private final Runnable job;
+        private final long deadlineNanos;
+        // only accessed by the timer thread
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable job, long deadlineNanos) {
+            this.job = job;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /** prevents the job from running, if it has not already been handed to the executor */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout["+job+(cancelled ? ",cancelled" : "")+"]";
+        }
+    }
+
+    private final Executor executor;
+    private final long tickNanos;
+    private final List<List<Timeout>> wheel;
+    private final Queue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger scheduledCount = new AtomicInteger();
+    private final long startNanos;
+    private final Thread worker;
+    private volatile boolean stopped = false;
+
+    /** number of ticks since start; only accessed by the timer thread */
+    private long tick = 0;
+
+    public HashedWheelTimer(ThreadFactory threadFactory, Duration tickDuration, Executor executor) {
+        this(threadFactory, tickDuration, DEFAULT_WHEEL_SIZE, executor);
+    }
+
+    public HashedWheelTimer(ThreadFactory threadFactory, Duration tickDuration, int wheelSize, Executor executor) {
+        checkArgument(tickDuration.isPositive(), "tickDuration must be positive, was %s", tickDuration);
+        checkArgument(wheelSize > 0, "wheelSize must be positive, was %s", wheelSize);
+        this.executor = checkNotNull(executor, "executor");
+        this.tickNanos = tickDuration.toNanoseconds();
+        this.wheel = new ArrayList<List<Timeout>>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            wheel.add(new ArrayList<Timeout>());
+        }
+        this.startNanos = System.nanoTime();
+        this.worker = threadFactory.newThread(new Runnable() {
+            public void run() {
+                runTicks();
+            }
+        });
+        worker.start();
+    }
+
+    /** schedules the job to be run (on the executor) once the given delay has passed */
+    public Timeout newTimeout(Runnable job, Duration delay) {
+        if (stopped) throw new IllegalStateException("Timer "+this+" has been stopped");
+        Timeout result = new Timeout(checkNotNull(job, "job"), System.nanoTime() + Math.max(0, delay.toNanoseconds()));
+        scheduledCount.incrementAndGet();
+        added.add(result);
+        return result;
+    }
+
+    /** the number of jobs waiting to run (including any cancelled but not yet discarded) */
+    public int getNumScheduled() {
+        return scheduledCount.get();
+    }
+
+    public Duration getTickDuration() {
+        return Duration.nanos(tickNanos);
+    }
+
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /** stops the timer thread; jobs which have not yet run never will */
+    public void stop() {
+        stopped = true;
+        worker.interrupt();
+    }
+
+    private void runTicks() {
+        while (!stopped) {
+            long sleepNanos = startNanos + (tick+1)*tickNanos - System.nanoTime();
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (stopped) return;
+                    log.debug("Timer "+this+" interrupted but not stopped; continuing");
+                    continue;
+                }
+            }
+            try {
+                transferAdded();
+                expire(wheel.get((int) (tick % wheel.size())));
+            } catch (Throwable t) {
+                // must keep ticking, or no job will run again
+                log.error("Error in timer "+this+"; continuing", t);
+            }
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.cancelled) {
+                scheduledCount.decrementAndGet();
+                continue;
+            }
+            // the tick at the end of which it is due, but never one already passed
+            long deadlineTick = Math.max(tick, (timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1);
+            timeout.remainingRounds = (deadlineTick - tick) / wheel.size();
+            wheel.get((int) (deadlineTick % wheel.size())).add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket) {
+        int kept = 0;
+        for (int i = 0; i < bucket.size(); i++) {
+            Timeout timeout = bucket.get(i);
+            if (timeout.cancelled) {
+                scheduledCount.decrementAndGet();
+            } else if (timeout.remainingRounds <= 0) {
+                scheduledCount.decrementAndGet();
+                try {
+                    executor.execute(timeout.job);
+                } catch (RejectedExecutionException e) {
+                    if (!stopped) log.warn("Timer "+this+" could not run "+timeout.job+": "+e);
+                }
+            } else {
+                timeout.remainingRounds--;
+                bucket.set(kept++, timeout);
+            }
+        }
+        bucket.subList(kept, bucket.size()).clear();
+    }
+
+    @Override
+    public String toString() {
+        return "HashedWheelTimer["+worker.getName()+"]";
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import brooklyn.management.Task;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Striped;
+
+/**
+ * Concurrent index of tasks by tag (including the entity tags, such as
+ * {@link brooklyn.entity.basic.BrooklynTaskTags#tagForContextEntity(brooklyn.entity.Entity)}).
+ * <p>
+ * Reads never lock: the per-tag sets are concurrent, so can be iterated while tasks are being added and removed
+ * (iteration is weakly consistent, and does not copy), and counts are maintained so are O(1).
+ * Each tag's tasks are iterated in the order they were added, i.e. submission order
+ * (a task replaced by an equal one, such as a {@link TaskTombstone}, keeps its place).
+ * Updates lock only the stripe for the tag concerned, so that a tag's entry can be removed when it becomes empty
+ * without racing against a concurrent add; submitters with different tags rarely contend.
+ */
+class TaskTagIndex {
+
+    private static class TagBucket {
+        /** tasks keyed by the sequence number given when they were added, so in the order they were added */
+        final ConcurrentSkipListMap<Long, Task<?>> tasksBySequence = new ConcurrentSkipListMap<Long, Task<?>>();
+        final ConcurrentMap<Task<?>, Long> sequenceByTask = new ConcurrentHashMap<Task<?>, Long>();
+        final AtomicInteger count = new AtomicInteger();
+        final Set<Task<?>> view = new AbstractSet<Task<?>>() {
+            @Override
+            public Iterator<Task<?>> iterator() {
+                return Iterators.unmodifiableIterator(tasksBySequence.values().iterator());
+            }
+            @Override
+            public int size() {
+                return count.get();
+            }
+            @Override
+            public boolean contains(Object o) {
+                return o != null && sequenceByTask.containsKey(o);
+            }
+        };
+    }
+
+    private final ConcurrentMap<Object, TagBucket> buckets = new ConcurrentHashMap<Object, TagBucket>();
+    private final AtomicLong nextSequence = new AtomicLong();
+    private final Striped<Lock> locks = Striped.lock(64);
+
+    void add(Object tag, Task<?> task) {
+        Preconditions.checkNotNull(tag);
+        Lock lock = locks.get(tag);
+        lock.lock();
+        try {
+            TagBucket bucket = buckets.get(tag);
+            if (bucket == null) {
+                bucket = new TagBucket();
+                buckets.put(tag, bucket);
+            }
+            if (!bucket.sequenceByTask.containsKey(task)) {
+                long sequence = nextSequence.incrementAndGet();
+                bucket.sequenceByTask.put(task, sequence);
+                bucket.tasksBySequence.put(sequence, task);
+                bucket.count.incrementAndGet();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** @return true if the task was indexed under the tag */
+    boolean remove(Object tag, Task<?> task) {
+        if (tag == null) return false;
+        Lock lock = locks.get(tag);
+        lock.lock();
+        try {
+            TagBucket bucket = buckets.get(tag);
+            if (bucket == null) return false;
+            Long sequence = bucket.sequenceByTask.remove(task);
+            if (sequence == null) return false;
+            bucket.tasksBySequence.remove(sequence);
+            if (bucket.count.decrementAndGet() <= 0) {
+                buckets.remove(tag);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** replaces a task with an equal one (i.e. with the same id), if it is indexed under the tag */
+    boolean replace(Object tag, Task<?> task, Task<?> replacement) {
+        if (tag == null) return false;
+        Lock lock = locks.get(tag);
+        lock.lock();
+        try {
+            TagBucket bucket = buckets.get(tag);
+            if (bucket == null) return false;
+            Long sequence = bucket.sequenceByTask.remove(task);
+            if (sequence == null) return false;
+            bucket.sequenceByTask.put(replacement, sequence);
+            bucket.tasksBySequence.put(sequence, replacement);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** removes the tag, returning the tasks which had that tag (or null if none) */
+    Set<Task<?>> removeTag(Object tag) {
+        if (tag == null) return null;
+        Lock lock = locks.get(tag);
+        lock.lock();
+        try {
+            TagBucket bucket = buckets.remove(tag);
+            return bucket == null ? null : bucket.view;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** live unmodifiable view of the tasks with this tag, or null if there are none */
+    Set<Task<?>> getLiveOrNull(Object tag) {
+        if (tag == null) return null;
+        TagBucket bucket = buckets.get(tag);
+        return bucket == null ? null : bucket.view;
+    }
+
+    int count(Object tag) {
+        if (tag == null) return 0;
+        TagBucket bucket = buckets.get(tag);
+        return bucket == null ? 0 : bucket.count.get();
+    }
+
+    /** live view of the tags in use */
+    Set<Object> tags() {
+        return Collections.unmodifiableSet(buckets.keySet());
+    }
+}
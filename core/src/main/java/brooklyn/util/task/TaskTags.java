@@ -35,8 +35,13 @@ public class TaskTags {
     /** marks a task which is a subtask of another */
     public static final String SUB_TASK_TAG = "SUB-TASK";
 
+    /** marks a short task which never waits on other tasks (so cannot deadlock a bounded pool),
+     * e.g. subscription delivery, polls and periodic persistence;
+     * these run on the bounded pool if there is one, see {@link BasicExecutionManager#NON_BLOCKING_POOL_SIZE} */
+    public static final String NON_BLOCKING_TASK = "non-blocking";
+
     public static void addTagDynamically(TaskAdaptable<?> task, final Object tag) {
-        ((BasicTask<?>)task.asTask()).applyTagModifier(new Function<Set<Object>, Void>() {
+        ((TaskInternal<?>)task.asTask()).applyTagModifier(new Function<Set<Object>, Void>() {
             public Void apply(@Nullable Set<Object> input) {
                 input.add(tag);
                 return null;
@@ -45,7 +50,7 @@ public class TaskTags {
     }
     
     public static void addTagsDynamically(TaskAdaptable<?> task, final Object tag1, final Object ...tags) {
-        ((BasicTask<?>)task.asTask()).applyTagModifier(new Function<Set<Object>, Void>() {
+        ((TaskInternal<?>)task.asTask()).applyTagModifier(new Function<Set<Object>, Void>() {
             public Void apply(@Nullable Set<Object> input) {
                 input.add(tag1);
                 for (Object tag: tags) input.add(tag);
@@ -59,6 +64,10 @@ public class TaskTags {
         return hasTag(task, INESSENTIAL_TASK);
     }
 
+    public static boolean isNonBlocking(Task<?> task) {
+        return hasTag(task, NON_BLOCKING_TASK);
+    }
+
     public static boolean hasTag(Task<?> task, Object tag) {
         return task.getTags().contains(tag);
     }
@@ -68,4 +77,9 @@ public class TaskTags {
         return task;
     }
 
+    public static <U,V extends TaskAdaptable<U>> V markNonBlocking(V task) {
+        addTagDynamically(task, NON_BLOCKING_TASK);
+        return task;
+    }
+
 }
@@ -0,0 +1,376 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import brooklyn.management.ExecutionManager;
+import brooklyn.management.HasTaskChildren;
+import brooklyn.management.Task;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.text.Strings;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Compact record of a completed task, which {@link BasicExecutionManager} keeps in place of the
+ * original task once it is done, so that retained task history does not hold on to the job, its flags and
+ * listeners, the concurrent tag set, the underlying futures, and so on.
+ * <p>
+ * It retains the id, name and description, tags, timings, outcome (result or error) and the ids
+ * (rather than references) of the submitting task and any children, which are looked up from the
+ * execution manager on demand. It is equal to the original task (as tasks are equal by id).
+ * Tags can still be added and removed, as they can on a completed {@link BasicTask}; other mutators fail,
+ * apart from those which are harmless no-ops on a completed task.
+ */
+@Beta
+public class TaskTombstone<T> implements TaskInternal<T> {
+
+    private final ExecutionManager executionManager;
+    private final String id;
+    private final String displayName;
+    private final String description;
+    /** array-backed, as tags are few and rarely change once a task is done */
+    private final Set<Object> tags;
+    private final long queuedTimeUtc;
+    private final long submitTimeUtc;
+    private final long startTimeUtc;
+    private final long endTimeUtc;
+    private final boolean cancelled;
+    private final T result;
+    private final Throwable error;
+    private final String extraStatusText;
+    private final String submittedByTaskId;
+    private final String submittedByTaskDisplayName;
+
+    /** as {@link TaskTombstone}, for tasks which had children */
+    public static class WithChildren<T> extends TaskTombstone<T> implements HasTaskChildren {
+        private final String[] childIds;
+
+        protected WithChildren(ExecutionManager executionManager, Task<T> task) {
+            super(executionManager, task);
+            List<String> ids = MutableList.of();
+            for (Task<?> child: ((HasTaskChildren)task).getChildren()) {
+                ids.add(child.getId());
+            }
+            childIds = ids.toArray(new String[ids.size()]);
+        }
+
+        /** the children which are still known to the execution manager */
+        @Override
+        public Iterable<Task<?>> getChildren() {
+            List<Task<?>> result = MutableList.of();
+            for (String childId: childIds) {
+                Task<?> child = getExecutionManager().getTask(childId);
+                if (child!=null) result.add(child);
+            }
+            return Collections.unmodifiableList(result);
+        }
+    }
+
+    /** creates a tombstone for the given task, which must be done */
+    public static <T> TaskTombstone<T> of(ExecutionManager executionManager, Task<T> task) {
+        if (task instanceof HasTaskChildren) return new WithChildren<T>(executionManager, task);
+        return new TaskTombstone<T>(executionManager, task);
+    }
+
+    protected TaskTombstone(ExecutionManager executionManager, Task<T> task) {
+        if (!task.isDone()) throw new IllegalStateException("Cannot make tombstone for "+task+", as it is not done");
+        this.executionManager = executionManager;
+        this.id = task.getId();
+        this.displayName = task.getDisplayName();
+        this.description = task.getDescription();
+        this.tags = new CopyOnWriteArraySet<Object>(task.getTags());
+        this.queuedTimeUtc = (task instanceof TaskInternal) ? ((TaskInternal<?>)task).getQueuedTimeUtc() : -1;
+        this.submitTimeUtc = task.getSubmitTimeUtc();
+        this.startTimeUtc = task.getStartTimeUtc();
+        this.endTimeUtc = task.getEndTimeUtc();
+        this.cancelled = task.isCancelled();
+        Object extraStatus = (task instanceof TaskInternal) ? ((TaskInternal<?>)task).getExtraStatusText() : null;
+        this.extraStatusText = (extraStatus==null ? null : extraStatus.toString());
+
+        Task<?> submitter = task.getSubmittedByTask();
+        this.submittedByTaskId = (submitter==null ? null : submitter.getId());
+        this.submittedByTaskDisplayName = (submitter==null ? null : submitter.getDisplayName());
+
+        T resultV = null;
+        Throwable errorV = null;
+        if (!cancelled) {
+            try {
+                resultV = task.get();
+            } catch (Throwable t) {
+                Exceptions.propagateIfFatal(t);
+                // remove outer ExecutionException, it is added back in get()
+                while (t instanceof ExecutionException && t.getCause()!=null) t = t.getCause();
+                errorV = t;
+            }
+        }
+        this.result = resultV;
+        this.error = errorV;
+    }
+
+    /** placeholder for a submitter which has been forgotten */
+    private TaskTombstone(String id, String displayName) {
+        this.executionManager = null;
+        this.id = id;
+        this.displayName = displayName;
+        this.description = "Details of the original task "+displayName+" ("+id+") have been forgotten.";
+        this.tags = new CopyOnWriteArraySet<Object>();
+        this.queuedTimeUtc = this.submitTimeUtc = this.startTimeUtc = this.endTimeUtc = -1;
+        this.cancelled = false;
+        this.result = null;
+        this.error = null;
+        this.extraStatusText = null;
+        this.submittedByTaskId = null;
+        this.submittedByTaskDisplayName = null;
+    }
+
+    protected ExecutionManager getExecutionManager() {
+        return executionManager;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj instanceof Task)
+            return ((Task<?>)obj).getId().equals(getId());
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "Task["+(Strings.isNonEmpty(displayName) ? displayName : tags)+":"+getId()+"]";
+    }
+
+    @Override
+    public Task<T> asTask() {
+        return this;
+    }
+
+    // metadata accessors ------------
+
+    @Override public String getId() { return id; }
+    @Override public String getDisplayName() { return displayName; }
+    @Override public String getDescription() { return description; }
+    @Override public Set<Object> getTags() { return Collections.unmodifiableSet(tags); }
+    @Override public long getQueuedTimeUtc() { return queuedTimeUtc; }
+    @Override public long getSubmitTimeUtc() { return submitTimeUtc; }
+    @Override public long getStartTimeUtc() { return startTimeUtc; }
+    @Override public long getEndTimeUtc() { return endTimeUtc; }
+    @Override public Thread getThread() { return null; }
+    @Override public Task<?> getProxyTarget() { return null; }
+    @Override public Callable<T> getJob() { return null; }
+    @Override public String getBlockingDetails() { return null; }
+    @Override public Task<?> getBlockingTask() { return null; }
+    @Override public Object getExtraStatusText() { return extraStatusText; }
+
+    /** the submitting task, if it is still known to the execution manager, otherwise a placeholder with its id and name */
+    @Override
+    public Task<?> getSubmittedByTask() {
+        if (submittedByTaskId==null) return null;
+        Task<?> result = executionManager==null ? null : executionManager.getTask(submittedByTaskId);
+        if (result!=null) return result;
+        return new TaskTombstone<Object>(submittedByTaskId, submittedByTaskDisplayName);
+    }
+
+    // state --------------------
+
+    @Override public boolean isQueued() { return queuedTimeUtc >= 0; }
+    @Override public boolean isSubmitted() { return submitTimeUtc >= 0; }
+    @Override public boolean isQueuedOrSubmitted() { return isQueued() || isSubmitted(); }
+    @Override public boolean isQueuedAndNotSubmitted() { return isQueued() && !isSubmitted(); }
+    @Override public boolean isBegun() { return startTimeUtc >= 0; }
+    @Override public boolean isDone() { return true; }
+    @Override public boolean isCancelled() { return cancelled; }
+    @Override public boolean isError() { return cancelled || error!=null; }
+
+    // future value --------------------
+
+    @Override
+    public T get() throws ExecutionException {
+        if (cancelled) throw new CancellationException();
+        if (error!=null) throw new ExecutionException(error);
+        return result;
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws ExecutionException {
+        return get();
+    }
+
+    @Override
+    public T get(Duration duration) throws ExecutionException {
+        return get();
+    }
+
+    @Override
+    public T getUnchecked() {
+        try {
+            return get();
+        } catch (Exception e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    @Override
+    public T getUnchecked(Duration duration) {
+        return getUnchecked();
+    }
+
+    @Override
+    public Future<T> getInternalFuture() {
+        if (cancelled) return Futures.immediateCancelledFuture();
+        if (error!=null) return Futures.immediateFailedFuture(error);
+        return Futures.immediateFuture(result);
+    }
+
+    @Override public void blockUntilStarted() {}
+    @Override public boolean blockUntilStarted(Duration timeout) { return true; }
+    @Override public void blockUntilEnded() {}
+    @Override public boolean blockUntilEnded(Duration timeout) { return true; }
+
+    @Override public boolean cancel() { return false; }
+    @Override public boolean cancel(boolean mayInterruptIfRunning) { return false; }
+
+    /** runs the listener immediately, as the task is done */
+    @Override
+    public void addListener(Runnable listener, Executor executor) {
+        executor.execute(listener);
+    }
+
+    /** an already-executed list, so that anything added to it runs immediately */
+    @Override
+    public ExecutionList getListeners() {
+        ExecutionList result = new ExecutionList();
+        result.execute();
+        return result;
+    }
+
+    // ------------------ status ---------------------------
+
+    /** as {@link BasicTask#getStatusSummary()} for a completed task */
+    @Override
+    public String getStatusSummary() {
+        return getStatusString(0);
+    }
+
+    /** as {@link BasicTask#getStatusDetail(boolean)} for a completed task */
+    @Override
+    public String getStatusDetail(boolean multiline) {
+        return getStatusString(multiline?2:1);
+    }
+
+    protected String getStatusString(int verbosity) {
+        if (submitTimeUtc <= 0) return "Not submitted";
+        String duration = Time.makeTimeStringRounded(endTimeUtc - submitTimeUtc);
+        String rv;
+        if (cancelled) {
+            rv = "Cancelled";
+            if (verbosity >= 1) rv += " after "+duration;
+            if (verbosity >= 2 && extraStatusText!=null) rv += "\n\n"+extraStatusText;
+        } else if (error!=null) {
+            rv = "Failed";
+            if (verbosity >= 1) {
+                rv += " after "+duration;
+                if (verbosity >= 2 && extraStatusText!=null) rv += "\n\n"+extraStatusText;
+                String errorMessage = Exceptions.collapseText(error);
+                if (verbosity == 1) rv += ": "+abbreviate(errorMessage);
+                if (verbosity >= 2) {
+                    rv += ": "+errorMessage;
+                    StringWriter sw = new StringWriter();
+                    error.printStackTrace(new PrintWriter(sw));
+                    rv += "\n\n"+sw.getBuffer();
+                }
+            }
+        } else {
+            rv = "Completed";
+            if (verbosity == 1) {
+                rv += ", " +(result==null ? "no return value (null)" : "result: "+abbreviate(result.toString()));
+            } else if (verbosity >= 2) {
+                rv += " after "+duration;
+                rv += "\n\n" + (result==null ? "No return value (null)" : "Result: "+result);
+                if (extraStatusText!=null) rv += "\n\n"+extraStatusText;
+            }
+        }
+        return rv;
+    }
+
+    private static String abbreviate(String s) {
+        s = Strings.getFirstLine(s);
+        if (s.length()>255) s = s.substring(0, 252)+ "...";
+        return s;
+    }
+
+    // mutators --------------------
+
+    /** no-op, as the task is complete */
+    @Override public void markQueued() {}
+    /** no-op, as the task is complete */
+    @Override public void runListeners() {}
+    /** no-op, as the task is complete */
+    @Override public void resetBlockingDetails() {}
+    /** no-op, as the task is complete */
+    @Override public void resetBlockingTask() {}
+    /** no-op, as the task is complete */
+    @Override public String setBlockingDetails(String blockingDetails) { return null; }
+    /** no-op, as the task is complete */
+    @Override public Task<?> setBlockingTask(Task<?> blockingTask) { return null; }
+    /** no-op, as the task is complete */
+    @Override public void setExtraStatusText(Object extraStatus) {}
+    /** permitted only to clear the thread, as the task is complete */
+    @Override public void setThread(Thread thread) {
+        if (thread!=null) throw completed();
+    }
+
+    @Override public void initInternalFuture(ListenableFuture<T> result) { throw completed(); }
+    @Override public void setEndTimeUtc(long val) { throw completed(); }
+    @Override public void setJob(Callable<T> job) { throw completed(); }
+    @Override public void setSubmitTimeUtc(long val) { throw completed(); }
+    @Override public void setSubmittedByTask(Task<?> task) { throw completed(); }
+    @Override public void setStartTimeUtc(long val) { throw completed(); }
+    @Override public Set<Object> getMutableTags() { return tags; }
+    @Override public void applyTagModifier(Function<Set<Object>,Void> modifier) { modifier.apply(tags); }
+
+    private IllegalStateException completed() {
+        return new IllegalStateException("Task "+this+" is completed and cannot be modified");
+    }
+}
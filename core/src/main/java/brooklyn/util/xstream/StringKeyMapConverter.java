@@ -29,6 +29,8 @@ import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.text.Identifiers;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.thoughtworks.xstream.converters.MarshallingContext;
 import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.ExtendedHierarchicalStreamWriterHelper;
@@ -51,6 +53,10 @@ public class StringKeyMapConverter extends MapConverter {
 
     final static String VALID_XML_NODE_NAME_START_CHARS = Identifiers.JAVA_GOOD_START_CHARS + ".";
 
+    /** keys are typically config key and sensor names, repeated in every map read (e.g. in each entity's memento);
+     * share them rather than holding a copy per map */
+    private static final Interner<String> KEYS = Interners.newWeakInterner();
+
     public StringKeyMapConverter(Mapper mapper) {
         super(mapper);
     }
@@ -108,7 +114,7 @@ public class StringKeyMapConverter extends MapConverter {
         if (key==null) {
             super.unmarshalEntry(reader, context, map);
         } else {
-            unmarshalStringKey(reader, context, map, key);
+            unmarshalStringKey(reader, context, map, KEYS.intern(key));
         }
     }
 
@@ -20,10 +20,18 @@ package brooklyn.util.xstream;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.xpath.XPathExpression;
 import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
@@ -31,10 +39,15 @@ import javax.xml.xpath.XPathFactory;
 import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.collections.MutableSet;
 import brooklyn.util.exceptions.Exceptions;
 
 public class XmlUtil {
 
+    // thread-safe once configured
+    private static final XMLInputFactory STAX_FACTORY = XMLInputFactory.newInstance();
+
     public static Object xpath(String xml, String xpath) {
         // TODO Could share factory/doc in thread-local storage; see http://stackoverflow.com/questions/9828254/is-documentbuilderfactory-thread-safe-in-java-5
         try {
@@ -56,4 +69,47 @@ public class XmlUtil {
             throw Exceptions.propagate(e);
         }
     }
+
+    /**
+     * Returns the text of the given elements which are direct children of the root element
+     * (e.g. "id" and "type" for "/entity/id" and "/entity/type"), omitting any which are not present.
+     * <p>
+     * Uses a streaming parser which stops as soon as all are found, so is much cheaper than
+     * {@link #xpath(String, String)} (which builds a DOM of the whole document each time) 
+     * when the elements come near the start of a large document, as with mementos.
+     */
+    public static Map<String,String> rootChildElementsText(String xml, String ...elementNames) {
+        Set<String> wanted = MutableSet.copyOf(Arrays.asList(elementNames));
+        Map<String,String> result = MutableMap.of();
+        XMLStreamReader reader = null;
+        try {
+            reader = STAX_FACTORY.createXMLStreamReader(new StringReader(xml));
+            int depth = 0;
+            while (!wanted.isEmpty() && reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    depth++;
+                    String name = reader.getLocalName();
+                    if (depth == 2 && wanted.remove(name)) {
+                        // consumes to the matching end element
+                        result.put(name, reader.getElementText());
+                        depth--;
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT) {
+                    depth--;
+                }
+            }
+            return result;
+        } catch (XMLStreamException e) {
+            throw Exceptions.propagate(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (XMLStreamException e) {
+                    // ignore; nothing to release for a string
+                }
+            }
+        }
+    }
 }
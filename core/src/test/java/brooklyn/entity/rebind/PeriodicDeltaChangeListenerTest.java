@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static brooklyn.entity.rebind.PeriodicDeltaChangeListener.ADAPTIVE_TARGET_DELTA_SIZE;
+import static brooklyn.entity.rebind.PeriodicDeltaChangeListener.nextAdaptivePeriod;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.time.Duration;
+
+public class PeriodicDeltaChangeListenerTest extends RebindTestFixtureWithApp {
+
+    private static final Duration MIN = Duration.millis(100);
+    private static final Duration MAX = Duration.seconds(10);
+    
+    @Test
+    public void testAdaptivePeriodShortensForLargeDeltas() {
+        Duration next = nextAdaptivePeriod(Duration.seconds(2), ADAPTIVE_TARGET_DELTA_SIZE+1, Duration.millis(10), MIN, MAX);
+        assertEquals(next, Duration.seconds(1));
+    }
+
+    @Test
+    public void testAdaptivePeriodLengthensForSmallDeltas() {
+        Duration next = nextAdaptivePeriod(Duration.seconds(2), 1, Duration.millis(10), MIN, MAX);
+        assertEquals(next, Duration.seconds(3));
+    }
+
+    @Test
+    public void testAdaptivePeriodKeptAboveMultipleOfWriteDuration() {
+        Duration next = nextAdaptivePeriod(Duration.seconds(2), ADAPTIVE_TARGET_DELTA_SIZE+1, Duration.seconds(1), MIN, MAX);
+        assertEquals(next, Duration.seconds(1).multiply(PeriodicDeltaChangeListener.ADAPTIVE_MIN_WRITE_DURATION_MULTIPLE));
+    }
+
+    @Test
+    public void testAdaptivePeriodCappedByMaxStaleness() {
+        Duration next = nextAdaptivePeriod(Duration.seconds(9), 0, Duration.seconds(1), MIN, MAX);
+        assertEquals(next, Duration.seconds(9));
+        
+        // even when writes are slow, changes should not wait longer than the max staleness
+        next = nextAdaptivePeriod(Duration.seconds(9), 0, Duration.seconds(5), MIN, MAX);
+        assertEquals(next, Duration.seconds(5));
+    }
+
+    @Test
+    public void testAdaptivePeriodNotBelowMinimum() {
+        Duration next = nextAdaptivePeriod(Duration.millis(150), ADAPTIVE_TARGET_DELTA_SIZE+1, Duration.ZERO, MIN, MAX);
+        assertEquals(next, MIN);
+    }
+
+    @Test
+    public void testMetricsReportLastWrite() throws Exception {
+        origApp.setAttribute(TestEntity.NAME, "mydata");
+        RebindTestUtils.waitForPersisted(origApp);
+        
+        Map<String, Object> metrics = origManagementContext.getRebindManager().getMetrics();
+        assertEquals(metrics.get("persistenceRunning"), true);
+        assertTrue(metrics.containsKey("queuedObjects"), "metrics="+metrics);
+        assertTrue(metrics.containsKey("lagMillis"), "metrics="+metrics);
+        assertTrue((Long)metrics.get("writes") > 0, "metrics="+metrics);
+        assertTrue((Integer)metrics.get("lastWriteObjects") > 0, "metrics="+metrics);
+        // items whose contents have not changed are not rewritten, so this may be 0
+        assertTrue((Long)metrics.get("lastWriteBytes") >= 0, "metrics="+metrics);
+        assertTrue(metrics.containsKey("lastWriteDurationMillis"), "metrics="+metrics);
+    }
+}
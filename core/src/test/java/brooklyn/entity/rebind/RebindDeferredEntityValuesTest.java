@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.DeferredMementoValue;
+import brooklyn.event.AttributeSensor;
+import brooklyn.event.basic.Sensors;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
+import com.google.common.reflect.TypeToken;
+
+/** Rebinds with {@link BrooklynMementoPersisterToObjectStore#PERSISTER_DEFER_ENTITY_VALUES} set. */
+public class RebindDeferredEntityValuesTest extends RebindTestFixtureWithApp {
+
+    @SuppressWarnings("serial")
+    private static final AttributeSensor<List<String>> LIST_SENSOR = Sensors.newSensor(new TypeToken<List<String>>() {}, "test.list", "A list");
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_DEFER_ENTITY_VALUES, true);
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(properties)
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildUnstarted();
+    }
+
+    @Test
+    public void testValuesDecodedWhenFirstUsed() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "myname")
+                .configure(TestEntity.CONF_MAP_PLAIN, ImmutableMap.of("a", 1))
+                .configure(TestEntity.CONF_OBJECT, origApp));
+        origEntity.setAttribute(TestEntity.SEQUENCE, 123);
+        origEntity.setAttribute(LIST_SENSOR, ImmutableList.of("x", "y"));
+
+        newApp = rebind();
+        TestEntity newEntity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+
+        // inline values are read as usual; others are kept serialized until used
+        assertEquals(((EntityInternal)newEntity).getConfigMap().getRawConfig(TestEntity.CONF_NAME), "myname");
+        Object rawMap = ((EntityInternal)newEntity).getConfigMap().getRawConfig(TestEntity.CONF_MAP_PLAIN);
+        assertTrue(rawMap instanceof DeferredMementoValue, "raw="+rawMap);
+        assertFalse(((DeferredMementoValue)rawMap).isDecoded());
+
+        assertEquals(newEntity.getConfig(TestEntity.CONF_MAP_PLAIN), ImmutableMap.of("a", 1));
+        assertTrue(((DeferredMementoValue)rawMap).isDecoded());
+        assertEquals(newEntity.getConfig(TestEntity.CONF_OBJECT), newApp);
+        assertEquals(newEntity.getAttribute(TestEntity.SEQUENCE), (Integer)123);
+        assertEquals(newEntity.getAttribute(LIST_SENSOR), ImmutableList.of("x", "y"));
+        assertEquals(((EntityInternal)newEntity).getAllAttributes().get(LIST_SENSOR), ImmutableList.of("x", "y"));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.EntityPredicates;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.policy.Policy;
+import brooklyn.policy.PolicySpec;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.policy.TestPolicy;
+
+import com.google.common.collect.Iterables;
+
+/** Rebinds with {@link RebindManagerImpl#REBIND_ENTITY_READ_AHEAD} set, so entities are loaded as they are reconstructed. */
+public class RebindEntityReadAheadTest extends RebindTestFixtureWithApp {
+
+    @Override
+    protected LocalManagementContext createNewManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(RebindManagerImpl.REBIND_ENTITY_READ_AHEAD, 1);
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(properties)
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildUnstarted();
+    }
+
+    @Test
+    public void testRebindsEntitiesParentsFirst() throws Exception {
+        TestEntity origChild = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "child"));
+        TestEntity origGrandchild = origChild.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "grandchild"));
+        TestEntity origOther = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_OBJECT, origGrandchild));
+        origChild.addPolicy(PolicySpec.create(TestPolicy.class).configure(TestPolicy.CONF_NAME, "mypolicy"));
+        origGrandchild.setAttribute(TestEntity.SEQUENCE, 123);
+
+        newApp = rebind();
+
+        TestEntity newChild = (TestEntity) Iterables.find(newApp.getChildren(), EntityPredicates.idEqualTo(origChild.getId()));
+        TestEntity newOther = (TestEntity) Iterables.find(newApp.getChildren(), EntityPredicates.idEqualTo(origOther.getId()));
+        TestEntity newGrandchild = (TestEntity) Iterables.getOnlyElement(newChild.getChildren());
+
+        assertEquals(newChild.getConfig(TestEntity.CONF_NAME), "child");
+        assertEquals(newGrandchild.getId(), origGrandchild.getId());
+        assertEquals(newGrandchild.getParent(), newChild);
+        assertEquals(newGrandchild.getConfig(TestEntity.CONF_NAME), "grandchild");
+        assertEquals(newGrandchild.getAttribute(TestEntity.SEQUENCE), (Integer)123);
+        assertEquals(newOther.getConfig(TestEntity.CONF_OBJECT), newGrandchild);
+
+        Policy newPolicy = Iterables.getOnlyElement(newChild.getPolicies());
+        assertEquals(newPolicy.getConfig(TestPolicy.CONF_NAME), "mypolicy");
+
+        assertTrue(((RebindManagerImpl)newManagementContext.getRebindManager()).getLastRebindPhaseTimings().containsKey("reconstruct"));
+    }
+}
@@ -18,6 +18,7 @@
  */
 package brooklyn.entity.rebind;
 
+import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Arrays;
@@ -43,6 +44,8 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableSet;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Maps;
 
 public class RebindManagerSorterTest {
@@ -118,6 +121,14 @@ public class RebindManagerSorterTest {
         assertOrder(sortedNodes, ImmutableList.of(e1a, e1b));
     }
     
+    @Test
+    public void testSortOrderOfIdsWithParents() throws Exception {
+        // in reverse order, with a parent (e.g. of an orphaned entity) which is not in the set
+        Map<String, String> parents = ImmutableMap.of("e1b", "e1a", "e1a", "app", "e2a", "app", "orphan", "missing");
+        List<String> sorted = rebindManager.sortParentFirst(ImmutableSet.of("e1b", "e2a", "orphan", "e1a", "app"), parents);
+        assertEquals(sorted, ImmutableList.of("app", "e1a", "e1b", "e2a", "orphan"));
+    }
+    
     @SuppressWarnings("unchecked")
     private void assertOrder(Map<String, ? extends TreeNode> nodes, Iterable<? extends Identifiable> order) {
         assertOrders(nodes, order);
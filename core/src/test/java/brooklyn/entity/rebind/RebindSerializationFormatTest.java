@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.persister.BinaryMementoSerializer;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.MementoSerializationFormat;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Iterables;
+import com.google.common.io.Files;
+
+/** Writes the store as {@link MementoSerializationFormat#BINARY binary}, and rebinds with the default (XML) format. */
+public class RebindSerializationFormatTest extends RebindTestFixtureWithApp {
+
+    @Override
+    protected LocalManagementContext createOrigManagementContext() {
+        BrooklynProperties properties = BrooklynProperties.Factory.newDefault();
+        properties.put(BrooklynMementoPersisterToObjectStore.PERSISTER_SERIALIZATION_FORMAT, MementoSerializationFormat.BINARY);
+        return RebindTestUtils.managementContextBuilder(mementoDir, classLoader)
+                .properties(properties)
+                .persistPeriodMillis(getPersistPeriodMillis())
+                .forLive(useLiveManagementContext())
+                .emptyCatalog(useEmptyCatalog())
+                .buildStarted();
+    }
+
+    @Test
+    public void testRebindsFromBinaryWhenConfiguredForXml() throws Exception {
+        TestEntity origEntity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(TestEntity.CONF_NAME, "myname"));
+        origEntity.setAttribute(TestEntity.SEQUENCE, 123);
+        RebindTestUtils.waitForPersisted(origApp);
+
+        String contents = Files.toString(new File(mementoDir, "entities/"+origEntity.getId()), Charsets.UTF_8);
+        assertTrue(BinaryMementoSerializer.isBinary(contents), contents);
+
+        newApp = rebind();
+        TestEntity newEntity = (TestEntity) Iterables.getOnlyElement(newApp.getChildren());
+        assertEquals(newEntity.getId(), origEntity.getId());
+        assertEquals(newEntity.getConfig(TestEntity.CONF_NAME), "myname");
+        assertEquals(newEntity.getAttribute(TestEntity.SEQUENCE), (Integer)123);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.xstream.XmlUtil;
+
+/** Runs all the {@link XmlMementoSerializerTest} tests with the binary form, plus tests of converting to and from XML. */
+public class BinaryMementoSerializerTest extends XmlMementoSerializerTest {
+
+    @Override
+    protected XmlMementoSerializer<Object> newSerializer() {
+        return new BinaryMementoSerializer<Object>(BinaryMementoSerializerTest.class.getClassLoader());
+    }
+
+    @Test
+    public void testWritesBinary() throws Exception {
+        String serializedForm = serializer.toString(MutableMap.of("mykey", "myval"));
+        assertTrue(BinaryMementoSerializer.isBinary(serializedForm), serializedForm);
+    }
+
+    @Test
+    public void testReadsXml() throws Exception {
+        Map<?,?> obj = MutableMap.of("mykey", "myval");
+        String xml = new XmlMementoSerializer<Object>(getClass().getClassLoader()).toString(obj);
+        assertFalse(BinaryMementoSerializer.isBinary(xml), xml);
+        assertEquals(serializer.fromString(xml), obj);
+    }
+
+    @Test
+    public void testConvertsBetweenXmlAndBinary() throws Exception {
+        Map<?,?> obj = MutableMap.of("mykey", "myval", "other$key", "<escaped & val>");
+        String xml = new XmlMementoSerializer<Object>(getClass().getClassLoader()).toString(obj);
+        
+        String binary = BinaryMementoSerializer.toBinary(xml);
+        assertTrue(BinaryMementoSerializer.isBinary(binary), binary);
+        assertEquals(serializer.fromString(binary), obj);
+        assertEquals(BinaryMementoSerializer.toBinary(binary), binary);
+        
+        assertEquals(BinaryMementoSerializer.toXml(binary), xml);
+        assertEquals(BinaryMementoSerializer.toXml(xml), xml);
+    }
+
+    @Test
+    public void testRootChildElementsText() throws Exception {
+        String xml = "<entity><other><id>nested</id></other><id>myid</id><type>mytype</type></entity>";
+        String binary = BinaryMementoSerializer.toBinary(xml);
+        
+        Map<String, String> result = BinaryMementoSerializer.rootChildElementsText(binary, "id", "type", "missing");
+        assertEquals(result, XmlUtil.rootChildElementsText(xml, "id", "type", "missing"));
+        assertEquals(result.get("id"), "myid");
+        assertEquals(result.get("type"), "mytype");
+        assertFalse(result.containsKey("missing"));
+    }
+}
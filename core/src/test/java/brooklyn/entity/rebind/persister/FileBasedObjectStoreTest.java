@@ -35,6 +35,8 @@ import brooklyn.test.entity.LocalManagementContextForTests;
 import brooklyn.util.io.FileUtil;
 import brooklyn.util.os.Os;
 
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
 import com.google.common.io.Files;
 
 public class FileBasedObjectStoreTest {
@@ -97,4 +99,75 @@ public class FileBasedObjectStoreTest {
     static void assertFilePermission600(File file) throws Exception {
         assertEquals(FileUtil.getFilePermissions(file).get().substring(1), "rw-------");
     }
+    
+    @Test
+    public void testUnchangedFilesNotReReadUntilMaster() throws Exception {
+        store.createSubPath("entities");
+        File file = new File(basedir, "entities/a");
+        Files.write("aaa", file, Charsets.UTF_8);
+        long lastModified = System.currentTimeMillis() - 60*1000;
+        file.setLastModified(lastModified);
+        assertEquals(store.newAccessor("entities/a").get(), "aaa");
+        
+        // same timestamp and size, so the cached contents are returned
+        Files.write("bbb", file, Charsets.UTF_8);
+        file.setLastModified(lastModified);
+        assertEquals(store.newAccessor("entities/a").get(), "aaa");
+        
+        file.setLastModified(lastModified + 1000);
+        assertEquals(store.newAccessor("entities/a").get(), "bbb");
+        
+        // once master, reads go to the file
+        store.prepareForMasterUse();
+        Files.write("ccc", file, Charsets.UTF_8);
+        file.setLastModified(lastModified + 1000);
+        assertEquals(store.newAccessor("entities/a").get(), "ccc");
+        
+        // and once no longer master, the cache is used again
+        store.prepareForStandbyUse();
+        Files.write("ddd", file, Charsets.UTF_8);
+        file.setLastModified(lastModified + 1000);
+        assertEquals(store.newAccessor("entities/a").get(), "ddd");
+        Files.write("eee", file, Charsets.UTF_8);
+        file.setLastModified(lastModified + 1000);
+        assertEquals(store.newAccessor("entities/a").get(), "ddd");
+    }
+    
+    @Test
+    public void testReadCacheIgnoresThisNodesClock() throws Exception {
+        // e.g. written by another node on a shared filesystem, whose clock is ahead of this one's
+        store.createSubPath("entities");
+        File file = new File(basedir, "entities/a");
+        Files.write("aaa", file, Charsets.UTF_8);
+        long lastModified = System.currentTimeMillis() + 60*60*1000;
+        file.setLastModified(lastModified);
+        assertEquals(store.newAccessor("entities/a").get(), "aaa");
+        
+        Files.write("bbb", file, Charsets.UTF_8);
+        file.setLastModified(lastModified);
+        assertEquals(store.newAccessor("entities/a").get(), "aaa");
+        
+        file.setLastModified(lastModified + 1000);
+        assertEquals(store.newAccessor("entities/a").get(), "bbb");
+    }
+    
+    @Test
+    public void testReadCacheIsBounded() throws Exception {
+        FileBasedObjectStore smallCacheStore = new FileBasedObjectStore(basedir, 100);
+        smallCacheStore.injectManagementContext(mgmt);
+        smallCacheStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        try {
+            smallCacheStore.createSubPath("entities");
+            long lastModified = System.currentTimeMillis() - 60*1000;
+            for (int i = 0; i < 10; i++) {
+                File file = new File(basedir, "entities/"+i);
+                Files.write(Strings.repeat("x", 50), file, Charsets.UTF_8);
+                file.setLastModified(lastModified);
+                assertEquals(smallCacheStore.newAccessor("entities/"+i).get().length(), 50);
+            }
+            assertTrue(smallCacheStore.getReadCacheSize() <= 2, "size="+smallCacheStore.getReadCacheSize());
+        } finally {
+            smallCacheStore.close();
+        }
+    }
 }
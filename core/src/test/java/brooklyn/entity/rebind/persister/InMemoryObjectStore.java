@@ -59,6 +59,10 @@ public class InMemoryObjectStore implements PersistenceObjectStore {
     public void prepareForMasterUse() {
     }
 
+    @Override
+    public void prepareForStandbyUse() {
+    }
+
     @Override
     public void createSubPath(String subPath) {
     }
@@ -0,0 +1,219 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.List;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.os.Os;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Files;
+
+public class JournaledFileObjectStoreTest {
+
+    private LocalManagementContextForTests mgmt;
+    private File basedir;
+    private List<PersistenceObjectStore> stores;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mgmt = new LocalManagementContextForTests();
+        basedir = new File(Files.createTempDir(), "mystore");
+        stores = MutableList.of();
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        for (PersistenceObjectStore store : stores) store.close();
+        if (basedir != null) Os.deleteRecursively(basedir.getParentFile());
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+    
+    private <T extends PersistenceObjectStore> T prepare(T store) {
+        stores.add(store);
+        store.injectManagementContext(mgmt);
+        store.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        store.createSubPath("entities");
+        return store;
+    }
+    
+    private JournaledFileObjectStore newStore() {
+        return prepare(new JournaledFileObjectStore(basedir));
+    }
+    
+    @Test
+    public void testChangesRecoveredByNewStore() throws Exception {
+        JournaledFileObjectStore store = newStore();
+        store.prepareForMasterUse();
+        store.newAccessor("entities/a").put("a1");
+        store.newAccessor("entities/a").put("a2");
+        store.newAccessor("entities/b").put("b");
+        store.newAccessor("entities/c").append("c1");
+        store.newAccessor("entities/c").append("c2");
+        store.newAccessor("entities/b").delete();
+        
+        assertEquals(store.newAccessor("entities/a").get(), "a2");
+        assertFalse(store.newAccessor("entities/b").exists());
+        assertEquals(ImmutableSet.copyOf(store.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/c"));
+        store.close();
+        stores.remove(store);
+        
+        JournaledFileObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "a2");
+        assertNull(store2.newAccessor("entities/b").get());
+        assertEquals(store2.newAccessor("entities/c").get(), "c1c2");
+        assertEquals(ImmutableSet.copyOf(store2.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/c"));
+    }
+    
+    @Test
+    public void testIncompleteRecordIgnored() throws Exception {
+        JournaledFileObjectStore store = newStore();
+        store.prepareForMasterUse();
+        store.newAccessor("entities/a").put("a");
+        store.close();
+        stores.remove(store);
+        
+        File segment = basedir.listFiles(new FilenameFilter() {
+            @Override public boolean accept(File dir, String name) {
+                return name.startsWith(JournaledFileObjectStore.SEGMENT_PREFIX);
+            }})[0];
+        Files.append("\u0000\u0000\u0001", segment, Charsets.UTF_8);
+        
+        JournaledFileObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "a");
+        store2.prepareForMasterUse();
+        store2.newAccessor("entities/b").put("b");
+        store2.close();
+        stores.remove(store2);
+        
+        JournaledFileObjectStore store3 = newStore();
+        assertEquals(store3.newAccessor("entities/a").get(), "a");
+        assertEquals(store3.newAccessor("entities/b").get(), "b");
+    }
+    
+    @Test
+    public void testCompactionReplacesSegmentsWithSnapshot() throws Exception {
+        JournaledFileObjectStore store = prepare(new JournaledFileObjectStore(basedir, 1024, 4096));
+        store.prepareForMasterUse();
+        for (int i = 0; i < 1000; i++) {
+            store.newAccessor("entities/e"+(i % 10)).put("value-"+i);
+        }
+        store.compact();
+        
+        assertTrue(new File(basedir, JournaledFileObjectStore.SNAPSHOT_NAME).exists());
+        assertTrue(countSegments() <= 1, "segments="+countSegments());
+        store.close();
+        stores.remove(store);
+        
+        JournaledFileObjectStore store2 = newStore();
+        assertEquals(store2.listContentsWithSubPath("entities").size(), 10);
+        assertEquals(store2.newAccessor("entities/e9").get(), "value-999");
+    }
+    
+    @Test
+    public void testReaderCatchesUpWithWriter() throws Exception {
+        JournaledFileObjectStore writer = newStore();
+        JournaledFileObjectStore reader = newStore();
+        writer.prepareForMasterUse();
+        
+        writer.newAccessor("entities/a").put("a");
+        assertEquals(reader.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(reader.newAccessor("entities/a").get(), "a");
+        
+        writer.compact();
+        writer.newAccessor("entities/b").put("b");
+        assertEquals(ImmutableSet.copyOf(reader.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+    }
+    
+    @Test
+    public void testImportsAndExportsFilePerItemLayout() throws Exception {
+        FileBasedObjectStore fileStore = prepare(new FileBasedObjectStore(basedir));
+        fileStore.newAccessor("entities/a").put("a");
+        fileStore.newAccessor("entities/b").put("b");
+        
+        JournaledFileObjectStore store = newStore();
+        store.prepareForMasterUse();
+        assertEquals(store.newAccessor("entities/a").get(), "a");
+        assertEquals(store.newAccessor("entities/b").get(), "b");
+        assertTrue(countSegments() > 0 || new File(basedir, JournaledFileObjectStore.SNAPSHOT_NAME).exists());
+        // left for nodes not using the journal
+        assertTrue(new File(basedir, "entities/a").exists());
+        
+        // changes now go to the journal only
+        store.newAccessor("entities/a").put("a2");
+        assertEquals(newStore().newAccessor("entities/a").get(), "a2");
+        assertEquals(Files.toString(new File(basedir, "entities/a"), Charsets.UTF_8), "a");
+        
+        File exportDir = new File(basedir.getParentFile(), "export");
+        FileBasedObjectStore exportStore = new FileBasedObjectStore(exportDir);
+        stores.add(exportStore);
+        exportStore.injectManagementContext(mgmt);
+        exportStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        store.exportTo(exportStore);
+        assertEquals(Files.toString(new File(exportDir, "entities/a"), Charsets.UTF_8), "a2");
+        assertEquals(Files.toString(new File(exportDir, "entities/b"), Charsets.UTF_8), "b");
+    }
+    
+    @Test
+    public void testNonMasterReadsFilePerItemLayoutWithoutImporting() throws Exception {
+        FileBasedObjectStore fileStore = prepare(new FileBasedObjectStore(basedir));
+        fileStore.newAccessor("entities/a").put("a");
+        
+        JournaledFileObjectStore store = newStore();
+        assertEquals(store.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(store.newAccessor("entities/a").get(), "a");
+        assertTrue(store.newAccessor("entities/a").exists());
+        assertEquals(countSegments(), 0);
+        assertFalse(new File(basedir, JournaledFileObjectStore.SNAPSHOT_NAME).exists());
+        assertTrue(new File(basedir, "entities/a").exists());
+    }
+    
+    @Test
+    public void testSharedSubPathsAreFiles() throws Exception {
+        JournaledFileObjectStore store = newStore();
+        store.createSubPath("plane");
+        store.newAccessor("plane/node1").put("x");
+        assertTrue(new File(basedir, "plane/node1").exists());
+        assertEquals(store.listContentsWithSubPath("plane"), MutableList.of("plane/node1"));
+    }
+    
+    private int countSegments() {
+        int result = 0;
+        for (String name : basedir.list()) {
+            if (name.startsWith(JournaledFileObjectStore.SEGMENT_PREFIX)) result++;
+        }
+        return result;
+    }
+}
@@ -138,6 +138,11 @@ public class ListeningObjectStore implements PersistenceObjectStore {
         delegate.prepareForMasterUse();
     }
 
+    @Override
+    public void prepareForStandbyUse() {
+        delegate.prepareForStandbyUse();
+    }
+
     @Override
     public StoreObjectAccessor newAccessor(String path) {
         return new ListeningAccessor(path, delegate.newAccessor(path));
@@ -18,11 +18,14 @@
  */
 package brooklyn.event.feed;
 
+import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,13 +33,26 @@ import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.management.Task;
+import brooklyn.management.internal.LocalManagementContext;
 import brooklyn.test.Asserts;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.task.BasicExecutionManager;
 import brooklyn.util.task.DynamicTasks;
+import brooklyn.util.task.TaskTags;
+import brooklyn.util.task.Tasks;
 import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Equivalence;
 
 public class PollerTest extends BrooklynAppUnitTestSupport {
 
@@ -104,4 +120,113 @@ public class PollerTest extends BrooklynAppUnitTestSupport {
             }
         });
     }
+    
+    @Test(groups="Integration") // because takes > 1 second
+    public void testAdaptivePollBacksOffWhileResultUnchangedAndSnapsBackOnChange() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final AtomicBoolean changing = new AtomicBoolean(false);
+        poller.scheduleAdaptively(
+                new Callable<Integer>() {
+                    @Override public Integer call() throws Exception {
+                        int count = counter.incrementAndGet();
+                        return changing.get() ? count : 0;
+                    }
+                },
+                new NoopPollHandler(), 
+                Duration.millis(10), Duration.millis(250), Equivalence.equals());
+        poller.start();
+        
+        // at a fixed 10ms, would be about 150 polls; backing off, it is 10, 20, 40, ... then every 250ms
+        Time.sleep(Duration.millis(1500));
+        final int stableCount = counter.get();
+        assertTrue(stableCount > 1 && stableCount < 30, "count="+stableCount);
+        
+        changing.set(true);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(counter.get() > stableCount + 30, "count="+counter.get());
+            }
+        });
+    }
+    
+    @Test(groups="Integration") // because takes > 1 second
+    public void testAdaptivePollSnapsBackOnFailure() throws Exception {
+        final AtomicInteger counter = new AtomicInteger();
+        final AtomicBoolean failing = new AtomicBoolean(false);
+        poller.scheduleAdaptively(
+                new Callable<Integer>() {
+                    @Override public Integer call() throws Exception {
+                        counter.incrementAndGet();
+                        if (failing.get()) throw new IllegalStateException("Simulating failure in poll");
+                        return 0;
+                    }
+                },
+                new NoopPollHandler(), 
+                Duration.millis(10), Duration.millis(250), Equivalence.equals());
+        poller.start();
+        
+        Time.sleep(Duration.millis(1500));
+        final int stableCount = counter.get();
+        assertTrue(stableCount < 30, "count="+stableCount);
+        
+        failing.set(true);
+        Asserts.succeedsEventually(new Runnable() {
+            @Override public void run() {
+                assertTrue(counter.get() > stableCount + 30, "count="+counter.get());
+            }
+        });
+    }
+    
+    @Test
+    public void testPollRunsOnNonBlockingPool() throws Exception {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(BasicExecutionManager.NON_BLOCKING_POOL_SIZE, 2);
+        LocalManagementContext mgmt2 = LocalManagementContextForTests.newInstance(properties);
+        Poller<Integer> poller2 = null;
+        try {
+            TestApplication app2 = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt2);
+            TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+            final BasicExecutionManager em = (BasicExecutionManager) mgmt2.getExecutionManager();
+            final AtomicReference<Task<?>> pollTask = new AtomicReference<Task<?>>();
+            final AtomicInteger activeNonBlockingThreads = new AtomicInteger();
+            poller2 = new Poller<Integer>(entity2, false);
+            poller2.scheduleAtFixedRate(
+                    new Callable<Integer>() {
+                        @Override public Integer call() throws Exception {
+                            activeNonBlockingThreads.set(em.getNumActiveNonBlockingPoolThreads());
+                            pollTask.set(Tasks.current());
+                            return 0;
+                        }
+                    },
+                    new NoopPollHandler(), 
+                    Duration.millis(10));
+            poller2.start();
+            
+            Asserts.succeedsEventually(new Runnable() {
+                @Override public void run() {
+                    assertNotNull(pollTask.get());
+                }
+            });
+            assertTrue(TaskTags.isNonBlocking(pollTask.get()), "task="+pollTask.get());
+            assertTrue(activeNonBlockingThreads.get() >= 1, "active="+activeNonBlockingThreads.get());
+        } finally {
+            if (poller2 != null) poller2.stop();
+            Entities.destroyAll(mgmt2);
+        }
+    }
+    
+    private static class NoopPollHandler implements PollHandler<Integer> {
+        @Override public boolean checkSuccess(Integer val) {
+            return true;
+        }
+        @Override public void onSuccess(Integer val) {
+        }
+        @Override public void onFailure(Integer val) {
+        }
+        @Override public void onException(Exception exception) {
+        }
+        @Override public String getDescription() {
+            return "noop";
+        }
+    }
 }
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.function;
+
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.EntityLocal;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.feed.Poller;
+import brooklyn.test.Asserts;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.task.Tasks;
+
+/** runs the {@link FunctionFeedTest} tests with polls driven by the shared timer */
+@Test
+public class FunctionFeedSharedPollSchedulerTest extends FunctionFeedTest {
+
+    @BeforeMethod(alwaysRun=true)
+    @Override
+    public void setUp() throws Exception {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(Poller.SHARED_POLL_SCHEDULER, true);
+        mgmt = LocalManagementContextForTests.newInstance(properties);
+        super.setUp();
+    }
+    
+    @Test
+    public void testPollsRunAsTasksAfterOneFails() throws Exception {
+        EntityLocal entity = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        final AtomicInteger calls = new AtomicInteger();
+        final List<Boolean> inTask = new CopyOnWriteArrayList<Boolean>();
+        FunctionFeed feed = FunctionFeed.builder()
+                .entity(entity)
+                .poll(new FunctionPollConfig<Integer, Integer>(SENSOR_INT)
+                        .period(1)
+                        .callable(new Callable<Integer>() {
+                            public Integer call() {
+                                if (calls.incrementAndGet() == 1) throw new IllegalStateException("simulated failure");
+                                inTask.add(Tasks.current() != null);
+                                return calls.get();
+                            }}))
+                .build();
+        try {
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertTrue(inTask.size() > 5, "inTask="+inTask);
+                }
+            });
+            assertTrue(!inTask.contains(false), "inTask="+inTask);
+        } finally {
+            feed.stop();
+        }
+    }
+}
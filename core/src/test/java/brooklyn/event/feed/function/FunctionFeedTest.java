@@ -44,6 +44,8 @@ import brooklyn.location.basic.LocalhostMachineProvisioningLocation;
 import brooklyn.test.Asserts;
 import brooklyn.test.EntityTestUtils;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
 
 import com.google.common.base.Function;
 import com.google.common.base.Functions;
@@ -96,6 +98,25 @@ public class FunctionFeedTest extends BrooklynAppUnitTestSupport {
         });
     }
     
+    @Test(groups="Integration") // because takes > 1 second
+    public void testAdaptivePollOfUnchangingValueBacksOff() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        feed = FunctionFeed.builder()
+                .entity(entity)
+                .poll(new FunctionPollConfig<Integer, Integer>(SENSOR_INT)
+                        .adaptivePeriod(Duration.millis(10), Duration.millis(250))
+                        .callable(new Callable<Integer>() {
+                            public Integer call() {
+                                calls.incrementAndGet();
+                                return 123;
+                            }}))
+                .build();
+
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        Time.sleep(Duration.millis(1500));
+        assertTrue(calls.get() < 30, "calls="+calls.get());
+    }
+    
     @Test
     public void testCallsOnSuccessWithResultOfCallable() throws Exception {
         feed = FunctionFeed.builder()
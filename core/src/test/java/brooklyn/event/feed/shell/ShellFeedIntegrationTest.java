@@ -120,6 +120,28 @@ public class ShellFeedIntegrationTest extends BrooklynAppUnitTestSupport {
             }});
     }
     
+    @Test(groups="Integration")
+    public void testMultiplexedPollsGetTheirOwnResults() throws Exception {
+        feed = ShellFeed.builder()
+                .entity(entity)
+                .multiplex(true)
+                .poll(new ShellPollConfig<String>(SENSOR_STRING)
+                        .env(ImmutableMap.of("MYENV", "MYVAL"))
+                        .command("echo hello $MYENV")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new ShellPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .onFailure(SshValueFunctions.exitStatus()))
+                .build();
+        
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                String val = entity.getAttribute(SENSOR_STRING);
+                assertTrue(val != null && val.trim().equals("hello MYVAL"), "val="+val);
+            }});
+    }
+    
     @Test(groups="Integration")
     public void testReturnsShellStdout() throws Exception {
         feed = ShellFeed.builder()
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.event.feed.ssh;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+import java.util.List;
+
+import org.testng.annotations.Test;
+
+import brooklyn.util.stream.Streams;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+
+public class MultiplexedPollScriptTest {
+
+    @Test
+    public void testParsesEachCommandsOutput() throws Exception {
+        MultiplexedPollScript script = new MultiplexedPollScript();
+        script.add("echo hello", ImmutableMap.<String,String>of(), null);
+        script.add("echo oops >&2; exit 3", ImmutableMap.<String,String>of(), null);
+        String marker = marker(script);
+
+        String stdout = marker+" 0 begin\nhello\n\n"+marker+" 0 end 0\n"
+                + marker+" 1 begin\n\n"+marker+" 1 end 3\n";
+        String stderr = marker+" 0 begin\n\n"+marker+" 0 end\n"
+                + marker+" 1 begin\noops\n\n"+marker+" 1 end\n";
+        List<SshPollValue> values = script.parse(null, stdout, stderr);
+
+        assertEquals(values.size(), 2);
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "hello\n");
+        assertEquals(values.get(0).getStderr(), "");
+        assertEquals(values.get(1).getExitStatus(), 3);
+        assertEquals(values.get(1).getStdout(), "");
+        assertEquals(values.get(1).getStderr(), "oops\n");
+    }
+
+    @Test
+    public void testParsesCarriageReturns() throws Exception {
+        MultiplexedPollScript script = new MultiplexedPollScript();
+        script.add("echo hello", ImmutableMap.<String,String>of(), null);
+        String marker = marker(script);
+
+        List<SshPollValue> values = script.parse(null, marker+" 0 begin\r\nhello\r\n\r\n"+marker+" 0 end 0\r\n", "");
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "hello\r\n");
+    }
+
+    @Test
+    public void testIncompleteOutputIsFailure() throws Exception {
+        MultiplexedPollScript script = new MultiplexedPollScript();
+        script.add("echo hello", ImmutableMap.<String,String>of(), null);
+        script.add("sleep 100", ImmutableMap.<String,String>of(), null);
+        String marker = marker(script);
+
+        List<SshPollValue> values = script.parse(null, marker+" 0 begin\nhello\n\n"+marker+" 0 end 0\n"+marker+" 1 begin\n", "");
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(1).getExitStatus(), -1);
+        assertNull(values.get(1).getStdout());
+    }
+
+    @Test(groups="Integration")
+    public void testRunsCommandsWithTheirOwnEnvAndDir() throws Exception {
+        MultiplexedPollScript script = new MultiplexedPollScript();
+        script.add("echo $MYENV; pwd", ImmutableMap.of("MYENV", "my val"), "/tmp");
+        script.add("echo [$MYENV]; echo oops >&2; exit 3", ImmutableMap.<String,String>of(), null);
+
+        Process process = new ProcessBuilder("bash", "-c", Joiner.on("\n").join(script.toScript())).start();
+        String stdout = Streams.readFullyString(process.getInputStream());
+        String stderr = Streams.readFullyString(process.getErrorStream());
+        process.waitFor();
+        List<SshPollValue> values = script.parse(null, stdout, stderr);
+
+        assertEquals(values.get(0).getExitStatus(), 0);
+        assertEquals(values.get(0).getStdout(), "my val\n/tmp\n");
+        assertEquals(values.get(1).getExitStatus(), 3);
+        assertEquals(values.get(1).getStdout(), "[]\n");
+        assertEquals(values.get(1).getStderr(), "oops\n");
+    }
+
+    @Test(groups="Integration")
+    public void testRunsAllCommandsUnderErrexit() throws Exception {
+        MultiplexedPollScript script = new MultiplexedPollScript();
+        script.add("exit 123", ImmutableMap.<String,String>of(), null);
+        script.add("false\necho not reached", ImmutableMap.<String,String>of(), null);
+        script.add("echo hello", ImmutableMap.<String,String>of(), null);
+
+        Process process = new ProcessBuilder("bash", "-e", "-c", Joiner.on("\n").join(script.toScript())).start();
+        String stdout = Streams.readFullyString(process.getInputStream());
+        String stderr = Streams.readFullyString(process.getErrorStream());
+        process.waitFor();
+        List<SshPollValue> values = script.parse(null, stdout, stderr);
+
+        assertEquals(values.get(0).getExitStatus(), 123);
+        // each command is still run with errexit, as it would be on its own
+        assertEquals(values.get(1).getExitStatus(), 1);
+        assertEquals(values.get(1).getStdout(), "");
+        assertEquals(values.get(2).getExitStatus(), 0);
+        assertEquals(values.get(2).getStdout(), "hello\n");
+    }
+
+    private String marker(MultiplexedPollScript script) {
+        // first command's begin line is "echo <marker> 0 begin; ..."
+        for (String line : script.toScript()) {
+            if (line.startsWith("echo ")) return line.split(" ")[1];
+        }
+        throw new IllegalStateException("No marker in "+script.toScript());
+    }
+}
@@ -164,6 +164,55 @@ public class SshFeedIntegrationTest extends BrooklynAppUnitTestSupport {
         EntityTestUtils.assertAttributeEventually(entity, SENSOR_STRING, StringPredicates.containsLiteral("Exit status 123"));
     }
     
+    @Test(groups="Integration")
+    public void testMultiplexedPollsGetTheirOwnResults() throws Exception {
+        feed = SshFeed.builder()
+                .entity(entity)
+                .machine(machine)
+                .multiplex(true)
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .env("MYENV", "myval")
+                        .command("echo hello $MYENV")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .onFailure(SshValueFunctions.exitStatus()))
+                .build();
+        
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        EntityTestUtils.assertAttributeEventually(entity, SENSOR_STRING, 
+            Predicates.compose(Predicates.equalTo("hello myval"), StringFunctions.trim()));
+    }
+    
+    // ssh scripts and commands are run with errexit, which must not end the combined script
+    @Test(groups="Integration")
+    public void testMultiplexedPollsAfterFailingCommandStillRun() throws Exception {
+        assertMultiplexedPollsAfterFailingCommandStillRun(SshFeed.builder());
+    }
+    
+    @Test(groups="Integration")
+    public void testMultiplexedPollsAfterFailingCommandStillRunAsCommand() throws Exception {
+        assertMultiplexedPollsAfterFailingCommandStillRun(SshFeed.builder().execAsCommand());
+    }
+    
+    private void assertMultiplexedPollsAfterFailingCommandStillRun(SshFeed.Builder builder) throws Exception {
+        feed = builder
+                .entity(entity)
+                .machine(machine)
+                .multiplex(true)
+                .poll(new SshPollConfig<Integer>(SENSOR_INT)
+                        .command("exit 123")
+                        .onFailure(SshValueFunctions.exitStatus()))
+                .poll(new SshPollConfig<String>(SENSOR_STRING)
+                        .command("echo hello")
+                        .onSuccess(SshValueFunctions.stdout()))
+                .build();
+        
+        EntityTestUtils.assertAttributeEqualsEventually(entity, SENSOR_INT, 123);
+        EntityTestUtils.assertAttributeEventually(entity, SENSOR_STRING, 
+            Predicates.compose(Predicates.equalTo("hello"), StringFunctions.trim()));
+    }
+    
     @Test(groups="Integration")
     public void testAddedEarly() throws Exception {
         final TestEntity entity2 = app.addChild(EntitySpec.create(TestEntity.class)
@@ -594,4 +594,41 @@ public class HotStandbyTest {
         assertEquals(n2.ha.getNodeState(), ManagementNodeState.FAILED);
     }
     
+    @Test
+    public void testPromotionFromHotStandbyReportsMetrics() throws Exception {
+        HaMgmtNode n1 = createMaster(Duration.PRACTICALLY_FOREVER);
+        createFirstAppAndPersist(n1);
+        HaMgmtNode n2 = createHotStandby(Duration.PRACTICALLY_FOREVER);
+        assertEquals(n2.ha.getMetrics().get("promotions"), 0);
+        Assert.assertNull(n2.ha.getLastPromotionDuration());
+        
+        n1.ha.changeMode(HighAvailabilityMode.DISABLED);
+        n2.ha.changeMode(HighAvailabilityMode.AUTO);
+        assertMaster(n2);
+        
+        Map<String, Object> metrics = n2.ha.getMetrics();
+        assertEquals(metrics.get("promotions"), 1);
+        assertEquals(metrics.get("lastPromotionFromState"), ManagementNodeState.HOT_STANDBY);
+        Assert.assertNotNull(metrics.get("lastPromotionDurationMillis"));
+        Assert.assertNotNull(n2.ha.getLastPromotionDuration());
+    }
+    
+    @Test
+    public void testPromotionFromHotStandbyReusesUnchangedMementos() throws Exception {
+        HaMgmtNode n1 = createMaster(Duration.PRACTICALLY_FOREVER);
+        TestApplication app = createFirstAppAndPersist(n1);
+        HaMgmtNode n2 = createHotStandby(Duration.PRACTICALLY_FOREVER);
+        BrooklynMementoPersisterToObjectStore n2Persister = (BrooklynMementoPersisterToObjectStore) n2.mgmt.getRebindManager().getPersister();
+        long reusedBeforePromotion = n2Persister.getReusedMementoCount();
+        
+        n1.ha.changeMode(HighAvailabilityMode.DISABLED);
+        n2.ha.changeMode(HighAvailabilityMode.AUTO);
+        assertMaster(n2);
+        
+        Assert.assertTrue(n2Persister.getReusedMementoCount() > reusedBeforePromotion, "reused="+n2Persister.getReusedMementoCount());
+        Application appRW = n2.mgmt.lookup(app.getId(), Application.class);
+        assertEquals(appRW.getConfig(TestEntity.CONF_NAME), "first-app");
+        assertEquals(appRW.getAttribute(TestEntity.SEQUENCE), (Integer)3);
+    }
+    
 }
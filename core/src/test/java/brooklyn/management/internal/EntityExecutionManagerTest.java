@@ -235,6 +235,69 @@ public class EntityExecutionManagerTest {
             BrooklynGarbageCollector.MAX_TASKS_PER_ENTITY, 5);
         assertTaskCountForEntitySoon(e, 5);
     }
+
+    @Test
+    public void testGcTaskAtNormalTagLimitWhenNotIncremental() throws Exception {
+        BrooklynProperties brooklynProperties = BrooklynProperties.Factory.newEmpty();
+        brooklynProperties.put(BrooklynGarbageCollector.INCREMENTAL, false);
+        brooklynProperties.put(BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        app = ApplicationBuilder.newManagedApp(TestApplication.class, LocalManagementContextForTests.newInstance(brooklynProperties));
+        e = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+
+        for (int count=0; count<5; count++)
+            runEmptyTaskWithNameAndTags(e, "task"+count, ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "boring-tag");
+
+        assertTaskCountForEntitySoon(e, 2);
+    }
+
+    @Test
+    public void testGcMetricsCountEvictedTasks() throws Exception {
+        app = TestApplication.Factory.newManagedInstanceForTests();
+        e = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        BrooklynGarbageCollector gc = ((LocalManagementContext)app.getManagementContext()).getGarbageCollector();
+
+        ((BrooklynProperties)app.getManagementContext().getConfig()).put(
+            BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        long evictedBefore = gc.getTotalTasksEvicted();
+
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int count=0; count<5; count++)
+            tasks.add(runEmptyTaskWithNameAndTags(e, "task"+count, ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "boring-tag"));
+
+        assertTaskCountForEntitySoon(e, 2);
+        // oldest are evicted first
+        assertEquals(ImmutableSet.copyOf(BrooklynTaskTags.getTasksInEntityContext(app.getManagementContext().getExecutionManager(), e)),
+            ImmutableSet.copyOf(tasks.subList(3, 5)));
+        assertTrue(gc.getTotalTasksEvicted() - evictedBefore >= 3, "evicted="+(gc.getTotalTasksEvicted() - evictedBefore));
+        assertTrue(gc.getUsageString().contains("evicted"), gc.getUsageString());
+    }
+
+    @Test
+    public void testGcBackgroundTaskWhenSubmitterEvicted() throws Exception {
+        app = TestApplication.Factory.newManagedInstanceForTests();
+        e = app.createAndManageChild(EntitySpec.create(TestEntity.class));
+        
+        ((BrooklynProperties)app.getManagementContext().getConfig()).put(
+            BrooklynGarbageCollector.MAX_TASKS_PER_TAG, 2);
+        
+        // submitted by the first task, but not its child, and with a tag which is not over capacity
+        final List<Task<?>> backgroundTask = Lists.newCopyOnWriteArrayList();
+        Task<?> submitter = ((EntityInternal)e).getExecutionContext().submit(Tasks.builder().name("submitter").dynamic(false)
+            .tag(ManagementContextInternal.NON_TRANSIENT_TASK_TAG).tag("boring-tag")
+            .body(new Runnable() { @Override public void run() {
+                backgroundTask.add(((EntityInternal)e).getExecutionContext().submit(
+                    newEmptyTask("background").tag(ManagementContextInternal.NON_TRANSIENT_TASK_TAG).tag("other-tag").build()));
+                backgroundTask.get(0).getUnchecked();
+            }}).build());
+        submitter.getUnchecked();
+        for (int count=0; count<4; count++)
+            runEmptyTaskWithNameAndTags(e, "task"+count, ManagementContextInternal.NON_TRANSIENT_TASK_TAG, "boring-tag");
+
+        assertTaskCountForEntitySoon(e, 2);
+        ExecutionManager em = app.getManagementContext().getExecutionManager();
+        assertEquals(em.getTask(submitter.getId()), null);
+        assertEquals(em.getTask(backgroundTask.get(0).getId()), null);
+    }
     
     @Test
     public void testGcDynamicTaskAtNormalTagLimit() throws Exception {
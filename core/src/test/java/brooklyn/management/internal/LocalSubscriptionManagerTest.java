@@ -19,27 +19,46 @@
 package brooklyn.management.internal;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import brooklyn.config.BrooklynProperties;
 import brooklyn.entity.BrooklynAppUnitTestSupport;
 import brooklyn.entity.Entity;
+import brooklyn.entity.basic.ApplicationBuilder;
 import brooklyn.entity.basic.BasicGroup;
 import brooklyn.entity.basic.Entities;
 import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.event.AttributeSensor;
 import brooklyn.event.SensorEvent;
 import brooklyn.event.SensorEventListener;
+import brooklyn.event.basic.BasicSensorEvent;
+import brooklyn.event.basic.SensorConflation;
+import brooklyn.event.basic.Sensors;
 import brooklyn.management.SubscriptionHandle;
 import brooklyn.management.SubscriptionManager;
+import brooklyn.management.Task;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.test.entity.TestApplication;
 import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.task.BasicExecutionManager;
+import brooklyn.util.task.TaskTags;
+import brooklyn.util.task.Tasks;
+
+import com.google.common.collect.ImmutableList;
 
 /**
  * testing the {@link SubscriptionManager} and associated classes.
@@ -177,5 +196,134 @@ public class LocalSubscriptionManagerTest extends BrooklynAppUnitTestSupport {
 
         if (threadException.get() != null) throw threadException.get();
     }
+    
+    @Test
+    public void testEventsDeliveredInOrderToSubscriber() throws Exception {
+        assertEventsDeliveredInOrder((LocalSubscriptionManager) mgmt.getSubscriptionManager());
+    }
+    
+    @Test
+    public void testEventsDeliveredInOrderWhenDeliveringAsTasks() throws Exception {
+        assertEventsDeliveredInOrder(new LocalSubscriptionManager(mgmt.getExecutionManager(), true));
+    }
+    
+    private void assertEventsDeliveredInOrder(LocalSubscriptionManager subscriptionManager) throws Exception {
+        int numEvents = 1000;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(numEvents);
+        subscriptionManager.subscribe(entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                latch.countDown();
+            }});
+        for (int i = 0; i < numEvents; i++) {
+            subscriptionManager.publish(new BasicSensorEvent<Integer>(TestEntity.SEQUENCE, entity, i));
+        }
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for events on TestEntity listener; got "+values.size());
+        }
+        for (int i = 0; i < numEvents; i++) {
+            assertEquals(values.get(i), (Integer)i);
+        }
+    }
+    
+    @Test
+    public void testSuppressIfEqualSensorOnlyPublishesChanges() throws Exception {
+        AttributeSensor<Integer> sensor = Sensors.newSensor(Integer.class, "test.suppressIfEqual", "", SensorConflation.SUPPRESS_IF_EQUAL);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        app.subscribe(entity, sensor, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                if (event.getValue() == 3) latch.countDown();
+            }});
+        for (int val : new int[] {1, 1, 2, 2, 2, 3}) {
+            entity.setAttribute(sensor, val);
+        }
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on TestEntity listener; got "+values);
+        }
+        assertEquals(values, ImmutableList.of(1, 2, 3));
+        assertEquals(entity.getAttribute(sensor), (Integer)3);
+    }
+    
+    @Test
+    public void testSuppressIfEqualSensorPublishesFirstNull() throws Exception {
+        AttributeSensor<Integer> sensor = Sensors.newSensor(Integer.class, "test.suppressIfEqual.null", "", SensorConflation.SUPPRESS_IF_EQUAL);
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        app.subscribe(entity, sensor, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                values.add(event.getValue());
+                if (Integer.valueOf(1).equals(event.getValue())) latch.countDown();
+            }});
+        entity.setAttribute(sensor, null);
+        entity.setAttribute(sensor, null);
+        entity.setAttribute(sensor, 1);
+        if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for Event on TestEntity listener; got "+values);
+        }
+        assertEquals(values, Arrays.asList(null, 1));
+    }
+    
+    @Test
+    public void testLatestValueOnlySubscriptionConflatesPendingEvents() throws Exception {
+        int numEvents = 1000;
+        final List<Integer> values = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch releaseLatch = new CountDownLatch(1);
+        final CountDownLatch lastValueLatch = new CountDownLatch(1);
+        final int lastValue = numEvents-1;
+        LocalSubscriptionManager subscriptionManager = (LocalSubscriptionManager) mgmt.getSubscriptionManager();
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("conflation", SensorConflation.LATEST_VALUE_ONLY), entity, TestEntity.SEQUENCE, new SensorEventListener<Integer>() {
+            @Override public void onEvent(SensorEvent<Integer> event) {
+                try {
+                    // simulate a slow subscriber
+                    releaseLatch.await();
+                } catch (InterruptedException e) {
+                    throw Exceptions.propagate(e);
+                }
+                values.add(event.getValue());
+                if (event.getValue() == lastValue) lastValueLatch.countDown();
+            }});
+        for (int i = 0; i < numEvents; i++) {
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+        }
+        releaseLatch.countDown();
+        if (!lastValueLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+            fail("Timeout waiting for last event on TestEntity listener; got "+values);
+        }
+        // at most the value being delivered when the subscriber blocked, then the latest
+        assertTrue(values.size() <= 2, "values="+values);
+        assertEquals(values.get(values.size()-1), (Integer)lastValue);
+    }
+
+    @Test
+    public void testDeliveryRunsOnNonBlockingPool() throws Exception {
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(BasicExecutionManager.NON_BLOCKING_POOL_SIZE, 2);
+        LocalManagementContext mgmt2 = LocalManagementContextForTests.newInstance(properties);
+        try {
+            TestApplication app2 = ApplicationBuilder.newManagedApp(TestApplication.class, mgmt2);
+            TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+            final BasicExecutionManager em = (BasicExecutionManager) mgmt2.getExecutionManager();
+            final AtomicReference<Task<?>> deliveryTask = new AtomicReference<Task<?>>();
+            final AtomicInteger activeNonBlockingThreads = new AtomicInteger();
+            final CountDownLatch latch = new CountDownLatch(1);
+            app2.subscribe(entity2, TestEntity.SEQUENCE, new SensorEventListener<Object>() {
+                @Override public void onEvent(SensorEvent<Object> event) {
+                    deliveryTask.set(Tasks.current());
+                    activeNonBlockingThreads.set(em.getNumActiveNonBlockingPoolThreads());
+                    latch.countDown();
+                }});
+            entity2.setSequenceValue(1234);
+            if (!latch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                fail("Timeout waiting for Event on TestEntity listener");
+            }
+            assertTrue(TaskTags.isNonBlocking(deliveryTask.get()), "task="+deliveryTask.get());
+            assertTrue(activeNonBlockingThreads.get() >= 1, "active="+activeNonBlockingThreads.get());
+        } finally {
+            Entities.destroyAll(mgmt2);
+        }
+    }
 
 }
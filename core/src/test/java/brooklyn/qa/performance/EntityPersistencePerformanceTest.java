@@ -22,12 +22,18 @@ import java.util.List;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.testng.annotations.Test;
 
 import brooklyn.entity.proxying.EntitySpec;
 import brooklyn.entity.rebind.RebindTestFixtureWithApp;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.MementoSerializationFormat;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
 import brooklyn.location.LocationSpec;
 import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.mementos.Memento;
 import brooklyn.policy.Policy;
 import brooklyn.policy.PolicySpec;
 import brooklyn.test.PerformanceTestUtils;
@@ -35,14 +41,18 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.policy.TestPolicy;
 import brooklyn.util.repeat.Repeater;
 import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
 
 import com.google.common.base.Predicates;
+import com.google.common.base.Stopwatch;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Callables;
 
 public class EntityPersistencePerformanceTest extends RebindTestFixtureWithApp {
 
+    private static final Logger LOG = LoggerFactory.getLogger(EntityPersistencePerformanceTest.class);
+
     // TODO Not measuring performance per cycle; just looking at CPU usage during test
     
     protected int getPersistPeriodMillis() {
@@ -65,6 +75,53 @@ public class EntityPersistencePerformanceTest extends RebindTestFixtureWithApp {
         run(NUM_ENTITIES, TEST_LENGTH, REPEAT_EVERY, "rapidChanges");
     }
     
+    @Test(groups="Integration")
+    public void testSerializationFormats() throws Exception {
+        final int NUM_ENTITIES = 100;
+        final int NUM_ITERATIONS = 50;
+        
+        List<Memento> mementos = Lists.newArrayList();
+        for (int i = 0; i < NUM_ENTITIES; i++) {
+            TestEntity entity = origApp.createAndManageChild(EntitySpec.create(TestEntity.class));
+            entity.addPolicy(PolicySpec.create(TestPolicy.class));
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            mementos.add(MementosGenerators.newEntityMemento(entity));
+        }
+        
+        for (MementoSerializationFormat format : MementoSerializationFormat.values()) {
+            XmlMementoSerializer<Object> serializer = format.newSerializer(classLoader);
+            List<String> serialized = Lists.newArrayList();
+            for (Memento memento : mementos) {
+                serialized.add(serializer.toString(memento));
+            }
+            long size = 0;
+            for (String s : serialized) {
+                size += s.length();
+            }
+            
+            Stopwatch writeTime = Stopwatch.createStarted();
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                for (Memento memento : mementos) {
+                    serializer.toString(memento);
+                }
+            }
+            writeTime.stop();
+            
+            Stopwatch readTime = Stopwatch.createStarted();
+            for (int i = 0; i < NUM_ITERATIONS; i++) {
+                for (String s : serialized) {
+                    serializer.fromString(s);
+                }
+            }
+            readTime.stop();
+            
+            int count = NUM_ENTITIES * NUM_ITERATIONS;
+            LOG.info(format+" serialization of "+NUM_ENTITIES+" entity mementos: "+size+" chars; "
+                    + count+" writes took "+Time.makeTimeStringRounded(writeTime)+", "
+                    + count+" reads took "+Time.makeTimeStringRounded(readTime));
+        }
+    }
+    
     protected void run(int numEntities, Duration testLength, Duration repeatEvery, String loggingContext) throws Exception {
         final List<TestEntity> entities = Lists.newArrayList();
         final List<SimulatedLocation> locs = Lists.newArrayList();
@@ -22,6 +22,9 @@ import static org.testng.Assert.assertTrue;
 
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -165,4 +168,50 @@ public class SubscriptionPerformanceTest extends AbstractPerformanceTest {
             throw exception.get();
         }
     }
+    
+    @Test(groups={"Integration", "Acceptance"})
+    public void testManyPublishersOnManyThreads() throws Exception {
+        int numThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final int publishesPerThread = 100;
+        // each iteration is a batch of publishes on every thread, so rate is batches per sec
+        int numIterations = NUM_ITERATIONS / publishesPerThread;
+        double minRatePerSec = 10 * PERFORMANCE_EXPECTATION;
+        final AtomicInteger iter = new AtomicInteger();
+        
+        // one subscriber per entity, plus a wildcard subscriber on every entity's sensor, so publish hits several tiers
+        final AtomicInteger listenerCount = new AtomicInteger();
+        SensorEventListener<Integer> listener = new SensorEventListener<Integer>() {
+            public void onEvent(SensorEvent<Integer> event) {
+                listenerCount.incrementAndGet();
+            }};
+        for (int i = 0; i < entities.size(); i++) {
+            subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", i), entities.get(i), TestEntity.SEQUENCE, listener);
+        }
+        subscriptionManager.subscribe(MutableMap.<String, Object>of("subscriber", "wildcard"), null, TestEntity.SEQUENCE, listener);
+        
+        final ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        final int numThreadsFinal = numThreads;
+        try {
+            measureAndAssert("publishOnManyThreads("+numThreads+")", numIterations, minRatePerSec, new Runnable() {
+                public void run() {
+                    List<Future<?>> futures = Lists.newArrayList();
+                    for (int t = 0; t < numThreadsFinal; t++) {
+                        final TestEntity target = entities.get(t % entities.size());
+                        futures.add(executor.submit(new Runnable() {
+                            public void run() {
+                                for (int j = 0; j < publishesPerThread; j++) {
+                                    target.setAttribute(TestEntity.SEQUENCE, iter.getAndIncrement());
+                                }
+                            }}));
+                    }
+                    try {
+                        for (Future<?> future : futures) future.get();
+                    } catch (Exception e) {
+                        throw Exceptions.propagate(e);
+                    }
+                }});
+        } finally {
+            executor.shutdownNow();
+        }
+    }
 }
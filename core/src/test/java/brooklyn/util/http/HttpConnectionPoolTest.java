@@ -0,0 +1,110 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+import java.net.URI;
+
+import org.apache.http.client.HttpClient;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.config.BrooklynProperties;
+import brooklyn.entity.basic.Entities;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.mockwebserver.MockResponse;
+
+public class HttpConnectionPoolTest {
+
+    private BetterMockWebServer server;
+    private URI baseUri;
+    private HttpConnectionPool pool;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        server = BetterMockWebServer.newInstanceLocalhost();
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody("hello"));
+        }
+        server.play();
+        baseUri = server.getUrl("/").toURI();
+        pool = new HttpConnectionPool(2, 10, Duration.seconds(30), Duration.seconds(10));
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (pool != null) pool.shutdown();
+        if (server != null) server.shutdown();
+    }
+
+    @Test
+    public void testClientsShareConnections() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().uri(baseUri).connectionPool(pool).build();
+        HttpClient client2 = HttpTool.httpClientBuilder().uri(baseUri).connectionPool(pool).build();
+
+        assertEquals(HttpTool.httpGet(client1, baseUri, ImmutableMap.<String,String>of()).getResponseCode(), 200);
+        assertEquals(HttpTool.httpGet(client2, baseUri, ImmutableMap.<String,String>of()).getResponseCode(), 200);
+
+        // second request is the second on the connection opened by the first
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertEquals(server.takeRequest().getSequenceNumber(), 1);
+        assertEquals(pool.getTotalStats().getLeased(), 0);
+        assertEquals(pool.getTotalStats().getAvailable(), 1);
+    }
+
+    @Test
+    public void testClientShutdownLeavesPoolUsable() throws Exception {
+        HttpClient client1 = HttpTool.httpClientBuilder().uri(baseUri).connectionPool(pool).build();
+        HttpTool.httpGet(client1, baseUri, ImmutableMap.<String,String>of());
+        client1.getConnectionManager().shutdown();
+
+        HttpClient client2 = HttpTool.httpClientBuilder().uri(baseUri).connectionPool(pool).build();
+        assertEquals(HttpTool.httpGet(client2, baseUri, ImmutableMap.<String,String>of()).getResponseCode(), 200);
+        assertEquals(server.takeRequest().getSequenceNumber(), 0);
+        assertEquals(server.takeRequest().getSequenceNumber(), 1);
+    }
+
+    @Test
+    public void testEnabledByManagementContextConfig() throws Exception {
+        LocalManagementContext mgmt = LocalManagementContextForTests.newInstance();
+        try {
+            assertFalse(HttpConnectionPool.ifEnabled(mgmt).isPresent());
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+
+        BrooklynProperties properties = BrooklynProperties.Factory.newEmpty();
+        properties.put(HttpConnectionPool.ENABLED, true);
+        mgmt = LocalManagementContextForTests.newInstance(properties);
+        try {
+            assertTrue(HttpConnectionPool.ifEnabled(mgmt).isPresent());
+            assertTrue(HttpConnectionPool.ifEnabled(mgmt).get() == mgmt.getHttpConnectionPool());
+        } finally {
+            Entities.destroyAll(mgmt);
+        }
+    }
+}
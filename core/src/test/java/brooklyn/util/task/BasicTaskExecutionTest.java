@@ -28,14 +28,20 @@ import static org.testng.Assert.fail;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.SkipException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -43,12 +49,14 @@ import org.testng.annotations.Test;
 import brooklyn.management.Task;
 import brooklyn.test.Asserts;
 import brooklyn.util.collections.MutableMap;
+import brooklyn.util.javalang.Threads;
 
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.Callables;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * Test the operation of the {@link BasicTask} class.
@@ -240,6 +248,103 @@ public class BasicTaskExecutionTest {
         assertEquals(em.getTasksWithAllTags(ImmutableList.of("not_there","A")), ImmutableSet.of());
     }
     
+    @Test
+    public void testTasksWithTagReturnedInSubmissionOrder() throws Exception {
+        List<Task<?>> tasks = Lists.newArrayList();
+        List<Task<?>> evenTasks = Lists.newArrayList();
+        for (int i = 0; i < 50; i++) {
+            Task<?> t = em.submit(MutableMap.of("tags", ImmutableList.of("A", i % 2 == 0 ? "even" : "odd")), newNoop());
+            tasks.add(t);
+            if (i % 2 == 0) evenTasks.add(t);
+        }
+        for (Task<?> t : tasks) t.get();
+        
+        assertEquals(ImmutableList.copyOf(em.getTasksWithTag("A")), tasks);
+        assertEquals(ImmutableList.copyOf(em.getTasksWithAllTags(ImmutableList.of("A", "even"))), evenTasks);
+        assertEquals(ImmutableList.copyOf(em.getTasksWithAnyTag(ImmutableList.of("even"))), evenTasks);
+    }
+    
+    @Test
+    public void testTaskCountsByTagMaintainedOnSubmitAndDelete() throws Exception {
+        List<Task<?>> tasks = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            tasks.add(em.submit(MutableMap.of("tags", ImmutableList.of("A", i % 2 == 0 ? "even" : "odd")), newNoop()));
+        }
+        for (Task<?> t : tasks) t.get();
+        
+        assertEquals(em.getNumTasksWithTag("A"), 10);
+        assertEquals(em.getNumTasksWithTag("even"), 5);
+        assertEquals(em.getTasksWithAllTags(ImmutableList.of("A", "odd")).size(), 5);
+        
+        for (Task<?> t : tasks) em.deleteTask(t);
+        assertEquals(em.getNumTasksWithTag("A"), 0);
+        assertNull(em.tasksWithTagLiveOrNull("A"));
+        assertFalse(em.getTaskTags().contains("even"));
+    }
+
+    @Test
+    public void testCompletedTasksReplacedByTombstoneWhenCompacting() throws Exception {
+        em.setCompactCompletedTasks(true);
+        final Task<Integer> t = em.submit(MutableMap.of("displayName", "sample", "tags", ImmutableList.of("A")), Callables.returning(42));
+        final Task<Void> failing = em.submit(MutableMap.of("tags", ImmutableList.of("A")), new Callable<Void>() {
+            public Void call() {
+                throw new IllegalStateException("simulated failure");
+            }});
+
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(em.getTask(t.getId()) instanceof TaskTombstone, "task="+em.getTask(t.getId()));
+                assertTrue(em.getTask(failing.getId()) instanceof TaskTombstone, "task="+em.getTask(failing.getId()));
+            }});
+
+        Task<?> tombstone = em.getTask(t.getId());
+        assertEquals(tombstone, t);
+        assertEquals(tombstone.get(), 42);
+        assertEquals(tombstone.getDisplayName(), "sample");
+        assertEquals(tombstone.getEndTimeUtc(), t.getEndTimeUtc());
+        assertEquals(tombstone.getStatusSummary(), t.getStatusSummary());
+        assertEquals(em.getTasksWithTag("A"), ImmutableSet.of(t, failing));
+        assertEquals(em.getNumTasksWithTag("A"), 2);
+
+        Task<?> failedTombstone = em.getTask(failing.getId());
+        assertTrue(failedTombstone.isError());
+        assertTrue(failedTombstone.getStatusDetail(false).contains("simulated failure"), failedTombstone.getStatusDetail(false));
+
+        TaskTags.addTagDynamically(failedTombstone, "B");
+        assertTrue(failedTombstone.getTags().contains("B"), "tags="+failedTombstone.getTags());
+        
+        em.deleteTask(t);
+        assertNull(em.getTask(t.getId()));
+        assertEquals(em.getNumTasksWithTag("A"), 1);
+    }
+
+    @Test
+    public void testTaskCancelledWhileRunningNotCompactedUntilItEnds() throws Exception {
+        em.setCompactCompletedTasks(true);
+        final CountDownLatch startedLatch = new CountDownLatch(1);
+        final CountDownLatch finishLatch = new CountDownLatch(1);
+        final Task<Void> t = em.submit(MutableMap.of("tags", ImmutableList.of("A")), new Callable<Void>() {
+            public Void call() {
+                startedLatch.countDown();
+                Uninterruptibles.awaitUninterruptibly(finishLatch);
+                return null;
+            }});
+        startedLatch.await();
+        t.cancel(true);
+        
+        Asserts.succeedsContinually(MutableMap.of("timeout", 250), new Runnable() {
+            public void run() {
+                assertFalse(em.getTask(t.getId()) instanceof TaskTombstone, "task="+em.getTask(t.getId()));
+            }});
+        
+        finishLatch.countDown();
+        Asserts.succeedsEventually(new Runnable() {
+            public void run() {
+                assertTrue(em.getTask(t.getId()) instanceof TaskTombstone, "task="+em.getTask(t.getId()));
+            }});
+        assertTrue(em.getTask(t.getId()).isCancelled());
+    }
+
     @Test
     public void testRetrievedTasksIncludesTasksInProgress() throws Exception {
         final CountDownLatch runningLatch = new CountDownLatch(1);
@@ -425,6 +530,83 @@ public class BasicTaskExecutionTest {
         log.debug("BasicTask {} was submitted by {}", tb, submitter);
     }
     
+    @Test
+    public void testNonBlockingTasksRunOnBoundedPool() throws Exception {
+        BasicExecutionManager em2 = new BasicExecutionManager("mycontext", 2);
+        try {
+            final CountDownLatch allowCompletion = new CountDownLatch(1);
+            final AtomicInteger concurrent = new AtomicInteger();
+            final AtomicInteger maxConcurrent = new AtomicInteger();
+            List<Task<?>> tasks = Lists.newArrayList();
+            for (int i = 0; i < 10; i++) {
+                tasks.add(em2.submit(MutableMap.of("tag", TaskTags.NON_BLOCKING_TASK), new Callable<Void>() {
+                    public Void call() throws Exception {
+                        int now = concurrent.incrementAndGet();
+                        synchronized (maxConcurrent) {
+                            if (now > maxConcurrent.get()) maxConcurrent.set(now);
+                        }
+                        assertTrue(allowCompletion.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+                        concurrent.decrementAndGet();
+                        return null;
+                    }}));
+            }
+            final BasicExecutionManager em2f = em2;
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(em2f.getNumActiveNonBlockingPoolThreads(), 2);
+                    assertEquals(em2f.getNumQueuedNonBlockingPoolTasks(), 8);
+                }});
+            
+            allowCompletion.countDown();
+            for (Task<?> task : tasks) {
+                task.get();
+            }
+            assertEquals(maxConcurrent.get(), 2);
+        } finally {
+            em2.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testVirtualThreadsModeKeepsCurrentTask() throws Exception {
+        BasicExecutionManager em2 = new BasicExecutionManager("mycontext", 0, true);
+        try {
+            assertEquals(em2.isUsingVirtualThreads(), Threads.newVirtualThreadFactory().isPresent());
+            final AtomicReference<Task<?>> currentTask = new AtomicReference<Task<?>>();
+            Task<?> t = em2.submit(MutableMap.of("tag", "A"), new Runnable() {
+                public void run() {
+                    currentTask.set(Tasks.current());
+                }});
+            t.get();
+            assertEquals(currentTask.get(), t);
+        } finally {
+            em2.shutdownNow();
+        }
+    }
+    
+    @Test
+    public void testVirtualThreadsNotPooled() throws Exception {
+        final BasicExecutionManager em2 = new BasicExecutionManager("mycontext", 0, true);
+        try {
+            if (!em2.isUsingVirtualThreads()) throw new SkipException("Virtual threads not supported in this JVM");
+            final Set<Thread> threads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+            for (int i = 0; i < 5; i++) {
+                em2.submit(new Runnable() {
+                    public void run() {
+                        threads.add(Thread.currentThread());
+                    }}).get();
+            }
+            // a new thread for each task, none kept once done
+            assertEquals(threads.size(), 5);
+            Asserts.succeedsEventually(new Runnable() {
+                public void run() {
+                    assertEquals(em2.getBlockingPoolSize(), 0);
+                }});
+        } finally {
+            em2.shutdownNow();
+        }
+    }
+    
     private Callable<Object> newPutCallable(final Object key, final Object val) {
         return new Callable<Object>() {
             public Object call() {
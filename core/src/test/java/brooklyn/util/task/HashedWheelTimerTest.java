@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.util.task;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+public class HashedWheelTimerTest {
+
+    private ExecutorService executor;
+    private HashedWheelTimer timer;
+
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        executor = Executors.newCachedThreadPool();
+        // small wheel, so that tests cover deadlines more than one rotation away
+        timer = new HashedWheelTimer(new ThreadFactoryBuilder().setDaemon(true).build(), Duration.millis(10), 8, executor);
+    }
+
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        if (timer != null) timer.stop();
+        if (executor != null) executor.shutdownNow();
+    }
+
+    @Test
+    public void testRunsAfterDelay() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        timer.newTimeout(new Runnable() {
+            public void run() {
+                latch.countDown();
+            }
+        }, Duration.millis(50));
+        
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(stopwatch.elapsed(TimeUnit.MILLISECONDS) >= 50, "elapsed="+stopwatch);
+        assertEquals(timer.getNumScheduled(), 0);
+    }
+
+    @Test
+    public void testRunsInDeadlineOrderAcrossRotations() throws Exception {
+        final List<Integer> order = new CopyOnWriteArrayList<Integer>();
+        final CountDownLatch latch = new CountDownLatch(3);
+        // 8 buckets of 10ms, so 250ms is three rotations away, and 130ms lands in the same bucket as 50ms
+        for (final int delay : new int[] {250, 50, 130}) {
+            timer.newTimeout(new Runnable() {
+                public void run() {
+                    order.add(delay);
+                    latch.countDown();
+                }
+            }, Duration.millis(delay));
+        }
+        
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(order.toString(), "[50, 130, 250]");
+    }
+
+    @Test
+    public void testCancelledNeverRuns() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        HashedWheelTimer.Timeout timeout = timer.newTimeout(new Runnable() {
+            public void run() {
+                count.incrementAndGet();
+            }
+        }, Duration.millis(50));
+        timeout.cancel();
+        
+        Time.sleep(Duration.millis(200));
+        assertEquals(count.get(), 0);
+        assertEquals(timer.getNumScheduled(), 0);
+    }
+}
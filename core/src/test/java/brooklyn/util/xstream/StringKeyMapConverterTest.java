@@ -22,6 +22,7 @@ import java.net.UnknownHostException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import org.testng.Assert;
 import org.testng.annotations.Test;
 import org.testng.collections.Maps;
 
@@ -74,4 +75,21 @@ public class StringKeyMapConverterTest extends ConverterTestFixture {
         m.put("a", "v2");
         assertX(m, "<map>\n  <entry key=\"123\">v</entry>\n  <a>v2</a>\n</map>");
     }
+
+    @Test
+    public void testKeysSharedBetweenMaps() throws UnknownHostException {
+        Map m = Maps.newLinkedHashMap();
+        m.put("brooklyn.config.key", "v");
+        m.put("key with space", "v2");
+        Map out1 = (Map) assertX(m, "<map>\n  <brooklyn.config.key>v</brooklyn.config.key>\n  <entry key=\"key with space\">v2</entry>\n</map>");
+        Map out2 = (Map) assertX(m, "<map>\n  <brooklyn.config.key>v</brooklyn.config.key>\n  <entry key=\"key with space\">v2</entry>\n</map>");
+        
+        for (Object key1 : out1.keySet()) {
+            boolean found = false;
+            for (Object key2 : out2.keySet()) {
+                if (key1 == key2) found = true;
+            }
+            Assert.assertTrue(found, "key "+key1+" not shared between "+out1.keySet()+" and "+out2.keySet());
+        }
+    }
 }
@@ -19,6 +19,9 @@
 package brooklyn.util.xstream;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+import java.util.Map;
 
 import org.testng.annotations.Test;
 
@@ -30,4 +33,13 @@ public class XmlUtilTest {
         String xml = "<a><b>myb</b></a>";
         assertEquals(XmlUtil.xpath(xml, "/a/b[text()]"), "myb");
     }
+
+    @Test
+    public void testRootChildElementsText() throws Exception {
+        String xml = "<entity><other><id>nested</id></other><id>myid</id><type>mytype</type></entity>";
+        Map<String, String> result = XmlUtil.rootChildElementsText(xml, "id", "type", "missing");
+        assertEquals(result.get("id"), "myid");
+        assertEquals(result.get("type"), "mytype");
+        assertFalse(result.containsKey("missing"));
+    }
 }
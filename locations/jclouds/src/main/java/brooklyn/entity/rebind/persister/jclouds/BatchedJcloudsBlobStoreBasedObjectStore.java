@@ -0,0 +1,629 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister.jclouds;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+import org.jclouds.blobstore.BlobStore;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.Blob;
+import org.jclouds.blobstore.domain.PageSet;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.rebind.persister.BatchingPersistenceObjectStore;
+import brooklyn.entity.rebind.persister.PersistMode;
+import brooklyn.location.jclouds.JcloudsLocation;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteSource;
+
+/**
+ * A blob store which, rather than writing one blob per item (so one PUT per change, and a LIST and a GET per item on rebind,
+ * as {@link JcloudsBlobStoreBasedObjectStore} does), writes all the changes in each delta as a single compressed blob.
+ * <p>
+ * Batches are written under {@link #BATCHES_SUB_PATH}: a numbered sequence of deltas (<code>delta-N</code>),
+ * and periodically a snapshot of all items (<code>snapshot-N</code>, covering deltas up to and including N),
+ * after which the deltas it covers are removed. Each batch starts with an index of the items it contains
+ * (paths, timestamps and sizes) followed by their contents. Rebind is therefore a LIST, a GET of the latest snapshot
+ * and a GET of each delta written since.
+ * <p>
+ * Changes made through the accessors are held in memory until {@link #flush()}, called by the persister at the end
+ * of each delta. The contents of all items are kept in memory, so reads are cheap. Batches have a single writer, the master:
+ * other nodes (e.g. standby) catch up when listing contents and when they become master. Before writing each batch the writer
+ * lists the batches, and if another node has written since, it writes nothing more until it has been
+ * {@link #prepareForStandbyUse() demoted}; this leaves only the time between that listing and the write in which a node
+ * which has lost mastership, but not yet been told, could overwrite the new master's batch. Items under
+ * {@link #SHARED_SUB_PATHS}, written by every node, are kept as individual blobs as in {@link JcloudsBlobStoreBasedObjectStore}.
+ * <p>
+ * If the container has no batches but has items in the one-blob-per-item layout, they are read from those blobs until
+ * a master imports them, when it is first {@link #prepareForMasterUse() prepared}. The blobs are left in place (but are
+ * no longer updated), so a node using {@link JcloudsBlobStoreBasedObjectStore} still sees the state as it was at the import.
+ */
+@Beta
+public class BatchedJcloudsBlobStoreBasedObjectStore extends JcloudsBlobStoreBasedObjectStore implements BatchingPersistenceObjectStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchedJcloudsBlobStoreBasedObjectStore.class);
+
+    /** sub-paths written by all nodes, rather than only by the master, so kept as individual blobs */
+    public static final Set<String> SHARED_SUB_PATHS = ImmutableSet.of("plane");
+
+    /** sub-paths imported from the one-blob-per-item layout */
+    public static final List<String> BATCHED_SUB_PATHS = ImmutableList.of("entities", "locations", "policies", "enrichers", "feeds", "catalog");
+
+    public static final String BATCHES_SUB_PATH = "batches";
+
+    public static final int DEFAULT_DELTAS_PER_SNAPSHOT = 100;
+
+    static final String DELTA_PREFIX = "delta-";
+    static final String SNAPSHOT_PREFIX = "snapshot-";
+
+    private static final int BATCH_MAGIC = 0x42524254;
+    private static final int BATCH_VERSION = 1;
+
+    private static class Item {
+        /** null if the item has been deleted */
+        final String contents;
+        final long lastModifiedUtc;
+        Item(@Nullable String contents, long lastModifiedUtc) {
+            this.contents = contents;
+            this.lastModifiedUtc = lastModifiedUtc;
+        }
+    }
+
+    private static class BatchNames {
+        final SortedSet<Long> deltas = new TreeSet<Long>();
+        final SortedSet<Long> snapshots = new TreeSet<Long>();
+        long lastSeq() {
+            return Math.max(deltas.isEmpty() ? 0 : deltas.last(), snapshots.isEmpty() ? 0 : snapshots.last());
+        }
+    }
+
+    private volatile int deltasPerSnapshot = DEFAULT_DELTAS_PER_SNAPSHOT;
+
+    private final ConcurrentMap<String, Item> items = new ConcurrentHashMap<String, Item>();
+
+    // changes not yet written; guarded by pendingLock
+    private final Object pendingLock = new Object();
+    private Map<String, Item> pending = MutableMap.of();
+
+    // how far the batches have been read or written; guarded by writeLock
+    private final Object writeLock = new Object();
+    private boolean loaded = false;
+    private boolean writing = false;
+    /** whether another node has written batches since this node last wrote, so this node must not write until demoted */
+    private boolean superseded = false;
+    private long appliedSeq = 0;
+    private int deltasSinceSnapshot = 0;
+    /** whether any batch has been seen or written; until then, non-masters read the one-blob-per-item layout */
+    private volatile boolean batchesSeen = false;
+
+    public BatchedJcloudsBlobStoreBasedObjectStore(String locationSpec, String containerName) {
+        super(locationSpec, containerName);
+    }
+
+    public BatchedJcloudsBlobStoreBasedObjectStore(JcloudsLocation location, String containerName) {
+        super(location, containerName);
+    }
+
+    /** uses the given context, e.g. for the jclouds "transient" (in-memory) blobstore in tests */
+    public BatchedJcloudsBlobStoreBasedObjectStore(BlobStoreContext context, String containerName) {
+        super(context, containerName);
+    }
+
+    /** number of deltas after which a snapshot is written (and the deltas removed) */
+    public void setDeltasPerSnapshot(int deltasPerSnapshot) {
+        Preconditions.checkArgument(deltasPerSnapshot > 0, "deltasPerSnapshot must be positive");
+        this.deltasPerSnapshot = deltasPerSnapshot;
+    }
+
+    @Override
+    public void prepareForSharedUse(@Nullable PersistMode persistMode, HighAvailabilityMode haMode) {
+        super.prepareForSharedUse(persistMode, haMode);
+        if (persistMode==null || persistMode==PersistMode.DISABLED) return;
+
+        // only reads: any node (e.g. a standby) may get here, but only the master writes batches
+        synchronized (writeLock) {
+            catchUp();
+        }
+    }
+
+    @Override
+    public void prepareForMasterUse() {
+        super.prepareForMasterUse();
+        synchronized (writeLock) {
+            checkNotSuperseded();
+            if (!writing) {
+                catchUp();
+                if (!batchesSeen) importLegacyLayout();
+                writing = true;
+            }
+        }
+    }
+
+    @Override
+    public void prepareForStandbyUse() {
+        super.prepareForStandbyUse();
+        synchronized (writeLock) {
+            synchronized (pendingLock) {
+                pending.clear();
+            }
+            writing = false;
+            superseded = false;
+        }
+    }
+
+    @Override
+    public StoreObjectAccessor newAccessor(String path) {
+        if (isShared(path)) return super.newAccessor(path);
+        checkPrepared();
+        return new BatchedAccessor(path);
+    }
+
+    @Override
+    public List<String> listContentsWithSubPath(String parentSubPath) {
+        Preconditions.checkNotNull(parentSubPath);
+        if (SHARED_SUB_PATHS.contains(parentSubPath)) return super.listContentsWithSubPath(parentSubPath);
+
+        synchronized (writeLock) {
+            catchUp();
+        }
+        if (isReadingLegacyLayout()) return super.listContentsWithSubPath(parentSubPath);
+        String prefix = parentSubPath+subPathSeparator();
+        List<String> result = MutableList.of();
+        for (String path : items.keySet()) {
+            if (path.startsWith(prefix) && path.indexOf(subPathSeparator(), prefix.length()) < 0) result.add(path);
+        }
+        return result;
+    }
+
+    @Override
+    public void flush() {
+        synchronized (writeLock) {
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) return;
+            }
+            // another node may have become master without this node yet being demoted; don't overwrite its delta of the same number
+            checkStillWriter();
+            Map<String, Item> batch;
+            synchronized (pendingLock) {
+                if (pending.isEmpty()) return;
+                batch = pending;
+                pending = MutableMap.of();
+            }
+            long seq = appliedSeq + 1;
+            try {
+                putBlob(getDeltaName(seq), encodeBatch(seq, batch));
+            } catch (RuntimeException e) {
+                // keep the changes for the next flush, unless they have since been superseded
+                synchronized (pendingLock) {
+                    Map<String, Item> retained = MutableMap.copyOf(batch);
+                    retained.putAll(pending);
+                    pending = retained;
+                }
+                throw e;
+            }
+            appliedSeq = seq;
+            batchesSeen = true;
+            if (++deltasSinceSnapshot >= deltasPerSnapshot) {
+                try {
+                    writeSnapshot();
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    log.warn("Unable to write persistence snapshot to "+getSummaryName()+" (continuing): "+e, e);
+                }
+            }
+        }
+    }
+
+    /** writes a snapshot of the current contents, then removes the deltas it replaces */
+    @Beta
+    public void compact() {
+        flush();
+        synchronized (writeLock) {
+            checkStillWriter();
+            writeSnapshot();
+        }
+    }
+
+    @Override
+    public void close() {
+        boolean hasPending;
+        synchronized (pendingLock) {
+            hasPending = !pending.isEmpty();
+        }
+        if (hasPending) {
+            try {
+                flush();
+            } catch (Exception e) {
+                Exceptions.propagateIfFatal(e);
+                log.warn("Unable to write pending changes to "+getSummaryName()+" on close: "+e, e);
+            }
+        }
+        super.close();
+    }
+
+    @Override
+    public void deleteCompletely() {
+        synchronized (writeLock) {
+            synchronized (pendingLock) {
+                pending.clear();
+            }
+            items.clear();
+            loaded = false;
+            writing = false;
+            superseded = false;
+            appliedSeq = 0;
+            deltasSinceSnapshot = 0;
+            batchesSeen = false;
+        }
+        super.deleteCompletely();
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this).add("container", getContainerName()).toString();
+    }
+
+    /** whether items are still in the one-blob-per-item layout, not yet imported by a master */
+    private boolean isReadingLegacyLayout() {
+        return !batchesSeen && !writing;
+    }
+
+    /** an accessor for the item's individual blob, as in the one-blob-per-item layout */
+    private StoreObjectAccessor legacyAccessor(String path) {
+        return super.newAccessor(path);
+    }
+
+    private static boolean isShared(String path) {
+        int slash = path.indexOf('/');
+        return slash > 0 && SHARED_SUB_PATHS.contains(path.substring(0, slash));
+    }
+
+    private class BatchedAccessor implements StoreObjectAccessor {
+        private final String path;
+        BatchedAccessor(String path) {
+            this.path = path;
+        }
+        @Override
+        public String get() {
+            if (isReadingLegacyLayout()) return legacyAccessor(path).get();
+            Item item = items.get(path);
+            return item == null ? null : item.contents;
+        }
+        @Override
+        public boolean exists() {
+            if (isReadingLegacyLayout()) return legacyAccessor(path).exists();
+            return items.containsKey(path);
+        }
+        @Override
+        public void put(String contentsToReplaceOrCreate) {
+            change(path, contentsToReplaceOrCreate == null ? "" : contentsToReplaceOrCreate);
+        }
+        @Override
+        public void append(String contentsToAppendOrCreate) {
+            String val = contentsToAppendOrCreate == null ? "" : contentsToAppendOrCreate;
+            synchronized (pendingLock) {
+                Item old = items.get(path);
+                change(path, old == null ? val : old.contents + val);
+            }
+        }
+        @Override
+        public void delete() {
+            if (items.containsKey(path)) change(path, null);
+        }
+        @Override
+        public Date getLastModifiedDate() {
+            if (isReadingLegacyLayout()) return legacyAccessor(path).getLastModifiedDate();
+            Item item = items.get(path);
+            return item == null ? null : new Date(item.lastModifiedUtc);
+        }
+        @Override
+        public String toString() {
+            return Objects.toStringHelper(this).add("store", BatchedJcloudsBlobStoreBasedObjectStore.this).add("path", path).toString();
+        }
+    }
+
+    // ---------- writing
+
+    /** applies the change, and records it to be written by the next {@link #flush()} */
+    private void change(String path, @Nullable String contents) {
+        Item item = new Item(contents, System.currentTimeMillis());
+        synchronized (pendingLock) {
+            if (contents == null) {
+                items.remove(path);
+            } else {
+                items.put(path, item);
+            }
+            pending.put(path, item);
+        }
+    }
+
+    /** 
+     * checks that this node is still the only writer, catching up (and so no longer writing) if another node has written;
+     * must hold writeLock
+     */
+    private void checkStillWriter() {
+        checkNotSuperseded();
+        if (!writing) throw new IllegalStateException("Cannot write persisted state to "+getSummaryName()+"; not prepared for master use");
+        catchUp();
+        checkNotSuperseded();
+    }
+
+    private void checkNotSuperseded() {
+        if (superseded) {
+            throw new IllegalStateException("Persisted state in "+getSummaryName()+" has been written by another node; "
+                    + "not writing until this node is no longer master");
+        }
+    }
+
+    /** must hold writeLock */
+    private void writeSnapshot() {
+        long seq = appliedSeq;
+        Map<String, Item> snapshot = MutableMap.copyOf(items);
+        // may include changes not yet flushed; these are also in the next delta, and applying them twice is harmless
+        putBlob(getSnapshotName(seq), encodeBatch(seq, snapshot));
+        deltasSinceSnapshot = 0;
+        batchesSeen = true;
+
+        BatchNames names = listBatchNames();
+        for (Long delta : names.deltas) {
+            if (delta <= seq) removeBlob(getDeltaName(delta));
+        }
+        for (Long old : names.snapshots) {
+            if (old < seq) removeBlob(getSnapshotName(old));
+        }
+        if (log.isDebugEnabled()) log.debug("Wrote persistence snapshot {} to {}: {} items", new Object[] {seq, getSummaryName(), snapshot.size()});
+    }
+
+    private static byte[] encodeBatch(long seq, Map<String, Item> batch) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes, 64*1024));
+            out.writeInt(BATCH_MAGIC);
+            out.writeInt(BATCH_VERSION);
+            out.writeLong(seq);
+            out.writeInt(batch.size());
+            List<byte[]> contents = MutableList.of();
+            for (Map.Entry<String, Item> entry : batch.entrySet()) {
+                byte[] contentsBytes = entry.getValue().contents == null ? null : entry.getValue().contents.getBytes(Charsets.UTF_8);
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().lastModifiedUtc);
+                out.writeInt(contentsBytes == null ? -1 : contentsBytes.length);
+                contents.add(contentsBytes);
+            }
+            for (byte[] contentsBytes : contents) {
+                if (contentsBytes != null) out.write(contentsBytes);
+            }
+            out.close();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    // ---------- reading
+
+    /**
+     * reads any batches written (by another node) since they were last read.
+     * if this node is the writer this only lists the batches, unless another node has since become the writer
+     * (e.g. after failover), in which case this node stops writing (until {@link #prepareForStandbyUse()}) and reloads. 
+     * must hold writeLock.
+     */
+    private void catchUp() {
+        for (int attempt = 0; ; attempt++) {
+            BatchNames names = listBatchNames();
+            if (!names.deltas.isEmpty() || !names.snapshots.isEmpty()) batchesSeen = true;
+            if (writing) {
+                if (names.lastSeq() <= appliedSeq) return;
+                log.warn("Persisted state in "+getSummaryName()+" has been written by another node; reloading, and not writing until no longer master");
+                writing = false;
+                superseded = true;
+                loaded = false;
+                synchronized (pendingLock) {
+                    pending.clear();
+                }
+            }
+            boolean complete = true;
+            if (!loaded || (!names.snapshots.isEmpty() && names.snapshots.last() > appliedSeq)) {
+                items.clear();
+                appliedSeq = 0;
+                if (!names.snapshots.isEmpty()) {
+                    long snapshot = names.snapshots.last();
+                    complete = readBatch(getSnapshotName(snapshot));
+                    appliedSeq = snapshot;
+                }
+                deltasSinceSnapshot = 0;
+                loaded = complete;
+            }
+            if (complete) {
+                for (Long delta : names.deltas) {
+                    if (delta <= appliedSeq) continue;
+                    // a gap means the next delta is not yet visible (or was removed by a concurrent snapshot)
+                    if (delta != appliedSeq+1) break;
+                    if (!readBatch(getDeltaName(delta))) {
+                        complete = false;
+                        break;
+                    }
+                    appliedSeq = delta;
+                    deltasSinceSnapshot++;
+                }
+            }
+            if (complete) return;
+
+            // removed concurrently by another node writing a snapshot; start again from the new snapshot
+            if (attempt >= 2) throw new IllegalStateException("Persisted state in "+getSummaryName()+" changed repeatedly while being read");
+            loaded = false;
+        }
+    }
+
+    /** reads and applies the changes in the batch, returning false if it does not exist */
+    private boolean readBatch(String name) {
+        Blob blob = getBlobStore().getBlob(getContainerName(), name);
+        if (blob == null) return false;
+        try {
+            InputStream in = blob.getPayload().openStream();
+            try {
+                DataInputStream data = new DataInputStream(new GZIPInputStream(in, 64*1024));
+                int magic = data.readInt();
+                int version = data.readInt();
+                if (magic != BATCH_MAGIC || version != BATCH_VERSION) {
+                    throw new IOException("Unsupported persistence batch "+name+" in "+getSummaryName()+" (version "+version+")");
+                }
+                data.readLong();
+                int count = data.readInt();
+                String[] paths = new String[count];
+                long[] times = new long[count];
+                int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    paths[i] = data.readUTF();
+                    times[i] = data.readLong();
+                    lengths[i] = data.readInt();
+                }
+                for (int i = 0; i < count; i++) {
+                    if (lengths[i] < 0) {
+                        items.remove(paths[i]);
+                    } else {
+                        byte[] contentsBytes = new byte[lengths[i]];
+                        data.readFully(contentsBytes);
+                        items.put(paths[i], new Item(new String(contentsBytes, Charsets.UTF_8), times[i]));
+                    }
+                }
+                return true;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw Exceptions.propagate(e);
+        }
+    }
+
+    // ---------- blobs
+
+    private BlobStore getBlobStore() {
+        return getBlobStoreContext().getBlobStore();
+    }
+
+    private String getDeltaName(long seq) {
+        return mergePaths(BATCHES_SUB_PATH, String.format("%s%016d", DELTA_PREFIX, seq));
+    }
+
+    private String getSnapshotName(long seq) {
+        return mergePaths(BATCHES_SUB_PATH, String.format("%s%016d", SNAPSHOT_PREFIX, seq));
+    }
+
+    private void putBlob(String name, byte[] bytes) {
+        BlobStore blobStore = getBlobStore();
+        Blob blob = blobStore.blobBuilder(name).payload(ByteSource.wrap(bytes))
+                .contentLength(bytes.length)
+                .build();
+        blobStore.putBlob(getContainerName(), blob);
+    }
+
+    private void removeBlob(String name) {
+        getBlobStore().removeBlob(getContainerName(), name);
+    }
+
+    /** sequence numbers of the deltas and snapshots in the container, in order */
+    private BatchNames listBatchNames() {
+        BatchNames result = new BatchNames();
+        String prefix = BATCHES_SUB_PATH+subPathSeparator();
+        for (String path : listBlobNames(BATCHES_SUB_PATH)) {
+            String name = path.startsWith(prefix) ? path.substring(prefix.length()) : path;
+            try {
+                if (name.startsWith(DELTA_PREFIX)) {
+                    result.deltas.add(Long.parseLong(name.substring(DELTA_PREFIX.length())));
+                } else if (name.startsWith(SNAPSHOT_PREFIX)) {
+                    result.snapshots.add(Long.parseLong(name.substring(SNAPSHOT_PREFIX.length())));
+                } else {
+                    log.debug("Ignoring unexpected blob {} in persisted state {}", path, getSummaryName());
+                }
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring unexpected blob {} in persisted state {}", path, getSummaryName());
+            }
+        }
+        return result;
+    }
+
+    /** names of all blobs in the given sub-path, following pages of results if the listing is truncated */
+    private List<String> listBlobNames(String subPath) {
+        List<String> result = MutableList.of();
+        ListContainerOptions options = ListContainerOptions.Builder.inDirectory(subPath);
+        while (true) {
+            PageSet<? extends StorageMetadata> page = getBlobStore().list(getContainerName(), options);
+            for (StorageMetadata metadata : page) {
+                if (metadata.getType() == StorageType.BLOB) result.add(metadata.getName());
+            }
+            String marker = page.getNextMarker();
+            if (marker == null) return result;
+            options = ListContainerOptions.Builder.inDirectory(subPath).afterMarker(marker);
+        }
+    }
+
+    /** 
+     * imports items from the one-blob-per-item layout in this container, as master; must hold writeLock.
+     * the blobs are left in place, for nodes not using batches
+     */
+    private void importLegacyLayout() {
+        List<String> paths = MutableList.of();
+        for (String subPath : BATCHED_SUB_PATHS) {
+            paths.addAll(super.listContentsWithSubPath(subPath));
+        }
+        if (paths.isEmpty()) return;
+
+        log.info("Importing "+paths.size()+" persisted items from individual blobs in "+getSummaryName()+" to batches");
+        long now = System.currentTimeMillis();
+        for (String path : paths) {
+            String contents = super.newAccessor(path).get();
+            if (contents != null) items.put(path, new Item(contents, now));
+        }
+        synchronized (writeLock) {
+            loaded = true;
+            writeSnapshot();
+        }
+    }
+}
@@ -72,8 +72,15 @@ public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore
         getBlobStoreContext();
     }
 
+    /** uses the given context, e.g. for the jclouds "transient" (in-memory) blobstore in tests */
+    public JcloudsBlobStoreBasedObjectStore(BlobStoreContext context, String containerName) {
+        this.context = context;
+        this.containerName = containerName;
+        context.getBlobStore().createContainerInLocation(null, getContainerName());
+    }
+
     public String getSummaryName() {
-        return (locationSpec!=null ? locationSpec : location)+":"+getContainerName();
+        return (locationSpec!=null ? locationSpec : location!=null ? location : context)+":"+getContainerName();
     }
     
     public synchronized BlobStoreContext getBlobStoreContext() {
@@ -104,6 +111,10 @@ public class JcloudsBlobStoreBasedObjectStore implements PersistenceObjectStore
         // TODO currently backups not supported here, that is all which is needed for master use
         // (we have already thrown in prepareForSharedUse if backups have been specified as required)
     }
+
+    @Override
+    public void prepareForStandbyUse() {
+    }
     
     public String getContainerName() {
         return containerName;
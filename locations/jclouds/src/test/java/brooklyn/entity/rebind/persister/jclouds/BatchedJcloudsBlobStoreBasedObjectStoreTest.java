@@ -0,0 +1,260 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.entity.rebind.persister.jclouds;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStoreContext;
+import org.jclouds.blobstore.domain.StorageMetadata;
+import org.jclouds.blobstore.domain.StorageType;
+import org.jclouds.blobstore.options.ListContainerOptions;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.rebind.persister.PersistMode;
+import brooklyn.entity.rebind.persister.PersistenceObjectStore;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.test.entity.LocalManagementContextForTests;
+import brooklyn.util.collections.MutableList;
+
+import com.google.common.collect.ImmutableSet;
+
+/** Runs against the jclouds "transient" (in-memory) blobstore, so does not need cloud credentials. */
+public class BatchedJcloudsBlobStoreBasedObjectStoreTest {
+
+    private static final String CONTAINER = "brooklyn-batched-test";
+    
+    private LocalManagementContextForTests mgmt;
+    private BlobStoreContext context;
+    
+    @BeforeMethod(alwaysRun=true)
+    public void setUp() throws Exception {
+        mgmt = new LocalManagementContextForTests();
+        context = ContextBuilder.newBuilder("transient").credentials("identity", "credential").buildView(BlobStoreContext.class);
+    }
+    
+    @AfterMethod(alwaysRun=true)
+    public void tearDown() throws Exception {
+        // stores share the context, so it is closed here rather than by each store
+        if (context != null) context.close();
+        if (mgmt != null) Entities.destroyAll(mgmt);
+    }
+    
+    private <T extends PersistenceObjectStore> T prepare(T store) {
+        store.injectManagementContext(mgmt);
+        store.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        store.createSubPath("entities");
+        return store;
+    }
+    
+    private BatchedJcloudsBlobStoreBasedObjectStore newStore() {
+        return prepare(new BatchedJcloudsBlobStoreBasedObjectStore(context, CONTAINER));
+    }
+    
+    @Test
+    public void testChangesRecoveredByNewStore() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        store.prepareForMasterUse();
+        store.newAccessor("entities/a").put("a1");
+        store.newAccessor("entities/b").put("b");
+        store.flush();
+        store.newAccessor("entities/a").put("a2");
+        store.newAccessor("entities/c").append("c1");
+        store.newAccessor("entities/c").append("c2");
+        store.newAccessor("entities/b").delete();
+        store.flush();
+        
+        assertEquals(store.newAccessor("entities/a").get(), "a2");
+        assertFalse(store.newAccessor("entities/b").exists());
+        assertEquals(ImmutableSet.copyOf(store.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/c"));
+        assertEquals(listBatches(), MutableList.of("batches/delta-0000000000000001", "batches/delta-0000000000000002"));
+        
+        BatchedJcloudsBlobStoreBasedObjectStore store2 = newStore();
+        assertEquals(store2.newAccessor("entities/a").get(), "a2");
+        assertNull(store2.newAccessor("entities/b").get());
+        assertEquals(store2.newAccessor("entities/c").get(), "c1c2");
+        assertEquals(ImmutableSet.copyOf(store2.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/c"));
+    }
+    
+    @Test
+    public void testChangesNotWrittenUntilFlushed() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        store.prepareForMasterUse();
+        store.newAccessor("entities/a").put("a");
+        assertEquals(store.newAccessor("entities/a").get(), "a");
+        assertEquals(listBatches(), MutableList.of());
+        
+        store.flush();
+        store.flush();
+        assertEquals(listBatches(), MutableList.of("batches/delta-0000000000000001"));
+    }
+    
+    @Test
+    public void testSnapshotReplacesDeltas() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        store.setDeltasPerSnapshot(10);
+        store.prepareForMasterUse();
+        for (int i = 0; i < 25; i++) {
+            store.newAccessor("entities/e"+(i % 10)).put("value-"+i);
+            store.flush();
+        }
+        
+        assertEquals(listBatches(), MutableList.of(
+                "batches/delta-0000000000000021", "batches/delta-0000000000000022", "batches/delta-0000000000000023", 
+                "batches/delta-0000000000000024", "batches/delta-0000000000000025", "batches/snapshot-0000000000000020"));
+        
+        BatchedJcloudsBlobStoreBasedObjectStore store2 = newStore();
+        assertEquals(store2.listContentsWithSubPath("entities").size(), 10);
+        assertEquals(store2.newAccessor("entities/e4").get(), "value-24");
+        assertEquals(store2.newAccessor("entities/e5").get(), "value-15");
+    }
+    
+    @Test
+    public void testReaderCatchesUpWithWriter() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore writer = newStore();
+        BatchedJcloudsBlobStoreBasedObjectStore reader = newStore();
+        writer.prepareForMasterUse();
+        
+        writer.newAccessor("entities/a").put("a");
+        writer.flush();
+        assertEquals(reader.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(reader.newAccessor("entities/a").get(), "a");
+        
+        writer.compact();
+        writer.newAccessor("entities/b").put("b");
+        writer.flush();
+        assertEquals(ImmutableSet.copyOf(reader.listContentsWithSubPath("entities")), ImmutableSet.of("entities/a", "entities/b"));
+    }
+    
+    @Test
+    public void testWriterStopsWhenAnotherNodeWrites() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore oldMaster = newStore();
+        BatchedJcloudsBlobStoreBasedObjectStore newMaster = newStore();
+        oldMaster.prepareForMasterUse();
+        oldMaster.newAccessor("entities/a").put("a1");
+        oldMaster.flush();
+        
+        newMaster.prepareForMasterUse();
+        newMaster.newAccessor("entities/a").put("a2");
+        newMaster.flush();
+        
+        assertEquals(oldMaster.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(oldMaster.newAccessor("entities/a").get(), "a2");
+    }
+    
+    @Test
+    public void testWriterNotYetDemotedDoesNotOverwriteNewMastersDeltas() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore oldMaster = newStore();
+        BatchedJcloudsBlobStoreBasedObjectStore newMaster = newStore();
+        oldMaster.prepareForMasterUse();
+        oldMaster.newAccessor("entities/a").put("a1");
+        oldMaster.flush();
+        
+        newMaster.prepareForMasterUse();
+        newMaster.newAccessor("entities/b").put("b");
+        newMaster.flush();
+        
+        // the old master has not yet been told it is no longer master, so tries to write the next delta
+        oldMaster.newAccessor("entities/a").put("a2");
+        try {
+            oldMaster.flush();
+            Assert.fail("Should not have written after another node had written");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        try {
+            oldMaster.prepareForMasterUse();
+            Assert.fail("Should not have prepared for master use until demoted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        newMaster.newAccessor("entities/c").put("c");
+        newMaster.flush();
+        assertEquals(listBatches(), MutableList.of(
+                "batches/delta-0000000000000001", "batches/delta-0000000000000002", "batches/delta-0000000000000003"));
+        
+        BatchedJcloudsBlobStoreBasedObjectStore reader = newStore();
+        assertEquals(reader.newAccessor("entities/a").get(), "a1");
+        assertEquals(reader.newAccessor("entities/b").get(), "b");
+        assertEquals(reader.newAccessor("entities/c").get(), "c");
+        
+        // once demoted, it can become master again
+        oldMaster.prepareForStandbyUse();
+        oldMaster.prepareForMasterUse();
+        assertEquals(oldMaster.newAccessor("entities/a").get(), "a1");
+        assertEquals(oldMaster.newAccessor("entities/c").get(), "c");
+    }
+    
+    @Test
+    public void testImportsBlobPerItemLayout() throws Exception {
+        JcloudsBlobStoreBasedObjectStore blobStore = prepare(new JcloudsBlobStoreBasedObjectStore(context, CONTAINER));
+        blobStore.newAccessor("entities/a").put("a");
+        blobStore.newAccessor("entities/b").put("b");
+        
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        store.prepareForMasterUse();
+        assertEquals(store.newAccessor("entities/a").get(), "a");
+        assertEquals(store.newAccessor("entities/b").get(), "b");
+        assertEquals(listBatches(), MutableList.of("batches/snapshot-0000000000000000"));
+        // left for nodes not using batches
+        assertEquals(blobStore.newAccessor("entities/a").get(), "a");
+    }
+    
+    @Test
+    public void testNonMasterReadsBlobPerItemLayoutWithoutImporting() throws Exception {
+        JcloudsBlobStoreBasedObjectStore blobStore = prepare(new JcloudsBlobStoreBasedObjectStore(context, CONTAINER));
+        blobStore.newAccessor("entities/a").put("a");
+        
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        assertEquals(store.listContentsWithSubPath("entities"), MutableList.of("entities/a"));
+        assertEquals(store.newAccessor("entities/a").get(), "a");
+        assertTrue(store.newAccessor("entities/a").exists());
+        assertEquals(listBatches(), MutableList.of());
+        assertTrue(blobStore.newAccessor("entities/a").exists());
+    }
+    
+    @Test
+    public void testSharedSubPathsAreBlobs() throws Exception {
+        BatchedJcloudsBlobStoreBasedObjectStore store = newStore();
+        store.newAccessor("plane/node1").put("x");
+        assertTrue(context.getBlobStore().blobExists(CONTAINER, "plane/node1"));
+        assertEquals(store.listContentsWithSubPath("plane"), MutableList.of("plane/node1"));
+    }
+    
+    private List<String> listBatches() {
+        List<String> result = MutableList.of();
+        ListContainerOptions options = ListContainerOptions.Builder.inDirectory(BatchedJcloudsBlobStoreBasedObjectStore.BATCHES_SUB_PATH);
+        for (StorageMetadata metadata : context.getBlobStore().list(CONTAINER, options)) {
+            if (metadata.getType() == StorageType.BLOB) result.add(metadata.getName());
+        }
+        Collections.sort(result);
+        return result;
+    }
+}
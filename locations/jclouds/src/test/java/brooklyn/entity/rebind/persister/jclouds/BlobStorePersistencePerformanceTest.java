@@ -38,7 +38,10 @@ public class BlobStorePersistencePerformanceTest extends AbstractPerformanceTest
 
     public static final String LOCATION_SPEC = "named:brooklyn-jclouds-objstore-test-1";
     
+    public static final int ITEMS_PER_DELTA = 100;
+    
     JcloudsBlobStoreBasedObjectStore objectStore;
+    BatchedJcloudsBlobStoreBasedObjectStore batchedObjectStore;
     StoreObjectAccessor blobstoreAccessor;
     
     @BeforeMethod(alwaysRun=true)
@@ -51,6 +54,11 @@ public class BlobStorePersistencePerformanceTest extends AbstractPerformanceTest
         objectStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.AUTO);
         blobstoreAccessor = objectStore.newAccessor(Identifiers.makeRandomId(8));
         
+        batchedObjectStore = new BatchedJcloudsBlobStoreBasedObjectStore(LOCATION_SPEC, "BlobStorePersistencePerformanceTest-batched");
+        batchedObjectStore.injectManagementContext(mgmt);
+        batchedObjectStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.AUTO);
+        batchedObjectStore.prepareForMasterUse();
+        
         app.start(ImmutableList.of(loc));
     }
 
@@ -63,6 +71,10 @@ public class BlobStorePersistencePerformanceTest extends AbstractPerformanceTest
             objectStore.deleteCompletely();
             objectStore.close();
         }
+        if (batchedObjectStore != null) {
+            batchedObjectStore.deleteCompletely();
+            batchedObjectStore.close();
+        }
     }
     
     protected int numIterations() {
@@ -118,4 +130,57 @@ public class BlobStorePersistencePerformanceTest extends AbstractPerformanceTest
              }
          }
      }
+
+     /** a delta of {@link #ITEMS_PER_DELTA} items: one PUT per item, compared with a single PUT for the batch */
+     @Test(groups={"Live", "Acceptance"})
+     public void testDeltaPutsPerLayout() throws Exception {
+         int numIterations = numIterations() / 10;
+         double minRatePerSec = 0.1 * PERFORMANCE_EXPECTATION;
+         final AtomicInteger i = new AtomicInteger();
+         
+         measureAndAssert("Delta as blob per item", numIterations, minRatePerSec, new Runnable() {
+             public void run() {
+                 String val = ""+i.incrementAndGet();
+                 for (int j = 0; j < ITEMS_PER_DELTA; j++) {
+                     objectStore.newAccessor("entities/e"+j).put(val);
+                 }
+             }});
+         measureAndAssert("Delta as batch", numIterations, minRatePerSec, new Runnable() {
+             public void run() {
+                 String val = ""+i.incrementAndGet();
+                 for (int j = 0; j < ITEMS_PER_DELTA; j++) {
+                     batchedObjectStore.newAccessor("entities/e"+j).put(val);
+                 }
+                 batchedObjectStore.flush();
+             }});
+     }
+ 
+     /** reading all items, as on rebind: a LIST and a GET per item, compared with a LIST and a GET per batch */
+     @Test(groups={"Live", "Acceptance"})
+     public void testRebindReadsPerLayout() throws Exception {
+         int numIterations = numIterations() / 10;
+         double minRatePerSec = 0.1 * PERFORMANCE_EXPECTATION;
+         for (int j = 0; j < ITEMS_PER_DELTA; j++) {
+             objectStore.newAccessor("entities/e"+j).put("val"+j);
+             batchedObjectStore.newAccessor("entities/e"+j).put("val"+j);
+         }
+         batchedObjectStore.flush();
+         
+         measureAndAssert("Rebind reads of blob per item", numIterations, minRatePerSec, new Runnable() {
+             public void run() {
+                 for (String path : objectStore.listContentsWithSubPath("entities")) {
+                     objectStore.newAccessor(path).get();
+                 }
+             }});
+         measureAndAssert("Rebind reads of batches", numIterations, minRatePerSec, new Runnable() {
+             public void run() {
+                 BatchedJcloudsBlobStoreBasedObjectStore store = new BatchedJcloudsBlobStoreBasedObjectStore(LOCATION_SPEC, batchedObjectStore.getContainerName());
+                 store.injectManagementContext(mgmt);
+                 store.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.AUTO);
+                 for (String path : store.listContentsWithSubPath("entities")) {
+                     store.newAccessor(path).get();
+                 }
+                 store.close();
+             }});
+     }
 }
@@ -31,9 +31,12 @@ import com.google.api.client.util.Preconditions;
 import brooklyn.config.ConfigKey;
 import brooklyn.entity.Entity;
 import brooklyn.entity.basic.BrooklynTaskTags;
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.event.AttributeSensor;
 import brooklyn.util.collections.MutableMap;
 import brooklyn.util.exceptions.Exceptions;
+import brooklyn.util.guava.Maybe;
+import brooklyn.util.http.HttpConnectionPool;
 import brooklyn.util.http.HttpTool;
 import brooklyn.util.http.HttpToolResponse;
 import brooklyn.util.net.Urls;
@@ -74,6 +77,10 @@ public class EntityHttpClientImpl implements EntityHttpClient {
                     entity.getConfig(BrooklynNode.MANAGEMENT_PASSWORD));
             builder.credentials(credentials);
         }
+        Maybe<HttpConnectionPool> connectionPool = HttpConnectionPool.ifEnabled(((EntityInternal)entity).getManagementContext());
+        if (connectionPool.isPresent()) {
+            builder.connectionPool(connectionPool.get());
+        }
         return builder;
     }
 
@@ -46,6 +46,7 @@ import brooklyn.util.flags.TypeCoercions;
 import brooklyn.util.task.system.ProcessTaskWrapper;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Equivalence;
 import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
@@ -208,9 +209,11 @@ public class ChefAttributeFeed extends AbstractFeed {
         final Set<ChefAttributePollConfig<?>> polls = getConfig(POLLS);
         
         long minPeriod = Integer.MAX_VALUE;
+        long maxPeriod = Integer.MAX_VALUE;
         SortedSet<String> performanceCounterNames = Sets.newTreeSet();
         for (ChefAttributePollConfig<?> config : polls) {
             minPeriod = Math.min(minPeriod, config.getPeriod());
+            maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
         }
 
         knifeTaskFactory = new KnifeNodeAttributeQueryTaskFactory(nodeName);
@@ -227,10 +230,10 @@ public class ChefAttributeFeed extends AbstractFeed {
             }
         };
 
-        getPoller().scheduleAtFixedRate(
+        getPoller().scheduleAdaptively(
                 new CallInEntityExecutionContext<SshPollValue>(entity, getAttributesFromKnife),
                 new SendChefAttributesToSensors(entity, polls),
-                minPeriod);
+                Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
     }
 
     @SuppressWarnings("unchecked")
@@ -20,6 +20,7 @@ package brooklyn.event.feed.jmx;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -41,11 +42,19 @@ import brooklyn.entity.basic.SoftwareProcessImpl;
 import brooklyn.event.feed.AbstractFeed;
 import brooklyn.event.feed.AttributePollHandler;
 import brooklyn.event.feed.DelegatingPollHandler;
+import brooklyn.event.feed.MultiplexedPollHandler;
+import brooklyn.event.feed.PollConfig;
 import brooklyn.event.feed.PollHandler;
 import brooklyn.event.feed.Poller;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.exceptions.Exceptions;
 import brooklyn.util.time.Duration;
 
+import com.google.common.base.Equivalence;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.SetMultimap;
@@ -219,7 +228,7 @@ public class JmxFeed extends AbstractFeed {
     @Override
     public void setEntity(EntityLocal entity) {
         if (getConfig(HELPER) == null) {
-            JmxHelper helper = new JmxHelper(entity);
+            JmxHelper helper = JmxHelper.acquireShared(entity);
             setConfig(HELPER, helper);
             setConfig(OWN_HELPER, true);
             setConfig(JMX_URI, helper.getUrl());
@@ -240,6 +249,11 @@ public class JmxFeed extends AbstractFeed {
         return (Poller<Object>) super.getPoller();
     }
     
+    @SuppressWarnings("unchecked")
+    protected Poller<List<Object>> getBatchPoller() {
+        return (Poller<List<Object>>) super.getPoller();
+    }
+    
     @Override
     protected boolean isConnected() {
         return super.isConnected() && getHelper().isConnected();
@@ -291,9 +305,27 @@ public class JmxFeed extends AbstractFeed {
             });
         }
         
-        // Setup polling of sensors
-        for (final String jmxAttributeName : attributePolls.keys()) {
-            registerAttributePoller(attributePolls.get(jmxAttributeName));
+        // Setup polling of sensors; the attributes of an ObjectName with the same period are read together
+        // (except adaptive polls, whose period varies with their own results)
+        Map<List<Object>, List<Set<JmxAttributePollConfig<?>>>> attributeBatches = MutableMap.of();
+        for (final String jmxAttributeName : attributePolls.keySet()) {
+            Set<JmxAttributePollConfig<?>> configs = attributePolls.get(jmxAttributeName);
+            if (maxPeriod(configs) > minPeriod(configs)) {
+                registerAttributePoller(configs);
+            } else {
+                List<Object> batchKey = ImmutableList.<Object>of(Iterables.get(configs, 0).getObjectName(), minPeriod(configs));
+                if (!attributeBatches.containsKey(batchKey)) {
+                    attributeBatches.put(batchKey, MutableList.<Set<JmxAttributePollConfig<?>>>of());
+                }
+                attributeBatches.get(batchKey).add(configs);
+            }
+        }
+        for (List<Set<JmxAttributePollConfig<?>>> batch : attributeBatches.values()) {
+            if (batch.size() == 1) {
+                registerAttributePoller(batch.get(0));
+            } else {
+                registerAttributesPoller(batch);
+            }
         }
         
         // Setup polling of operations
@@ -317,7 +349,24 @@ public class JmxFeed extends AbstractFeed {
         super.postStop();
         JmxHelper helper = getHelper();
         Boolean ownHelper = getConfig(OWN_HELPER);
-        if (helper != null && ownHelper) helper.terminate();
+        if (helper != null && ownHelper) helper.release();
+    }
+    
+    private static long minPeriod(Iterable<? extends PollConfig<?, ?, ?>> configs) {
+        long result = Integer.MAX_VALUE;
+        for (PollConfig<?, ?, ?> config : configs) {
+            if (config.getPeriod() > 0) result = Math.min(result, config.getPeriod());
+        }
+        return result;
+    }
+    
+    /** the longest period for an adaptive poll of all the given configs; no more than {@link #minPeriod(Iterable)} if any is not adaptive */
+    private static long maxPeriod(Iterable<? extends PollConfig<?, ?, ?>> configs) {
+        long result = Integer.MAX_VALUE;
+        for (PollConfig<?, ?, ?> config : configs) {
+            if (config.getPeriod() > 0) result = Math.min(result, config.getMaxPeriod());
+        }
+        return result;
     }
     
     /**
@@ -326,6 +375,7 @@ public class JmxFeed extends AbstractFeed {
     private void registerOperationPoller(Set<JmxOperationPollConfig<?>> configs) {
         Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
         long minPeriod = Integer.MAX_VALUE;
+        long maxPeriod = Integer.MAX_VALUE;
         
         final ObjectName objectName = Iterables.get(configs, 0).getObjectName();
         final String operationName = Iterables.get(configs, 0).getOperationName();
@@ -334,10 +384,13 @@ public class JmxFeed extends AbstractFeed {
         
         for (JmxOperationPollConfig<?> config : configs) {
             handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
-            if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            if (config.getPeriod() > 0) {
+                minPeriod = Math.min(minPeriod, config.getPeriod());
+                maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+            }
         }
         
-        getPoller().scheduleAtFixedRate(
+        getPoller().scheduleAdaptively(
                 new Callable<Object>() {
                     public Object call() throws Exception {
                         if (log.isDebugEnabled()) log.debug("jmx operation polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), operationName});
@@ -348,7 +401,7 @@ public class JmxFeed extends AbstractFeed {
                         }
                     }
                 }, 
-                new DelegatingPollHandler<Object>(handlers), minPeriod);
+                new DelegatingPollHandler<Object>(handlers), Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
     }
 
     /**
@@ -357,24 +410,129 @@ public class JmxFeed extends AbstractFeed {
     private void registerAttributePoller(Set<JmxAttributePollConfig<?>> configs) {
         Set<AttributePollHandler<? super Object>> handlers = Sets.newLinkedHashSet();
         long minPeriod = Integer.MAX_VALUE;
+        long maxPeriod = Integer.MAX_VALUE;
         
         final ObjectName objectName = Iterables.get(configs, 0).getObjectName();
         final String jmxAttributeName = Iterables.get(configs, 0).getAttributeName();
         
         for (JmxAttributePollConfig<?> config : configs) {
             handlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
-            if (config.getPeriod() > 0) minPeriod = Math.min(minPeriod, config.getPeriod());
+            if (config.getPeriod() > 0) {
+                minPeriod = Math.min(minPeriod, config.getPeriod());
+                maxPeriod = Math.min(maxPeriod, config.getMaxPeriod());
+            }
         }
         
         // TODO Not good calling this holding the synchronization lock
-        getPoller().scheduleAtFixedRate(
+        getPoller().scheduleAdaptively(
                 new Callable<Object>() {
                     public Object call() throws Exception {
                         if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), jmxAttributeName});
                         return getHelper().getAttribute(objectName, jmxAttributeName);
                     }
                 }, 
-                new DelegatingPollHandler<Object>(handlers), minPeriod);
+                new DelegatingPollHandler<Object>(handlers), Duration.millis(minPeriod), Duration.millis(maxPeriod), Equivalence.equals());
+    }
+
+    /**
+     * Registers to poll several jmx-attributes of an ObjectName with a single call, where each of the given sets of configs
+     * is for one attribute of that same ObjectName.
+     */
+    private void registerAttributesPoller(List<Set<JmxAttributePollConfig<?>>> batch) {
+        List<PollHandler<Object>> handlers = Lists.newArrayList();
+        final List<String> jmxAttributeNames = Lists.newArrayList();
+        long minPeriod = Integer.MAX_VALUE;
+        
+        final ObjectName objectName = Iterables.get(batch.get(0), 0).getObjectName();
+        
+        for (Set<JmxAttributePollConfig<?>> configs : batch) {
+            Set<AttributePollHandler<? super Object>> attributeHandlers = Sets.newLinkedHashSet();
+            for (JmxAttributePollConfig<?> config : configs) {
+                attributeHandlers.add(new AttributePollHandler<Object>(config, getEntity(), this));
+            }
+            jmxAttributeNames.add(Iterables.get(configs, 0).getAttributeName());
+            handlers.add(new AttributeReadHandler(new DelegatingPollHandler<Object>(attributeHandlers)));
+            minPeriod = Math.min(minPeriod, minPeriod(configs));
+        }
+        
+        getBatchPoller().scheduleAtFixedRate(
+                new Callable<List<Object>>() {
+                    public List<Object> call() throws Exception {
+                        if (log.isTraceEnabled()) log.trace("jmx attribute polling for {} sensors at {} -> {}", new Object[] {getEntity(), getJmxUri(), jmxAttributeNames});
+                        return readAttributes(objectName, jmxAttributeNames);
+                    }
+                }, 
+                new MultiplexedPollHandler<Object>(handlers), minPeriod);
+    }
+    
+    /**
+     * Reads the attributes with {@link JmxHelper#getAttributes(ObjectName, java.util.Collection)}; any it could not read
+     * are read on their own, so that their handlers see the same value or exception as before.
+     */
+    private List<Object> readAttributes(ObjectName objectName, List<String> jmxAttributeNames) {
+        Map<String, Object> values;
+        try {
+            values = getHelper().getAttributes(objectName, jmxAttributeNames);
+        } catch (RuntimeException e) {
+            if (Exceptions.getFirstThrowableOfType(e, IOException.class) != null) throw e;
+            // e.g. an MBean not implementing getAttributes properly
+            if (log.isDebugEnabled()) log.debug("Failed reading jmx attributes {} of {} at {} together (reading separately): {}", new Object[] {jmxAttributeNames, objectName, getJmxUri(), e});
+            values = ImmutableMap.of();
+        }
+        
+        List<Object> result = MutableList.of();
+        for (String jmxAttributeName : jmxAttributeNames) {
+            if (values == null) {
+                // no such MBean; as for getAttribute
+                result.add(null);
+            } else if (values.containsKey(jmxAttributeName)) {
+                result.add(values.get(jmxAttributeName));
+            } else {
+                try {
+                    result.add(getHelper().getAttribute(objectName, jmxAttributeName));
+                } catch (Exception e) {
+                    Exceptions.propagateIfFatal(e);
+                    result.add(new AttributeReadFailure(e));
+                }
+            }
+        }
+        return result;
+    }
+    
+    /** in the result of {@link #readAttributes(ObjectName, List)}, for an attribute whose read threw */
+    private static class AttributeReadFailure {
+        final Exception exception;
+        AttributeReadFailure(Exception exception) {
+            this.exception = exception;
+        }
+    }
+    
+    /** passes an {@link AttributeReadFailure} to the delegate as the exception */
+    private static class AttributeReadHandler implements PollHandler<Object> {
+        private final PollHandler<Object> delegate;
+        
+        AttributeReadHandler(PollHandler<Object> delegate) {
+            this.delegate = delegate;
+        }
+        @Override public boolean checkSuccess(Object val) {
+            return !(val instanceof AttributeReadFailure) && delegate.checkSuccess(val);
+        }
+        @Override public void onSuccess(Object val) {
+            delegate.onSuccess(val);
+        }
+        @Override public void onFailure(Object val) {
+            if (val instanceof AttributeReadFailure) {
+                delegate.onException(((AttributeReadFailure)val).exception);
+            } else {
+                delegate.onFailure(val);
+            }
+        }
+        @Override public void onException(Exception exception) {
+            delegate.onException(exception);
+        }
+        @Override public String getDescription() {
+            return delegate.getDescription();
+        }
     }
 
     /**
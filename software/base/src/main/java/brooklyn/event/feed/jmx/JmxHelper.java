@@ -27,6 +27,7 @@ import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.cert.Certificate;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -37,6 +38,8 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -63,9 +66,11 @@ import javax.net.ssl.TrustManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.entity.basic.EntityInternal;
 import brooklyn.entity.basic.EntityLocal;
 import brooklyn.entity.java.JmxSupport;
 import brooklyn.entity.java.UsesJmx;
+import brooklyn.management.internal.ManagementContextInternal;
 import brooklyn.util.crypto.SecureKeys;
 import brooklyn.util.crypto.SslTrustUtils;
 import brooklyn.util.exceptions.Exceptions;
@@ -75,6 +80,8 @@ import brooklyn.util.repeat.Repeater;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 import com.google.common.collect.ImmutableMap;
@@ -94,6 +101,9 @@ public class JmxHelper {
     // Tracks the MBeans we have failed to find, with a set keyed off the url
     private static final Map<String, Set<ObjectName>> notFoundMBeansByUrl = Collections.synchronizedMap(new WeakHashMap<String, Set<ObjectName>>());
 
+    // Helpers in use by more than one feed (etc), kept in the management context's storage under this id
+    private static final String SHARED_HELPERS_STORAGE_ID = JmxHelper.class.getName()+".sharedHelpers";
+
     public static final Map<String, String> CLASSES = ImmutableMap.<String,String>builder()
             .put("Integer", Integer.TYPE.getName())
             .put("Long", Long.TYPE.getName())
@@ -164,6 +174,89 @@ public class JmxHelper {
     // Tracks the MBeans we have failed to find for this JmsHelper's connection URL (so can log just once for each)
     private final Set<ObjectName> notFoundMBeans;
 
+    // for a shared helper, the map it is shared in, its key there (which also gives its SSL config), 
+    // and the number of users; guarded by sharedHelpers
+    private Map<SharedHelperKey, JmxHelper> sharedHelpers;
+    private SharedHelperKey sharedKey;
+    private int sharedReferences;
+
+    /**
+     * Returns a helper for the entity's JMX URL, shared with everything else in the same management context
+     * which has acquired one for the same URL, credentials and SSL config, so that they use the same connection.
+     * Each caller must {@link #release()} it when done (rather than {@link #terminate()} it);
+     * the connection is closed when the last one does.
+     * <p>
+     * The helper takes the entity's config when it is acquired; it does not refer to the entity after that.
+     */
+    @Beta
+    public static JmxHelper acquireShared(EntityLocal entity) {
+        String url = toJmxUrl(entity);
+        if (entity.getAttribute(UsesJmx.JMX_URL) == null) {
+            entity.setAttribute(UsesJmx.JMX_URL, url);
+        }
+        SharedHelperKey key = new SharedHelperKey(url, entity);
+        Map<SharedHelperKey, JmxHelper> sharedHelpers = ((ManagementContextInternal)((EntityInternal)entity).getManagementContext())
+                .getStorage().<SharedHelperKey, JmxHelper>getMap(SHARED_HELPERS_STORAGE_ID);
+        synchronized (sharedHelpers) {
+            JmxHelper result = sharedHelpers.get(key);
+            if (result == null || result.terminated.get()) {
+                result = new JmxHelper(url, null, key.user, key.password);
+                result.sharedHelpers = sharedHelpers;
+                result.sharedKey = key;
+                sharedHelpers.put(key, result);
+            }
+            result.sharedReferences++;
+            return result;
+        }
+    }
+
+    /** what a shared helper connects to, and how; keys and certs are compared by their encoded form */
+    private static class SharedHelperKey {
+        final String url;
+        final String user;
+        final String password;
+        final boolean sslEnabled;
+        final PrivateKey sslAccessKey;
+        final Certificate sslAccessCert;
+        
+        SharedHelperKey(String url, EntityLocal entity) {
+            this.url = url;
+            this.user = entity.getAttribute(UsesJmx.JMX_USER);
+            this.password = entity.getAttribute(UsesJmx.JMX_PASSWORD);
+            this.sslEnabled = groovyTruth(entity.getConfig(UsesJmx.JMX_SSL_ENABLED));
+            this.sslAccessKey = sslEnabled ? entity.getConfig(UsesJmx.JMX_SSL_ACCESS_KEY) : null;
+            this.sslAccessCert = sslEnabled ? entity.getConfig(UsesJmx.JMX_SSL_ACCESS_CERT) : null;
+        }
+        
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof SharedHelperKey)) return false;
+            SharedHelperKey o = (SharedHelperKey) obj;
+            return Objects.equal(url, o.url) && Objects.equal(user, o.user) && Objects.equal(password, o.password)
+                    && sslEnabled == o.sslEnabled && isSameKey(sslAccessKey, o.sslAccessKey)
+                    // certificates are equal if their encoded forms are
+                    && Objects.equal(sslAccessCert, o.sslAccessCert);
+        }
+        
+        private static boolean isSameKey(PrivateKey k1, PrivateKey k2) {
+            if (k1 == null || k2 == null) return k1 == k2;
+            byte[] e1 = k1.getEncoded();
+            byte[] e2 = k2.getEncoded();
+            if (e1 == null || e2 == null) return k1.equals(k2);
+            return Arrays.equals(e1, e2);
+        }
+        
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(url, user, password, sslEnabled);
+        }
+        
+        @Override
+        public String toString() {
+            return url+(user != null ? " (user "+user+")" : "")+(sslEnabled ? " (ssl)" : "");
+        }
+    }
+
     public JmxHelper(EntityLocal entity) {
         this(toJmxUrl(entity), entity, entity.getAttribute(UsesJmx.JMX_USER), entity.getAttribute(UsesJmx.JMX_PASSWORD));
         
@@ -310,11 +403,22 @@ public class JmxHelper {
             env.put(JMXConnector.CREDENTIALS, creds);
         }
         
-        if (entity!=null && groovyTruth(entity.getConfig(UsesJmx.JMX_SSL_ENABLED))) {
+        boolean sslEnabled;
+        PrivateKey key;
+        Certificate cert;
+        if (sharedKey != null) {
+            sslEnabled = sharedKey.sslEnabled;
+            key = sharedKey.sslAccessKey;
+            cert = sharedKey.sslAccessCert;
+        } else {
+            sslEnabled = entity!=null && groovyTruth(entity.getConfig(UsesJmx.JMX_SSL_ENABLED));
+            key = sslEnabled ? entity.getConfig(UsesJmx.JMX_SSL_ACCESS_KEY) : null;
+            cert = sslEnabled ? entity.getConfig(UsesJmx.JMX_SSL_ACCESS_CERT) : null;
+        }
+        
+        if (sslEnabled) {
             env.put("jmx.remote.profiles", JmxmpAgent.TLS_JMX_REMOTE_PROFILES);
 
-            PrivateKey key = entity.getConfig(UsesJmx.JMX_SSL_ACCESS_KEY);
-            Certificate cert = entity.getConfig(UsesJmx.JMX_SSL_ACCESS_CERT);
             KeyStore ks = SecureKeys.newKeyStore();
             try {
                 KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
@@ -334,7 +438,7 @@ public class JmxHelper {
                 env.put(JmxmpAgent.TLS_SOCKET_FACTORY_PROPERTY, ssf); 
                 
             } catch (Exception e) {
-                LOG.warn("Error setting key "+key+" for "+entity+": "+e, e);
+                LOG.warn("Error setting key "+key+" for "+(entity!=null ? entity : url)+": "+e, e);
             }
         }
         
@@ -428,6 +532,24 @@ public class JmxHelper {
         disconnectNow();
     }
     
+    /**
+     * For a helper from {@link #acquireShared(EntityLocal)}, gives up this use of it, terminating it
+     * if it is the last; for any other helper, the same as {@link #terminate()}.
+     */
+    @Beta
+    public void release() {
+        boolean last;
+        if (sharedHelpers == null) {
+            last = true;
+        } else {
+            synchronized (sharedHelpers) {
+                last = (--sharedReferences <= 0);
+                if (last && sharedHelpers.get(sharedKey) == this) sharedHelpers.remove(sharedKey);
+            }
+        }
+        if (last) terminate();
+    }
+    
     protected void disconnectNow() {
         triedConnecting = false;
         if (connector != null) {
@@ -617,6 +739,33 @@ public class JmxHelper {
         }
     }
 
+    /**
+     * Returns several attributes of a JMX {@link ObjectName}, with a single call to the MBean server.
+     * As for {@link MBeanServerConnection#getAttributes(ObjectName, String[])}, attributes which could not
+     * be read are omitted from the result (use {@link #getAttribute(ObjectName, String)} to find out why).
+     * 
+     * @return the values by attribute name, or null if the object name is a pattern which matches no MBean
+     */
+    public Map<String, Object> getAttributes(ObjectName objectName, final Collection<String> attributes) {
+        final ObjectName realObjectName = toLiteralObjectName(objectName);
+        
+        if (realObjectName != null) {
+            AttributeList list = invokeWithReconnect(new Callable<AttributeList>() {
+                    public AttributeList call() throws Exception {
+                        return getConnectionOrFail().getAttributes(realObjectName, attributes.toArray(new String[attributes.size()]));
+                    }});
+            
+            Map<String, Object> result = new LinkedHashMap<String, Object>();
+            for (Attribute attribute : list.asList()) {
+                result.put(attribute.getName(), attribute.getValue());
+            }
+            if (LOG.isTraceEnabled()) LOG.trace("From {}, for jmx attributes {}.{}, got values {}", new Object[] {url, objectName.getCanonicalName(), attributes, result});
+            return result;
+        } else {
+            return null;
+        }
+    }
+
     public void setAttribute(String objectName, String attribute, Object val) {
         setAttribute(createObjectName(objectName), attribute, val);
     }
@@ -20,6 +20,10 @@ package brooklyn.event.feed.jmx;
 
 import static brooklyn.test.TestUtils.executeUntilSucceeds;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
 import java.util.Collections;
@@ -77,6 +81,7 @@ import brooklyn.test.entity.TestEntity;
 import brooklyn.test.entity.TestEntityImpl;
 
 import com.google.common.base.Function;
+import com.google.common.base.Functions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
@@ -169,6 +174,122 @@ public class JmxFeedTest {
         assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
     }
 
+    @Test
+    public void testJmxAttributesOfSameObjectPolledTogether() throws Exception {
+        GeneralisedDynamicMBean mbean = jmxService.registerMBean(ImmutableMap.of(attributeName, 42, "myotherattrib", "abc"), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("myotherattrib"))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "abc", TIMEOUT_MS);
+
+        mbean.updateAttributeValue(attributeName, 64);
+        mbean.updateAttributeValue("myotherattrib", "def");
+        assertSensorEventually(intAttribute, 64, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "def", TIMEOUT_MS);
+    }
+
+    @Test
+    public void testJmxAttributeMissingFromBatchFailsOnlyItsOwnPoll() throws Exception {
+        jmxService.registerMBean(ImmutableMap.of(attributeName, 42), objectName);
+
+        feed = JmxFeed.builder()
+                .entity(entity)
+                .pollAttribute(new JmxAttributePollConfig<Integer>(intAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName(attributeName))
+                .pollAttribute(new JmxAttributePollConfig<String>(stringAttribute)
+                        .objectName(objectName)
+                        .period(50)
+                        .attributeName("nosuchattrib")
+                        .onFailureOrException(Functions.constant("failed")))
+                .build();
+        
+        assertSensorEventually(intAttribute, 42, TIMEOUT_MS);
+        assertSensorEventually(stringAttribute, "failed", TIMEOUT_MS);
+    }
+
+    @Test
+    public void testSharedJmxHelperTerminatedOnlyByLastRelease() throws Exception {
+        JmxHelper helper1 = JmxHelper.acquireShared(entity);
+        JmxHelper helper2 = JmxHelper.acquireShared(entity);
+        assertSame(helper1, helper2);
+        
+        helper1.release();
+        helper2.connect(TIMEOUT_MS);
+        assertTrue(helper2.isConnected());
+        
+        helper2.release();
+        assertFalse(helper2.isConnected());
+        
+        JmxHelper helper3 = JmxHelper.acquireShared(entity);
+        try {
+            assertNotSame(helper3, helper1);
+        } finally {
+            helper3.release();
+        }
+    }
+
+    @Test
+    public void testSharedJmxHelperDoesNotReferToEntity() throws Exception {
+        JmxHelper helper = JmxHelper.acquireShared(entity);
+        try {
+            assertNull(helper.entity);
+            assertEquals(helper.url, JmxHelper.toJmxUrl(entity));
+        } finally {
+            helper.release();
+        }
+    }
+
+    @Test
+    public void testSharedJmxHelperNotSharedWithDifferentSslConfig() throws Exception {
+        TestEntity sslEntity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                .configure(UsesJmx.JMX_SSL_ENABLED, true));
+        sslEntity.setAttribute(UsesJmx.JMX_URL, JmxHelper.toJmxUrl(entity));
+        
+        JmxHelper helper1 = JmxHelper.acquireShared(entity);
+        JmxHelper helper2 = JmxHelper.acquireShared(sslEntity);
+        try {
+            assertNotSame(helper1, helper2);
+            assertFalse(helper1.getConnectionEnvVars().containsKey("jmx.remote.profiles"));
+            assertTrue(helper2.getConnectionEnvVars().containsKey("jmx.remote.profiles"));
+        } finally {
+            helper1.release();
+            helper2.release();
+        }
+    }
+
+    @Test
+    public void testSharedJmxHelperNotSharedAcrossManagementContexts() throws Exception {
+        TestApplication app2 = TestApplication.Factory.newManagedInstanceForTests();
+        try {
+            TestEntity entity2 = app2.createAndManageChild(EntitySpec.create(TestEntity.class));
+            entity2.setAttribute(UsesJmx.JMX_URL, JmxHelper.toJmxUrl(entity));
+            
+            JmxHelper helper1 = JmxHelper.acquireShared(entity);
+            JmxHelper helper2 = JmxHelper.acquireShared(entity2);
+            try {
+                assertNotSame(helper1, helper2);
+            } finally {
+                helper1.release();
+                helper2.release();
+            }
+        } finally {
+            Entities.destroyAll(app2.getManagementContext());
+        }
+    }
+
     @Test
     public void testJmxAttributeOfTypeTabularDataProviderConvertedToMap() throws Exception {
         // Create the CompositeType and TabularData
@@ -20,6 +20,7 @@ package brooklyn.event.feed.jmx;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
 import static org.testng.Assert.fail;
 
 import java.io.IOException;
@@ -100,6 +101,18 @@ public class JmxHelperTest {
         assertEquals(jmxHelper.getAttribute(jmxObjectNameWithWildcard, "myattr"), "myval");
     }
 
+    @Test
+    public void testGetAttributes() throws Exception {
+        jmxService.registerMBean(MutableMap.of("myattr", "myval", "myotherattr", 42), objectName);
+        assertEquals(jmxHelper.getAttributes(jmxObjectName, ImmutableList.of("myattr", "myotherattr", "nosuchattr")),
+                ImmutableMap.of("myattr", "myval", "myotherattr", 42));
+    }
+
+    @Test
+    public void testGetAttributesUsingObjectNameWildcardOfMissingMBeanReturnsNull() throws Exception {
+        assertNull(jmxHelper.getAttributes(jmxObjectNameWithWildcard, ImmutableList.of("myattr")));
+    }
+
     @Test
     public void testSetAttribute() throws Exception {
         DynamicMBean mbean = jmxService.registerMBean(MutableMap.of("myattr", "myval"), objectName);
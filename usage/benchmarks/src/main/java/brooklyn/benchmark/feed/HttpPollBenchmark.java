@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.feed;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.client.HttpClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.http.HttpConnectionPool;
+import brooklyn.util.http.HttpTool;
+import brooklyn.util.http.HttpToolResponse;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Http health polls per second against an embedded (JDK) http server, as done by {@link brooklyn.event.feed.http.HttpFeed}s:
+ * each of {@code numFeeds} feeds has its own client, polled in turn, either with its own connection
+ * (the default) or with connections from a shared {@link HttpConnectionPool}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@Threads(4)
+public class HttpPollBenchmark {
+
+    private static final byte[] BODY = "{\"status\":\"healthy\"}".getBytes();
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        @Param({"false", "true"})
+        public boolean pooled;
+
+        private HttpServer server;
+        private ExecutorService executor;
+        private HttpConnectionPool pool;
+        URI uri;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            server.createContext("/health", new HttpHandler() {
+                @Override
+                public void handle(HttpExchange exchange) throws IOException {
+                    exchange.getResponseHeaders().add("Content-Type", "application/json");
+                    exchange.sendResponseHeaders(200, BODY.length);
+                    OutputStream out = exchange.getResponseBody();
+                    out.write(BODY);
+                    out.close();
+                }
+            });
+            executor = Executors.newFixedThreadPool(8);
+            server.setExecutor(executor);
+            server.start();
+            uri = URI.create("http://localhost:"+server.getAddress().getPort()+"/health");
+            if (pooled) {
+                pool = new HttpConnectionPool(20, 500, Duration.seconds(30), Duration.seconds(30));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            if (pool != null) pool.shutdown();
+            if (server != null) server.stop(0);
+            if (executor != null) executor.shutdownNow();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Feeds {
+        @Param({"100"})
+        public int numFeeds;
+
+        private List<HttpClient> clients;
+        private int next = 0;
+
+        @Setup(Level.Trial)
+        public void setUp(Server server) {
+            clients = MutableList.of();
+            for (int i = 0; i < numFeeds; i++) {
+                // as built by HttpFeed for each feed
+                HttpTool.HttpClientBuilder builder = HttpTool.httpClientBuilder()
+                        .trustAll()
+                        .laxRedirect(true)
+                        .uri(server.uri);
+                if (server.pool != null) builder.connectionPool(server.pool);
+                clients.add(builder.build());
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            for (HttpClient client : clients) {
+                client.getConnectionManager().shutdown();
+            }
+        }
+
+        HttpClient nextClient() {
+            HttpClient result = clients.get(next);
+            next = (next + 1) % clients.size();
+            return result;
+        }
+    }
+
+    @Benchmark
+    public int poll(Server server, Feeds feeds) {
+        HttpToolResponse response = HttpTool.httpGet(feeds.nextClient(), server.uri, ImmutableMap.<String,String>of());
+        return response.getResponseCode();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.util.List;
+
+import brooklyn.catalog.CatalogItem;
+import brooklyn.entity.Entity;
+import brooklyn.entity.Feed;
+import brooklyn.entity.basic.EntityInternal;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.location.Location;
+import brooklyn.management.ManagementContext;
+import brooklyn.mementos.BrooklynMemento;
+import brooklyn.mementos.BrooklynMementoPersister.LookupContext;
+import brooklyn.mementos.Memento;
+import brooklyn.policy.Enricher;
+import brooklyn.policy.Policy;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.text.ByteSizeStrings;
+import brooklyn.util.time.Duration;
+import brooklyn.util.time.Time;
+
+/**
+ * Reports the heap retained by the mementos of a synthetic plane (by default of 10000 entities):
+ * those generated for persistence (as held for a large delta), and those loaded from the store (as held on rebind).
+ * <p>
+ * This is not a JMH benchmark, as it measures retained heap rather than time; run it from the benchmarks jar,
+ * with a fixed heap so that the numbers are comparable between runs:
+ * <pre>
+ * java -Xms2g -Xmx2g -cp usage/benchmarks/target/benchmarks.jar brooklyn.benchmark.persistence.MementoFootprint 10000
+ * </pre>
+ */
+public class MementoFootprint {
+
+    public static void main(String[] args) throws Exception {
+        int numEntities = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        ObjectStoreType storeType = args.length > 1 ? ObjectStoreType.valueOf(args[1]) : ObjectStoreType.FILE;
+
+        SyntheticPlane plane = SyntheticPlane.create(storeType, numEntities);
+        try {
+            long base = usedHeapAfterGc();
+            List<Memento> generated = MutableList.of();
+            for (Entity entity : plane.getManagementContext().getEntityManager().getEntities()) {
+                generated.add(((EntityInternal)entity).getRebindSupport().getMemento());
+            }
+            long generatedUsed = usedHeapAfterGc() - base;
+            report("generated", generated.size(), generatedUsed);
+            generated = null;
+
+            base = usedHeapAfterGc();
+            BrooklynMementoPersisterToObjectStore persister = plane.newPersister(plane.getManagementContext());
+            BrooklynMemento loaded;
+            try {
+                loaded = persister.loadMemento(new PlaneLookupContext(plane.getManagementContext()), plane.newExceptionHandler());
+            } finally {
+                persister.stop(false);
+            }
+            long loadedUsed = usedHeapAfterGc() - base;
+            report("loaded", loaded.getEntityIds().size(), loadedUsed);
+        } finally {
+            plane.destroy();
+        }
+        System.exit(0);
+    }
+
+    private static void report(String kind, int numMementos, long bytes) {
+        System.out.println(kind+" entity mementos: "+numMementos+" retaining "+ByteSizeStrings.java().apply(bytes)
+                +" ("+(numMementos == 0 ? 0 : bytes/numMementos)+" bytes each)");
+    }
+
+    private static long usedHeapAfterGc() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Time.sleep(Duration.millis(50));
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    /** resolves references in the persisted state to the plane's own (still managed) items */
+    private static class PlaneLookupContext implements LookupContext {
+        private final ManagementContext mgmt;
+
+        PlaneLookupContext(ManagementContext mgmt) {
+            this.mgmt = mgmt;
+        }
+        @Override public ManagementContext lookupManagementContext() {
+            return mgmt;
+        }
+        @Override public Entity lookupEntity(String id) {
+            return mgmt.getEntityManager().getEntity(id);
+        }
+        @Override public Location lookupLocation(String id) {
+            return mgmt.getLocationManager().getLocation(id);
+        }
+        @Override public Policy lookupPolicy(String id) {
+            return null;
+        }
+        @Override public Enricher lookupEnricher(String id) {
+            return null;
+        }
+        @Override public Feed lookupFeed(String id) {
+            return null;
+        }
+        @Override public CatalogItem<?, ?> lookupCatalogItem(String id) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.io.File;
+import java.util.Date;
+import java.util.Map;
+
+import org.jclouds.ContextBuilder;
+import org.jclouds.blobstore.BlobStoreContext;
+
+import brooklyn.entity.rebind.persister.FileBasedObjectStore;
+import brooklyn.entity.rebind.persister.InMemoryObjectStore;
+import brooklyn.entity.rebind.persister.PersistenceObjectStore;
+import brooklyn.entity.rebind.persister.jclouds.JcloudsBlobStoreBasedObjectStore;
+import brooklyn.util.collections.MutableMap;
+import brooklyn.util.os.Os;
+
+import com.google.common.io.Files;
+
+/**
+ * The object stores which benchmarks can be run against; none of these need credentials or network access.
+ */
+public enum ObjectStoreType {
+
+    /** {@link FileBasedObjectStore} in a temporary directory */
+    FILE {
+        @Override
+        public Backing newBacking() {
+            final File dir = Files.createTempDir();
+            return new Backing() {
+                @Override public PersistenceObjectStore newObjectStore() {
+                    return new FileBasedObjectStore(dir);
+                }
+                @Override public void delete() {
+                    Os.deleteRecursively(dir);
+                }
+            };
+        }
+    },
+
+    /** {@link InMemoryObjectStore}, to measure persistence overheads without any I/O */
+    IN_MEMORY {
+        @Override
+        public Backing newBacking() {
+            final Map<String, String> contents = MutableMap.of();
+            final Map<String, Date> modTimes = MutableMap.of();
+            return new Backing() {
+                @Override public PersistenceObjectStore newObjectStore() {
+                    return new InMemoryObjectStore(contents, modTimes);
+                }
+                @Override public void delete() {
+                    contents.clear();
+                    modTimes.clear();
+                }
+            };
+        }
+    },
+
+    /** {@link JcloudsBlobStoreBasedObjectStore} against the jclouds "transient" (in-memory) blobstore */
+    TRANSIENT_JCLOUDS {
+        @Override
+        public Backing newBacking() {
+            final BlobStoreContext context = ContextBuilder.newBuilder("transient")
+                    .credentials("identity", "credential")
+                    .buildView(BlobStoreContext.class);
+            final String container = "brooklyn-benchmark-"+System.currentTimeMillis();
+            return new Backing() {
+                @Override public PersistenceObjectStore newObjectStore() {
+                    // closing the store would close the shared context, so only {@link #delete()} does that
+                    return new JcloudsBlobStoreBasedObjectStore(context, container);
+                }
+                @Override public void delete() {
+                    context.close();
+                }
+            };
+        }
+    };
+
+    /**
+     * Where persisted state is kept; several object stores can be created over the same backing,
+     * e.g. one for writing the state and one for each rebind.
+     */
+    public interface Backing {
+        PersistenceObjectStore newObjectStore();
+        void delete();
+    }
+
+    public abstract Backing newBacking();
+}
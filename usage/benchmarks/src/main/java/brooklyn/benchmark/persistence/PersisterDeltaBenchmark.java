@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brooklyn.entity.rebind.PersistenceExceptionHandler;
+import brooklyn.entity.rebind.PersistenceExceptionHandlerImpl;
+import brooklyn.entity.rebind.PersisterDeltaImpl;
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.mementos.BrooklynMementoPersister.Delta;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.util.collections.MutableList;
+
+/**
+ * {@link BrooklynMementoPersisterToObjectStore#delta(Delta, PersistenceExceptionHandler)} for a delta of
+ * {@link #changedPerDelta} entities (each with a changed attribute) in a plane of {@link #numEntities}.
+ * Generating the mementos is not measured.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PersisterDeltaBenchmark {
+
+    @Param({"FILE", "IN_MEMORY", "TRANSIENT_JCLOUDS"})
+    public ObjectStoreType storeType;
+
+    @Param({"100", "1000"})
+    public int numEntities;
+
+    @Param({"10", "100"})
+    public int changedPerDelta;
+
+    private SyntheticPlane plane;
+    private BrooklynMementoPersisterToObjectStore persister;
+    private PersistenceExceptionHandler exceptionHandler;
+    private int sequence;
+    private Delta delta;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plane = SyntheticPlane.create(storeType, numEntities);
+        persister = plane.newPersister();
+        exceptionHandler = PersistenceExceptionHandlerImpl.builder().build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (persister != null) persister.stop(true);
+        if (plane != null) plane.destroy();
+    }
+
+    /** changes the next entities in turn, so that each delta has different contents to write */
+    @Setup(Level.Invocation)
+    public void nextDelta() {
+        List<TestEntity> entities = plane.getEntities();
+        List<EntityMemento> mementos = MutableList.of();
+        for (int i = 0; i < changedPerDelta; i++) {
+            TestEntity entity = entities.get((sequence + i) % entities.size());
+            entity.setAttribute(TestEntity.SEQUENCE, sequence + i);
+            mementos.add(MementosGenerators.newEntityMemento(entity));
+        }
+        sequence += changedPerDelta;
+        delta = PersisterDeltaImpl.builder().entities(mementos).build();
+    }
+
+    @Benchmark
+    public void delta() {
+        persister.delta(delta, exceptionHandler);
+    }
+}
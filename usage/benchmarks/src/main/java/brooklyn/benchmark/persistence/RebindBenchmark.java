@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brooklyn.entity.Application;
+import brooklyn.entity.rebind.RebindManagerImpl;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.management.ha.ManagementNodeState;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.mementos.BrooklynMementoManifest;
+
+/**
+ * Reading a persisted plane of {@link #numEntities}: {@link BrooklynMementoPersisterToObjectStore#loadMementoManifest}
+ * (the first pass of rebind), and a full {@link RebindManagerImpl#rebind} into a new management context.
+ * <p>
+ * Each invocation uses a new persister or management context (not measured), so nothing is cached between them.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RebindBenchmark {
+
+    @Param({"FILE", "IN_MEMORY", "TRANSIENT_JCLOUDS"})
+    public ObjectStoreType storeType;
+
+    @Param({"100", "1000"})
+    public int numEntities;
+
+    private SyntheticPlane plane;
+    private BrooklynMementoPersisterToObjectStore persister;
+    private LocalManagementContext newManagementContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plane = SyntheticPlane.create(storeType, numEntities);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (plane != null) plane.destroy();
+    }
+
+    @Setup(Level.Invocation)
+    public void newReaders() {
+        persister = plane.newPersister(plane.getManagementContext());
+        newManagementContext = plane.newRebindManagementContext();
+    }
+
+    @TearDown(Level.Invocation)
+    public void closeReaders() {
+        // not destroying the rebound apps, as unmanaging them must not touch the persisted state
+        if (persister != null) persister.stop(false);
+        if (newManagementContext != null) newManagementContext.terminate();
+    }
+
+    @Benchmark
+    public BrooklynMementoManifest loadMementoManifest() throws Exception {
+        return persister.loadMementoManifest(plane.newExceptionHandler());
+    }
+
+    @Benchmark
+    public List<Application> rebind() throws Exception {
+        List<Application> result = newManagementContext.getRebindManager().rebind(plane.getClassLoader(),
+                plane.newExceptionHandler(), ManagementNodeState.MASTER);
+        if (result.isEmpty()) throw new IllegalStateException("No applications rebinded from "+storeType);
+        return result;
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import brooklyn.entity.basic.ApplicationBuilder;
+import brooklyn.entity.basic.Entities;
+import brooklyn.entity.proxying.EntitySpec;
+import brooklyn.entity.rebind.RebindManager;
+import brooklyn.entity.rebind.RebindTestUtils;
+import brooklyn.entity.rebind.RecordingRebindExceptionHandler;
+import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
+import brooklyn.entity.rebind.persister.PersistMode;
+import brooklyn.entity.rebind.persister.PersistenceObjectStore;
+import brooklyn.location.LocationSpec;
+import brooklyn.location.basic.SimulatedLocation;
+import brooklyn.management.ManagementContext;
+import brooklyn.management.ha.HighAvailabilityMode;
+import brooklyn.management.internal.LocalManagementContext;
+import brooklyn.management.internal.ManagementContextInternal;
+import brooklyn.policy.PolicySpec;
+import brooklyn.test.entity.TestApplication;
+import brooklyn.test.entity.TestApplicationNoEnrichersImpl;
+import brooklyn.test.entity.TestEntity;
+import brooklyn.test.policy.TestPolicy;
+import brooklyn.util.collections.MutableList;
+import brooklyn.util.time.Duration;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * A management plane of a given size, persisted to an {@link ObjectStoreType}: an application with
+ * that many {@link TestEntity} children, each with a policy, a few attributes and config values,
+ * and a {@link SimulatedLocation} shared between every {@link #ENTITIES_PER_LOCATION} entities.
+ * <p>
+ * Once created, background persistence for the plane is stopped, so that it does not interfere
+ * with what is being measured; use {@link #newPersister()} to write to the same store.
+ */
+public class SyntheticPlane {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SyntheticPlane.class);
+
+    public static final int ENTITIES_PER_LOCATION = 10;
+
+    private final ObjectStoreType.Backing backing;
+    private final ClassLoader classLoader = SyntheticPlane.class.getClassLoader();
+    private final LocalManagementContext mgmt;
+    private final TestApplication app;
+    private final List<TestEntity> entities;
+
+    public static SyntheticPlane create(ObjectStoreType storeType, int numEntities) throws Exception {
+        return new SyntheticPlane(storeType, numEntities);
+    }
+
+    protected SyntheticPlane(ObjectStoreType storeType, int numEntities) throws Exception {
+        backing = storeType.newBacking();
+        mgmt = RebindTestUtils.managementContextBuilder(classLoader, backing.newObjectStore())
+                .persistPeriod(Duration.millis(100))
+                .buildStarted();
+        app = ApplicationBuilder.newManagedApp(EntitySpec.create(TestApplication.class, TestApplicationNoEnrichersImpl.class), mgmt);
+
+        List<TestEntity> entitiesList = MutableList.of();
+        SimulatedLocation loc = null;
+        for (int i = 0; i < numEntities; i++) {
+            if (i % ENTITIES_PER_LOCATION == 0) {
+                loc = mgmt.getLocationManager().createLocation(LocationSpec.create(SimulatedLocation.class));
+            }
+            TestEntity entity = app.createAndManageChild(EntitySpec.create(TestEntity.class)
+                    .configure(TestEntity.CONF_NAME, "entity-"+i)
+                    .policy(PolicySpec.create(TestPolicy.class)));
+            entity.setAttribute(TestEntity.SEQUENCE, i);
+            entity.setAttribute(TestEntity.NAME, "entity-"+i);
+            entity.addLocations(ImmutableList.of(loc));
+            entitiesList.add(entity);
+        }
+        entities = Collections.unmodifiableList(entitiesList);
+
+        RebindTestUtils.waitForPersisted(mgmt);
+        mgmt.getRebindManager().stopPersistence();
+        LOG.info("Created synthetic plane of "+numEntities+" entities, persisted to "+storeType);
+    }
+
+    public ManagementContext getManagementContext() {
+        return mgmt;
+    }
+
+    public TestApplication getApplication() {
+        return app;
+    }
+
+    public List<TestEntity> getEntities() {
+        return entities;
+    }
+
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /** a new persister, writing to this plane's store, with write access enabled; caller should {@link BrooklynMementoPersisterToObjectStore#stop(boolean) stop} it */
+    public BrooklynMementoPersisterToObjectStore newPersister() {
+        BrooklynMementoPersisterToObjectStore result = newPersister(mgmt);
+        result.enableWriteAccess();
+        return result;
+    }
+
+    /** a new persister reading from this plane's store, in the context of the given management context */
+    public BrooklynMementoPersisterToObjectStore newPersister(ManagementContext context) {
+        PersistenceObjectStore objectStore = backing.newObjectStore();
+        objectStore.injectManagementContext(context);
+        objectStore.prepareForSharedUse(PersistMode.AUTO, HighAvailabilityMode.DISABLED);
+        return new BrooklynMementoPersisterToObjectStore(objectStore,
+                ((ManagementContextInternal)context).getBrooklynProperties(), classLoader);
+    }
+
+    /** a new management context, not started, set up to rebind from this plane's store */
+    public LocalManagementContext newRebindManagementContext() {
+        return RebindTestUtils.managementContextBuilder(classLoader, backing.newObjectStore())
+                .buildUnstarted();
+    }
+
+    public RecordingRebindExceptionHandler newExceptionHandler() {
+        return new RecordingRebindExceptionHandler(RebindManager.RebindFailureMode.FAIL_FAST, RebindManager.RebindFailureMode.FAIL_FAST);
+    }
+
+    public void destroy() {
+        try {
+            Entities.destroyAll(mgmt);
+        } finally {
+            backing.delete();
+        }
+    }
+}
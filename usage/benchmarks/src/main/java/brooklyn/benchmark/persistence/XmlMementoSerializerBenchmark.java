@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package brooklyn.benchmark.persistence;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import brooklyn.entity.rebind.dto.MementosGenerators;
+import brooklyn.entity.rebind.persister.MementoSerializationFormat;
+import brooklyn.entity.rebind.persister.XmlMementoSerializer;
+import brooklyn.mementos.EntityMemento;
+import brooklyn.mementos.PolicyMemento;
+import brooklyn.policy.Policy;
+import brooklyn.test.entity.TestEntity;
+
+import com.google.common.collect.Iterables;
+
+/**
+ * Serializing and deserializing a single entity's memento (and its policy's), as done for each changed item
+ * on every persistence delta and for each item on rebind.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlMementoSerializerBenchmark {
+
+    @Param({"XML", "BINARY"})
+    public MementoSerializationFormat format;
+
+    private SyntheticPlane plane;
+    private XmlMementoSerializer<Object> serializer;
+    private EntityMemento entityMemento;
+    private PolicyMemento policyMemento;
+    private String serializedEntity;
+    private String serializedPolicy;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        plane = SyntheticPlane.create(ObjectStoreType.IN_MEMORY, 1);
+        TestEntity entity = plane.getEntities().get(0);
+        Policy policy = Iterables.getOnlyElement(entity.getPolicies());
+        entityMemento = MementosGenerators.newEntityMemento(entity);
+        policyMemento = MementosGenerators.newPolicyMemento(policy);
+
+        serializer = format.newSerializer(plane.getClassLoader());
+        serializedEntity = serializer.toString(entityMemento);
+        serializedPolicy = serializer.toString(policyMemento);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (plane != null) plane.destroy();
+    }
+
+    @Benchmark
+    public String serializeEntity() {
+        return serializer.toString(entityMemento);
+    }
+
+    @Benchmark
+    public Object deserializeEntity() {
+        return serializer.fromString(serializedEntity);
+    }
+
+    @Benchmark
+    public String serializePolicy() {
+        return serializer.toString(policyMemento);
+    }
+
+    @Benchmark
+    public Object deserializePolicy() {
+        return serializer.fromString(serializedPolicy);
+    }
+}
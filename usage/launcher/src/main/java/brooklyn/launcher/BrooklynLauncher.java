@@ -65,8 +65,10 @@ import brooklyn.entity.rebind.RebindManager;
 import brooklyn.entity.rebind.RebindManagerImpl;
 import brooklyn.entity.rebind.persister.BrooklynMementoPersisterToObjectStore;
 import brooklyn.entity.rebind.persister.FileBasedObjectStore;
+import brooklyn.entity.rebind.persister.JournaledFileObjectStore;
 import brooklyn.entity.rebind.persister.PersistMode;
 import brooklyn.entity.rebind.persister.PersistenceObjectStore;
+import brooklyn.entity.rebind.persister.jclouds.BatchedJcloudsBlobStoreBasedObjectStore;
 import brooklyn.entity.rebind.persister.jclouds.JcloudsBlobStoreBasedObjectStore;
 import brooklyn.entity.trait.Startable;
 import brooklyn.internal.BrooklynFeatureEnablement;
@@ -102,6 +104,7 @@ import brooklyn.util.text.Strings;
 import brooklyn.util.time.Duration;
 import brooklyn.util.time.Time;
 
+import com.google.common.annotations.Beta;
 import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
@@ -161,6 +164,8 @@ public class BrooklynLauncher {
     private HighAvailabilityMode highAvailabilityMode = HighAvailabilityMode.DISABLED;
     private String persistenceDir;
     private String persistenceLocation;
+    private Boolean persistenceJournaled;
+    private Boolean persistenceBatched;
     private Duration persistPeriod = Duration.ONE_SECOND;
     private Duration haHeartbeatTimeout = Duration.THIRTY_SECONDS;
     private Duration haHeartbeatPeriod = Duration.ONE_SECOND;
@@ -431,6 +436,26 @@ public class BrooklynLauncher {
         return persistenceDir(persistenceDir.getAbsolutePath());
     }
 
+    /**
+     * Whether persisted state on the file system should be kept in a journal ({@link JournaledFileObjectStore})
+     * rather than as a file per item; defaults to {@link BrooklynServerConfig#PERSISTENCE_JOURNALED}.
+     */
+    @Beta
+    public BrooklynLauncher persistenceJournaled(boolean persistenceJournaled) {
+        this.persistenceJournaled = persistenceJournaled;
+        return this;
+    }
+
+    /**
+     * Whether persisted state in a cloud object store should be written as a blob per delta ({@link BatchedJcloudsBlobStoreBasedObjectStore})
+     * rather than as a blob per item; defaults to {@link BrooklynServerConfig#PERSISTENCE_BATCHED}.
+     */
+    @Beta
+    public BrooklynLauncher persistenceBatched(boolean persistenceBatched) {
+        this.persistenceBatched = persistenceBatched;
+        return this;
+    }
+
     public BrooklynLauncher persistPeriod(Duration persistPeriod) {
         this.persistPeriod = persistPeriod;
         return this;
@@ -547,9 +572,9 @@ public class BrooklynLauncher {
             if (Strings.isBlank(destinationLocation)) {
                 File persistenceDirF = new File(destinationDir);
                 if (persistenceDirF.isFile()) throw new FatalConfigurationRuntimeException("Destination directory must not be a file");
-                destinationObjectStore = new FileBasedObjectStore(persistenceDirF);
+                destinationObjectStore = newFileBasedObjectStore(persistenceDirF);
             } else {
-                destinationObjectStore = new JcloudsBlobStoreBasedObjectStore(destinationLocation, destinationDir);
+                destinationObjectStore = newCloudObjectStore(destinationLocation, destinationDir);
             }
             destinationObjectStore.injectManagementContext(managementContext);
             destinationObjectStore.prepareForSharedUse(persistMode, highAvailabilityMode);
@@ -777,6 +802,16 @@ public class BrooklynLauncher {
         }
     }
 
+    protected PersistenceObjectStore newFileBasedObjectStore(File persistenceDir) {
+        boolean journaled = (persistenceJournaled != null) ? persistenceJournaled : brooklynProperties.getConfig(BrooklynServerConfig.PERSISTENCE_JOURNALED);
+        return journaled ? new JournaledFileObjectStore(persistenceDir) : new FileBasedObjectStore(persistenceDir);
+    }
+
+    protected PersistenceObjectStore newCloudObjectStore(String persistenceLocation, String persistenceDir) {
+        boolean batched = (persistenceBatched != null) ? persistenceBatched : brooklynProperties.getConfig(BrooklynServerConfig.PERSISTENCE_BATCHED);
+        return batched ? new BatchedJcloudsBlobStoreBasedObjectStore(persistenceLocation, persistenceDir) : new JcloudsBlobStoreBasedObjectStore(persistenceLocation, persistenceDir);
+    }
+
     protected void initPersistence() {
         // Prepare the rebind directory, and initialise the RebindManager as required
         final PersistenceObjectStore objectStore;
@@ -794,9 +829,9 @@ public class BrooklynLauncher {
             if (Strings.isBlank(persistenceLocation)) {
                 File persistenceDirF = new File(persistenceDir);
                 if (persistenceDirF.isFile()) throw new FatalConfigurationRuntimeException("Persistence directory must not be a file");
-                objectStore = new FileBasedObjectStore(persistenceDirF);
+                objectStore = newFileBasedObjectStore(persistenceDirF);
             } else {
-                objectStore = new JcloudsBlobStoreBasedObjectStore(persistenceLocation, persistenceDir);
+                objectStore = newCloudObjectStore(persistenceLocation, persistenceDir);
             }
             try {
                 objectStore.injectManagementContext(managementContext);
@@ -18,6 +18,8 @@
  */
 package brooklyn.rest.api;
 
+import java.util.Map;
+
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DefaultValue;
 import javax.ws.rs.FormParam;
@@ -96,6 +98,13 @@ public interface ServerApi {
         responseClass = "brooklyn.rest.domain.HighAvailabilitySummary")
     public HighAvailabilitySummary getHighAvailabilityPlaneStates();
     
+    @GET
+    @Path("/persistence/metrics")
+    @ApiOperation(value = "Returns metrics on persistence of this node's state, including the changes waiting to be written, "
+        + "how long the oldest has been waiting, and the size and duration of the last write",
+        responseClass = "java.util.Map")
+    public Map<String, Object> getPersistenceMetrics();
+    
     @GET
     @Path("/user")
     @ApiOperation(value = "Return user information for this Brooklyn instance", responseClass = "String", multiValueResponse = false)
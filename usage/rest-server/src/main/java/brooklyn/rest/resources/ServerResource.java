@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -235,6 +236,11 @@ public class ServerResource extends AbstractBrooklynRestResource implements Serv
         return HighAvailabilityTransformer.highAvailabilitySummary(mgmt().getManagementNodeId(), memento);
     }
 
+    @Override
+    public Map<String, Object> getPersistenceMetrics() {
+        return mgmt().getRebindManager().getMetrics();
+    }
+
     @Override
     public String getUser() {
         EntitlementContext entitlementContext = Entitlements.getEntitlementContext();
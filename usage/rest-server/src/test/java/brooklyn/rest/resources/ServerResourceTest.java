@@ -23,6 +23,7 @@ import static org.testng.Assert.assertFalse;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertTrue;
 
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
@@ -74,6 +75,14 @@ public class ServerResourceTest extends BrooklynRestResourceTest {
         assertEquals(summary.getNodes().get(ownNodeId).getLocalTimestamp(), summary.getNodes().get(ownNodeId).getRemoteTimestamp());
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testGetPersistenceMetrics() throws Exception {
+        // persistence is not enabled for the management context from super, so only the state is reported
+        Map<String, Object> metrics = client().resource("/v1/server/persistence/metrics").get(Map.class);
+        assertEquals(metrics.get("persistenceRunning"), false);
+    }
+
     @Test
     public void testReloadsBrooklynProperties() throws Exception {
         final AtomicInteger reloadCount = new AtomicInteger();
@@ -18,9 +18,15 @@
  */
 package brooklyn.util.javalang;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import brooklyn.util.guava.Maybe;
+
 public class Threads {
 
     private static final Logger log = LoggerFactory.getLogger(Threads.class);
@@ -49,4 +55,39 @@ public class Threads {
         }
     }
 
+    /**
+     * Returns a factory for virtual threads, if the running JVM supports them (Java 21+),
+     * looked up reflectively so this compiles and runs on older JVMs; otherwise absent.
+     * <p>
+     * Virtual threads are always daemon threads; {@link Thread#setDaemon(boolean) setDaemon(true)} is allowed on them.
+     */
+    public static Maybe<ThreadFactory> newVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            // invoke via the public interface, as the builder implementation class is not accessible
+            Object factory = Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+            return Maybe.of((ThreadFactory) factory);
+        } catch (Exception e) {
+            if (log.isTraceEnabled()) log.trace("Virtual threads not available: "+e);
+            return Maybe.absent("Virtual threads not supported in this JVM ("+System.getProperty("java.version")+")", e);
+        }
+    }
+
+    /**
+     * Returns an executor which starts a new thread from the given factory for each task, rather than pooling threads,
+     * if the running JVM supports it (Java 21+, {@code Executors.newThreadPerTaskExecutor}); otherwise absent.
+     * <p>
+     * This is how virtual threads should be used: they are cheap to create, and are not meant to be reused.
+     */
+    public static Maybe<ExecutorService> newThreadPerTaskExecutor(ThreadFactory threadFactory) {
+        try {
+            Object executor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+            return Maybe.of((ExecutorService) executor);
+        } catch (Exception e) {
+            if (log.isTraceEnabled()) log.trace("Thread-per-task executor not available: "+e);
+            return Maybe.absent("Thread-per-task executor not supported in this JVM ("+System.getProperty("java.version")+")", e);
+        }
+    }
+
 }